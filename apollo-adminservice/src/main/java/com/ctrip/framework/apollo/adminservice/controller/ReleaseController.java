@@ -4,6 +4,7 @@ package com.ctrip.framework.apollo.adminservice.controller;
 import com.ctrip.framework.apollo.biz.entity.Namespace;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.message.MessageSender;
+import com.ctrip.framework.apollo.biz.message.ReleasePropagationTracker;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.service.NamespaceBranchService;
 import com.ctrip.framework.apollo.biz.service.NamespaceService;
@@ -39,16 +40,19 @@ public class ReleaseController {
   private final NamespaceService namespaceService;
   private final MessageSender messageSender;
   private final NamespaceBranchService namespaceBranchService;
+  private final ReleasePropagationTracker releasePropagationTracker;
 
   public ReleaseController(
       final ReleaseService releaseService,
       final NamespaceService namespaceService,
       final MessageSender messageSender,
-      final NamespaceBranchService namespaceBranchService) {
+      final NamespaceBranchService namespaceBranchService,
+      final ReleasePropagationTracker releasePropagationTracker) {
     this.releaseService = releaseService;
     this.namespaceService = namespaceService;
     this.messageSender = messageSender;
     this.namespaceBranchService = namespaceBranchService;
+    this.releasePropagationTracker = releasePropagationTracker;
   }
 
 
@@ -112,19 +116,24 @@ public class ReleaseController {
       throw new NotFoundException(String.format("Could not find namespace for %s %s %s", appId,
                                                 clusterName, namespaceName));
     }
-    Release release = releaseService.publish(namespace, releaseName, releaseComment, operator, isEmergencyPublish);
-
-    //send release message
-    Namespace parentNamespace = namespaceService.findParentNamespace(namespace);
-    String messageCluster;
-    if (parentNamespace != null) {
-      messageCluster = parentNamespace.getClusterName();
-    } else {
-      messageCluster = clusterName;
+    try {
+      Release release = releaseService.publish(namespace, releaseName, releaseComment, operator, isEmergencyPublish);
+
+      //send release message
+      Namespace parentNamespace = namespaceService.findParentNamespace(namespace);
+      String messageCluster;
+      if (parentNamespace != null) {
+        messageCluster = parentNamespace.getClusterName();
+      } else {
+        messageCluster = clusterName;
+      }
+      messageSender.sendMessage(ReleaseMessageKeyGenerator.generate(appId, messageCluster, namespaceName),
+                                Topics.APOLLO_RELEASE_TOPIC);
+      return BeanUtils.transform(ReleaseDTO.class, release);
+    } finally {
+      //the published release is tracked in the request thread until its message is sent
+      releasePropagationTracker.clearPublishedRelease();
     }
-    messageSender.sendMessage(ReleaseMessageKeyGenerator.generate(appId, messageCluster, namespaceName),
-                              Topics.APOLLO_RELEASE_TOPIC);
-    return BeanUtils.transform(ReleaseDTO.class, release);
   }
 
 
@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.adminservice.controller;
 
 import com.ctrip.framework.apollo.biz.entity.Namespace;
 import com.ctrip.framework.apollo.biz.message.MessageSender;
+import com.ctrip.framework.apollo.biz.message.ReleasePropagationTracker;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.repository.ReleaseRepository;
 import com.ctrip.framework.apollo.biz.service.NamespaceService;
@@ -104,9 +105,11 @@ public class ReleaseControllerTest extends AbstractControllerTest {
     NamespaceService someNamespaceService = mock(NamespaceService.class);
     ReleaseService someReleaseService = mock(ReleaseService.class);
     MessageSender someMessageSender = mock(MessageSender.class);
+    ReleasePropagationTracker someReleasePropagationTracker = mock(ReleasePropagationTracker.class);
     Namespace someNamespace = mock(Namespace.class);
 
-    ReleaseController releaseController = new ReleaseController(someReleaseService, someNamespaceService, someMessageSender, null);
+    ReleaseController releaseController = new ReleaseController(someReleaseService, someNamespaceService,
+        someMessageSender, null, someReleasePropagationTracker);
 
     when(someNamespaceService.findOne(someAppId, someCluster, someNamespaceName))
         .thenReturn(someNamespace);
@@ -118,6 +121,6 @@ public class ReleaseControllerTest extends AbstractControllerTest {
         .sendMessage(Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
                 .join(someAppId, someCluster, someNamespaceName),
             Topics.APOLLO_RELEASE_TOPIC);
-
+    verify(someReleasePropagationTracker, times(1)).clearPublishedRelease();
   }
 }
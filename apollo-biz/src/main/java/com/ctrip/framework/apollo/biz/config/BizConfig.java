@@ -27,7 +27,26 @@ public class BizConfig extends RefreshableConfig {
   private static final int DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS = 1000; //1000ms
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH = 100;
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI = 100;//100ms
+  private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_WORKERS = 4;
+  private static final int DEFAULT_RELEASE_MESSAGE_RECONCILE_INTERVAL_IN_MS = 10000; //10s
+  private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_WORKERS = 2;
+  private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_BATCH = 100;
   private static final int DEFAULT_LONG_POLLING_TIMEOUT = 60; //60s
+  private static final int DEFAULT_LONG_POLLING_MIN_TIMEOUT = 30; //30s
+  private static final int DEFAULT_LONG_POLLING_FULL_LOAD_CONNECTIONS = 200000;
+  private static final int DEFAULT_LONG_POLLING_DRAIN_WINDOW = 10; //10s
+  private static final int DEFAULT_NOTIFICATION_STREAM_TIMEOUT = 600; //600s
+  private static final int DEFAULT_CACHE_SNAPSHOT_INTERVAL = 60; //60s
+  private static final int DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+  private static final int DEFAULT_CIRCUIT_BREAKER_OPEN_INTERVAL = 10; //10s
+  private static final int DEFAULT_ADMISSION_CONFIG_QPS_PER_CLIENT = 20;
+  private static final int DEFAULT_ADMISSION_NOTIFICATION_QPS_PER_CLIENT = 2;
+  private static final int DEFAULT_ADMISSION_MAX_CONCURRENT_DATABASE_LOADS = 20;
+  private static final int DEFAULT_ADMISSION_RETRY_AFTER = 2; //2s
+  private static final int DEFAULT_NOTIFICATION_FETCH_QPS_PER_KEY = 1000;
+  private static final int DEFAULT_NOTIFICATION_MAX_FETCH_DELAY_IN_MS = 5000; //5s
+  private static final int DEFAULT_CONFIG_SERVICE_AFFINITY_VIRTUAL_NODES = 100;
+  private static final String DEFAULT_CACHE_SNAPSHOT_PATH = "/opt/data/apollo-cache-snapshot";
 
   private Gson gson = new Gson();
   private static final Type namespaceValueLengthOverrideTypeReference =
@@ -65,6 +84,47 @@ public class BizConfig extends RefreshableConfig {
     return 1000 * checkInt(timeout, 1, 90, DEFAULT_LONG_POLLING_TIMEOUT);
   }
 
+  /**
+   * Whether the hold time of long polling is shortened by the number of polls held by the config service, otherwise the
+   * polls are held for the long polling timeout
+   */
+  public boolean isLongPollingAdaptiveHoldTimeEnabled() {
+    return getBooleanProperty("long.polling.adaptive-hold-time.enabled", false);
+  }
+
+  /**
+   * The hold time of long polling when the config service is fully loaded, it's between this and the long polling
+   * timeout depending on the load, only used if the adaptive hold time is enabled
+   */
+  public long longPollingMinTimeoutInMilli() {
+    int timeout = getIntProperty("long.polling.min.timeout", DEFAULT_LONG_POLLING_MIN_TIMEOUT);
+    return 1000L * checkInt(timeout, 1, 90, DEFAULT_LONG_POLLING_MIN_TIMEOUT);
+  }
+
+  /**
+   * The number of held long polls at which the config service is considered fully loaded
+   */
+  public int longPollingFullLoadConnections() {
+    int connections = getIntProperty("long.polling.full-load.connections", DEFAULT_LONG_POLLING_FULL_LOAD_CONNECTIONS);
+    return checkInt(connections, 1, Integer.MAX_VALUE, DEFAULT_LONG_POLLING_FULL_LOAD_CONNECTIONS);
+  }
+
+  /**
+   * The window to release the held long polls and notification streams gradually on shutdown, 0 to release all at once
+   */
+  public long longPollingDrainWindowInMilli() {
+    int window = getIntProperty("long.polling.drain.window", DEFAULT_LONG_POLLING_DRAIN_WINDOW);
+    return 1000L * checkInt(window, 0, 60, DEFAULT_LONG_POLLING_DRAIN_WINDOW);
+  }
+
+  /**
+   * The max lifetime of a notification stream, the client would reconnect after that
+   */
+  public long notificationStreamTimeoutInMilli() {
+    int timeout = getIntProperty("notification.stream.timeout", DEFAULT_NOTIFICATION_STREAM_TIMEOUT);
+    return 1000L * checkInt(timeout, 60, 3600, DEFAULT_NOTIFICATION_STREAM_TIMEOUT);
+  }
+
   public int itemKeyLengthLimit() {
     int limit = getIntProperty("item.key.length.limit", DEFAULT_ITEM_KEY_LENGTH);
     return checkInt(limit, 5, Integer.MAX_VALUE, DEFAULT_ITEM_KEY_LENGTH);
@@ -143,10 +203,207 @@ public class BizConfig extends RefreshableConfig {
     return checkInt(interval, 10, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI);
   }
 
+  public int releaseMessageNotificationWorkers() {
+    int workers = getIntProperty("apollo.release-message.notification.workers", DEFAULT_RELEASE_MESSAGE_NOTIFICATION_WORKERS);
+    return checkInt(workers, 1, 64, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_WORKERS);
+  }
+
+  /**
+   * The max count of clients notified per second by one config service instance,
+   * by default it's derived from the notification batch and batch interval
+   */
+  public int releaseMessageNotificationRatePerSecond() {
+    long defaultRate = Math.min(Integer.MAX_VALUE,
+        1000L * releaseMessageNotificationBatch() / releaseMessageNotificationBatchIntervalInMilli());
+    int rate = getIntProperty("apollo.release-message.notification.rate", (int) defaultRate);
+    return checkInt(rate, 1, Integer.MAX_VALUE, (int) defaultRate);
+  }
+
+  /**
+   * Whether admin service pushes release messages to config service instances, if enabled, config service only scans
+   * the release messages in database with the reconcile interval as a fallback
+   */
+  public boolean isReleaseMessagePushEnabled() {
+    return getBooleanProperty("apollo.release-message.push.enabled", false);
+  }
+
+  public int releaseMessageReconcileIntervalInMilli() {
+    int interval = getIntProperty("apollo.release-message.reconcile.interval", DEFAULT_RELEASE_MESSAGE_RECONCILE_INTERVAL_IN_MS);
+    return checkInt(interval, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_RECONCILE_INTERVAL_IN_MS);
+  }
+
+  /**
+   * The token shared by admin service and config service to authenticate the pushed release messages, the pushes are
+   * rejected if it's not configured
+   */
+  public String releaseMessagePushToken() {
+    return getValue("apollo.release-message.push.token", "");
+  }
+
+  public int instanceConfigAuditWorkers() {
+    int workers = getIntProperty("apollo.instance-config-audit.workers", DEFAULT_INSTANCE_CONFIG_AUDIT_WORKERS);
+    return checkInt(workers, 1, 32, DEFAULT_INSTANCE_CONFIG_AUDIT_WORKERS);
+  }
+
+  public int instanceConfigAuditBatch() {
+    int batch = getIntProperty("apollo.instance-config-audit.batch", DEFAULT_INSTANCE_CONFIG_AUDIT_BATCH);
+    return checkInt(batch, 1, 1000, DEFAULT_INSTANCE_CONFIG_AUDIT_BATCH);
+  }
+
   public boolean isConfigServiceCacheEnabled() {
     return getBooleanProperty("config-service.cache.enabled", false);
   }
 
+  /**
+   * Whether to respond the configurations changed since the client's release instead of the complete ones, the deltas
+   * are only calculated from the releases cached when config service cache is enabled
+   */
+  public boolean isConfigDeltaEnabled() {
+    return getBooleanProperty("config-service.delta.enabled", false);
+  }
+
+  /**
+   * Whether to render the cached config files when they are released before the clients are notified, instead of
+   * invalidating them
+   */
+  public boolean isConfigFileWarmUpEnabled() {
+    return getBooleanProperty("config-service.config-file.warm-up.enabled", false);
+  }
+
+  /**
+   * The max estimated bytes of the config service cache, configured by config-service.cache.{cacheName}.max-size-in-mb
+   */
+  public long configServiceCacheMaxSizeInBytes(String cacheName, int defaultSizeInMB) {
+    int size = getIntProperty(String.format("config-service.cache.%s.max-size-in-mb", cacheName), defaultSizeInMB);
+    return 1024L * 1024L * checkInt(size, 1, Integer.MAX_VALUE, defaultSizeInMB);
+  }
+
+  /**
+   * Whether to serve the last known releases when database is unavailable, only works with config service cache
+   */
+  public boolean isConfigServiceStaleIfErrorEnabled() {
+    return getBooleanProperty("config-service.stale-if-error.enabled", true);
+  }
+
+  /**
+   * The continuous database failures to open the circuit breaker of config service cache
+   */
+  public int configServiceCircuitBreakerFailureThreshold() {
+    int threshold = getIntProperty("config-service.circuit-breaker.failure-threshold",
+        DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD);
+    return checkInt(threshold, 1, Integer.MAX_VALUE, DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD);
+  }
+
+  public long configServiceCircuitBreakerOpenIntervalInMilli() {
+    int interval = getIntProperty("config-service.circuit-breaker.open-interval", DEFAULT_CIRCUIT_BREAKER_OPEN_INTERVAL);
+    return 1000L * checkInt(interval, 1, 3600, DEFAULT_CIRCUIT_BREAKER_OPEN_INTERVAL);
+  }
+
+  /**
+   * Whether to reject the requests with 429 when the clients request too frequently or too many configs are being
+   * loaded from database
+   */
+  public boolean isConfigServiceAdmissionEnabled() {
+    return getBooleanProperty("config-service.admission.enabled", false);
+  }
+
+  /**
+   * The permitted rate of config requests, i.e. /configs and /configfiles, of each client, i.e. app id and ip
+   */
+  public int configServiceAdmissionConfigQpsPerClient() {
+    int qps = getIntProperty("config-service.admission.config-qps-per-client",
+        DEFAULT_ADMISSION_CONFIG_QPS_PER_CLIENT);
+    return checkInt(qps, 1, Integer.MAX_VALUE, DEFAULT_ADMISSION_CONFIG_QPS_PER_CLIENT);
+  }
+
+  /**
+   * The permitted rate of notification requests, i.e. /notifications, of each client, i.e. app id and ip
+   */
+  public int configServiceAdmissionNotificationQpsPerClient() {
+    int qps = getIntProperty("config-service.admission.notification-qps-per-client",
+        DEFAULT_ADMISSION_NOTIFICATION_QPS_PER_CLIENT);
+    return checkInt(qps, 1, Integer.MAX_VALUE, DEFAULT_ADMISSION_NOTIFICATION_QPS_PER_CLIENT);
+  }
+
+  /**
+   * The max number of cache misses loading from database at the same time, only works with config service cache
+   */
+  public int configServiceAdmissionMaxConcurrentDatabaseLoads() {
+    int loads = getIntProperty("config-service.admission.max-concurrent-database-loads",
+        DEFAULT_ADMISSION_MAX_CONCURRENT_DATABASE_LOADS);
+    return checkInt(loads, 1, Integer.MAX_VALUE, DEFAULT_ADMISSION_MAX_CONCURRENT_DATABASE_LOADS);
+  }
+
+  /**
+   * The base Retry-After of the rejected requests, a random delay up to the same seconds is added to spread the retries
+   */
+  public int configServiceAdmissionRetryAfterInSecond() {
+    int retryAfter = getIntProperty("config-service.admission.retry-after", DEFAULT_ADMISSION_RETRY_AFTER);
+    return checkInt(retryAfter, 1, 3600, DEFAULT_ADMISSION_RETRY_AFTER);
+  }
+
+  /**
+   * The ips of the proxies in front of config service, whose X-Forwarded-For headers are trusted to find the client ips
+   */
+  public List<String> configServiceAdmissionTrustedProxies() {
+    String configuration = getValue("config-service.admission.trusted-proxies", "");
+    if (Strings.isNullOrEmpty(configuration)) {
+      return Collections.emptyList();
+    }
+
+    return splitter.splitToList(configuration);
+  }
+
+  /**
+   * The expected rate of config fetches caused by one release message, the notified clients are suggested to spread
+   * their fetches in a window of subscriber count / qps seconds
+   */
+  public int notificationFetchQpsPerKey() {
+    int qps = getIntProperty("config-service.notification.fetch-qps-per-key", DEFAULT_NOTIFICATION_FETCH_QPS_PER_KEY);
+    return checkInt(qps, 1, Integer.MAX_VALUE, DEFAULT_NOTIFICATION_FETCH_QPS_PER_KEY);
+  }
+
+  /**
+   * The upper bound of the suggested fetch delay window, which bounds the propagation latency, 0 to disable the delay
+   */
+  public int notificationMaxFetchDelayInMilli() {
+    int delay = getIntProperty("config-service.notification.max-fetch-delay", DEFAULT_NOTIFICATION_MAX_FETCH_DELAY_IN_MS);
+    return checkInt(delay, 0, 60000, DEFAULT_NOTIFICATION_MAX_FETCH_DELAY_IN_MS);
+  }
+
+  /**
+   * Whether to publish the consistent hash ring of config services in meta service, so that the clients of the same app
+   * would be routed to the same config service
+   */
+  public boolean isConfigServiceAffinityEnabled() {
+    return getBooleanProperty("meta-service.config-service-affinity.enabled", false);
+  }
+
+  /**
+   * The number of virtual nodes of a config service with weight 1 in the consistent hash ring
+   */
+  public int configServiceAffinityVirtualNodes() {
+    int virtualNodes = getIntProperty("meta-service.config-service-affinity.virtual-nodes",
+        DEFAULT_CONFIG_SERVICE_AFFINITY_VIRTUAL_NODES);
+    return checkInt(virtualNodes, 1, 1000, DEFAULT_CONFIG_SERVICE_AFFINITY_VIRTUAL_NODES);
+  }
+
+  /**
+   * Whether to persist the caches of config service on disk, so they could be restored quickly when restarted
+   */
+  public boolean isCacheSnapshotEnabled() {
+    return getBooleanProperty("apollo.cache-snapshot.enabled", false);
+  }
+
+  public String cacheSnapshotPath() {
+    return getValue("apollo.cache-snapshot.path", DEFAULT_CACHE_SNAPSHOT_PATH);
+  }
+
+  public int cacheSnapshotIntervalInSecond() {
+    int interval = getIntProperty("apollo.cache-snapshot.interval", DEFAULT_CACHE_SNAPSHOT_INTERVAL);
+    return checkInt(interval, 10, Integer.MAX_VALUE, DEFAULT_CACHE_SNAPSHOT_INTERVAL);
+  }
+
   int checkInt(int value, int min, int max, int defaultValue) {
     if (value >= min && value <= max) {
       return value;
@@ -12,12 +12,14 @@ import javax.persistence.Id;
 import javax.persistence.PrePersist;
 import javax.persistence.PreUpdate;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 @Entity
-@Table(name = "InstanceConfig")
+@Table(name = "InstanceConfig", uniqueConstraints = @UniqueConstraint(name = "IX_UNIQUE_KEY",
+    columnNames = {"InstanceId", "ConfigAppId", "ConfigNamespaceName"}))
 public class InstanceConfig {
   @Id
   @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -58,13 +58,4 @@ public class GrayReleaseRuleCache {
   public String getNamespaceName() {
     return namespaceName;
   }
-
-  public boolean matches(String clientAppId, String clientIp) {
-    for (GrayReleaseRuleItemDTO ruleItem : ruleItems) {
-      if (ruleItem.matches(clientAppId, clientIp)) {
-        return true;
-      }
-    }
-    return false;
-  }
 }
@@ -0,0 +1,91 @@
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * An immutable index of the active gray release rules, to find the matched release by client app id and ip.
+ * <p>
+ * For the same client app id, an exact ip rule takes precedence over a prefix rule (the longest prefix wins), which
+ * takes precedence over the all ip rule.
+ */
+public class GrayReleaseRuleIndex {
+  private static final GrayReleaseRuleIndex EMPTY = new GrayReleaseRuleIndex(ImmutableMap.of());
+  private final Map<String, ClientIpMatcher> clientIpMatchers;
+
+  private GrayReleaseRuleIndex(Map<String, ClientIpMatcher> clientIpMatchers) {
+    this.clientIpMatchers = clientIpMatchers;
+  }
+
+  public static GrayReleaseRuleIndex build(Collection<GrayReleaseRuleCache> rules) {
+    Map<String, ClientIpMatcher> clientIpMatchers = Maps.newHashMap();
+    for (GrayReleaseRuleCache rule : rules) {
+      //check branch status
+      if (rule.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
+        continue;
+      }
+      for (GrayReleaseRuleItemDTO ruleItem : rule.getRuleItems()) {
+        ClientIpMatcher matcher = clientIpMatchers.computeIfAbsent(ruleItem.getClientAppId(),
+            clientAppId -> new ClientIpMatcher());
+        for (String clientIp : ruleItem.getClientIpList()) {
+          matcher.add(clientIp, rule.getReleaseId());
+        }
+      }
+    }
+    return clientIpMatchers.isEmpty() ? EMPTY : new GrayReleaseRuleIndex(ImmutableMap.copyOf(clientIpMatchers));
+  }
+
+  public static GrayReleaseRuleIndex empty() {
+    return EMPTY;
+  }
+
+  /**
+   * @return the release id of the matched rule, or null if no rule matches
+   */
+  public Long findReleaseId(String clientAppId, String clientIp) {
+    if (clientAppId == null) {
+      return null;
+    }
+    ClientIpMatcher matcher = clientIpMatchers.get(clientAppId);
+    return matcher == null ? null : matcher.match(clientIp);
+  }
+
+  public boolean isEmpty() {
+    return clientIpMatchers.isEmpty();
+  }
+
+  private static class ClientIpMatcher {
+    private final Map<String, Long> exactIps = Maps.newHashMap();
+    private final IpPrefixTrie<Long> ipPrefixes = new IpPrefixTrie<>();
+    private Long allIpReleaseId;
+
+    void add(String clientIp, long releaseId) {
+      if (GrayReleaseRuleItemDTO.ALL_IP.equals(clientIp)) {
+        allIpReleaseId = releaseId;
+      } else if (IpPrefixTrie.isPrefix(clientIp)) {
+        ipPrefixes.put(clientIp, releaseId);
+      } else {
+        exactIps.put(clientIp, releaseId);
+      }
+    }
+
+    Long match(String clientIp) {
+      if (clientIp != null) {
+        Long releaseId = exactIps.get(clientIp);
+        if (releaseId != null) {
+          return releaseId;
+        }
+        releaseId = ipPrefixes.findLongestMatch(clientIp);
+        if (releaseId != null) {
+          return releaseId;
+        }
+      }
+      return allIpReleaseId;
+    }
+  }
+}
@@ -5,8 +5,8 @@ import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
@@ -15,6 +15,7 @@ import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.repository.GrayReleaseRuleRepository;
+import com.ctrip.framework.apollo.biz.snapshot.CacheSnapshotStore;
 import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
 import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
 import com.ctrip.framework.apollo.common.utils.GrayReleaseRuleItemTransformer;
@@ -29,8 +30,14 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.CollectionUtils;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -44,25 +51,31 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
   private static final Splitter STRING_SPLITTER =
       Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).omitEmptyStrings();
+  private static final String SNAPSHOT_NAME = "gray-release-rules";
 
   @Autowired
   private GrayReleaseRuleRepository grayReleaseRuleRepository;
   @Autowired
   private BizConfig bizConfig;
+  @Autowired
+  private CacheSnapshotStore cacheSnapshotStore;
 
   private int databaseScanInterval;
   private ScheduledExecutorService executorService;
-  //store configAppId+configCluster+configNamespace -> GrayReleaseRuleCache map
+  //store configAppId+configCluster+configNamespace -> GrayReleaseRuleCache map, only modified when merging rules
   private Multimap<String, GrayReleaseRuleCache> grayReleaseRuleCache;
-  //store clientAppId+clientNamespace+ip -> ruleId map
-  private Multimap<String, Long> reversedGrayReleaseRuleCache;
+  //store configAppId+configCluster+configNamespace -> rule index, the index is rebuilt and swapped when rules change
+  private ConcurrentMap<String, GrayReleaseRuleIndex> grayReleaseRuleIndexes;
+  //store clientNamespace -> rule index of all the active rules of the namespace
+  private ConcurrentMap<String, GrayReleaseRuleIndex> reversedGrayReleaseRuleIndexes;
   //an auto increment version to indicate the age of rules
   private AtomicLong loadVersion;
 
   public GrayReleaseRulesHolder() {
     loadVersion = new AtomicLong();
-    grayReleaseRuleCache = Multimaps.synchronizedSetMultimap(HashMultimap.create());
-    reversedGrayReleaseRuleCache = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+    grayReleaseRuleCache = HashMultimap.create();
+    grayReleaseRuleIndexes = Maps.newConcurrentMap();
+    reversedGrayReleaseRuleIndexes = Maps.newConcurrentMap();
     executorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("GrayReleaseRulesHolder", true));
   }
@@ -70,11 +83,18 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
   @Override
   public void afterPropertiesSet() throws Exception {
     populateDataBaseInterval();
-    //force sync load for the first time
-    periodicScanRules();
+    long initialDelay = getDatabaseScanIntervalSecond();
+    if (restoreSnapshot()) {
+      //the rules restored from snapshot could serve the requests, so catch up with database asynchronously
+      initialDelay = 0;
+    } else {
+      //force sync load for the first time
+      periodicScanRules();
+    }
     executorService.scheduleWithFixedDelay(this::periodicScanRules,
-        getDatabaseScanIntervalSecond(), getDatabaseScanIntervalSecond(), getDatabaseScanTimeUnit()
+        initialDelay, getDatabaseScanIntervalSecond(), getDatabaseScanTimeUnit()
     );
+    cacheSnapshotStore.register(SNAPSHOT_NAME, this::writeSnapshot);
   }
 
   @Override
@@ -118,21 +138,11 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
   public Long findReleaseIdFromGrayReleaseRule(String clientAppId, String clientIp, String
       configAppId, String configCluster, String configNamespaceName) {
     String key = assembleGrayReleaseRuleKey(configAppId, configCluster, configNamespaceName);
-    if (!grayReleaseRuleCache.containsKey(key)) {
+    GrayReleaseRuleIndex index = grayReleaseRuleIndexes.get(key);
+    if (index == null) {
       return null;
     }
-    //create a new list to avoid ConcurrentModificationException
-    List<GrayReleaseRuleCache> rules = Lists.newArrayList(grayReleaseRuleCache.get(key));
-    for (GrayReleaseRuleCache rule : rules) {
-      //check branch status
-      if (rule.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
-        continue;
-      }
-      if (rule.matches(clientAppId, clientIp)) {
-        return rule.getReleaseId();
-      }
-    }
-    return null;
+    return index.findReleaseId(clientAppId, clientIp);
   }
 
   /**
@@ -141,10 +151,8 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
    * load gray releases. Because gray release rules actually apply to one more dimension - cluster.
    */
   public boolean hasGrayReleaseRule(String clientAppId, String clientIp, String namespaceName) {
-    return reversedGrayReleaseRuleCache.containsKey(assembleReversedGrayReleaseRuleKey(clientAppId,
-        namespaceName, clientIp)) || reversedGrayReleaseRuleCache.containsKey
-        (assembleReversedGrayReleaseRuleKey(clientAppId, namespaceName, GrayReleaseRuleItemDTO
-            .ALL_IP));
+    GrayReleaseRuleIndex index = reversedGrayReleaseRuleIndexes.get(namespaceName);
+    return index != null && index.findReleaseId(clientAppId, clientIp) != null;
   }
 
   private void scanGrayReleaseRules() {
@@ -165,10 +173,12 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     }
   }
 
-  private void mergeGrayReleaseRules(List<GrayReleaseRule> grayReleaseRules) {
+  private synchronized void mergeGrayReleaseRules(List<GrayReleaseRule> grayReleaseRules) {
     if (CollectionUtils.isEmpty(grayReleaseRules)) {
       return;
     }
+    Set<String> changedKeys = Sets.newHashSet();
+    Set<String> changedNamespaces = Sets.newHashSet();
     for (GrayReleaseRule grayReleaseRule : grayReleaseRules) {
       if (grayReleaseRule.getReleaseId() == null || grayReleaseRule.getReleaseId() == 0) {
         //filter rules with no release id, i.e. never released
@@ -176,10 +186,8 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
       }
       String key = assembleGrayReleaseRuleKey(grayReleaseRule.getAppId(), grayReleaseRule
           .getClusterName(), grayReleaseRule.getNamespaceName());
-      //create a new list to avoid ConcurrentModificationException
-      List<GrayReleaseRuleCache> rules = Lists.newArrayList(grayReleaseRuleCache.get(key));
       GrayReleaseRuleCache oldRule = null;
-      for (GrayReleaseRuleCache ruleCache : rules) {
+      for (GrayReleaseRuleCache ruleCache : grayReleaseRuleCache.get(key)) {
         if (ruleCache.getBranchName().equals(grayReleaseRule.getBranchName())) {
           oldRule = ruleCache;
           break;
@@ -193,44 +201,135 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
 
       //use id comparison to avoid synchronization
       if (oldRule == null || grayReleaseRule.getId() > oldRule.getRuleId()) {
-        addCache(key, transformRuleToRuleCache(grayReleaseRule));
+        grayReleaseRuleCache.put(key, transformRuleToRuleCache(grayReleaseRule));
         if (oldRule != null) {
-          removeCache(key, oldRule);
+          grayReleaseRuleCache.remove(key, oldRule);
         }
+        changedKeys.add(key);
+        changedNamespaces.add(grayReleaseRule.getNamespaceName());
       } else {
         if (oldRule.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
           //update load version
           oldRule.setLoadVersion(loadVersion.get());
         } else if ((loadVersion.get() - oldRule.getLoadVersion()) > 1) {
           //remove outdated inactive branch rule after 2 update cycles
-          removeCache(key, oldRule);
+          grayReleaseRuleCache.remove(key, oldRule);
+          changedKeys.add(key);
+          changedNamespaces.add(oldRule.getNamespaceName());
         }
       }
     }
+
+    rebuildIndexes(changedKeys, changedNamespaces);
   }
 
-  private void addCache(String key, GrayReleaseRuleCache ruleCache) {
-    if (ruleCache.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
-      for (GrayReleaseRuleItemDTO ruleItemDTO : ruleCache.getRuleItems()) {
-        for (String clientIp : ruleItemDTO.getClientIpList()) {
-          reversedGrayReleaseRuleCache.put(assembleReversedGrayReleaseRuleKey(ruleItemDTO
-              .getClientAppId(), ruleCache.getNamespaceName(), clientIp), ruleCache.getRuleId());
-        }
+  /**
+   * Rebuild the indexes of the changed rules and swap them in, so the readers never see a partially updated index
+   */
+  private void rebuildIndexes(Set<String> changedKeys, Set<String> changedNamespaces) {
+    for (String key : changedKeys) {
+      updateIndex(grayReleaseRuleIndexes, key, GrayReleaseRuleIndex.build(grayReleaseRuleCache.get(key)));
+    }
+
+    if (changedNamespaces.isEmpty()) {
+      return;
+    }
+    Multimap<String, GrayReleaseRuleCache> namespaceRules = HashMultimap.create();
+    for (GrayReleaseRuleCache ruleCache : grayReleaseRuleCache.values()) {
+      if (changedNamespaces.contains(ruleCache.getNamespaceName())) {
+        namespaceRules.put(ruleCache.getNamespaceName(), ruleCache);
+      }
+    }
+    for (String namespaceName : changedNamespaces) {
+      updateIndex(reversedGrayReleaseRuleIndexes, namespaceName,
+          GrayReleaseRuleIndex.build(namespaceRules.get(namespaceName)));
+    }
+  }
+
+  private boolean restoreSnapshot() {
+    Multimap<String, GrayReleaseRuleCache> restored = HashMultimap.create();
+    Boolean success = cacheSnapshotStore.load(SNAPSHOT_NAME, in -> readSnapshot(in, restored));
+    if (success == null || restored.isEmpty()) {
+      return false;
+    }
+    synchronized (this) {
+      grayReleaseRuleCache.putAll(restored);
+      Set<String> namespaces = Sets.newHashSet();
+      for (GrayReleaseRuleCache ruleCache : restored.values()) {
+        namespaces.add(ruleCache.getNamespaceName());
       }
+      rebuildIndexes(restored.keySet(), namespaces);
     }
-    grayReleaseRuleCache.put(key, ruleCache);
+    logger.info("Restored {} gray release rules from snapshot", restored.size());
+    return true;
   }
 
-  private void removeCache(String key, GrayReleaseRuleCache ruleCache) {
-    grayReleaseRuleCache.remove(key, ruleCache);
-    for (GrayReleaseRuleItemDTO ruleItemDTO : ruleCache.getRuleItems()) {
-      for (String clientIp : ruleItemDTO.getClientIpList()) {
-        reversedGrayReleaseRuleCache.remove(assembleReversedGrayReleaseRuleKey(ruleItemDTO
-            .getClientAppId(), ruleCache.getNamespaceName(), clientIp), ruleCache.getRuleId());
+  private void writeSnapshot(DataOutput out) throws IOException {
+    List<Map.Entry<String, GrayReleaseRuleCache>> rules;
+    synchronized (this) {
+      rules = Lists.newArrayList(grayReleaseRuleCache.entries());
+    }
+    out.writeInt(rules.size());
+    for (Map.Entry<String, GrayReleaseRuleCache> entry : rules) {
+      GrayReleaseRuleCache ruleCache = entry.getValue();
+      CacheSnapshotStore.writeString(out, entry.getKey());
+      out.writeLong(ruleCache.getRuleId());
+      CacheSnapshotStore.writeString(out, ruleCache.getBranchName());
+      CacheSnapshotStore.writeString(out, ruleCache.getNamespaceName());
+      out.writeLong(ruleCache.getReleaseId());
+      out.writeInt(ruleCache.getBranchStatus());
+      out.writeInt(ruleCache.getRuleItems().size());
+      for (GrayReleaseRuleItemDTO ruleItem : ruleCache.getRuleItems()) {
+        CacheSnapshotStore.writeString(out, ruleItem.getClientAppId());
+        writeStrings(out, ruleItem.getClientIpList());
       }
     }
   }
 
+  private Boolean readSnapshot(DataInput in, Multimap<String, GrayReleaseRuleCache> rules) throws IOException {
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      String key = CacheSnapshotStore.readString(in);
+      long ruleId = in.readLong();
+      String branchName = CacheSnapshotStore.readString(in);
+      String namespaceName = CacheSnapshotStore.readString(in);
+      long releaseId = in.readLong();
+      int branchStatus = in.readInt();
+      int ruleItemSize = in.readInt();
+      Set<GrayReleaseRuleItemDTO> ruleItems = Sets.newHashSetWithExpectedSize(ruleItemSize);
+      for (int j = 0; j < ruleItemSize; j++) {
+        ruleItems.add(new GrayReleaseRuleItemDTO(CacheSnapshotStore.readString(in), readStrings(in)));
+      }
+      rules.put(key, new GrayReleaseRuleCache(ruleId, branchName, namespaceName, releaseId, branchStatus,
+          loadVersion.get(), ruleItems));
+    }
+    return true;
+  }
+
+  private void writeStrings(DataOutput out, Collection<String> values) throws IOException {
+    out.writeInt(values.size());
+    for (String value : values) {
+      CacheSnapshotStore.writeString(out, value);
+    }
+  }
+
+  private Set<String> readStrings(DataInput in) throws IOException {
+    int size = in.readInt();
+    Set<String> values = Sets.newHashSetWithExpectedSize(size);
+    for (int i = 0; i < size; i++) {
+      values.add(CacheSnapshotStore.readString(in));
+    }
+    return values;
+  }
+
+  private void updateIndex(Map<String, GrayReleaseRuleIndex> indexes, String key, GrayReleaseRuleIndex index) {
+    if (index.isEmpty()) {
+      indexes.remove(key);
+    } else {
+      indexes.put(key, index);
+    }
+  }
+
   private GrayReleaseRuleCache transformRuleToRuleCache(GrayReleaseRule grayReleaseRule) {
     Set<GrayReleaseRuleItemDTO> ruleItems;
     try {
@@ -265,9 +364,4 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     return STRING_JOINER.join(configAppId, configCluster, configNamespaceName);
   }
 
-  private String assembleReversedGrayReleaseRuleKey(String clientAppId, String
-      clientNamespaceName, String clientIp) {
-    return STRING_JOINER.join(clientAppId, clientNamespaceName, clientIp);
-  }
-
 }
@@ -0,0 +1,115 @@
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.google.common.base.Strings;
+import com.google.common.net.InetAddresses;
+
+/**
+ * A binary radix trie of ip prefixes, e.g. 10.0.0.0/8, supports both ipv4 and ipv6 addresses.
+ * <p>
+ * The trie is not thread safe for writes, it should be fully built before being shared.
+ */
+public class IpPrefixTrie<V> {
+  private static final char PREFIX_SEPARATOR = '/';
+  private final Node<V> ipv4Root = new Node<>();
+  private final Node<V> ipv6Root = new Node<>();
+  private int size;
+
+  /**
+   * @param prefix the ip prefix in CIDR notation, e.g. 10.0.0.0/8, or a single ip
+   * @return false if the prefix is invalid
+   */
+  public boolean put(String prefix, V value) {
+    if (Strings.isNullOrEmpty(prefix)) {
+      return false;
+    }
+    int separatorIndex = prefix.indexOf(PREFIX_SEPARATOR);
+    String ip = separatorIndex < 0 ? prefix : prefix.substring(0, separatorIndex);
+    byte[] address = parse(ip);
+    if (address == null) {
+      return false;
+    }
+    int prefixLength = address.length * 8;
+    if (separatorIndex >= 0) {
+      try {
+        prefixLength = Integer.parseInt(prefix.substring(separatorIndex + 1));
+      } catch (NumberFormatException ex) {
+        return false;
+      }
+      if (prefixLength < 0 || prefixLength > address.length * 8) {
+        return false;
+      }
+    }
+
+    Node<V> node = rootOf(address);
+    for (int i = 0; i < prefixLength; i++) {
+      int bit = bitAt(address, i);
+      if (node.children[bit] == null) {
+        node.children[bit] = new Node<>();
+      }
+      node = node.children[bit];
+    }
+    if (node.value == null) {
+      size++;
+    }
+    node.value = value;
+    return true;
+  }
+
+  /**
+   * @return the value of the longest prefix which contains the ip, or null if not found
+   */
+  public V findLongestMatch(String ip) {
+    if (size == 0) {
+      return null;
+    }
+    byte[] address = parse(ip);
+    if (address == null) {
+      return null;
+    }
+    Node<V> node = rootOf(address);
+    V matched = node.value;
+    for (int i = 0; i < address.length * 8; i++) {
+      node = node.children[bitAt(address, i)];
+      if (node == null) {
+        break;
+      }
+      if (node.value != null) {
+        matched = node.value;
+      }
+    }
+    return matched;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @return whether the value is a CIDR notation prefix, e.g. 10.0.0.0/8
+   */
+  public static boolean isPrefix(String value) {
+    return value != null && value.indexOf(PREFIX_SEPARATOR) > 0;
+  }
+
+  private Node<V> rootOf(byte[] address) {
+    return address.length == 4 ? ipv4Root : ipv6Root;
+  }
+
+  private static int bitAt(byte[] address, int index) {
+    return (address[index >>> 3] >>> (7 - (index & 7))) & 1;
+  }
+
+  private static byte[] parse(String ip) {
+    if (Strings.isNullOrEmpty(ip) || !InetAddresses.isInetAddress(ip)) {
+      return null;
+    }
+    //ipv4 mapped ipv6 addresses are returned as ipv4 ones
+    return InetAddresses.forString(ip).getAddress();
+  }
+
+  private static class Node<V> {
+    @SuppressWarnings("unchecked")
+    private final Node<V>[] children = new Node[2];
+    private V value;
+  }
+}
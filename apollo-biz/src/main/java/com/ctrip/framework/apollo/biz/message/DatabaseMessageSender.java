@@ -1,5 +1,6 @@
 package com.ctrip.framework.apollo.biz.message;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
@@ -10,6 +11,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.PostConstruct;
 import java.util.List;
@@ -32,11 +35,21 @@ public class DatabaseMessageSender implements MessageSender {
   private final AtomicBoolean cleanStopped;
 
   private final ReleaseMessageRepository releaseMessageRepository;
+  private final ReleaseMessageTransport releaseMessageTransport;
+  private final BizConfig bizConfig;
+  private final ReleasePropagationTracker releasePropagationTracker;
 
-  public DatabaseMessageSender(final ReleaseMessageRepository releaseMessageRepository) {
+  public DatabaseMessageSender(
+      final ReleaseMessageRepository releaseMessageRepository,
+      final ReleaseMessageTransport releaseMessageTransport,
+      final BizConfig bizConfig,
+      final ReleasePropagationTracker releasePropagationTracker) {
     cleanExecutorService = Executors.newSingleThreadExecutor(ApolloThreadFactory.create("DatabaseMessageSender", true));
     cleanStopped = new AtomicBoolean(false);
     this.releaseMessageRepository = releaseMessageRepository;
+    this.releaseMessageTransport = releaseMessageTransport;
+    this.bizConfig = bizConfig;
+    this.releasePropagationTracker = releasePropagationTracker;
   }
 
   @Override
@@ -53,6 +66,10 @@ public class DatabaseMessageSender implements MessageSender {
     try {
       ReleaseMessage newMessage = releaseMessageRepository.save(new ReleaseMessage(message));
       toClean.offer(newMessage.getId());
+      releasePropagationTracker.onMessageSent(newMessage);
+      if (bizConfig.isReleaseMessagePushEnabled()) {
+        pushMessage(newMessage);
+      }
       transaction.setStatus(Transaction.SUCCESS);
     } catch (Throwable ex) {
       logger.error("Sending message to database failed", ex);
@@ -63,6 +80,22 @@ public class DatabaseMessageSender implements MessageSender {
     }
   }
 
+  /**
+   * push the message after the transaction is committed, so that config service could load it from database
+   */
+  private void pushMessage(ReleaseMessage message) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      releaseMessageTransport.publish(message);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit() {
+        releaseMessageTransport.publish(message);
+      }
+    });
+  }
+
   @PostConstruct
   private void initialize() {
     cleanExecutorService.submit(() -> {
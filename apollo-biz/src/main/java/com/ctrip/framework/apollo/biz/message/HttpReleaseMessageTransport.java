@@ -0,0 +1,143 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.core.ServiceNameConsts;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.google.common.base.Strings;
+import com.google.gson.Gson;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.shared.Application;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pushes release messages to all the config service instances registered in eureka via http.
+ * <p>
+ * The config service receives the messages with {@code POST /release-messages} and delivers them to the local
+ * subscribers via {@link #receive(ReleaseMessage)}. The pushes carry the token configured with
+ * {@code apollo.release-message.push.token} in the {@value #PUSH_TOKEN_HEADER} header, so that only admin service
+ * could trigger the database scans of config service.
+ */
+@Component
+public class HttpReleaseMessageTransport implements ReleaseMessageTransport {
+  public static final String PUSH_TOKEN_HEADER = "Apollo-Release-Message-Token";
+  private static final Logger logger = LoggerFactory.getLogger(HttpReleaseMessageTransport.class);
+  private static final String PUSH_PATH = "release-messages";
+  private static final int PUSH_THREADS = 4;
+  private static final int CONNECT_TIMEOUT = 1000; //1s
+  private static final int READ_TIMEOUT = 1000; //1s
+  private static final Gson gson = new Gson();
+
+  private final LoopbackReleaseMessageTransport localTransport = new LoopbackReleaseMessageTransport();
+  private final ExecutorService pushExecutorService;
+  private final ObjectProvider<EurekaClient> eurekaClientProvider;
+  private final BizConfig bizConfig;
+  private final RestTemplate restTemplate;
+
+  public HttpReleaseMessageTransport(final ObjectProvider<EurekaClient> eurekaClientProvider,
+      final BizConfig bizConfig) {
+    this.eurekaClientProvider = eurekaClientProvider;
+    this.bizConfig = bizConfig;
+    pushExecutorService = Executors.newFixedThreadPool(PUSH_THREADS, ApolloThreadFactory
+        .create("HttpReleaseMessageTransport", true));
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(CONNECT_TIMEOUT);
+    requestFactory.setReadTimeout(READ_TIMEOUT);
+    restTemplate = new RestTemplate(requestFactory);
+  }
+
+  @Override
+  public void publish(ReleaseMessage message) {
+    String token = bizConfig.releaseMessagePushToken();
+    if (Strings.isNullOrEmpty(token)) {
+      //the config services would find the message when reconciling with database
+      logger.warn("Release message push token is not configured, skip pushing {}", message.getMessage());
+      return;
+    }
+    //only the id and message are pushed
+    ReleaseMessage toPush = new ReleaseMessage(message.getMessage());
+    toPush.setId(message.getId());
+    byte[] body = gson.toJson(toPush).getBytes(StandardCharsets.UTF_8);
+
+    for (InstanceInfo instance : getConfigServiceInstances()) {
+      pushExecutorService.submit(() -> push(instance.getHomePageUrl(), token, body, message));
+    }
+  }
+
+  @Override
+  public void subscribe(ReleaseMessageListener listener) {
+    localTransport.subscribe(listener);
+  }
+
+  /**
+   * @return whether the token carried by the pushed release message matches the configured one
+   */
+  public boolean isAuthorized(String token) {
+    String expectedToken = bizConfig.releaseMessagePushToken();
+    if (Strings.isNullOrEmpty(expectedToken) || token == null) {
+      return false;
+    }
+    //constant time comparison, so that the token couldn't be guessed by the response time
+    return MessageDigest.isEqual(expectedToken.getBytes(StandardCharsets.UTF_8),
+        token.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Deliver the release message received from admin service to the local subscribers
+   */
+  public void receive(ReleaseMessage message) {
+    Tracer.logEvent("Apollo.ReleaseMessage.Received", message.getMessage());
+    localTransport.publish(message);
+  }
+
+  private void push(String homePageUrl, String token, byte[] body, ReleaseMessage message) {
+    Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessage", "push");
+    try {
+      HttpHeaders headers = new HttpHeaders();
+      headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+      headers.set(PUSH_TOKEN_HEADER, token);
+      restTemplate.postForEntity(assemblePushUrl(homePageUrl), new HttpEntity<>(body, headers), Void.class);
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      //the config service would find the message when reconciling with database
+      logger.warn("Push release message {} to {} failed", message.getMessage(), homePageUrl, ex);
+      transaction.setStatus(ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  private List<InstanceInfo> getConfigServiceInstances() {
+    EurekaClient eurekaClient = eurekaClientProvider.getIfAvailable();
+    if (eurekaClient == null) {
+      return Collections.emptyList();
+    }
+    Application application = eurekaClient.getApplication(ServiceNameConsts.APOLLO_CONFIGSERVICE);
+    if (application == null) {
+      Tracer.logEvent("Apollo.EurekaDiscovery.NotFound", ServiceNameConsts.APOLLO_CONFIGSERVICE);
+    }
+    return application != null ? application.getInstances() : Collections.emptyList();
+  }
+
+  private String assemblePushUrl(String homePageUrl) {
+    return homePageUrl.endsWith("/") ? homePageUrl + PUSH_PATH : homePageUrl + "/" + PUSH_PATH;
+  }
+}
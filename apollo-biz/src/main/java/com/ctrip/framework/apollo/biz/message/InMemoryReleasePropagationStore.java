@@ -0,0 +1,46 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the propagation of the recent release messages in memory, so each service only reports the stages observed
+ * by itself
+ */
+@Component
+public class InMemoryReleasePropagationStore implements ReleasePropagationStore {
+  private static final int DEFAULT_MAX_MESSAGES = 1000;
+  private static final long EXPIRE_AFTER_WRITE_IN_HOURS = 24;
+
+  private final Cache<Long, ReleasePropagation> propagations;
+
+  public InMemoryReleasePropagationStore() {
+    this(DEFAULT_MAX_MESSAGES);
+  }
+
+  public InMemoryReleasePropagationStore(int maxMessages) {
+    propagations = CacheBuilder.newBuilder()
+        .maximumSize(maxMessages)
+        .expireAfterWrite(EXPIRE_AFTER_WRITE_IN_HOURS, TimeUnit.HOURS)
+        .build();
+  }
+
+  @Override
+  public ReleasePropagation track(long messageId, String message, long sentTime) {
+    try {
+      return propagations.get(messageId, () -> new ReleasePropagation(messageId, message, sentTime));
+    } catch (ExecutionException ex) {
+      //the loader never fails
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  @Override
+  public ReleasePropagation find(long messageId) {
+    return propagations.getIfPresent(messageId);
+  }
+}
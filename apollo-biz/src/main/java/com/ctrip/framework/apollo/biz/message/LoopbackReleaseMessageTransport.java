@@ -0,0 +1,36 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Delivers the published release messages to the subscribers in the same process, e.g. for tests
+ */
+public class LoopbackReleaseMessageTransport implements ReleaseMessageTransport {
+  private static final Logger logger = LoggerFactory.getLogger(LoopbackReleaseMessageTransport.class);
+  private final List<ReleaseMessageListener> listeners = Lists.newCopyOnWriteArrayList();
+
+  @Override
+  public void publish(ReleaseMessage message) {
+    for (ReleaseMessageListener listener : listeners) {
+      try {
+        listener.handleMessage(message, Topics.APOLLO_RELEASE_TOPIC);
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+        logger.error("Failed to invoke message listener {}", listener.getClass(), ex);
+      }
+    }
+  }
+
+  @Override
+  public void subscribe(ReleaseMessageListener listener) {
+    if (!listeners.contains(listener)) {
+      listeners.add(listener);
+    }
+  }
+}
@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,33 +29,36 @@ public class ReleaseMessageScanner implements InitializingBean {
   private BizConfig bizConfig;
   @Autowired
   private ReleaseMessageRepository releaseMessageRepository;
+  @Autowired
+  private ReleaseMessageTransport releaseMessageTransport;
+  @Autowired
+  private ReleasePropagationTracker releasePropagationTracker;
   private int databaseScanInterval;
   private List<ReleaseMessageListener> listeners;
   private ScheduledExecutorService executorService;
-  private long maxIdScanned;
+  private volatile long maxIdScanned;
+  //whether a scan triggered by the pushed messages is queued, the pushes arriving meanwhile are coalesced into it
+  private final AtomicBoolean pushedScanPending;
 
   public ReleaseMessageScanner() {
     listeners = Lists.newCopyOnWriteArrayList();
+    pushedScanPending = new AtomicBoolean(false);
     executorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("ReleaseMessageScanner", true));
   }
 
   @Override
   public void afterPropertiesSet() throws Exception {
-    databaseScanInterval = bizConfig.releaseMessageScanIntervalInMilli();
+    boolean pushEnabled = bizConfig.isReleaseMessagePushEnabled();
+    //scan the database with a lower frequency to reconcile the messages failed to push
+    databaseScanInterval = pushEnabled ? bizConfig.releaseMessageReconcileIntervalInMilli() :
+        bizConfig.releaseMessageScanIntervalInMilli();
     maxIdScanned = loadLargestMessageId();
-    executorService.scheduleWithFixedDelay((Runnable) () -> {
-      Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageScanner", "scanMessage");
-      try {
-        scanMessages();
-        transaction.setStatus(Transaction.SUCCESS);
-      } catch (Throwable ex) {
-        transaction.setStatus(ex);
-        logger.error("Scan and send message failed", ex);
-      } finally {
-        transaction.complete();
-      }
-    }, databaseScanInterval, databaseScanInterval, TimeUnit.MILLISECONDS);
+    if (pushEnabled) {
+      releaseMessageTransport.subscribe((message, channel) -> onMessagePushed(message));
+    }
+    executorService.scheduleWithFixedDelay((Runnable) () -> scanMessagesWithTransaction("scanMessage"),
+        databaseScanInterval, databaseScanInterval, TimeUnit.MILLISECONDS);
 
   }
 
@@ -68,6 +72,35 @@ public class ReleaseMessageScanner implements InitializingBean {
     }
   }
 
+  /**
+   * The pushed message is only a signal, the messages are still loaded from database, so that they are notified in
+   * order and the fake messages are ignored. At most one scan is queued no matter how many messages are pushed.
+   */
+  private void onMessagePushed(ReleaseMessage message) {
+    //already scanned, or will be found by the queued scan
+    if (message.getId() <= maxIdScanned || !pushedScanPending.compareAndSet(false, true)) {
+      return;
+    }
+    executorService.submit(() -> {
+      //the messages pushed from now on are not guaranteed to be found by this scan, so they could queue another one
+      pushedScanPending.set(false);
+      scanMessagesWithTransaction("pushMessage");
+    });
+  }
+
+  private void scanMessagesWithTransaction(String name) {
+    Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageScanner", name);
+    try {
+      scanMessages();
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Scan and send message failed", ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
   /**
    * Scan messages, continue scanning until there is no more messages
    */
@@ -111,6 +144,7 @@ public class ReleaseMessageScanner implements InitializingBean {
    */
   private void fireMessageScanned(List<ReleaseMessage> messages) {
     for (ReleaseMessage message : messages) {
+      releasePropagationTracker.onMessageScanned(message);
       for (ReleaseMessageListener listener : listeners) {
         try {
           listener.handleMessage(message, Topics.APOLLO_RELEASE_TOPIC);
@@ -0,0 +1,22 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+
+/**
+ * Transport to push the saved release messages from admin service to config service directly, so that config service
+ * doesn't need to scan the database frequently.
+ * <p>
+ * The pushed messages are only treated as signals, the subscribers should still load the messages from database.
+ */
+public interface ReleaseMessageTransport {
+
+  /**
+   * Push the release message to the subscribers, it should not block the caller
+   */
+  void publish(ReleaseMessage message);
+
+  /**
+   * Subscribe the pushed release messages
+   */
+  void subscribe(ReleaseMessageListener listener);
+}
@@ -0,0 +1,62 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.core.utils.LatencyHistogram;
+import com.google.common.collect.Maps;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The latencies of one release message in each stage, see {@link ReleasePropagationStage}
+ */
+public class ReleasePropagation {
+  private final long messageId;
+  private final String message;
+  private final long sentTime;
+  private volatile Long releaseId;
+  private final ConcurrentMap<ReleasePropagationStage, LatencyHistogram> latencies = Maps.newConcurrentMap();
+
+  public ReleasePropagation(long messageId, String message, long sentTime) {
+    this.messageId = messageId;
+    this.message = message;
+    this.sentTime = sentTime;
+  }
+
+  public long getMessageId() {
+    return messageId;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  /**
+   * @return the time the release message is sent, in milliseconds since epoch
+   */
+  public long getSentTime() {
+    return sentTime;
+  }
+
+  /**
+   * @return the id of the published release, or null if it's not published in this process
+   */
+  public Long getReleaseId() {
+    return releaseId;
+  }
+
+  public void setReleaseId(Long releaseId) {
+    this.releaseId = releaseId;
+  }
+
+  public void record(ReleasePropagationStage stage, long latencyInMilli) {
+    latencies.computeIfAbsent(stage, key -> new LatencyHistogram()).record(latencyInMilli);
+  }
+
+  /**
+   * @return the latencies of the stages recorded so far
+   */
+  public Map<ReleasePropagationStage, LatencyHistogram> getLatencies() {
+    return Collections.unmodifiableMap(latencies);
+  }
+}
@@ -0,0 +1,27 @@
+package com.ctrip.framework.apollo.biz.message;
+
+/**
+ * The stages of a release propagating to the clients.
+ * <p>
+ * The latency of {@link #MESSAGE_SENT} is measured from the release being published, and the others are measured from
+ * the release message being sent, since the sent time is saved with the message and shared by all the services. So the
+ * latencies are only as accurate as the clock synchronization and the precision of the timestamps in database.
+ */
+public enum ReleasePropagationStage {
+  /**
+   * the release message is saved by admin service
+   */
+  MESSAGE_SENT,
+  /**
+   * the release message is loaded by config service
+   */
+  MESSAGE_SCANNED,
+  /**
+   * a client watching the namespace is notified
+   */
+  CLIENT_NOTIFIED,
+  /**
+   * a notified client fetches the new release
+   */
+  CLIENT_FETCHED
+}
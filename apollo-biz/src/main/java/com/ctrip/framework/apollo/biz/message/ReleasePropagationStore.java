@@ -0,0 +1,19 @@
+package com.ctrip.framework.apollo.biz.message;
+
+/**
+ * Stores the propagation of the recent release messages
+ */
+public interface ReleasePropagationStore {
+
+  /**
+   * Start tracking the release message
+   *
+   * @return the propagation of the message, which is the existing one if the message is tracked already
+   */
+  ReleasePropagation track(long messageId, String message, long sentTime);
+
+  /**
+   * @return the propagation of the message, or null if it's not tracked or expired
+   */
+  ReleasePropagation find(long messageId);
+}
@@ -0,0 +1,126 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.collect.Maps;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records how long a release takes to reach the clients, see {@link ReleasePropagationStage}.
+ * <p>
+ * The latencies are recorded to the histograms of all releases as well as the histograms of each release message, so
+ * that both the overall propagation and the propagation of a specific release could be reported.
+ */
+@Component
+public class ReleasePropagationTracker {
+  private static final String LATENCY_METRIC_NAME = "apollo.release.propagation.latency";
+  //the release message is sent in the same thread after the release is published
+  private static final ThreadLocal<PublishedRelease> publishedRelease = new ThreadLocal<>();
+
+  private final ReleasePropagationStore releasePropagationStore;
+  private final Map<ReleasePropagationStage, Timer> stageLatencies = Maps.newEnumMap(ReleasePropagationStage.class);
+
+  public ReleasePropagationTracker(final ReleasePropagationStore releasePropagationStore) {
+    this.releasePropagationStore = releasePropagationStore;
+    for (ReleasePropagationStage stage : ReleasePropagationStage.values()) {
+      stageLatencies.put(stage, Timer.builder(LATENCY_METRIC_NAME)
+          .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+          .publishPercentileHistogram()
+          .register(Metrics.globalRegistry));
+    }
+  }
+
+  public void onReleasePublished(Release release) {
+    publishedRelease.set(new PublishedRelease(release.getId(), System.currentTimeMillis()));
+  }
+
+  /**
+   * Clears the published release if its message is not sent, e.g. failed to send, so that it won't be attributed to the
+   * next message sent in the same pooled thread. It should be called after the release is published and sent.
+   */
+  public void clearPublishedRelease() {
+    publishedRelease.remove();
+  }
+
+  public void onMessageSent(ReleaseMessage message) {
+    PublishedRelease published = publishedRelease.get();
+    publishedRelease.remove();
+    ReleasePropagation propagation = track(message);
+    if (propagation == null || published == null) {
+      return;
+    }
+    propagation.setReleaseId(published.releaseId);
+    record(propagation, ReleasePropagationStage.MESSAGE_SENT, propagation.getSentTime() - published.publishedTime);
+    //link the release to the message, whose id is the one known by config service and clients
+    Tracer.logEvent("Apollo.ReleasePropagation.MessageSent",
+        String.format("%d:%d", published.releaseId, message.getId()));
+  }
+
+  public void onMessageScanned(ReleaseMessage message) {
+    ReleasePropagation propagation = track(message);
+    if (propagation != null) {
+      record(propagation, ReleasePropagationStage.MESSAGE_SCANNED,
+          System.currentTimeMillis() - propagation.getSentTime());
+    }
+  }
+
+  public void onClientNotified(ReleaseMessage message) {
+    ReleasePropagation propagation = track(message);
+    if (propagation != null) {
+      record(propagation, ReleasePropagationStage.CLIENT_NOTIFIED,
+          System.currentTimeMillis() - propagation.getSentTime());
+    }
+  }
+
+  /**
+   * @param messageId the latest release message id the client is notified with
+   */
+  public void onClientFetched(long messageId) {
+    ReleasePropagation propagation = releasePropagationStore.find(messageId);
+    if (propagation != null) {
+      record(propagation, ReleasePropagationStage.CLIENT_FETCHED,
+          System.currentTimeMillis() - propagation.getSentTime());
+    }
+  }
+
+  /**
+   * @return the propagation of the release message, or null if it's not tracked
+   */
+  public ReleasePropagation findPropagation(long messageId) {
+    return releasePropagationStore.find(messageId);
+  }
+
+  private ReleasePropagation track(ReleaseMessage message) {
+    Date sentTime = message.getDataChangeLastModifiedTime();
+    //e.g. the messages not saved to database
+    if (sentTime == null) {
+      return null;
+    }
+    return releasePropagationStore.track(message.getId(), message.getMessage(), sentTime.getTime());
+  }
+
+  private void record(ReleasePropagation propagation, ReleasePropagationStage stage, long latencyInMilli) {
+    //the clocks of the services may be slightly different
+    long latency = Math.max(0, latencyInMilli);
+    propagation.record(stage, latency);
+    stageLatencies.get(stage).record(latency, TimeUnit.MILLISECONDS);
+  }
+
+  private static class PublishedRelease {
+    private final long releaseId;
+    private final long publishedTime;
+
+    PublishedRelease(long releaseId, long publishedTime) {
+      this.releaseId = releaseId;
+      this.publishedTime = publishedTime;
+    }
+  }
+}
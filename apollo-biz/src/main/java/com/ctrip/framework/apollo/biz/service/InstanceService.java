@@ -10,6 +10,7 @@ import java.util.Objects;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
@@ -27,14 +28,27 @@ import java.util.stream.Collectors;
  */
 @Service
 public class InstanceService {
+  private static final int UPSERT_INSTANCE_CONFIG_BATCH = 100;
+  private static final String UPSERT_INSTANCE_CONFIG_PREFIX = "INSERT INTO `InstanceConfig` (`InstanceId`, " +
+      "`ConfigAppId`, `ConfigClusterName`, `ConfigNamespaceName`, `ReleaseKey`, `ReleaseDeliveryTime`, " +
+      "`DataChange_CreatedTime`, `DataChange_LastTime`) VALUES ";
+  private static final String UPSERT_INSTANCE_CONFIG_VALUES = "(?, ?, ?, ?, ?, ?, ?, ?)";
+  //the unique key is InstanceId + ConfigAppId + ConfigNamespaceName
+  private static final String UPSERT_INSTANCE_CONFIG_SUFFIX = " ON DUPLICATE KEY UPDATE " +
+      "`ConfigClusterName` = VALUES(`ConfigClusterName`), `ReleaseKey` = VALUES(`ReleaseKey`), " +
+      "`ReleaseDeliveryTime` = VALUES(`ReleaseDeliveryTime`), `DataChange_LastTime` = VALUES(`DataChange_LastTime`)";
+
   private final InstanceRepository instanceRepository;
   private final InstanceConfigRepository instanceConfigRepository;
+  private final JdbcTemplate jdbcTemplate;
 
   public InstanceService(
       final InstanceRepository instanceRepository,
-      final InstanceConfigRepository instanceConfigRepository) {
+      final InstanceConfigRepository instanceConfigRepository,
+      final JdbcTemplate jdbcTemplate) {
     this.instanceRepository = instanceRepository;
     this.instanceConfigRepository = instanceConfigRepository;
+    this.jdbcTemplate = jdbcTemplate;
   }
 
   public Instance findInstance(String appId, String clusterName, String dataCenter, String ip) {
@@ -64,6 +78,13 @@ public class InstanceService {
             instanceId, configAppId, configNamespaceName);
   }
 
+  public List<InstanceConfig> findInstanceConfigs(Set<Long> instanceIds) {
+    if (CollectionUtils.isEmpty(instanceIds)) {
+      return Collections.emptyList();
+    }
+    return instanceConfigRepository.findByInstanceIdIn(instanceIds);
+  }
+
   public Page<InstanceConfig> findActiveInstanceConfigsByReleaseKey(String releaseKey, Pageable
       pageable) {
     Page<InstanceConfig> instanceConfigs = instanceConfigRepository
@@ -174,6 +195,38 @@ public class InstanceService {
     return instanceConfigRepository.save(existedInstanceConfig);
   }
 
+  /**
+   * Create or update the instance configs by the unique key, each batch of them is written with one multi-row
+   * statement, so there is neither a query before the writes nor a round trip per instance config
+   */
+  @Transactional
+  public void batchUpsertInstanceConfigs(List<InstanceConfig> instanceConfigs) {
+    Date now = new Date();
+    for (List<InstanceConfig> batch : Lists.partition(instanceConfigs, UPSERT_INSTANCE_CONFIG_BATCH)) {
+      StringBuilder sql = new StringBuilder(UPSERT_INSTANCE_CONFIG_PREFIX);
+      List<Object> args = Lists.newArrayListWithCapacity(batch.size() * 8);
+      for (InstanceConfig instanceConfig : batch) {
+        if (!args.isEmpty()) {
+          sql.append(", ");
+        }
+        sql.append(UPSERT_INSTANCE_CONFIG_VALUES);
+        Date createdTime = instanceConfig.getDataChangeCreatedTime() != null ?
+            instanceConfig.getDataChangeCreatedTime() : now;
+        args.add(instanceConfig.getInstanceId());
+        args.add(instanceConfig.getConfigAppId());
+        args.add(instanceConfig.getConfigClusterName());
+        args.add(instanceConfig.getConfigNamespaceName());
+        args.add(instanceConfig.getReleaseKey());
+        args.add(instanceConfig.getReleaseDeliveryTime());
+        args.add(createdTime);
+        args.add(instanceConfig.getDataChangeLastModifiedTime() != null ?
+            instanceConfig.getDataChangeLastModifiedTime() : createdTime);
+      }
+      sql.append(UPSERT_INSTANCE_CONFIG_SUFFIX);
+      jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+  }
+
   @Transactional
   public int batchDeleteInstanceConfig(String configAppId, String configClusterName, String configNamespaceName){
     return instanceConfigRepository.batchDelete(configAppId, configClusterName, configNamespaceName);
@@ -7,6 +7,7 @@ import com.ctrip.framework.apollo.biz.entity.Namespace;
 import com.ctrip.framework.apollo.biz.entity.NamespaceLock;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.entity.ReleaseHistory;
+import com.ctrip.framework.apollo.biz.message.ReleasePropagationTracker;
 import com.ctrip.framework.apollo.biz.repository.ReleaseRepository;
 import com.ctrip.framework.apollo.biz.utils.ReleaseKeyGenerator;
 import com.ctrip.framework.apollo.common.constants.GsonType;
@@ -62,6 +63,7 @@ public class ReleaseService {
   private final NamespaceBranchService namespaceBranchService;
   private final ReleaseHistoryService releaseHistoryService;
   private final ItemSetService itemSetService;
+  private final ReleasePropagationTracker releasePropagationTracker;
 
   public ReleaseService(
       final ReleaseRepository releaseRepository,
@@ -71,7 +73,8 @@ public class ReleaseService {
       final NamespaceService namespaceService,
       final NamespaceBranchService namespaceBranchService,
       final ReleaseHistoryService releaseHistoryService,
-      final ItemSetService itemSetService) {
+      final ItemSetService itemSetService,
+      final ReleasePropagationTracker releasePropagationTracker) {
     this.releaseRepository = releaseRepository;
     this.itemService = itemService;
     this.auditService = auditService;
@@ -80,6 +83,7 @@ public class ReleaseService {
     this.namespaceBranchService = namespaceBranchService;
     this.releaseHistoryService = releaseHistoryService;
     this.itemSetService = itemSetService;
+    this.releasePropagationTracker = releasePropagationTracker;
   }
 
   public Release findOne(long releaseId) {
@@ -176,8 +180,10 @@ public class ReleaseService {
 
     //branch release
     if (parentNamespace != null) {
-      return publishBranchNamespace(parentNamespace, namespace, operateNamespaceItems,
-                                    releaseName, releaseComment, operator, isEmergencyPublish);
+      Release branchRelease = publishBranchNamespace(parentNamespace, namespace, operateNamespaceItems,
+                                                     releaseName, releaseComment, operator, isEmergencyPublish);
+      releasePropagationTracker.onReleasePublished(branchRelease);
+      return branchRelease;
     }
 
     Namespace childNamespace = namespaceService.findChildNamespace(namespace);
@@ -201,6 +207,7 @@ public class ReleaseService {
                                       release, isEmergencyPublish);
     }
 
+    releasePropagationTracker.onReleasePublished(release);
     return release;
   }
 
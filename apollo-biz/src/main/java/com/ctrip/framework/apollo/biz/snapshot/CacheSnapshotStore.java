@@ -0,0 +1,195 @@
+package com.ctrip.framework.apollo.biz.snapshot;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Persists the caches on disk periodically and on shutdown, so that they could be restored when restarted and only the
+ * changes since the snapshot need to be loaded from database.
+ * <p>
+ * Each snapshot is a compact binary file with a header of magic, format version, payload length and checksum. The file
+ * is written to a temp file first and then moved, so a crash while writing never leaves a broken snapshot behind. Any
+ * snapshot which could not be read is ignored and the cache is loaded from database as usual.
+ */
+@Component
+public class CacheSnapshotStore implements DisposableBean {
+  private static final Logger logger = LoggerFactory.getLogger(CacheSnapshotStore.class);
+  private static final int MAGIC = 0x41504353; //APCS
+  private static final int FORMAT_VERSION = 1;
+  private static final String SNAPSHOT_FILE_SUFFIX = ".snapshot";
+  private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  private final BizConfig bizConfig;
+  private final Map<String, CacheSnapshotWriter> writers = Maps.newConcurrentMap();
+  private ScheduledExecutorService executorService;
+
+  public CacheSnapshotStore(final BizConfig bizConfig) {
+    this.bizConfig = bizConfig;
+  }
+
+  /**
+   * Load the snapshot with the reader
+   *
+   * @return the result of the reader, or null if snapshot is disabled, not found or broken
+   */
+  public <T> T load(String name, CacheSnapshotReader<T> reader) {
+    if (!bizConfig.isCacheSnapshotEnabled()) {
+      return null;
+    }
+    Path file = resolve(name, SNAPSHOT_FILE_SUFFIX);
+    if (!Files.exists(file)) {
+      return null;
+    }
+
+    Transaction transaction = Tracer.newTransaction("Apollo.CacheSnapshot", "load");
+    try {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)));
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+        logger.warn("Ignore cache snapshot {} with unknown format", file);
+        transaction.setStatus(Transaction.SUCCESS);
+        return null;
+      }
+      byte[] payload = new byte[in.readInt()];
+      long checksum = in.readLong();
+      in.readFully(payload);
+      if (checksum(payload) != checksum) {
+        logger.warn("Ignore cache snapshot {} with mismatched checksum", file);
+        transaction.setStatus(Transaction.SUCCESS);
+        return null;
+      }
+
+      T result = reader.read(new DataInputStream(new ByteArrayInputStream(payload)));
+      Tracer.logEvent("Apollo.CacheSnapshot.Loaded", name);
+      logger.info("Loaded cache snapshot {}, size: {} bytes", file, payload.length);
+      transaction.setStatus(Transaction.SUCCESS);
+      return result;
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.warn("Load cache snapshot {} failed", file, ex);
+      return null;
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  /**
+   * Register the writer of the snapshot, which would be invoked periodically and on shutdown
+   */
+  public synchronized void register(String name, CacheSnapshotWriter writer) {
+    if (!bizConfig.isCacheSnapshotEnabled()) {
+      return;
+    }
+    writers.put(name, writer);
+    if (executorService == null) {
+      int interval = bizConfig.cacheSnapshotIntervalInSecond();
+      executorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory.create("CacheSnapshotStore", true));
+      executorService.scheduleWithFixedDelay(this::saveAll, interval, interval, TimeUnit.SECONDS);
+    }
+  }
+
+  public void save(String name, CacheSnapshotWriter writer) {
+    Transaction transaction = Tracer.newTransaction("Apollo.CacheSnapshot", "save");
+    try {
+      ByteArrayOutputStream payload = new ByteArrayOutputStream();
+      writer.write(new DataOutputStream(payload));
+      byte[] bytes = payload.toByteArray();
+
+      Path temp = resolve(name, TEMP_FILE_SUFFIX);
+      Files.createDirectories(temp.getParent());
+      try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(bytes.length);
+        out.writeLong(checksum(bytes));
+        out.write(bytes);
+      }
+      Files.move(temp, resolve(name, SNAPSHOT_FILE_SUFFIX), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.warn("Save cache snapshot {} failed", name, ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  @Override
+  public synchronized void destroy() throws Exception {
+    if (executorService == null) {
+      return;
+    }
+    executorService.shutdownNow();
+    //save the latest caches before shutdown
+    saveAll();
+  }
+
+  private void saveAll() {
+    for (Map.Entry<String, CacheSnapshotWriter> entry : writers.entrySet()) {
+      save(entry.getKey(), entry.getValue());
+    }
+  }
+
+  private Path resolve(String name, String suffix) {
+    return Paths.get(bizConfig.cacheSnapshotPath(), name + suffix);
+  }
+
+  private long checksum(byte[] bytes) {
+    CRC32 crc32 = new CRC32();
+    crc32.update(bytes);
+    return crc32.getValue();
+  }
+
+  public static void writeString(DataOutput out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  public static String readString(DataInput in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public interface CacheSnapshotWriter {
+    void write(DataOutput out) throws IOException;
+  }
+
+  public interface CacheSnapshotReader<T> {
+    T read(DataInput in) throws IOException;
+  }
+}
@@ -10,6 +10,7 @@ import com.ctrip.framework.apollo.biz.entity.GrayReleaseRule;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.repository.GrayReleaseRuleRepository;
+import com.ctrip.framework.apollo.biz.snapshot.CacheSnapshotStore;
 import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
 import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
 import com.ctrip.framework.apollo.core.ConfigConsts;
@@ -43,6 +44,8 @@ public class GrayReleaseRulesHolderTest {
   private BizConfig bizConfig;
   @Mock
   private GrayReleaseRuleRepository grayReleaseRuleRepository;
+  @Mock
+  private CacheSnapshotStore cacheSnapshotStore;
   private Gson gson = new Gson();
   private AtomicLong idCounter;
 
@@ -53,6 +56,7 @@ public class GrayReleaseRulesHolderTest {
                                  bizConfig);
     ReflectionTestUtils.setField(grayReleaseRulesHolder, "grayReleaseRuleRepository",
         grayReleaseRuleRepository);
+    ReflectionTestUtils.setField(grayReleaseRulesHolder, "cacheSnapshotStore", cacheSnapshotStore);
     idCounter = new AtomicLong();
   }
 
@@ -133,6 +137,46 @@ public class GrayReleaseRulesHolderTest {
         anotherNamespaceName));
   }
 
+  @Test
+  public void testScanGrayReleaseRulesWithIpPrefixes() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    String someClientAppId = "clientAppId1";
+    Long someReleaseId = 1L;
+    Long anotherReleaseId = 2L;
+
+    GrayReleaseRule someRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet
+            ("10.0.0.0/8", "192.168.1.1"))), someReleaseId, NamespaceBranchStatus.ACTIVE);
+    someRule.setBranchName("someBranch");
+    GrayReleaseRule anotherRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet
+            ("10.1.0.0/16"))), anotherReleaseId, NamespaceBranchStatus.ACTIVE);
+    anotherRule.setBranchName("anotherBranch");
+
+    when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists
+        .newArrayList(someRule, anotherRule));
+
+    //scan rules
+    grayReleaseRulesHolder.afterPropertiesSet();
+
+    assertEquals(someReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule
+        (someClientAppId, "10.2.3.4", someAppId, someClusterName, someNamespaceName));
+    assertEquals(anotherReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule
+        (someClientAppId, "10.1.3.4", someAppId, someClusterName, someNamespaceName));
+    assertEquals(someReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule
+        (someClientAppId, "192.168.1.1", someAppId, someClusterName, someNamespaceName));
+    assertNull(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule
+        (someClientAppId, "11.0.0.1", someAppId, someClusterName, someNamespaceName));
+
+    assertTrue(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, "10.2.3.4",
+        someNamespaceName));
+    assertFalse(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, "192.168.1.2",
+        someNamespaceName));
+  }
+
   private GrayReleaseRule assembleGrayReleaseRule(String appId, String clusterName, String
       namespaceName, List<GrayReleaseRuleItemDTO> ruleItems, long releaseId, int branchStatus) {
     GrayReleaseRule rule = new GrayReleaseRule();
@@ -0,0 +1,68 @@
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IpPrefixTrieTest {
+  private IpPrefixTrie<String> ipPrefixTrie;
+
+  @Before
+  public void setUp() throws Exception {
+    ipPrefixTrie = new IpPrefixTrie<>();
+  }
+
+  @Test
+  public void testFindLongestMatch() throws Exception {
+    String someValue = "someValue";
+    String anotherValue = "anotherValue";
+    String yetAnotherValue = "yetAnotherValue";
+
+    assertTrue(ipPrefixTrie.put("10.0.0.0/8", someValue));
+    assertTrue(ipPrefixTrie.put("10.1.0.0/16", anotherValue));
+    assertTrue(ipPrefixTrie.put("10.1.1.1", yetAnotherValue));
+
+    assertEquals(someValue, ipPrefixTrie.findLongestMatch("10.2.0.1"));
+    assertEquals(anotherValue, ipPrefixTrie.findLongestMatch("10.1.2.1"));
+    assertEquals(yetAnotherValue, ipPrefixTrie.findLongestMatch("10.1.1.1"));
+    assertNull(ipPrefixTrie.findLongestMatch("11.0.0.1"));
+  }
+
+  @Test
+  public void testFindLongestMatchWithIpv6() throws Exception {
+    String someValue = "someValue";
+
+    assertTrue(ipPrefixTrie.put("2001:db8::/32", someValue));
+
+    assertEquals(someValue, ipPrefixTrie.findLongestMatch("2001:db8:1::1"));
+    assertNull(ipPrefixTrie.findLongestMatch("2001:db9::1"));
+    assertNull(ipPrefixTrie.findLongestMatch("32.1.13.184"));
+  }
+
+  @Test
+  public void testFindLongestMatchWithZeroLengthPrefix() throws Exception {
+    String someValue = "someValue";
+
+    assertTrue(ipPrefixTrie.put("0.0.0.0/0", someValue));
+
+    assertEquals(someValue, ipPrefixTrie.findLongestMatch("1.2.3.4"));
+  }
+
+  @Test
+  public void testPutWithInvalidPrefix() throws Exception {
+    String someValue = "someValue";
+
+    assertFalse(ipPrefixTrie.put("10.0.0.0/33", someValue));
+    assertFalse(ipPrefixTrie.put("10.0.0.0/a", someValue));
+    assertFalse(ipPrefixTrie.put("someHost/8", someValue));
+    assertFalse(ipPrefixTrie.put("", someValue));
+
+    assertTrue(ipPrefixTrie.isEmpty());
+    assertNull(ipPrefixTrie.findLongestMatch("10.0.0.1"));
+    assertNull(ipPrefixTrie.findLongestMatch("someHost"));
+  }
+}
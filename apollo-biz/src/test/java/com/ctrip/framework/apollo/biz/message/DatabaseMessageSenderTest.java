@@ -1,6 +1,7 @@
 package com.ctrip.framework.apollo.biz.message;
 
 import com.ctrip.framework.apollo.biz.AbstractUnitTest;
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
 import org.junit.Before;
@@ -18,10 +19,17 @@ public class DatabaseMessageSenderTest extends AbstractUnitTest{
   private DatabaseMessageSender messageSender;
   @Mock
   private ReleaseMessageRepository releaseMessageRepository;
+  @Mock
+  private ReleaseMessageTransport releaseMessageTransport;
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private ReleasePropagationTracker releasePropagationTracker;
 
   @Before
   public void setUp() throws Exception {
-    messageSender = new DatabaseMessageSender(releaseMessageRepository);
+    messageSender = new DatabaseMessageSender(releaseMessageRepository, releaseMessageTransport, bizConfig,
+        releasePropagationTracker);
   }
 
   @Test
@@ -38,6 +46,22 @@ public class DatabaseMessageSenderTest extends AbstractUnitTest{
 
     verify(releaseMessageRepository, times(1)).save(captor.capture());
     assertEquals(someMessage, captor.getValue().getMessage());
+    verify(releaseMessageTransport, never()).publish(any(ReleaseMessage.class));
+    verify(releasePropagationTracker, times(1)).onMessageSent(someReleaseMessage);
+  }
+
+  @Test
+  public void testSendMessageWithPushEnabled() throws Exception {
+    String someMessage = "some-message";
+    long someId = 1;
+    ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
+    when(someReleaseMessage.getId()).thenReturn(someId);
+    when(releaseMessageRepository.save(any(ReleaseMessage.class))).thenReturn(someReleaseMessage);
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+
+    messageSender.sendMessage(someMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    verify(releaseMessageTransport, times(1)).publish(someReleaseMessage);
   }
 
   @Test
@@ -0,0 +1,122 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.AbstractUnitTest;
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.core.ServiceNameConsts;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.SettableFuture;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.shared.Application;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class HttpReleaseMessageTransportTest extends AbstractUnitTest {
+  private HttpReleaseMessageTransport releaseMessageTransport;
+  @Mock
+  private ObjectProvider<EurekaClient> eurekaClientProvider;
+  @Mock
+  private EurekaClient eurekaClient;
+  @Mock
+  private RestTemplate restTemplate;
+  @Mock
+  private BizConfig bizConfig;
+  private String someToken;
+
+  @Before
+  public void setUp() throws Exception {
+    someToken = "someToken";
+    when(bizConfig.releaseMessagePushToken()).thenReturn(someToken);
+    releaseMessageTransport = new HttpReleaseMessageTransport(eurekaClientProvider, bizConfig);
+    ReflectionTestUtils.setField(releaseMessageTransport, "restTemplate", restTemplate);
+  }
+
+  @Test
+  public void testPublish() throws Exception {
+    String someHomePageUrl = "http://someServer:8080/";
+    String anotherHomePageUrl = "http://anotherServer:8080";
+    Application someApplication = mock(Application.class);
+    InstanceInfo someInstance = mock(InstanceInfo.class);
+    InstanceInfo anotherInstance = mock(InstanceInfo.class);
+    when(someInstance.getHomePageUrl()).thenReturn(someHomePageUrl);
+    when(anotherInstance.getHomePageUrl()).thenReturn(anotherHomePageUrl);
+    when(someApplication.getInstances()).thenReturn(Lists.newArrayList(someInstance, anotherInstance));
+    when(eurekaClient.getApplication(ServiceNameConsts.APOLLO_CONFIGSERVICE)).thenReturn(someApplication);
+    when(eurekaClientProvider.getIfAvailable()).thenReturn(eurekaClient);
+
+    ReleaseMessage someMessage = new ReleaseMessage("someMessage");
+    someMessage.setId(1);
+
+    releaseMessageTransport.publish(someMessage);
+
+    verify(restTemplate, timeout(5000)).postForEntity(eq("http://someServer:8080/release-messages"),
+        argThat(this::hasToken), eq(Void.class));
+    verify(restTemplate, timeout(5000)).postForEntity(eq("http://anotherServer:8080/release-messages"),
+        argThat(this::hasToken), eq(Void.class));
+  }
+
+  @Test
+  public void testPublishWithoutToken() throws Exception {
+    when(bizConfig.releaseMessagePushToken()).thenReturn("");
+
+    releaseMessageTransport.publish(new ReleaseMessage("someMessage"));
+
+    verifyZeroInteractions(eurekaClientProvider, restTemplate);
+  }
+
+  @Test
+  public void testPublishWithoutEurekaClient() throws Exception {
+    when(eurekaClientProvider.getIfAvailable()).thenReturn(null);
+
+    releaseMessageTransport.publish(new ReleaseMessage("someMessage"));
+
+    verifyZeroInteractions(restTemplate);
+  }
+
+  @Test
+  public void testReceive() throws Exception {
+    SettableFuture<ReleaseMessage> someListenerFuture = SettableFuture.create();
+    releaseMessageTransport.subscribe((message, channel) -> someListenerFuture.set(message));
+
+    ReleaseMessage someMessage = new ReleaseMessage("someMessage");
+
+    releaseMessageTransport.receive(someMessage);
+
+    assertEquals(someMessage, someListenerFuture.get(5000, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testIsAuthorized() throws Exception {
+    assertTrue(releaseMessageTransport.isAuthorized(someToken));
+    assertFalse(releaseMessageTransport.isAuthorized("anotherToken"));
+    assertFalse(releaseMessageTransport.isAuthorized(null));
+
+    when(bizConfig.releaseMessagePushToken()).thenReturn("");
+
+    assertFalse(releaseMessageTransport.isAuthorized(""));
+  }
+
+  private boolean hasToken(HttpEntity<?> entity) {
+    return someToken.equals(entity.getHeaders().getFirst(HttpReleaseMessageTransport.PUSH_TOKEN_HEADER));
+  }
+}
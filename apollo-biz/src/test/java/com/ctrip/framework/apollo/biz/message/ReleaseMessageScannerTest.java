@@ -14,9 +14,15 @@ import org.mockito.Mock;
 import org.springframework.core.env.Environment;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -28,6 +34,8 @@ public class ReleaseMessageScannerTest extends AbstractUnitTest {
   private ReleaseMessageRepository releaseMessageRepository;
   @Mock
   private BizConfig bizConfig;
+  @Mock
+  private ReleasePropagationTracker releasePropagationTracker;
   private int databaseScanInterval;
 
   @Before
@@ -36,6 +44,7 @@ public class ReleaseMessageScannerTest extends AbstractUnitTest {
     ReflectionTestUtils
         .setField(releaseMessageScanner, "releaseMessageRepository", releaseMessageRepository);
     ReflectionTestUtils.setField(releaseMessageScanner, "bizConfig", bizConfig);
+    ReflectionTestUtils.setField(releaseMessageScanner, "releasePropagationTracker", releasePropagationTracker);
     databaseScanInterval = 100; //100 ms
     when(bizConfig.releaseMessageScanIntervalInMilli()).thenReturn(databaseScanInterval);
     releaseMessageScanner.afterPropertiesSet();
@@ -59,6 +68,7 @@ public class ReleaseMessageScannerTest extends AbstractUnitTest {
 
     assertEquals(someMessage, someListenerMessage.getMessage());
     assertEquals(someId, someListenerMessage.getId());
+    verify(releasePropagationTracker, times(1)).onMessageScanned(someReleaseMessage);
 
     SettableFuture<ReleaseMessage> anotherListenerFuture = SettableFuture.create();
     ReleaseMessageListener anotherListener = (message, channel) -> anotherListenerFuture.set(message);
@@ -79,6 +89,82 @@ public class ReleaseMessageScannerTest extends AbstractUnitTest {
 
   }
 
+  @Test
+  public void testScanMessageWhenMessagePushed() throws Exception {
+    long someId = 100;
+    String someMessage = "someMessage";
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(someId, someMessage);
+    LoopbackReleaseMessageTransport releaseMessageTransport = new LoopbackReleaseMessageTransport();
+
+    ReleaseMessageScanner anotherReleaseMessageScanner = new ReleaseMessageScanner();
+    ReflectionTestUtils
+        .setField(anotherReleaseMessageScanner, "releaseMessageRepository", releaseMessageRepository);
+    ReflectionTestUtils.setField(anotherReleaseMessageScanner, "bizConfig", bizConfig);
+    ReflectionTestUtils
+        .setField(anotherReleaseMessageScanner, "releasePropagationTracker", releasePropagationTracker);
+    ReflectionTestUtils
+        .setField(anotherReleaseMessageScanner, "releaseMessageTransport", releaseMessageTransport);
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+    //make sure the message is not found by the reconciling scan
+    when(bizConfig.releaseMessageReconcileIntervalInMilli()).thenReturn(60 * 60 * 1000);
+    when(releaseMessageRepository.findTopByOrderByIdDesc()).thenReturn(assembleReleaseMessage(someId - 1, "some"));
+    anotherReleaseMessageScanner.afterPropertiesSet();
+
+    SettableFuture<ReleaseMessage> someListenerFuture = SettableFuture.create();
+    anotherReleaseMessageScanner.addMessageListener((message, channel) -> someListenerFuture.set(message));
+
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(someId - 1)).thenReturn(
+        Lists.newArrayList(someReleaseMessage));
+
+    //only the id of the pushed message is used
+    releaseMessageTransport.publish(assembleReleaseMessage(someId, "fakeMessage"));
+
+    ReleaseMessage someListenerMessage = someListenerFuture.get(5000, TimeUnit.MILLISECONDS);
+
+    assertEquals(someMessage, someListenerMessage.getMessage());
+    assertEquals(someId, someListenerMessage.getId());
+  }
+
+  @Test
+  public void testCoalesceScansOfPushedMessages() throws Exception {
+    long someId = 100;
+    LoopbackReleaseMessageTransport releaseMessageTransport = new LoopbackReleaseMessageTransport();
+
+    ReleaseMessageScanner anotherReleaseMessageScanner = new ReleaseMessageScanner();
+    ReflectionTestUtils
+        .setField(anotherReleaseMessageScanner, "releaseMessageRepository", releaseMessageRepository);
+    ReflectionTestUtils.setField(anotherReleaseMessageScanner, "bizConfig", bizConfig);
+    ReflectionTestUtils
+        .setField(anotherReleaseMessageScanner, "releasePropagationTracker", releasePropagationTracker);
+    ReflectionTestUtils
+        .setField(anotherReleaseMessageScanner, "releaseMessageTransport", releaseMessageTransport);
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+    when(bizConfig.releaseMessageReconcileIntervalInMilli()).thenReturn(60 * 60 * 1000);
+    when(releaseMessageRepository.findTopByOrderByIdDesc()).thenReturn(assembleReleaseMessage(someId, "some"));
+    anotherReleaseMessageScanner.afterPropertiesSet();
+
+    CountDownLatch scanStarted = new CountDownLatch(1);
+    CountDownLatch scanBlocked = new CountDownLatch(1);
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(someId)).thenAnswer(invocation -> {
+      scanStarted.countDown();
+      scanBlocked.await(5000, TimeUnit.MILLISECONDS);
+      return Collections.emptyList();
+    });
+
+    releaseMessageTransport.publish(assembleReleaseMessage(Long.MAX_VALUE, "fakeMessage"));
+    assertTrue(scanStarted.await(5000, TimeUnit.MILLISECONDS));
+
+    //pushed while scanning, only one more scan is queued
+    for (int i = 0; i < 100; i++) {
+      releaseMessageTransport.publish(assembleReleaseMessage(Long.MAX_VALUE, "fakeMessage"));
+    }
+    scanBlocked.countDown();
+
+    verify(releaseMessageRepository, timeout(5000).times(2)).findFirst500ByIdGreaterThanOrderByIdAsc(someId);
+    TimeUnit.MILLISECONDS.sleep(200);
+    verify(releaseMessageRepository, times(2)).findFirst500ByIdGreaterThanOrderByIdAsc(someId);
+  }
+
   private ReleaseMessage assembleReleaseMessage(long id, String message) {
     ReleaseMessage releaseMessage = new ReleaseMessage();
     releaseMessage.setId(id);
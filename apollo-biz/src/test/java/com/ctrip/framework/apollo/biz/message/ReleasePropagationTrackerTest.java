@@ -0,0 +1,123 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.core.utils.LatencyHistogram;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReleasePropagationTrackerTest {
+  private ReleasePropagationTracker releasePropagationTracker;
+  private ReleasePropagationStore releasePropagationStore;
+
+  @Before
+  public void setUp() throws Exception {
+    releasePropagationStore = new InMemoryReleasePropagationStore();
+    releasePropagationTracker = new ReleasePropagationTracker(releasePropagationStore);
+  }
+
+  @Test
+  public void testTrackPropagation() throws Exception {
+    long someReleaseId = 1;
+    long someMessageId = 2;
+    String someMessage = "someAppId+someCluster+someNamespace";
+    Release someRelease = new Release();
+    someRelease.setId(someReleaseId);
+    long someSentTime = System.currentTimeMillis() - 1000;
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(someMessageId, someMessage, someSentTime);
+
+    releasePropagationTracker.onReleasePublished(someRelease);
+    releasePropagationTracker.onMessageSent(someReleaseMessage);
+    releasePropagationTracker.onMessageScanned(someReleaseMessage);
+    releasePropagationTracker.onClientNotified(someReleaseMessage);
+    releasePropagationTracker.onClientNotified(someReleaseMessage);
+    releasePropagationTracker.onClientFetched(someMessageId);
+
+    ReleasePropagation propagation = releasePropagationTracker.findPropagation(someMessageId);
+
+    assertEquals(someMessage, propagation.getMessage());
+    assertEquals(someSentTime, propagation.getSentTime());
+    assertEquals(Long.valueOf(someReleaseId), propagation.getReleaseId());
+    assertEquals(1, latencyOf(propagation, ReleasePropagationStage.MESSAGE_SENT).getCount());
+    assertEquals(1, latencyOf(propagation, ReleasePropagationStage.MESSAGE_SCANNED).getCount());
+    assertEquals(2, latencyOf(propagation, ReleasePropagationStage.CLIENT_NOTIFIED).getCount());
+    assertEquals(1, latencyOf(propagation, ReleasePropagationStage.CLIENT_FETCHED).getCount());
+    assertTrue(latencyOf(propagation, ReleasePropagationStage.CLIENT_FETCHED).getMax() >= 1000);
+  }
+
+  @Test
+  public void testMessageSentWithoutRelease() throws Exception {
+    long someMessageId = 2;
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(someMessageId, "someMessage",
+        System.currentTimeMillis());
+
+    releasePropagationTracker.onMessageSent(someReleaseMessage);
+
+    ReleasePropagation propagation = releasePropagationTracker.findPropagation(someMessageId);
+
+    assertNull(propagation.getReleaseId());
+    assertFalse(propagation.getLatencies().containsKey(ReleasePropagationStage.MESSAGE_SENT));
+  }
+
+  @Test
+  public void testPublishedReleaseIsOnlyAttributedToTheNextMessage() throws Exception {
+    Release someRelease = new Release();
+    someRelease.setId(1);
+    long someMessageId = 2;
+    long anotherMessageId = 3;
+
+    releasePropagationTracker.onReleasePublished(someRelease);
+    releasePropagationTracker.onMessageSent(
+        assembleReleaseMessage(someMessageId, "someMessage", System.currentTimeMillis()));
+    releasePropagationTracker.onMessageSent(
+        assembleReleaseMessage(anotherMessageId, "anotherMessage", System.currentTimeMillis()));
+
+    assertEquals(Long.valueOf(1), releasePropagationTracker.findPropagation(someMessageId).getReleaseId());
+    assertNull(releasePropagationTracker.findPropagation(anotherMessageId).getReleaseId());
+  }
+
+  @Test
+  public void testClearPublishedReleaseNotSent() throws Exception {
+    Release someRelease = new Release();
+    someRelease.setId(1);
+    long someMessageId = 2;
+
+    releasePropagationTracker.onReleasePublished(someRelease);
+    //e.g. the message failed to be sent
+    releasePropagationTracker.clearPublishedRelease();
+    releasePropagationTracker.onMessageSent(
+        assembleReleaseMessage(someMessageId, "someMessage", System.currentTimeMillis()));
+
+    assertNull(releasePropagationTracker.findPropagation(someMessageId).getReleaseId());
+  }
+
+  @Test
+  public void testIgnoreUntrackedMessages() throws Exception {
+    long someMessageId = 2;
+    ReleaseMessage someReleaseMessageNotSaved = new ReleaseMessage("someMessage");
+    someReleaseMessageNotSaved.setId(someMessageId);
+
+    releasePropagationTracker.onMessageScanned(someReleaseMessageNotSaved);
+    releasePropagationTracker.onClientFetched(someMessageId);
+
+    assertNull(releasePropagationTracker.findPropagation(someMessageId));
+  }
+
+  private LatencyHistogram latencyOf(ReleasePropagation propagation, ReleasePropagationStage stage) {
+    return propagation.getLatencies().get(stage);
+  }
+
+  private ReleaseMessage assembleReleaseMessage(long id, String message, long sentTime) {
+    ReleaseMessage releaseMessage = new ReleaseMessage(message);
+    releaseMessage.setId(id);
+    releaseMessage.setDataChangeLastModifiedTime(new Date(sentTime));
+    return releaseMessage;
+  }
+}
@@ -22,6 +22,7 @@ import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
 /**
@@ -110,6 +111,43 @@ public class InstanceServiceTest extends AbstractIntegrationTest {
     assertEquals(anotherReleaseKey, updated.getReleaseKey());
   }
 
+  @Test
+  @Rollback
+  public void testBatchUpsertInstanceConfigs() throws Exception {
+    long someInstanceId = 1;
+    long anotherInstanceId = 2;
+    String someConfigAppId = "someConfigAppId";
+    String someConfigClusterName = "someConfigClusterName";
+    String anotherConfigClusterName = "anotherConfigClusterName";
+    String someConfigNamespaceName = "someConfigNamespaceName";
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+
+    instanceService.batchUpsertInstanceConfigs(Lists.newArrayList(
+        assembleInstanceConfig(someInstanceId, someConfigAppId, someConfigClusterName,
+            someConfigNamespaceName, someReleaseKey)));
+
+    instanceService.batchUpsertInstanceConfigs(Lists.newArrayList(
+        assembleInstanceConfig(someInstanceId, someConfigAppId, anotherConfigClusterName,
+            someConfigNamespaceName, anotherReleaseKey),
+        assembleInstanceConfig(anotherInstanceId, someConfigAppId, someConfigClusterName,
+            someConfigNamespaceName, someReleaseKey)));
+
+    List<InstanceConfig> instanceConfigs = instanceService.findInstanceConfigs(
+        Sets.newHashSet(someInstanceId, anotherInstanceId));
+
+    assertEquals(2, instanceConfigs.size());
+    for (InstanceConfig instanceConfig : instanceConfigs) {
+      assertNotNull(instanceConfig.getDataChangeCreatedTime());
+      if (instanceConfig.getInstanceId() == someInstanceId) {
+        assertEquals(anotherConfigClusterName, instanceConfig.getConfigClusterName());
+        assertEquals(anotherReleaseKey, instanceConfig.getReleaseKey());
+      } else {
+        assertEquals(someReleaseKey, instanceConfig.getReleaseKey());
+      }
+    }
+  }
+
   @Test
   @Rollback
   public void testFindActiveInstanceConfigs() throws Exception {
@@ -0,0 +1,92 @@
+package com.ctrip.framework.apollo.biz.snapshot;
+
+import com.ctrip.framework.apollo.biz.AbstractUnitTest;
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+public class CacheSnapshotStoreTest extends AbstractUnitTest {
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+  @Mock
+  private BizConfig bizConfig;
+  private CacheSnapshotStore cacheSnapshotStore;
+  private String someName;
+
+  @Before
+  public void setUp() throws Exception {
+    cacheSnapshotStore = new CacheSnapshotStore(bizConfig);
+    someName = "someName";
+  }
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+    String someValue = "someValue";
+    long someId = 1;
+    when(bizConfig.isCacheSnapshotEnabled()).thenReturn(true);
+    when(bizConfig.cacheSnapshotPath()).thenReturn(temporaryFolder.getRoot().getAbsolutePath());
+
+    cacheSnapshotStore.save(someName, out -> {
+      out.writeLong(someId);
+      CacheSnapshotStore.writeString(out, someValue);
+      CacheSnapshotStore.writeString(out, null);
+    });
+
+    String result = cacheSnapshotStore.load(someName, in -> {
+      assertEquals(someId, in.readLong());
+      String value = CacheSnapshotStore.readString(in);
+      assertNull(CacheSnapshotStore.readString(in));
+      return value;
+    });
+
+    assertEquals(someValue, result);
+  }
+
+  @Test
+  public void testSaveAndLoadWithRegisteredWriter() throws Exception {
+    int someValue = 1;
+    when(bizConfig.isCacheSnapshotEnabled()).thenReturn(true);
+    when(bizConfig.cacheSnapshotPath()).thenReturn(temporaryFolder.getRoot().getAbsolutePath());
+    when(bizConfig.cacheSnapshotIntervalInSecond()).thenReturn(60);
+
+    cacheSnapshotStore.register(someName, out -> out.writeInt(someValue));
+    cacheSnapshotStore.destroy();
+
+    assertEquals(someValue, (int) cacheSnapshotStore.load(someName, in -> in.readInt()));
+  }
+
+  @Test
+  public void testLoadWithBrokenSnapshot() throws Exception {
+    when(bizConfig.isCacheSnapshotEnabled()).thenReturn(true);
+    when(bizConfig.cacheSnapshotPath()).thenReturn(temporaryFolder.getRoot().getAbsolutePath());
+
+    cacheSnapshotStore.save(someName, out -> out.writeLong(1));
+
+    File snapshot = new File(temporaryFolder.getRoot(), someName + ".snapshot");
+    assertTrue(snapshot.exists());
+    try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+      file.seek(file.length() - 1);
+      file.write(2);
+    }
+
+    assertNull(cacheSnapshotStore.load(someName, in -> in.readLong()));
+  }
+
+  @Test
+  public void testLoadWithSnapshotDisabled() throws Exception {
+    when(bizConfig.isCacheSnapshotEnabled()).thenReturn(false);
+
+    assertNull(cacheSnapshotStore.load(someName, in -> in.readLong()));
+  }
+}
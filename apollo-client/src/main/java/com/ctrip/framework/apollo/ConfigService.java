@@ -4,9 +4,12 @@ import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
 import com.ctrip.framework.apollo.internals.ConfigManager;
+import com.ctrip.framework.apollo.internals.DefaultConfigManager;
 import com.ctrip.framework.apollo.spi.ConfigFactory;
 import com.ctrip.framework.apollo.spi.ConfigRegistry;
 
+import java.util.Collection;
+
 /**
  * Entry point for client config use
  *
@@ -65,6 +68,19 @@ public class ConfigService {
     return s_instance.getManager().getConfigFile(namespace, configFileFormat);
   }
 
+  /**
+   * Load the config instances of the namespaces in advance, e.g. when the application is starting up. It's skipped if
+   * the config manager is replaced, which loads the configs by itself.
+   *
+   * @param namespaces the namespaces of the configs
+   */
+  public static void preloadConfigs(Collection<String> namespaces) {
+    ConfigManager manager = s_instance.getManager();
+    if (manager instanceof DefaultConfigManager) {
+      ((DefaultConfigManager) manager).preloadConfigs(namespaces);
+    }
+  }
+
   static void setConfig(Config config) {
     setConfig(ConfigConsts.NAMESPACE_APPLICATION, config);
   }
@@ -5,18 +5,37 @@ package com.ctrip.framework.apollo.exceptions;
  */
 public class ApolloConfigStatusCodeException extends RuntimeException{
   private final int m_statusCode;
+  private final long m_retryAfterInSeconds;
 
   public ApolloConfigStatusCodeException(int statusCode, String message) {
+    this(statusCode, message, -1);
+  }
+
+  public ApolloConfigStatusCodeException(int statusCode, String message, long retryAfterInSeconds) {
     super(String.format("[status code: %d] %s", statusCode, message));
     this.m_statusCode = statusCode;
+    this.m_retryAfterInSeconds = retryAfterInSeconds;
   }
 
   public ApolloConfigStatusCodeException(int statusCode, Throwable cause) {
+    this(statusCode, cause, -1);
+  }
+
+  public ApolloConfigStatusCodeException(int statusCode, Throwable cause, long retryAfterInSeconds) {
     super(cause);
     this.m_statusCode = statusCode;
+    this.m_retryAfterInSeconds = retryAfterInSeconds;
   }
 
   public int getStatusCode() {
     return m_statusCode;
   }
+
+  /**
+   * @return the seconds to wait before retrying which is told by the server, e.g. 429 with Retry-After, or -1 if
+   * not told
+   */
+  public long getRetryAfterInSeconds() {
+    return m_retryAfterInSeconds;
+  }
 }
@@ -31,6 +31,7 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -45,6 +46,7 @@ public abstract class AbstractConfig implements Config {
   private final Map<ConfigChangeListener, Set<String>> m_interestedKeys = Maps.newConcurrentMap();
   private final Map<ConfigChangeListener, Set<String>> m_interestedKeyPrefixes = Maps.newConcurrentMap();
   private final ConfigUtil m_configUtil;
+  private final ReleasePropagationMonitor m_releasePropagationMonitor;
   private volatile Cache<String, Integer> m_integerCache;
   private volatile Cache<String, Long> m_longCache;
   private volatile Cache<String, Short> m_shortCache;
@@ -65,6 +67,7 @@ public abstract class AbstractConfig implements Config {
 
   public AbstractConfig() {
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_releasePropagationMonitor = ApolloInjector.getInstance(ReleasePropagationMonitor.class);
     m_configVersion = new AtomicLong();
     m_arrayCache = Maps.newConcurrentMap();
     allCaches = Lists.newArrayList();
@@ -435,11 +438,22 @@ public abstract class AbstractConfig implements Config {
   }
 
   protected void fireConfigChange(final ConfigChangeEvent changeEvent) {
-    for (final ConfigChangeListener listener : m_listeners) {
+    List<ConfigChangeListener> interestedListeners = Lists.newArrayList();
+    for (ConfigChangeListener listener : m_listeners) {
       // check whether the listener is interested in this change event
-      if (!isConfigChangeListenerInterested(listener, changeEvent)) {
-        continue;
+      if (isConfigChangeListenerInterested(listener, changeEvent)) {
+        interestedListeners.add(listener);
       }
+    }
+
+    final String namespace = changeEvent.getNamespace();
+    if (interestedListeners.isEmpty()) {
+      m_releasePropagationMonitor.onListenersCompleted(namespace);
+      return;
+    }
+
+    final AtomicInteger remainingListeners = new AtomicInteger(interestedListeners.size());
+    for (final ConfigChangeListener listener : interestedListeners) {
       m_executorService.submit(new Runnable() {
         @Override
         public void run() {
@@ -454,6 +468,9 @@ public abstract class AbstractConfig implements Config {
             logger.error("Failed to invoke config change listener {}", listenerName, ex);
           } finally {
             transaction.complete();
+            if (remainingListeners.decrementAndGet() == 0) {
+              m_releasePropagationMonitor.onListenersCompleted(namespace);
+            }
           }
         }
       });
@@ -3,6 +3,7 @@ package com.ctrip.framework.apollo.internals;
 import com.ctrip.framework.apollo.core.ServiceNameConsts;
 import com.ctrip.framework.foundation.Foundation;
 import java.lang.reflect.Type;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executors;
@@ -19,11 +20,13 @@ import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ConsistentHashRing;
 import com.ctrip.framework.apollo.util.ExceptionUtil;
 import com.ctrip.framework.apollo.util.http.HttpRequest;
 import com.ctrip.framework.apollo.util.http.HttpResponse;
 import com.ctrip.framework.apollo.util.http.HttpUtil;
 import com.google.common.base.Joiner;
+import com.google.common.base.MoreObjects;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -36,10 +39,15 @@ public class ConfigServiceLocator {
   private HttpUtil m_httpUtil;
   private ConfigUtil m_configUtil;
   private AtomicReference<List<ServiceDTO>> m_configServices;
+  private AtomicReference<List<ServiceDTO>> m_affinityConfigServices;
+  //the entity tag of the services from meta service
+  private volatile String m_configServicesETag;
   private Type m_responseType;
   private ScheduledExecutorService m_executorService;
   private static final Joiner.MapJoiner MAP_JOINER = Joiner.on("&").withKeyValueSeparator("=");
   private static final Escaper queryParamEscaper = UrlEscapers.urlFormParameterEscaper();
+  //the owner of the app id and its fallback
+  private static final int AFFINITY_CONFIG_SERVICES = 2;
 
   /**
    * Create a config service locator.
@@ -47,6 +55,7 @@ public class ConfigServiceLocator {
   public ConfigServiceLocator() {
     List<ServiceDTO> initial = Lists.newArrayList();
     m_configServices = new AtomicReference<>(initial);
+    m_affinityConfigServices = new AtomicReference<>(Collections.<ServiceDTO>emptyList());
     m_responseType = new TypeToken<List<ServiceDTO>>() {
     }.getType();
     m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
@@ -117,6 +126,15 @@ public class ConfigServiceLocator {
     return m_configServices.get();
   }
 
+  /**
+   * Get the config services which the app id is routed to in the consistent hash ring published by meta service.
+   *
+   * @return the owner and the fallback of the app id, or empty if the ring is not published
+   */
+  public List<ServiceDTO> getAffinityConfigServices() {
+    return m_affinityConfigServices.get();
+  }
+
   private boolean tryUpdateConfigServices() {
     try {
       updateConfigServices();
@@ -144,6 +162,10 @@ public class ConfigServiceLocator {
     String url = assembleMetaServiceUrl();
 
     HttpRequest request = new HttpRequest(url);
+    //the meta service responds with 304 if the services are not changed
+    if (!m_configServices.get().isEmpty()) {
+      request.setIfNoneMatch(m_configServicesETag);
+    }
     int maxRetries = 2;
     Throwable exception = null;
 
@@ -153,12 +175,16 @@ public class ConfigServiceLocator {
       try {
         HttpResponse<List<ServiceDTO>> response = m_httpUtil.doGet(request, m_responseType);
         transaction.setStatus(Transaction.SUCCESS);
+        if (response.getStatusCode() == 304) {
+          return;
+        }
         List<ServiceDTO> services = response.getBody();
         if (services == null || services.isEmpty()) {
           logConfigService("Empty response!");
           continue;
         }
         setConfigServices(services);
+        m_configServicesETag = response.getETag();
         return;
       } catch (Throwable ex) {
         Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
@@ -181,9 +207,23 @@ public class ConfigServiceLocator {
 
   private void setConfigServices(List<ServiceDTO> services) {
     m_configServices.set(services);
+    m_affinityConfigServices.set(routeByAffinity(services));
     logConfigServices(services);
   }
 
+  private List<ServiceDTO> routeByAffinity(List<ServiceDTO> services) {
+    ConsistentHashRing<ServiceDTO> ring = new ConsistentHashRing<>();
+    for (ServiceDTO service : services) {
+      if (service.getVirtualNodes() == null) {
+        //the client affinity is not enabled in meta service
+        return Collections.emptyList();
+      }
+      ring.addNode(MoreObjects.firstNonNull(service.getInstanceId(), service.getHomepageUrl()), service,
+          service.getVirtualNodes());
+    }
+    return ring.route(m_configUtil.getAppId(), AFFINITY_CONFIG_SERVICES);
+  }
+
   private String assembleMetaServiceUrl() {
     String domainName = m_configUtil.getMetaServerDomainName();
     String appId = m_configUtil.getAppId();
@@ -1,5 +1,6 @@
 package com.ctrip.framework.apollo.internals;
 
+import java.util.Collection;
 import java.util.Map;
 
 import com.ctrip.framework.apollo.Config;
@@ -63,4 +64,24 @@ public class DefaultConfigManager implements ConfigManager {
 
     return configFile;
   }
+
+  /**
+   * Load the configs of the namespaces specified in advance, so that they don't have to be loaded one by one.
+   * @param namespaces the namespaces
+   */
+  public void preloadConfigs(Collection<String> namespaces) {
+    Map<String, String> toBeLoaded = Maps.newLinkedHashMap();
+    for (String namespace : namespaces) {
+      if (!m_configs.containsKey(namespace)) {
+        //the configs are not loaded yet, so there is no release key in client side
+        toBeLoaded.put(namespace, "");
+      }
+    }
+
+    if (toBeLoaded.size() < 2) {
+      return;
+    }
+
+    ApolloInjector.getInstance(RemoteConfigBatchLoader.class).prefetch(toBeLoaded, null);
+  }
 }
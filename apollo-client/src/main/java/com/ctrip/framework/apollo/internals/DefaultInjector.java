@@ -61,6 +61,8 @@ public class DefaultInjector implements Injector {
       bind(HttpUtil.class).in(Singleton.class);
       bind(ConfigServiceLocator.class).in(Singleton.class);
       bind(RemoteConfigLongPollService.class).in(Singleton.class);
+      bind(RemoteConfigBatchLoader.class).in(Singleton.class);
+      bind(ReleasePropagationMonitor.class).in(Singleton.class);
       bind(YamlParser.class).in(Singleton.class);
     }
   }
@@ -0,0 +1,99 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.utils.LatencyHistogram;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.collect.Maps;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records how long the notified releases take to be fetched and handled by the config change listeners in this client,
+ * the latencies are measured from the long poll notification.
+ * <p>
+ * The notification carries the id of the release message, which could be used to look up the propagation of the same
+ * release in config service.
+ */
+public class ReleasePropagationMonitor {
+  public enum Stage {
+    /**
+     * the notified release is fetched
+     */
+    FETCHED,
+    /**
+     * all the config change listeners interested in the notified release are completed
+     */
+    LISTENERS_COMPLETED
+  }
+
+  private final Map<String, NotifiedRelease> m_notifiedReleases = Maps.newConcurrentMap();
+  private final Map<Stage, LatencyHistogram> m_latencies = Maps.newEnumMap(Stage.class);
+
+  public ReleasePropagationMonitor() {
+    for (Stage stage : Stage.values()) {
+      m_latencies.put(stage, new LatencyHistogram());
+    }
+  }
+
+  /**
+   * @param messages the release messages the namespace is notified with
+   */
+  public void onNotified(String namespace, ApolloNotificationMessages messages) {
+    long messageId = latestMessageId(messages);
+    if (messageId > 0) {
+      m_notifiedReleases.put(namespace, new NotifiedRelease(messageId, System.currentTimeMillis()));
+    }
+  }
+
+  public void onFetched(String namespace) {
+    NotifiedRelease notifiedRelease = m_notifiedReleases.get(namespace);
+    if (notifiedRelease == null || !notifiedRelease.m_fetched.compareAndSet(false, true)) {
+      return;
+    }
+    record(Stage.FETCHED, namespace, notifiedRelease);
+  }
+
+  public void onListenersCompleted(String namespace) {
+    NotifiedRelease notifiedRelease = m_notifiedReleases.get(namespace);
+    //the listeners may be triggered by other changes, e.g. the local overrides
+    if (notifiedRelease == null || !notifiedRelease.m_fetched.get()
+        || !m_notifiedReleases.remove(namespace, notifiedRelease)) {
+      return;
+    }
+    record(Stage.LISTENERS_COMPLETED, namespace, notifiedRelease);
+  }
+
+  public LatencyHistogram getLatency(Stage stage) {
+    return m_latencies.get(stage);
+  }
+
+  private void record(Stage stage, String namespace, NotifiedRelease notifiedRelease) {
+    m_latencies.get(stage).record(System.currentTimeMillis() - notifiedRelease.m_notifiedTime);
+    Tracer.logEvent(String.format("Apollo.Client.ReleasePropagation.%s", stage),
+        String.format("%s:%d", namespace, notifiedRelease.m_messageId));
+  }
+
+  private long latestMessageId(ApolloNotificationMessages messages) {
+    long latestMessageId = -1;
+    if (messages == null || messages.isEmpty()) {
+      return latestMessageId;
+    }
+    for (Long messageId : messages.getDetails().values()) {
+      if (messageId != null && messageId > latestMessageId) {
+        latestMessageId = messageId;
+      }
+    }
+    return latestMessageId;
+  }
+
+  private static class NotifiedRelease {
+    private final long m_messageId;
+    private final long m_notifiedTime;
+    private final AtomicBoolean m_fetched = new AtomicBoolean(false);
+
+    NotifiedRelease(long messageId, long notifiedTime) {
+      m_messageId = messageId;
+      m_notifiedTime = notifiedTime;
+    }
+  }
+}
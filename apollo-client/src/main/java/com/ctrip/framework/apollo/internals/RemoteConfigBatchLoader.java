@@ -0,0 +1,222 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigBatchQuery;
+import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
+import com.google.common.escape.Escaper;
+import com.google.common.net.UrlEscapers;
+import com.google.common.reflect.TypeToken;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Loads the configs of multiple namespaces in one request, the results are taken by the remote config repositories
+ * instead of loading one by one.
+ */
+public class RemoteConfigBatchLoader {
+  private static final Logger logger = LoggerFactory.getLogger(RemoteConfigBatchLoader.class);
+  private static final Joiner.MapJoiner MAP_JOINER = Joiner.on("&").withKeyValueSeparator("=");
+  private static final Escaper queryParamEscaper = UrlEscapers.urlFormParameterEscaper();
+  private static final String JSON_CONTENT_TYPE = "application/json;charset=UTF-8";
+  //should be the same as the limit in server side
+  private static final int MAX_BATCH_NAMESPACES = 200;
+  //the prefetched configs are only valid for a short while, so that the repositories won't use stale ones
+  private static final long PREFETCHED_CONFIG_EXPIRE_TIME_IN_MILLI = TimeUnit.SECONDS.toMillis(30);
+  private final ConcurrentMap<String, PrefetchedConfig> m_prefetchedConfigs;
+  private final AtomicBoolean m_batchLoadSupported;
+  private final Random m_random;
+  private final Type m_responseType;
+  private final Gson gson;
+  private final ConfigUtil m_configUtil;
+  private final HttpUtil m_httpUtil;
+  private final ConfigServiceLocator m_serviceLocator;
+
+  public RemoteConfigBatchLoader() {
+    m_prefetchedConfigs = Maps.newConcurrentMap();
+    m_batchLoadSupported = new AtomicBoolean(true);
+    m_random = new Random();
+    m_responseType = new TypeToken<List<ApolloConfig>>() {
+    }.getType();
+    gson = new Gson();
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
+    m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
+  }
+
+  /**
+   * Load the configs of the namespaces in batch
+   *
+   * @param clientSideReleaseKeys namespace name -> client side release key, the release key could be empty if there
+   *                              is no config in client side
+   * @param remoteMessages        the messages received in long polling, could be null
+   */
+  public void prefetch(Map<String, String> clientSideReleaseKeys, ApolloNotificationMessages remoteMessages) {
+    //no need to batch a single namespace
+    if (!isBatchLoadEnabled() || clientSideReleaseKeys.size() < 2
+        || clientSideReleaseKeys.size() > MAX_BATCH_NAMESPACES) {
+      return;
+    }
+
+    Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "queryConfigs");
+    String url = null;
+    try {
+      List<ServiceDTO> configServices = m_serviceLocator.getConfigServices();
+      if (configServices.isEmpty()) {
+        throw new ApolloConfigException("No available config service");
+      }
+      //prefer the owner of the app id in the consistent hash ring
+      List<ServiceDTO> affinityConfigServices = m_serviceLocator.getAffinityConfigServices();
+      ServiceDTO configService = !affinityConfigServices.isEmpty() ? affinityConfigServices.get(0)
+          : configServices.get(m_random.nextInt(configServices.size()));
+
+      url = assembleQueryConfigsUrl(configService.getHomepageUrl(), m_configUtil.getAppId(),
+          m_configUtil.getCluster(), m_configUtil.getDataCenter());
+      transaction.addData("Url", url);
+
+      //the release keys of the namespaces are posted, which are too long for the query string
+      HttpRequest request = new HttpRequest(url);
+      request.setBody(gson.toJson(new ApolloConfigBatchQuery(clientSideReleaseKeys, remoteMessages))
+          .getBytes(Charsets.UTF_8), JSON_CONTENT_TYPE);
+
+      logger.debug("Loading configs in batch from {}", url);
+      HttpResponse<List<ApolloConfig>> response = m_httpUtil.doPost(request, m_responseType);
+      transaction.addData("StatusCode", response.getStatusCode());
+
+      if (response.getStatusCode() == 200 && response.getBody() != null) {
+        onConfigsLoaded(clientSideReleaseKeys, response.getBody());
+      }
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (ApolloConfigStatusCodeException ex) {
+      //the config service is of an old version
+      if (ex.getStatusCode() == 404) {
+        m_batchLoadSupported.set(false);
+        logger.warn("Batch config loading is not supported by config service, will load configs one by one");
+      }
+      transaction.setStatus(ex);
+    } catch (Throwable ex) {
+      //the configs would be loaded one by one
+      Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
+      logger.warn("Load configs in batch failed, url: {}, reason: {}", url, ExceptionUtil.getDetailMessage(ex));
+      transaction.setStatus(ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  /**
+   * Take the prefetched config of the namespace, each prefetched config could only be taken once
+   *
+   * @param namespace the namespace
+   * @param previous  the config in client side, could be null
+   * @return the prefetched config, or the previous config if it's not modified, or null if not prefetched
+   */
+  public ApolloConfig take(String namespace, ApolloConfig previous) {
+    PrefetchedConfig prefetched = m_prefetchedConfigs.remove(namespace);
+    if (prefetched == null || prefetched.isExpired()) {
+      return null;
+    }
+
+    if (prefetched.getConfig() != null) {
+      return prefetched.getConfig();
+    }
+
+    //not modified, only valid if the client side config is still the one sent
+    if (previous != null && previous.getReleaseKey().equals(prefetched.getClientSideReleaseKey())) {
+      return previous;
+    }
+
+    return null;
+  }
+
+  private void onConfigsLoaded(Map<String, String> clientSideReleaseKeys, List<ApolloConfig> configs) {
+    Map<String, ApolloConfig> loaded = Maps.newHashMap();
+    for (ApolloConfig config : configs) {
+      loaded.put(config.getNamespaceName(), config);
+    }
+
+    long expireTime = System.currentTimeMillis() + PREFETCHED_CONFIG_EXPIRE_TIME_IN_MILLI;
+    for (Map.Entry<String, String> entry : clientSideReleaseKeys.entrySet()) {
+      String namespace = entry.getKey();
+      ApolloConfig config = loaded.get(namespace);
+      if (config != null) {
+        m_prefetchedConfigs.put(namespace, new PrefetchedConfig(config, entry.getValue(), expireTime));
+      } else if (!Strings.isNullOrEmpty(entry.getValue())) {
+        //namespaces not returned are not modified or not found, only the not modified ones are known for sure
+        m_prefetchedConfigs.put(namespace, new PrefetchedConfig(null, entry.getValue(), expireTime));
+      }
+    }
+  }
+
+  private boolean isBatchLoadEnabled() {
+    return m_configUtil.isConfigBatchLoadEnabled() && m_batchLoadSupported.get() && !m_configUtil.isInLocalMode();
+  }
+
+  String assembleQueryConfigsUrl(String uri, String appId, String cluster, String dataCenter) {
+    Map<String, String> queryParams = Maps.newHashMap();
+    queryParams.put("appId", queryParamEscaper.escape(appId));
+    queryParams.put("cluster", queryParamEscaper.escape(cluster));
+
+    if (!Strings.isNullOrEmpty(dataCenter)) {
+      queryParams.put("dataCenter", queryParamEscaper.escape(dataCenter));
+    }
+
+    String localIp = m_configUtil.getLocalIp();
+    if (!Strings.isNullOrEmpty(localIp)) {
+      queryParams.put("ip", queryParamEscaper.escape(localIp));
+    }
+
+    if (!uri.endsWith("/")) {
+      uri += "/";
+    }
+
+    return uri + "configs/batch?" + MAP_JOINER.join(queryParams);
+  }
+
+  private static class PrefetchedConfig {
+    private final ApolloConfig config;
+    private final String clientSideReleaseKey;
+    private final long expireTime;
+
+    PrefetchedConfig(ApolloConfig config, String clientSideReleaseKey, long expireTime) {
+      this.config = config;
+      this.clientSideReleaseKey = clientSideReleaseKey;
+      this.expireTime = expireTime;
+    }
+
+    ApolloConfig getConfig() {
+      return config;
+    }
+
+    String getClientSideReleaseKey() {
+      return clientSideReleaseKey;
+    }
+
+    boolean isExpired() {
+      return System.currentTimeMillis() > expireTime;
+    }
+  }
+}
@@ -3,6 +3,7 @@ package com.ctrip.framework.apollo.internals;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
@@ -22,11 +23,14 @@ import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
 import com.ctrip.framework.apollo.core.schedule.ExponentialSchedulePolicy;
 import com.ctrip.framework.apollo.core.schedule.SchedulePolicy;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.core.utils.NotificationsCodec;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.ctrip.framework.apollo.util.http.HttpEventStreamListener;
 import com.ctrip.framework.apollo.util.http.HttpRequest;
 import com.ctrip.framework.apollo.util.http.HttpResponse;
 import com.ctrip.framework.apollo.util.http.HttpUtil;
@@ -41,6 +45,7 @@ import java.util.Random;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -55,11 +60,16 @@ public class RemoteConfigLongPollService {
   private static final long INIT_NOTIFICATION_ID = ConfigConsts.NOTIFICATION_ID_PLACEHOLDER;
   //90 seconds, should be longer than server side's long polling timeout, which is now 60 seconds
   private static final int LONG_POLLING_READ_TIMEOUT = 90 * 1000;
+  //90 seconds, should be longer than server side's notification stream heartbeat interval, which is now 30 seconds
+  private static final int NOTIFICATION_STREAM_READ_TIMEOUT = 90 * 1000;
   private final ExecutorService m_longPollingService;
   private final AtomicBoolean m_longPollingStopped;
   private SchedulePolicy m_longPollFailSchedulePolicyInSecond;
   private RateLimiter m_longPollRateLimiter;
   private final AtomicBoolean m_longPollStarted;
+  private final AtomicBoolean m_notificationStreamSupported;
+  private final AtomicBoolean m_binaryNotificationSupported;
+  private final AtomicBoolean m_notificationStreamReconnectRequired;
   private final Multimap<String, RemoteConfigRepository> m_longPollNamespaces;
   private final ConcurrentMap<String, Long> m_notifications;
   private final Map<String, ApolloNotificationMessages> m_remoteNotificationMessages;//namespaceName -> watchedKey -> notificationId
@@ -68,6 +78,7 @@ public class RemoteConfigLongPollService {
   private ConfigUtil m_configUtil;
   private HttpUtil m_httpUtil;
   private ConfigServiceLocator m_serviceLocator;
+  private RemoteConfigBatchLoader m_configBatchLoader;
 
   /**
    * Constructor.
@@ -78,6 +89,9 @@ public class RemoteConfigLongPollService {
     m_longPollingService = Executors.newSingleThreadExecutor(
         ApolloThreadFactory.create("RemoteConfigLongPollService", true));
     m_longPollStarted = new AtomicBoolean(false);
+    m_notificationStreamSupported = new AtomicBoolean(true);
+    m_binaryNotificationSupported = new AtomicBoolean(true);
+    m_notificationStreamReconnectRequired = new AtomicBoolean(false);
     m_longPollNamespaces =
         Multimaps.synchronizedSetMultimap(HashMultimap.<String, RemoteConfigRepository>create());
     m_notifications = Maps.newConcurrentMap();
@@ -88,12 +102,17 @@ public class RemoteConfigLongPollService {
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
     m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
     m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
+    m_configBatchLoader = ApolloInjector.getInstance(RemoteConfigBatchLoader.class);
     m_longPollRateLimiter = RateLimiter.create(m_configUtil.getLongPollQPS());
   }
 
   public boolean submit(String namespace, RemoteConfigRepository remoteConfigRepository) {
     boolean added = m_longPollNamespaces.put(namespace, remoteConfigRepository);
-    m_notifications.putIfAbsent(namespace, INIT_NOTIFICATION_ID);
+    boolean newNamespace = m_notifications.putIfAbsent(namespace, INIT_NOTIFICATION_ID) == null;
+    if (newNamespace) {
+      //the namespaces of the notification stream are fixed when connected
+      m_notificationStreamReconnectRequired.set(true);
+    }
     if (!m_longPollStarted.get()) {
       startLongPolling();
     }
@@ -140,6 +159,7 @@ public class RemoteConfigLongPollService {
   private void doLongPollingRefresh(String appId, String cluster, String dataCenter) {
     final Random random = new Random();
     ServiceDTO lastServiceDto = null;
+    int consecutiveFailures = 0;
     while (!m_longPollingStopped.get() && !Thread.currentThread().isInterrupted()) {
       if (!m_longPollRateLimiter.tryAcquire(5, TimeUnit.SECONDS)) {
         //wait at most 5 seconds
@@ -148,17 +168,38 @@ public class RemoteConfigLongPollService {
         } catch (InterruptedException e) {
         }
       }
-      Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "pollNotification");
+      boolean streamNotification = isNotificationStreamEnabled();
+      boolean binaryNotification = !streamNotification && isBinaryNotificationEnabled();
+      Transaction transaction = Tracer.newTransaction("Apollo.ConfigService",
+          streamNotification ? "streamNotification" : "pollNotification");
       String url = null;
       try {
         if (lastServiceDto == null) {
-          List<ServiceDTO> configServices = getConfigServices();
-          lastServiceDto = configServices.get(random.nextInt(configServices.size()));
+          lastServiceDto = selectConfigService(random, consecutiveFailures);
         }
 
+        if (streamNotification) {
+          m_notificationStreamReconnectRequired.set(false);
+          url = assembleNotificationStreamUrl(lastServiceDto.getHomepageUrl(), appId, cluster, dataCenter,
+              m_notifications);
+
+          logger.debug("Streaming notifications from {}", url);
+          transaction.addData("Url", url);
+
+          doStreamNotification(lastServiceDto, url);
+
+          //the stream is closed by server or needs to reconnect, try to load balance
+          lastServiceDto = null;
+          consecutiveFailures = 0;
+          m_longPollFailSchedulePolicyInSecond.success();
+          transaction.setStatus(Transaction.SUCCESS);
+          continue;
+        }
+
+        //the notifications are posted as the body in binary format, so they are not in the url
         url =
             assembleLongPollRefreshUrl(lastServiceDto.getHomepageUrl(), appId, cluster, dataCenter,
-                m_notifications);
+                binaryNotification ? null : m_notifications);
 
         logger.debug("Long polling from {}", url);
         HttpRequest request = new HttpRequest(url);
@@ -166,8 +207,13 @@ public class RemoteConfigLongPollService {
 
         transaction.addData("Url", url);
 
-        final HttpResponse<List<ApolloConfigNotification>> response =
-            m_httpUtil.doGet(request, m_responseType);
+        final HttpResponse<List<ApolloConfigNotification>> response;
+        if (binaryNotification) {
+          request.setBody(NotificationsCodec.encode(toNotifications(m_notifications)), NotificationsCodec.CONTENT_TYPE);
+          response = m_httpUtil.doPost(request, m_responseType);
+        } else {
+          response = m_httpUtil.doGet(request, m_responseType);
+        }
 
         logger.debug("Long polling response: {}, url: {}", response.getStatusCode(), url);
         if (response.getStatusCode() == 200 && response.getBody() != null) {
@@ -183,13 +229,48 @@ public class RemoteConfigLongPollService {
         }
 
         m_longPollFailSchedulePolicyInSecond.success();
+        consecutiveFailures = 0;
         transaction.addData("StatusCode", response.getStatusCode());
         transaction.setStatus(Transaction.SUCCESS);
+
+        //the config service is draining, reconnect to another one at the suggested time to avoid reconnect storms
+        long reconnectAfterInSecond = response.getRetryAfterInSeconds();
+        if (response.getStatusCode() == 304 && reconnectAfterInSecond >= 0) {
+          lastServiceDto = null;
+          logger.debug("Long polling is released by config service, will reconnect in {} seconds",
+              reconnectAfterInSecond);
+          if (reconnectAfterInSecond > 0) {
+            try {
+              TimeUnit.SECONDS.sleep(reconnectAfterInSecond);
+            } catch (InterruptedException ie) {
+              //ignore
+            }
+          }
+        }
       } catch (Throwable ex) {
         lastServiceDto = null;
+        consecutiveFailures++;
+        if (streamNotification && isNotificationStreamNotSupported(ex)) {
+          //the config service is of an old version, fall back to long polling
+          m_notificationStreamSupported.set(false);
+          logger.warn("Notification stream is not supported by config service, will fall back to long polling");
+          transaction.setStatus(ex);
+          continue;
+        }
+        if (binaryNotification && isBinaryNotificationNotSupported(ex)) {
+          //the config service is of an old version, fall back to the notifications in url
+          m_binaryNotificationSupported.set(false);
+          logger.warn("Binary notification is not supported by config service, will fall back to json notification");
+          transaction.setStatus(ex);
+          continue;
+        }
         Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
         transaction.setStatus(ex);
-        long sleepTimeInSecond = m_longPollFailSchedulePolicyInSecond.fail();
+        long sleepTimeInSecond = ex instanceof ApolloConfigStatusCodeException ?
+            ((ApolloConfigStatusCodeException) ex).getRetryAfterInSeconds() : -1;
+        if (sleepTimeInSecond <= 0) {
+          sleepTimeInSecond = m_longPollFailSchedulePolicyInSecond.fail();
+        }
         logger.warn(
             "Long polling failed, will retry in {} seconds. appId: {}, cluster: {}, namespaces: {}, long polling url: {}, reason: {}",
             sleepTimeInSecond, appId, cluster, assembleNamespaces(), url, ExceptionUtil.getDetailMessage(ex));
@@ -204,27 +285,141 @@ public class RemoteConfigLongPollService {
     }
   }
 
+  /**
+   * Select the owner of the app id if the consistent hash ring is published by meta service, and switch to the fallback
+   * if failed, otherwise select a random config service
+   */
+  private ServiceDTO selectConfigService(Random random, int consecutiveFailures) {
+    List<ServiceDTO> affinityConfigServices = m_serviceLocator.getAffinityConfigServices();
+    if (!affinityConfigServices.isEmpty()) {
+      return affinityConfigServices.get(consecutiveFailures % affinityConfigServices.size());
+    }
+    List<ServiceDTO> configServices = getConfigServices();
+    return configServices.get(random.nextInt(configServices.size()));
+  }
+
+  private boolean isNotificationStreamEnabled() {
+    return m_configUtil.isNotificationStreamEnabled() && m_notificationStreamSupported.get();
+  }
+
+  private boolean isNotificationStreamNotSupported(Throwable ex) {
+    return ex instanceof ApolloConfigStatusCodeException
+        && ((ApolloConfigStatusCodeException) ex).getStatusCode() == 404;
+  }
+
+  private boolean isBinaryNotificationEnabled() {
+    return m_configUtil.isBinaryNotificationEnabled() && m_binaryNotificationSupported.get();
+  }
+
+  /**
+   * Old config services reply 405 as there is no post mapping, or 415 if the content type is not recognized
+   */
+  private boolean isBinaryNotificationNotSupported(Throwable ex) {
+    if (!(ex instanceof ApolloConfigStatusCodeException)) {
+      return false;
+    }
+    int statusCode = ((ApolloConfigStatusCodeException) ex).getStatusCode();
+    return statusCode == 404 || statusCode == 405 || statusCode == 415;
+  }
+
+  private void doStreamNotification(final ServiceDTO serviceDto, String url) {
+    HttpRequest request = new HttpRequest(url);
+    request.setReadTimeout(NOTIFICATION_STREAM_READ_TIMEOUT);
+
+    m_httpUtil.doGetEventStream(request, m_responseType,
+        new HttpEventStreamListener<List<ApolloConfigNotification>>() {
+          @Override
+          public boolean onEvent(List<ApolloConfigNotification> notifications) {
+            if (notifications != null) {
+              logger.debug("Notification stream event: {}, url: {}", notifications, serviceDto.getHomepageUrl());
+              updateNotifications(notifications);
+              updateRemoteNotifications(notifications);
+              RemoteConfigLongPollService.this.notify(serviceDto, notifications);
+            }
+            return keepStreaming();
+          }
+
+          @Override
+          public boolean onHeartbeat() {
+            return keepStreaming();
+          }
+        });
+  }
+
+  private boolean keepStreaming() {
+    return !m_longPollingStopped.get() && !m_notificationStreamReconnectRequired.get()
+        && !Thread.currentThread().isInterrupted();
+  }
+
   private void notify(ServiceDTO lastServiceDto, List<ApolloConfigNotification> notifications) {
     if (notifications == null || notifications.isEmpty()) {
       return;
     }
+    Map<String, ApolloNotificationMessages> toBeNotifiedMessages = Maps.newHashMap();
+    Multimap<String, RemoteConfigRepository> toBeNotified = LinkedHashMultimap.create();
+    long fetchDelayWindow = 0;
     for (ApolloConfigNotification notification : notifications) {
+      fetchDelayWindow = Math.max(fetchDelayWindow, notification.getFetchDelayWindowInMilli());
       String namespaceName = notification.getNamespaceName();
-      //create a new list to avoid ConcurrentModificationException
-      List<RemoteConfigRepository> toBeNotified =
-          Lists.newArrayList(m_longPollNamespaces.get(namespaceName));
       ApolloNotificationMessages originalMessages = m_remoteNotificationMessages.get(namespaceName);
       ApolloNotificationMessages remoteMessages = originalMessages == null ? null : originalMessages.clone();
       //since .properties are filtered out by default, so we need to check if there is any listener for it
-      toBeNotified.addAll(m_longPollNamespaces
-          .get(String.format("%s.%s", namespaceName, ConfigFileFormat.Properties.getValue())));
-      for (RemoteConfigRepository remoteConfigRepository : toBeNotified) {
-        try {
-          remoteConfigRepository.onLongPollNotified(lastServiceDto, remoteMessages);
-        } catch (Throwable ex) {
-          Tracer.logError(ex);
+      String namespaceNameWithPropertiesSuffix =
+          String.format("%s.%s", namespaceName, ConfigFileFormat.Properties.getValue());
+      for (String toBeNotifiedNamespace : Lists.newArrayList(namespaceName, namespaceNameWithPropertiesSuffix)) {
+        //create a new list to avoid ConcurrentModificationException
+        List<RemoteConfigRepository> repositories =
+            Lists.newArrayList(m_longPollNamespaces.get(toBeNotifiedNamespace));
+        if (repositories.isEmpty()) {
+          continue;
+        }
+        toBeNotified.putAll(toBeNotifiedNamespace, repositories);
+        toBeNotifiedMessages.put(toBeNotifiedNamespace, remoteMessages);
+      }
+    }
+
+    //the server suggests to spread the fetches of all its clients in the window, the same delay is used for all the
+    //namespaces so they are still fetched together
+    long fetchDelay = fetchDelayWindow > 0 ? ThreadLocalRandom.current().nextLong(fetchDelayWindow + 1) : 0;
+    if (fetchDelay > 0) {
+      logger.debug("Will fetch the configs of {} in {} ms", toBeNotified.keySet(), fetchDelay);
+    } else {
+      prefetchConfigs(toBeNotified, toBeNotifiedMessages);
+    }
+
+    for (Map.Entry<String, RemoteConfigRepository> entry : toBeNotified.entries()) {
+      try {
+        entry.getValue().onLongPollNotified(lastServiceDto, toBeNotifiedMessages.get(entry.getKey()), fetchDelay);
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+      }
+    }
+  }
+
+  /**
+   * Load the configs of the notified namespaces in one request, so that the repositories won't load them one by one
+   */
+  private void prefetchConfigs(Multimap<String, RemoteConfigRepository> toBeNotified,
+                               Map<String, ApolloNotificationMessages> toBeNotifiedMessages) {
+    if (toBeNotified.keySet().size() < 2) {
+      return;
+    }
+    try {
+      Map<String, String> clientSideReleaseKeys = Maps.newHashMap();
+      ApolloNotificationMessages remoteMessages = new ApolloNotificationMessages();
+      for (Map.Entry<String, RemoteConfigRepository> entry : toBeNotified.entries()) {
+        String releaseKey = entry.getValue().getReleaseKey();
+        clientSideReleaseKeys.put(entry.getKey(), releaseKey == null ? "" : releaseKey);
+      }
+      for (ApolloNotificationMessages messages : toBeNotifiedMessages.values()) {
+        if (messages != null) {
+          remoteMessages.mergeFrom(messages);
         }
       }
+      m_configBatchLoader.prefetch(clientSideReleaseKeys, remoteMessages.isEmpty() ? null : remoteMessages);
+    } catch (Throwable ex) {
+      //the repositories would load the configs by themselves
+      Tracer.logError(ex);
     }
   }
 
@@ -273,11 +468,23 @@ public class RemoteConfigLongPollService {
 
   String assembleLongPollRefreshUrl(String uri, String appId, String cluster, String dataCenter,
                                     Map<String, Long> notificationsMap) {
+    return assembleNotificationsUrl(uri, "notifications/v2", appId, cluster, dataCenter, notificationsMap);
+  }
+
+  String assembleNotificationStreamUrl(String uri, String appId, String cluster, String dataCenter,
+                                       Map<String, Long> notificationsMap) {
+    return assembleNotificationsUrl(uri, "notifications/stream", appId, cluster, dataCenter, notificationsMap);
+  }
+
+  private String assembleNotificationsUrl(String uri, String path, String appId, String cluster, String dataCenter,
+                                          Map<String, Long> notificationsMap) {
     Map<String, String> queryParams = Maps.newHashMap();
     queryParams.put("appId", queryParamEscaper.escape(appId));
     queryParams.put("cluster", queryParamEscaper.escape(cluster));
-    queryParams
-        .put("notifications", queryParamEscaper.escape(assembleNotifications(notificationsMap)));
+    if (notificationsMap != null) {
+      queryParams
+          .put("notifications", queryParamEscaper.escape(assembleNotifications(notificationsMap)));
+    }
 
     if (!Strings.isNullOrEmpty(dataCenter)) {
       queryParams.put("dataCenter", queryParamEscaper.escape(dataCenter));
@@ -292,16 +499,20 @@ public class RemoteConfigLongPollService {
       uri += "/";
     }
 
-    return uri + "notifications/v2?" + params;
+    return uri + path + "?" + params;
   }
 
   String assembleNotifications(Map<String, Long> notificationsMap) {
+    return gson.toJson(toNotifications(notificationsMap));
+  }
+
+  private List<ApolloConfigNotification> toNotifications(Map<String, Long> notificationsMap) {
     List<ApolloConfigNotification> notifications = Lists.newArrayList();
     for (Map.Entry<String, Long> entry : notificationsMap.entrySet()) {
       ApolloConfigNotification notification = new ApolloConfigNotification(entry.getKey(), entry.getValue());
       notifications.add(notification);
     }
-    return gson.toJson(notifications);
+    return notifications;
   }
 
   private List<ServiceDTO> getConfigServices() {
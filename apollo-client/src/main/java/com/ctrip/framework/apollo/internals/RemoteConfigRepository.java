@@ -23,6 +23,7 @@ import com.ctrip.framework.apollo.core.dto.ServiceDTO;
 import com.ctrip.framework.apollo.core.schedule.ExponentialSchedulePolicy;
 import com.ctrip.framework.apollo.core.schedule.SchedulePolicy;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.core.utils.ChecksumUtil;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.tracer.Tracer;
@@ -55,6 +56,8 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
   private final HttpUtil m_httpUtil;
   private final ConfigUtil m_configUtil;
   private final RemoteConfigLongPollService remoteConfigLongPollService;
+  private final RemoteConfigBatchLoader remoteConfigBatchLoader;
+  private final ReleasePropagationMonitor m_releasePropagationMonitor;
   private volatile AtomicReference<ApolloConfig> m_configCache;
   private final String m_namespace;
   private final static ScheduledExecutorService m_executorService;
@@ -62,6 +65,7 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
   private final AtomicReference<ApolloNotificationMessages> m_remoteMessages;
   private final RateLimiter m_loadConfigRateLimiter;
   private final AtomicBoolean m_configNeedForceRefresh;
+  private final AtomicBoolean m_configDeltaMismatched;
   private final SchedulePolicy m_loadConfigFailSchedulePolicy;
   private final Gson gson;
 
@@ -82,10 +86,13 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
     m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
     remoteConfigLongPollService = ApolloInjector.getInstance(RemoteConfigLongPollService.class);
+    remoteConfigBatchLoader = ApolloInjector.getInstance(RemoteConfigBatchLoader.class);
+    m_releasePropagationMonitor = ApolloInjector.getInstance(ReleasePropagationMonitor.class);
     m_longPollServiceDto = new AtomicReference<>();
     m_remoteMessages = new AtomicReference<>();
     m_loadConfigRateLimiter = RateLimiter.create(m_configUtil.getLoadConfigQPS());
     m_configNeedForceRefresh = new AtomicBoolean(true);
+    m_configDeltaMismatched = new AtomicBoolean(false);
     m_loadConfigFailSchedulePolicy = new ExponentialSchedulePolicy(m_configUtil.getOnErrorRetryInterval(),
         m_configUtil.getOnErrorRetryInterval() * 8);
     gson = new Gson();
@@ -140,6 +147,7 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
       if (previous != current) {
         logger.debug("Remote Config refreshed!");
         m_configCache.set(current);
+        m_releasePropagationMonitor.onFetched(m_namespace);
         this.fireRepositoryChange(m_namespace, this.getConfig());
       }
 
@@ -164,6 +172,14 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
   }
 
   private ApolloConfig loadApolloConfig() {
+    //the config may be loaded in batch with other namespaces already
+    ApolloConfig prefetched = remoteConfigBatchLoader.take(m_namespace, m_configCache.get());
+    if (prefetched != null) {
+      Tracer.logEvent("Apollo.Client.ConfigBatchLoaded", m_namespace);
+      m_configNeedForceRefresh.set(false);
+      return prefetched;
+    }
+
     if (!m_loadConfigRateLimiter.tryAcquire(5, TimeUnit.SECONDS)) {
       //wait at most 5 seconds
       try {
@@ -184,6 +200,10 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     for (int i = 0; i < maxRetries; i++) {
       List<ServiceDTO> randomConfigServices = Lists.newLinkedList(configServices);
       Collections.shuffle(randomConfigServices);
+      //Access the owner of the app id in the consistent hash ring and its fallback first
+      List<ServiceDTO> affinityConfigServices = m_serviceLocator.getAffinityConfigServices();
+      randomConfigServices.removeAll(affinityConfigServices);
+      randomConfigServices.addAll(0, affinityConfigServices);
       //Access the server which notifies the client first
       if (m_longPollServiceDto.get() != null) {
         randomConfigServices.add(0, m_longPollServiceDto.getAndSet(null));
@@ -202,8 +222,9 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
           }
         }
 
+        ApolloConfig previous = m_configCache.get();
         url = assembleQueryConfigUrl(configService.getHomepageUrl(), appId, cluster, m_namespace,
-                dataCenter, m_remoteMessages.get(), m_configCache.get());
+                dataCenter, m_remoteMessages.get(), previous);
 
         logger.debug("Loading config from {}", url);
         HttpRequest request = new HttpRequest(url);
@@ -228,6 +249,12 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 
           logger.debug("Loaded config for {}: {}", m_namespace, result);
 
+          if (result != null && result.getBaseReleaseKey() != null) {
+            result = mergeConfigDelta(previous, result);
+          } else {
+            m_configDeltaMismatched.set(false);
+          }
+
           return result;
         } catch (ApolloConfigStatusCodeException ex) {
           ApolloConfigStatusCodeException statusCodeException = ex;
@@ -251,9 +278,17 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
           transaction.complete();
         }
 
-        // if force refresh, do normal sleep, if normal config load, do exponential sleep
-        onErrorSleepTime = m_configNeedForceRefresh.get() ? m_configUtil.getOnErrorRetryInterval() :
-            m_loadConfigFailSchedulePolicy.fail();
+        long retryAfterInSeconds = exception instanceof ApolloConfigStatusCodeException ?
+            ((ApolloConfigStatusCodeException) exception).getRetryAfterInSeconds() : -1;
+        if (retryAfterInSeconds > 0) {
+          // the server is overloaded, wait as it asks
+          onErrorSleepTime = Math.max(1, m_configUtil.getOnErrorRetryIntervalTimeUnit()
+              .convert(retryAfterInSeconds, TimeUnit.SECONDS));
+        } else {
+          // if force refresh, do normal sleep, if normal config load, do exponential sleep
+          onErrorSleepTime = m_configNeedForceRefresh.get() ? m_configUtil.getOnErrorRetryInterval() :
+              m_loadConfigFailSchedulePolicy.fail();
+        }
       }
 
     }
@@ -263,6 +298,45 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     throw new ApolloConfigException(message, exception);
   }
 
+  /**
+   * Apply the delta to the previous config, the result is verified with the checksum of the complete configurations
+   */
+  private ApolloConfig mergeConfigDelta(ApolloConfig previous, ApolloConfig delta) {
+    if (previous == null || !delta.getBaseReleaseKey().equals(previous.getReleaseKey())) {
+      m_configDeltaMismatched.set(true);
+      throw new ApolloConfigException(String.format(
+          "Config delta of namespace %s is based on release %s, which is not the local one", m_namespace,
+          delta.getBaseReleaseKey()));
+    }
+
+    Map<String, String> configurations = Maps.newHashMap();
+    if (previous.getConfigurations() != null) {
+      configurations.putAll(previous.getConfigurations());
+    }
+    if (delta.getDeletedKeys() != null) {
+      for (String deletedKey : delta.getDeletedKeys()) {
+        configurations.remove(deletedKey);
+      }
+    }
+    if (delta.getConfigurations() != null) {
+      configurations.putAll(delta.getConfigurations());
+    }
+
+    if (!ChecksumUtil.checksum(configurations).equals(delta.getChecksum())) {
+      m_configDeltaMismatched.set(true);
+      Tracer.logEvent("Apollo.Client.ConfigDeltaMismatch", STRING_JOINER.join(m_namespace, delta.getReleaseKey()));
+      throw new ApolloConfigException(String.format(
+          "Checksum of config delta mismatched, namespace: %s, release key: %s", m_namespace,
+          delta.getReleaseKey()));
+    }
+
+    ApolloConfig merged = new ApolloConfig(delta.getAppId(), delta.getCluster(), delta.getNamespaceName(),
+        delta.getReleaseKey());
+    merged.setConfigurations(configurations);
+
+    return merged;
+  }
+
   String assembleQueryConfigUrl(String uri, String appId, String cluster, String namespace,
                                 String dataCenter, ApolloNotificationMessages remoteMessages, ApolloConfig previousConfig) {
 
@@ -274,6 +348,10 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 
     if (previousConfig != null) {
       queryParams.put("releaseKey", queryParamEscaper.escape(previousConfig.getReleaseKey()));
+      //ask for the changed configurations only, unless the last delta could not be applied
+      if (!m_configDeltaMismatched.get()) {
+        queryParams.put("delta", "true");
+      }
     }
 
     if (!Strings.isNullOrEmpty(dataCenter)) {
@@ -300,20 +378,38 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     return uri + pathExpanded;
   }
 
+  /**
+   * @return the release key of the config in client side, or empty string if the config is not loaded yet
+   */
+  String getReleaseKey() {
+    ApolloConfig current = m_configCache.get();
+    return current == null ? "" : current.getReleaseKey();
+  }
+
   private void scheduleLongPollingRefresh() {
     remoteConfigLongPollService.submit(m_namespace, this);
   }
 
   public void onLongPollNotified(ServiceDTO longPollNotifiedServiceDto, ApolloNotificationMessages remoteMessages) {
+    onLongPollNotified(longPollNotifiedServiceDto, remoteMessages, 0);
+  }
+
+  /**
+   * @param fetchDelayInMilli the delay before fetching the config, so that the clients notified at the same time won't
+   *                          fetch at once
+   */
+  public void onLongPollNotified(ServiceDTO longPollNotifiedServiceDto, ApolloNotificationMessages remoteMessages,
+                                 long fetchDelayInMilli) {
     m_longPollServiceDto.set(longPollNotifiedServiceDto);
     m_remoteMessages.set(remoteMessages);
-    m_executorService.submit(new Runnable() {
+    m_releasePropagationMonitor.onNotified(m_namespace, remoteMessages);
+    m_executorService.schedule(new Runnable() {
       @Override
       public void run() {
         m_configNeedForceRefresh.set(true);
         trySync();
       }
-    });
+    }, fetchDelayInMilli, TimeUnit.MILLISECONDS);
   }
 
   private List<ServiceDTO> getConfigServices() {
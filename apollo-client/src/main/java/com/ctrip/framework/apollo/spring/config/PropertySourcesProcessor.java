@@ -66,6 +66,9 @@ public class PropertySourcesProcessor implements BeanFactoryPostProcessor, Envir
     }
     CompositePropertySource composite = new CompositePropertySource(PropertySourcesConstants.APOLLO_PROPERTY_SOURCE_NAME);
 
+    //load the configs of all the namespaces in one request
+    ConfigService.preloadConfigs(Sets.newLinkedHashSet(NAMESPACE_NAMES.values()));
+
     //sort by order asc
     ImmutableSortedSet<Integer> orders = ImmutableSortedSet.copyOf(NAMESPACE_NAMES.keySet());
     Iterator<Integer> iterator = orders.iterator();
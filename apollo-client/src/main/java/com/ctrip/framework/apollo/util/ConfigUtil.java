@@ -35,6 +35,9 @@ public class ConfigUtil {
   private TimeUnit configCacheExpireTimeUnit = TimeUnit.MINUTES;//1 minute
   private long longPollingInitialDelayInMills = 2000;//2 seconds
   private boolean autoUpdateInjectedSpringProperties = true;
+  private boolean notificationStreamEnabled = false;
+  private boolean binaryNotificationEnabled = false;
+  private boolean configBatchLoadEnabled = true;
   private final RateLimiter warnLogRateLimiter;
 
   public ConfigUtil() {
@@ -47,6 +50,9 @@ public class ConfigUtil {
     initMaxConfigCacheSize();
     initLongPollingInitialDelayInMills();
     initAutoUpdateInjectedSpringProperties();
+    initNotificationStreamEnabled();
+    initBinaryNotificationEnabled();
+    initConfigBatchLoadEnabled();
   }
 
   /**
@@ -301,4 +307,61 @@ public class ConfigUtil {
   public boolean isAutoUpdateInjectedSpringPropertiesEnabled() {
     return autoUpdateInjectedSpringProperties;
   }
+
+  private void initNotificationStreamEnabled() {
+    // 1. Get from System Property
+    String enableNotificationStream = System.getProperty("apollo.notificationStreamEnabled");
+    if (Strings.isNullOrEmpty(enableNotificationStream)) {
+      // 2. Get from app.properties
+      enableNotificationStream = Foundation.app().getProperty("apollo.notificationStreamEnabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableNotificationStream)) {
+      notificationStreamEnabled = Boolean.parseBoolean(enableNotificationStream.trim());
+    }
+  }
+
+  /**
+   * Whether to receive the notifications via the server-sent events stream instead of long polling
+   */
+  public boolean isNotificationStreamEnabled() {
+    return notificationStreamEnabled;
+  }
+
+  private void initBinaryNotificationEnabled() {
+    // 1. Get from System Property
+    String enableBinaryNotification = System.getProperty("apollo.binaryNotificationEnabled");
+    if (Strings.isNullOrEmpty(enableBinaryNotification)) {
+      // 2. Get from app.properties
+      enableBinaryNotification = Foundation.app().getProperty("apollo.binaryNotificationEnabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableBinaryNotification)) {
+      binaryNotificationEnabled = Boolean.parseBoolean(enableBinaryNotification.trim());
+    }
+  }
+
+  /**
+   * Whether to post the notifications of long polling in the compact binary format instead of the json in the url
+   */
+  public boolean isBinaryNotificationEnabled() {
+    return binaryNotificationEnabled;
+  }
+
+  private void initConfigBatchLoadEnabled() {
+    // 1. Get from System Property
+    String enableConfigBatchLoad = System.getProperty("apollo.configBatchLoadEnabled");
+    if (Strings.isNullOrEmpty(enableConfigBatchLoad)) {
+      // 2. Get from app.properties
+      enableConfigBatchLoad = Foundation.app().getProperty("apollo.configBatchLoadEnabled", null);
+    }
+    if (!Strings.isNullOrEmpty(enableConfigBatchLoad)) {
+      configBatchLoadEnabled = Boolean.parseBoolean(enableConfigBatchLoad.trim());
+    }
+  }
+
+  /**
+   * Whether to load the configs of multiple namespaces in one request, e.g. when starting up
+   */
+  public boolean isConfigBatchLoadEnabled() {
+    return configBatchLoadEnabled;
+  }
 }
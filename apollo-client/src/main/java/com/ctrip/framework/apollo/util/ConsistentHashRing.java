@@ -0,0 +1,80 @@
+package com.ctrip.framework.apollo.util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring with virtual nodes, the more virtual nodes a node has, the larger share of keys it owns.
+ * <p>
+ * The ring only depends on the node keys and their virtual nodes, so all the clients build the same ring and route a key
+ * to the same node, and adding or removing a node only moves the keys owned by it.
+ */
+public class ConsistentHashRing<T> {
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+  private static final String VIRTUAL_NODE_SEPARATOR = "#";
+
+  private final NavigableMap<Long, String> m_ring = new TreeMap<>();
+  private final Map<String, T> m_nodes = Maps.newHashMap();
+
+  /**
+   * @param nodeKey      the unique and stable key of the node
+   * @param node         the node
+   * @param virtualNodes the number of virtual nodes, 0 means the node owns no keys
+   */
+  public void addNode(String nodeKey, T node, int virtualNodes) {
+    m_nodes.put(nodeKey, node);
+    for (int i = 0; i < virtualNodes; i++) {
+      long hash = hash(nodeKey + VIRTUAL_NODE_SEPARATOR + i);
+      String existing = m_ring.get(hash);
+      //keep the smaller node key in case of collision, so that the ring is independent of the order of nodes
+      if (existing == null || nodeKey.compareTo(existing) < 0) {
+        m_ring.put(hash, nodeKey);
+      }
+    }
+  }
+
+  public boolean isEmpty() {
+    return m_ring.isEmpty();
+  }
+
+  /**
+   * @param key   the key to route
+   * @param count the max number of nodes
+   * @return the distinct nodes found clockwise from the key, the first is the owner and the rest are the fallbacks
+   */
+  public List<T> route(String key, int count) {
+    List<T> result = Lists.newArrayListWithCapacity(count);
+    if (m_ring.isEmpty()) {
+      return result;
+    }
+    List<String> nodeKeys = Lists.newArrayListWithCapacity(count);
+    long hash = hash(key);
+    collect(m_ring.tailMap(hash, true).values().iterator(), nodeKeys, count);
+    collect(m_ring.headMap(hash, false).values().iterator(), nodeKeys, count);
+    for (String nodeKey : nodeKeys) {
+      result.add(m_nodes.get(nodeKey));
+    }
+    return result;
+  }
+
+  private void collect(Iterator<String> iterator, List<String> nodeKeys, int count) {
+    while (nodeKeys.size() < count && iterator.hasNext()) {
+      String nodeKey = iterator.next();
+      if (!nodeKeys.contains(nodeKey)) {
+        nodeKeys.add(nodeKey);
+      }
+    }
+  }
+
+  private static long hash(String value) {
+    return HASH_FUNCTION.hashString(value, StandardCharsets.UTF_8).asLong();
+  }
+}
@@ -0,0 +1,22 @@
+package com.ctrip.framework.apollo.util.http;
+
+/**
+ * Listener of the server-sent events received via {@link HttpUtil#doGetEventStream}
+ */
+public interface HttpEventStreamListener<T> {
+
+  /**
+   * Invoked when an event is received
+   *
+   * @param event the event data
+   * @return whether to keep reading the stream
+   */
+  boolean onEvent(T event);
+
+  /**
+   * Invoked when a heartbeat comment is received
+   *
+   * @return whether to keep reading the stream
+   */
+  boolean onHeartbeat();
+}
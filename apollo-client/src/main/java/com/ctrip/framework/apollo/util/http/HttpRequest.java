@@ -7,6 +7,9 @@ public class HttpRequest {
   private String m_url;
   private int m_connectTimeout;
   private int m_readTimeout;
+  private byte[] m_body;
+  private String m_contentType;
+  private String m_ifNoneMatch;
 
   /**
    * Create the request for the url.
@@ -37,4 +40,34 @@ public class HttpRequest {
   public void setReadTimeout(int readTimeout) {
     this.m_readTimeout = readTimeout;
   }
+
+  public byte[] getBody() {
+    return m_body;
+  }
+
+  public String getContentType() {
+    return m_contentType;
+  }
+
+  /**
+   * Set the body of the request, which is sent by post operation.
+   * @param body the body
+   * @param contentType the content type of the body
+   */
+  public void setBody(byte[] body, String contentType) {
+    this.m_body = body;
+    this.m_contentType = contentType;
+  }
+
+  public String getIfNoneMatch() {
+    return m_ifNoneMatch;
+  }
+
+  /**
+   * Set the entity tag of the cached response, so that server could respond with 304 if it's not changed.
+   * @param ifNoneMatch the entity tag
+   */
+  public void setIfNoneMatch(String ifNoneMatch) {
+    this.m_ifNoneMatch = ifNoneMatch;
+  }
 }
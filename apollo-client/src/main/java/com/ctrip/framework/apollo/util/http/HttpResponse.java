@@ -6,10 +6,22 @@ package com.ctrip.framework.apollo.util.http;
 public class HttpResponse<T> {
   private final int m_statusCode;
   private final T m_body;
+  private final long m_retryAfterInSeconds;
+  private final String m_eTag;
 
   public HttpResponse(int statusCode, T body) {
+    this(statusCode, body, -1);
+  }
+
+  public HttpResponse(int statusCode, T body, long retryAfterInSeconds) {
+    this(statusCode, body, retryAfterInSeconds, null);
+  }
+
+  public HttpResponse(int statusCode, T body, long retryAfterInSeconds, String eTag) {
     this.m_statusCode = statusCode;
     this.m_body = body;
+    this.m_retryAfterInSeconds = retryAfterInSeconds;
+    this.m_eTag = eTag;
   }
 
   public int getStatusCode() {
@@ -19,4 +31,18 @@ public class HttpResponse<T> {
   public T getBody() {
     return m_body;
   }
+
+  /**
+   * @return the seconds of Retry-After suggested by server, or -1 if it's absent
+   */
+  public long getRetryAfterInSeconds() {
+    return m_retryAfterInSeconds;
+  }
+
+  /**
+   * @return the entity tag of the response, or null if it's absent
+   */
+  public String getETag() {
+    return m_eTag;
+  }
 }
@@ -5,20 +5,27 @@ import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.common.io.CharStreams;
 import com.google.gson.Gson;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public class HttpUtil {
+  private static final String EVENT_STREAM_CONTENT_TYPE = "text/event-stream";
+  private static final String EVENT_STREAM_DATA_FIELD = "data:";
+  private static final String GZIP_ENCODING = "gzip";
   private ConfigUtil m_configUtil;
   private Gson gson;
 
@@ -46,7 +53,7 @@ public class HttpUtil {
       }
     };
 
-    return doGetWithSerializeFunction(httpRequest, convertResponse);
+    return doRequestWithSerializeFunction(httpRequest, convertResponse);
   }
 
   /**
@@ -65,39 +72,47 @@ public class HttpUtil {
       }
     };
 
-    return doGetWithSerializeFunction(httpRequest, convertResponse);
+    return doRequestWithSerializeFunction(httpRequest, convertResponse);
   }
 
-  private <T> HttpResponse<T> doGetWithSerializeFunction(HttpRequest httpRequest,
-                                                         Function<String, T> serializeFunction) {
+  /**
+   * Do post operation for the http request with body.
+   *
+   * @param httpRequest  the request, whose body must be set
+   * @param responseType the response type
+   * @return the response
+   * @throws ApolloConfigException if any error happened or response code is neither 200 nor 304
+   */
+  public <T> HttpResponse<T> doPost(HttpRequest httpRequest, final Type responseType) {
+    Preconditions.checkArgument(httpRequest.getBody() != null, "Body of the post request must be set");
+    Function<String, T> convertResponse = new Function<String, T>() {
+      @Override
+      public T apply(String input) {
+        return gson.fromJson(input, responseType);
+      }
+    };
+
+    return doRequestWithSerializeFunction(httpRequest, convertResponse);
+  }
+
+  private <T> HttpResponse<T> doRequestWithSerializeFunction(HttpRequest httpRequest,
+                                                             Function<String, T> serializeFunction) {
     InputStreamReader isr = null;
     InputStreamReader esr = null;
     int statusCode;
     try {
-      HttpURLConnection conn = (HttpURLConnection) new URL(httpRequest.getUrl()).openConnection();
-
-      conn.setRequestMethod("GET");
-
-      int connectTimeout = httpRequest.getConnectTimeout();
-      if (connectTimeout < 0) {
-        connectTimeout = m_configUtil.getConnectTimeout();
-      }
-
-      int readTimeout = httpRequest.getReadTimeout();
-      if (readTimeout < 0) {
-        readTimeout = m_configUtil.getReadTimeout();
-      }
-
-      conn.setConnectTimeout(connectTimeout);
-      conn.setReadTimeout(readTimeout);
+      HttpURLConnection conn = openConnection(httpRequest);
+      //large configs are served precompressed if gzip is accepted
+      conn.setRequestProperty("Accept-Encoding", GZIP_ENCODING);
 
       conn.connect();
+      writeBodyIfNecessary(conn, httpRequest);
 
       statusCode = conn.getResponseCode();
       String response;
 
       try {
-        isr = new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8);
+        isr = new InputStreamReader(decodeIfNecessary(conn, conn.getInputStream()), StandardCharsets.UTF_8);
         response = CharStreams.toString(isr);
       } catch (IOException ex) {
         /**
@@ -121,21 +136,22 @@ public class HttpUtil {
           throw ex;
         } else {
           // for status codes like 404, IOException is expected when calling conn.getInputStream()
-          throw new ApolloConfigStatusCodeException(statusCode, ex);
+          throw new ApolloConfigStatusCodeException(statusCode, ex, parseRetryAfter(conn));
         }
       }
 
       if (statusCode == 200) {
-        return new HttpResponse<>(statusCode, serializeFunction.apply(response));
+        return new HttpResponse<>(statusCode, serializeFunction.apply(response), -1, conn.getHeaderField("ETag"));
       }
 
       if (statusCode == 304) {
-        return new HttpResponse<>(statusCode, null);
+        //the config service may suggest when to reconnect, e.g. when it's shutting down
+        return new HttpResponse<>(statusCode, null, parseRetryAfter(conn), conn.getHeaderField("ETag"));
       }
     } catch (ApolloConfigStatusCodeException ex) {
       throw ex;
     } catch (Throwable ex) {
-      throw new ApolloConfigException("Could not complete get operation", ex);
+      throw new ApolloConfigException(String.format("Could not complete %s operation", methodOf(httpRequest)), ex);
     } finally {
       if (isr != null) {
         try {
@@ -155,7 +171,150 @@ public class HttpUtil {
     }
 
     throw new ApolloConfigStatusCodeException(statusCode,
-        String.format("Get operation failed for %s", httpRequest.getUrl()));
+        String.format("%s operation failed for %s", methodOf(httpRequest), httpRequest.getUrl()));
+  }
+
+  /**
+   * Do get operation for the server-sent events stream, the events are read until the stream is closed by server or
+   * the listener asks to stop.
+   *
+   * @param httpRequest the request
+   * @param eventType   the type of the event data
+   * @param listener    the listener of the events
+   * @throws ApolloConfigException if any error happened or response code is not 200
+   */
+  public <T> void doGetEventStream(HttpRequest httpRequest, Type eventType, HttpEventStreamListener<T> listener) {
+    HttpURLConnection conn = null;
+    BufferedReader reader = null;
+    int statusCode;
+    try {
+      conn = openConnection(httpRequest);
+      conn.setRequestProperty("Accept", EVENT_STREAM_CONTENT_TYPE);
+
+      conn.connect();
+
+      statusCode = conn.getResponseCode();
+      if (statusCode != 200) {
+        throw new ApolloConfigStatusCodeException(statusCode,
+            String.format("Get event stream failed for %s", httpRequest.getUrl()), parseRetryAfter(conn));
+      }
+
+      reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8));
+      StringBuilder data = new StringBuilder();
+      String line;
+      boolean keepReading = true;
+      while (keepReading && (line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          //an empty line dispatches the event
+          if (data.length() > 0) {
+            T event = gson.fromJson(data.toString(), eventType);
+            data.setLength(0);
+            keepReading = listener.onEvent(event);
+          }
+          continue;
+        }
+        if (line.startsWith(":")) {
+          //comment lines are sent as heartbeats
+          keepReading = listener.onHeartbeat();
+          continue;
+        }
+        if (line.startsWith(EVENT_STREAM_DATA_FIELD)) {
+          if (data.length() > 0) {
+            data.append('\n');
+          }
+          data.append(line.substring(EVENT_STREAM_DATA_FIELD.length()).trim());
+        }
+        //other fields, e.g. event, id and retry, are not used
+      }
+    } catch (ApolloConfigStatusCodeException ex) {
+      throw ex;
+    } catch (Throwable ex) {
+      throw new ApolloConfigException("Could not complete get event stream operation", ex);
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException ex) {
+          // ignore
+        }
+      }
+      if (conn != null) {
+        //the stream is not reusable
+        conn.disconnect();
+      }
+    }
+  }
+
+  /**
+   * HttpURLConnection does not decode the content, so the gzip encoded response is decoded here, responses without
+   * body, e.g. 304, are never decoded
+   */
+  private InputStream decodeIfNecessary(HttpURLConnection conn, InputStream inputStream) throws IOException {
+    if (conn.getResponseCode() == 200 && GZIP_ENCODING.equalsIgnoreCase(conn.getContentEncoding())) {
+      return new GZIPInputStream(inputStream);
+    }
+    return inputStream;
+  }
+
+  /**
+   * @return the seconds of Retry-After, or -1 if it's absent or not in seconds, e.g. http date
+   */
+  private long parseRetryAfter(HttpURLConnection conn) {
+    String retryAfter = conn.getHeaderField("Retry-After");
+    if (retryAfter == null) {
+      return -1;
+    }
+    try {
+      return Math.max(0, Long.parseLong(retryAfter.trim()));
+    } catch (NumberFormatException ex) {
+      return -1;
+    }
+  }
+
+  private void writeBodyIfNecessary(HttpURLConnection conn, HttpRequest httpRequest) throws IOException {
+    if (httpRequest.getBody() == null) {
+      return;
+    }
+    OutputStream outputStream = conn.getOutputStream();
+    try {
+      outputStream.write(httpRequest.getBody());
+    } finally {
+      outputStream.close();
+    }
+  }
+
+  private String methodOf(HttpRequest httpRequest) {
+    return httpRequest.getBody() == null ? "GET" : "POST";
+  }
+
+  private HttpURLConnection openConnection(HttpRequest httpRequest) throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) new URL(httpRequest.getUrl()).openConnection();
+
+    conn.setRequestMethod(methodOf(httpRequest));
+    if (httpRequest.getBody() != null) {
+      conn.setDoOutput(true);
+      conn.setFixedLengthStreamingMode(httpRequest.getBody().length);
+      conn.setRequestProperty("Content-Type", httpRequest.getContentType());
+    }
+
+    int connectTimeout = httpRequest.getConnectTimeout();
+    if (connectTimeout < 0) {
+      connectTimeout = m_configUtil.getConnectTimeout();
+    }
+
+    int readTimeout = httpRequest.getReadTimeout();
+    if (readTimeout < 0) {
+      readTimeout = m_configUtil.getReadTimeout();
+    }
+
+    conn.setConnectTimeout(connectTimeout);
+    conn.setReadTimeout(readTimeout);
+
+    if (httpRequest.getIfNoneMatch() != null) {
+      conn.setRequestProperty("If-None-Match", httpRequest.getIfNoneMatch());
+    }
+
+    return conn;
   }
 
 }
@@ -1,17 +1,36 @@
 package com.ctrip.framework.apollo.internals;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import com.ctrip.framework.apollo.build.MockInjector;
 import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.lang.reflect.Type;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
 
 public class ConfigServiceLocatorTest {
 
   @After
   public void tearDown() throws Exception {
     System.clearProperty("apollo.configService");
+    MockInjector.reset();
   }
 
   @Test
@@ -30,4 +49,76 @@ public class ConfigServiceLocatorTest {
     assertEquals(someConfigServiceUrl.trim(), result.get(0).getHomepageUrl());
     assertEquals(anotherConfigServiceUrl.trim(), result.get(1).getHomepageUrl());
   }
+
+  @Test
+  public void testGetAffinityConfigServicesWithSystemProperty() throws Exception {
+    System.setProperty("apollo.configService", "someConfigServiceUrl,anotherConfigServiceUrl");
+
+    ConfigServiceLocator configServiceLocator = new ConfigServiceLocator();
+
+    assertTrue(configServiceLocator.getAffinityConfigServices().isEmpty());
+  }
+
+  @Test
+  public void testGetAffinityConfigServicesWithHashRingPublished() throws Exception {
+    HttpUtil httpUtil = mock(HttpUtil.class);
+    ConfigUtil configUtil = mock(ConfigUtil.class);
+    MockInjector.setInstance(HttpUtil.class, httpUtil);
+    MockInjector.setInstance(ConfigUtil.class, configUtil);
+
+    ServiceDTO someService = assembleServiceDTO("someInstance", 100);
+    ServiceDTO anotherService = assembleServiceDTO("anotherInstance", 100);
+    ServiceDTO offlineService = assembleServiceDTO("offlineInstance", 0);
+
+    when(configUtil.getAppId()).thenReturn("someAppId");
+    when(configUtil.getMetaServerDomainName()).thenReturn("http://someMetaServer");
+    when(configUtil.getRefreshInterval()).thenReturn(5);
+    when(configUtil.getRefreshIntervalTimeUnit()).thenReturn(TimeUnit.MINUTES);
+    when(httpUtil.<List<ServiceDTO>>doGet(any(HttpRequest.class), any(Type.class))).thenReturn(
+        new HttpResponse<List<ServiceDTO>>(200, Lists.newArrayList(someService, anotherService, offlineService)));
+
+    ConfigServiceLocator configServiceLocator = new ConfigServiceLocator();
+
+    List<ServiceDTO> result = configServiceLocator.getAffinityConfigServices();
+
+    assertEquals(2, result.size());
+    assertEquals(Sets.newHashSet(someService, anotherService), Sets.newHashSet(result));
+  }
+
+  @Test
+  public void testUpdateConfigServicesWithNotModified() throws Exception {
+    HttpUtil httpUtil = mock(HttpUtil.class);
+    ConfigUtil configUtil = mock(ConfigUtil.class);
+    MockInjector.setInstance(HttpUtil.class, httpUtil);
+    MockInjector.setInstance(ConfigUtil.class, configUtil);
+
+    String someETag = "\"someETag\"";
+    ServiceDTO someService = assembleServiceDTO("someInstance", 100);
+
+    when(configUtil.getAppId()).thenReturn("someAppId");
+    when(configUtil.getMetaServerDomainName()).thenReturn("http://someMetaServer");
+    when(configUtil.getRefreshInterval()).thenReturn(5);
+    when(configUtil.getRefreshIntervalTimeUnit()).thenReturn(TimeUnit.MINUTES);
+    when(httpUtil.<List<ServiceDTO>>doGet(any(HttpRequest.class), any(Type.class))).thenReturn(
+        new HttpResponse<List<ServiceDTO>>(200, Lists.newArrayList(someService), -1, someETag),
+        new HttpResponse<List<ServiceDTO>>(304, null, -1, someETag));
+
+    ConfigServiceLocator configServiceLocator = new ConfigServiceLocator();
+
+    ReflectionTestUtils.invokeMethod(configServiceLocator, "tryUpdateConfigServices");
+
+    ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpUtil, times(2)).doGet(requestCaptor.capture(), any(Type.class));
+    assertNull(requestCaptor.getAllValues().get(0).getIfNoneMatch());
+    assertEquals(someETag, requestCaptor.getAllValues().get(1).getIfNoneMatch());
+    assertEquals(Lists.newArrayList(someService), configServiceLocator.getConfigServices());
+  }
+
+  private ServiceDTO assembleServiceDTO(String instanceId, int virtualNodes) {
+    ServiceDTO serviceDTO = new ServiceDTO();
+    serviceDTO.setInstanceId(instanceId);
+    serviceDTO.setHomepageUrl("http://" + instanceId);
+    serviceDTO.setVirtualNodes(virtualNodes);
+    return serviceDTO;
+  }
 }
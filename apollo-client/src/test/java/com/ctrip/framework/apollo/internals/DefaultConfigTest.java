@@ -57,6 +57,7 @@ public class DefaultConfigTest {
   public void setUp() throws Exception {
     MockInjector.reset();
     MockInjector.setInstance(ConfigUtil.class, new MockConfigUtil());
+    MockInjector.setInstance(ReleasePropagationMonitor.class, new ReleasePropagationMonitor());
 
     someResourceDir = new File(ClassLoaderUtil.getClassPath() + "/META-INF/config");
     someResourceDir.mkdirs();
@@ -0,0 +1,73 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+
+import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.internals.ReleasePropagationMonitor.Stage;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReleasePropagationMonitorTest {
+  private ReleasePropagationMonitor releasePropagationMonitor;
+  private String someNamespace;
+
+  @Before
+  public void setUp() throws Exception {
+    releasePropagationMonitor = new ReleasePropagationMonitor();
+    someNamespace = "someNamespace";
+  }
+
+  @Test
+  public void testRecordPropagation() throws Exception {
+    releasePropagationMonitor.onNotified(someNamespace, assembleMessages(1, 2));
+    releasePropagationMonitor.onFetched(someNamespace);
+    releasePropagationMonitor.onListenersCompleted(someNamespace);
+
+    assertEquals(1, releasePropagationMonitor.getLatency(Stage.FETCHED).getCount());
+    assertEquals(1, releasePropagationMonitor.getLatency(Stage.LISTENERS_COMPLETED).getCount());
+  }
+
+  @Test
+  public void testRecordFetchedOnlyOnce() throws Exception {
+    releasePropagationMonitor.onNotified(someNamespace, assembleMessages(1));
+    releasePropagationMonitor.onFetched(someNamespace);
+    releasePropagationMonitor.onFetched(someNamespace);
+    releasePropagationMonitor.onListenersCompleted(someNamespace);
+    releasePropagationMonitor.onListenersCompleted(someNamespace);
+
+    assertEquals(1, releasePropagationMonitor.getLatency(Stage.FETCHED).getCount());
+    assertEquals(1, releasePropagationMonitor.getLatency(Stage.LISTENERS_COMPLETED).getCount());
+  }
+
+  @Test
+  public void testIgnoreListenersCompletedBeforeFetched() throws Exception {
+    releasePropagationMonitor.onNotified(someNamespace, assembleMessages(1));
+    releasePropagationMonitor.onListenersCompleted(someNamespace);
+
+    assertEquals(0, releasePropagationMonitor.getLatency(Stage.LISTENERS_COMPLETED).getCount());
+
+    releasePropagationMonitor.onFetched(someNamespace);
+    releasePropagationMonitor.onListenersCompleted(someNamespace);
+
+    assertEquals(1, releasePropagationMonitor.getLatency(Stage.LISTENERS_COMPLETED).getCount());
+  }
+
+  @Test
+  public void testIgnoreChangesNotNotified() throws Exception {
+    releasePropagationMonitor.onNotified(someNamespace, null);
+    releasePropagationMonitor.onFetched(someNamespace);
+    releasePropagationMonitor.onFetched("anotherNamespace");
+    releasePropagationMonitor.onListenersCompleted(someNamespace);
+
+    assertEquals(0, releasePropagationMonitor.getLatency(Stage.FETCHED).getCount());
+    assertEquals(0, releasePropagationMonitor.getLatency(Stage.LISTENERS_COMPLETED).getCount());
+  }
+
+  private ApolloNotificationMessages assembleMessages(long... messageIds) {
+    ApolloNotificationMessages messages = new ApolloNotificationMessages();
+    for (int i = 0; i < messageIds.length; i++) {
+      messages.put("someKey" + i, messageIds[i]);
+    }
+    return messages;
+  }
+}
@@ -0,0 +1,141 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigBatchQuery;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RemoteConfigBatchLoaderTest {
+  @Mock
+  private HttpUtil httpUtil;
+  @Mock
+  private ConfigServiceLocator configServiceLocator;
+  @Mock
+  private HttpResponse<List<ApolloConfig>> someResponse;
+  private RemoteConfigBatchLoader configBatchLoader;
+  private String someServerUrl;
+  private String someNamespace;
+  private String anotherNamespace;
+
+  @Before
+  public void setUp() throws Exception {
+    MockInjector.reset();
+
+    someServerUrl = "http://someServer";
+    ServiceDTO serviceDTO = mock(ServiceDTO.class);
+    when(serviceDTO.getHomepageUrl()).thenReturn(someServerUrl);
+    when(configServiceLocator.getConfigServices()).thenReturn(Lists.newArrayList(serviceDTO));
+
+    MockInjector.setInstance(HttpUtil.class, httpUtil);
+    MockInjector.setInstance(ConfigServiceLocator.class, configServiceLocator);
+    MockInjector.setInstance(ConfigUtil.class, new RemoteConfigRepositoryTest.MockConfigUtil());
+
+    configBatchLoader = new RemoteConfigBatchLoader();
+
+    someNamespace = "someNamespace";
+    anotherNamespace = "anotherNamespace";
+  }
+
+  @Test
+  public void testPrefetchAndTake() throws Exception {
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+    ApolloConfig someConfig = new ApolloConfig("someApp", "someCluster", someNamespace, "someNewReleaseKey");
+    ApolloConfig anotherConfig = new ApolloConfig("someApp", "someCluster", anotherNamespace, anotherReleaseKey);
+
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(Lists.newArrayList(someConfig));
+    when(httpUtil.<List<ApolloConfig>>doPost(any(HttpRequest.class), any(Type.class))).thenReturn(someResponse);
+
+    configBatchLoader.prefetch(ImmutableMap.of(someNamespace, someReleaseKey, anotherNamespace, anotherReleaseKey),
+        null);
+
+    ArgumentCaptor<HttpRequest> requestCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpUtil, times(1)).doPost(requestCaptor.capture(), any(Type.class));
+    String url = requestCaptor.getValue().getUrl();
+    assertTrue(url.startsWith(someServerUrl + "/configs/batch?"));
+    assertTrue(url.contains("appId=someApp"));
+    assertTrue(url.contains("cluster=someCluster"));
+    //the release keys are posted instead of in the url
+    assertFalse(url.contains(someReleaseKey));
+    ApolloConfigBatchQuery query = new Gson().fromJson(
+        new String(requestCaptor.getValue().getBody(), Charsets.UTF_8), ApolloConfigBatchQuery.class);
+    assertEquals(ImmutableMap.of(someNamespace, someReleaseKey, anotherNamespace, anotherReleaseKey),
+        query.getNamespaces());
+
+    assertSame(someConfig, configBatchLoader.take(someNamespace, null));
+    //not modified
+    assertSame(anotherConfig, configBatchLoader.take(anotherNamespace, anotherConfig));
+    //could only be taken once
+    assertNull(configBatchLoader.take(someNamespace, null));
+  }
+
+  @Test
+  public void testPrefetchNotModifiedWithClientSideConfigChanged() throws Exception {
+    String someReleaseKey = "someReleaseKey";
+    ApolloConfig someConfig = new ApolloConfig("someApp", "someCluster", someNamespace, "someNewReleaseKey");
+
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(Lists.<ApolloConfig>newArrayList());
+    when(httpUtil.<List<ApolloConfig>>doPost(any(HttpRequest.class), any(Type.class))).thenReturn(someResponse);
+
+    configBatchLoader.prefetch(ImmutableMap.of(someNamespace, someReleaseKey, anotherNamespace, ""), null);
+
+    assertNull(configBatchLoader.take(someNamespace, someConfig));
+    assertNull(configBatchLoader.take(anotherNamespace, null));
+  }
+
+  @Test
+  public void testPrefetchWithBatchNotSupported() throws Exception {
+    Map<String, String> clientSideReleaseKeys = ImmutableMap.of(someNamespace, "", anotherNamespace, "");
+
+    when(httpUtil.doPost(any(HttpRequest.class), any(Type.class)))
+        .thenThrow(new ApolloConfigStatusCodeException(404, "some message"));
+
+    configBatchLoader.prefetch(clientSideReleaseKeys, null);
+    configBatchLoader.prefetch(clientSideReleaseKeys, null);
+
+    verify(httpUtil, times(1)).doPost(any(HttpRequest.class), any(Type.class));
+    assertNull(configBatchLoader.take(someNamespace, null));
+  }
+
+  @Test
+  public void testPrefetchSingleNamespace() throws Exception {
+    configBatchLoader.prefetch(ImmutableMap.of(someNamespace, ""), null);
+
+    verify(httpUtil, times(0)).doPost(any(HttpRequest.class), any(Type.class));
+    assertNull(configBatchLoader.take(someNamespace, null));
+  }
+}
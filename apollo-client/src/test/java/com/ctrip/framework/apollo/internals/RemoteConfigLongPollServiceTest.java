@@ -1,10 +1,14 @@
 package com.ctrip.framework.apollo.internals;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -30,10 +34,15 @@ import org.mockito.stubbing.Answer;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.core.utils.NotificationsCodec;
+import com.ctrip.framework.apollo.core.utils.NotificationsCodec.EncodedNotifications;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.http.HttpEventStreamListener;
 import com.ctrip.framework.apollo.util.http.HttpRequest;
 import com.ctrip.framework.apollo.util.http.HttpResponse;
 import com.ctrip.framework.apollo.util.http.HttpUtil;
@@ -53,6 +62,8 @@ public class RemoteConfigLongPollServiceTest {
   private HttpUtil httpUtil;
   @Mock
   private ConfigServiceLocator configServiceLocator;
+  @Mock
+  private RemoteConfigBatchLoader configBatchLoader;
   private Type responseType;
 
   private static String someServerUrl;
@@ -72,6 +83,7 @@ public class RemoteConfigLongPollServiceTest {
     MockInjector.setInstance(ConfigServiceLocator.class, configServiceLocator);
 
     MockInjector.setInstance(ConfigUtil.class, new MockConfigUtil());
+    MockInjector.setInstance(RemoteConfigBatchLoader.class, configBatchLoader);
 
     remoteConfigLongPollService = new RemoteConfigLongPollService();
 
@@ -117,7 +129,7 @@ public class RemoteConfigLongPollServiceTest {
 
     remoteConfigLongPollService.stopLongPollingRefresh();
 
-    verify(someRepository, never()).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+    verify(someRepository, never()).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class), anyLong());
   }
 
   @Test
@@ -160,7 +172,7 @@ public class RemoteConfigLongPollServiceTest {
         onNotified.set(true);
         return null;
       }
-    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class), anyLong());
 
     remoteConfigLongPollService.submit(someNamespace, someRepository);
 
@@ -169,7 +181,7 @@ public class RemoteConfigLongPollServiceTest {
     remoteConfigLongPollService.stopLongPollingRefresh();
 
     final ArgumentCaptor<ApolloNotificationMessages> captor = ArgumentCaptor.forClass(ApolloNotificationMessages.class);
-    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), captor.capture());
+    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), captor.capture(), anyLong());
 
     ApolloNotificationMessages captured = captor.getValue();
 
@@ -178,6 +190,54 @@ public class RemoteConfigLongPollServiceTest {
     assertEquals(anotherNotificationId, captured.get(anotherKey).longValue());
   }
 
+  @Test
+  public void testSubmitLongPollNamespaceWithFetchDelayWindow() throws Exception {
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+    long someFetchDelayWindow = 1000;
+
+    ApolloConfigNotification someNotification = mock(ApolloConfigNotification.class);
+    when(someNotification.getNamespaceName()).thenReturn(someNamespace);
+    when(someNotification.getFetchDelayWindowInMilli()).thenReturn(someFetchDelayWindow);
+
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_OK);
+    when(pollResponse.getBody()).thenReturn(Lists.newArrayList(someNotification));
+
+    doAnswer(new Answer<HttpResponse<List<ApolloConfigNotification>>>() {
+      @Override
+      public HttpResponse<List<ApolloConfigNotification>> answer(InvocationOnMock invocation)
+          throws Throwable {
+        try {
+          TimeUnit.MILLISECONDS.sleep(50);
+        } catch (InterruptedException e) {
+        }
+
+        return pollResponse;
+      }
+    }).when(httpUtil).doGet(any(HttpRequest.class), eq(responseType));
+
+    final SettableFuture<Boolean> onNotified = SettableFuture.create();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        onNotified.set(true);
+        return null;
+      }
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class), anyLong());
+
+    remoteConfigLongPollService.submit(someNamespace, someRepository);
+
+    onNotified.get(5000, TimeUnit.MILLISECONDS);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    final ArgumentCaptor<Long> captor = ArgumentCaptor.forClass(Long.class);
+    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class),
+        captor.capture());
+
+    assertTrue(captor.getValue() >= 0 && captor.getValue() <= someFetchDelayWindow);
+  }
+
   @Test
   public void testSubmitLongPollMultipleNamespaces() throws Exception {
     RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
@@ -240,7 +300,7 @@ public class RemoteConfigLongPollServiceTest {
         onAnotherRepositoryNotified.set(true);
         return null;
       }
-    }).when(anotherRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+    }).when(anotherRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class), anyLong());
 
     remoteConfigLongPollService.submit(someNamespace, someRepository);
 
@@ -252,8 +312,8 @@ public class RemoteConfigLongPollServiceTest {
 
     remoteConfigLongPollService.stopLongPollingRefresh();
 
-    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
-    verify(anotherRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class), anyLong());
+    verify(anotherRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class), anyLong());
   }
 
   @Test
@@ -303,7 +363,7 @@ public class RemoteConfigLongPollServiceTest {
         someRepositoryNotified.set(true);
         return null;
       }
-    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class), anyLong());
     final SettableFuture<Boolean> anotherRepositoryNotified = SettableFuture.create();
     doAnswer(new Answer<Void>() {
       @Override
@@ -311,7 +371,7 @@ public class RemoteConfigLongPollServiceTest {
         anotherRepositoryNotified.set(true);
         return null;
       }
-    }).when(anotherRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+    }).when(anotherRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class), anyLong());
 
     remoteConfigLongPollService.submit(someNamespace, someRepository);
     remoteConfigLongPollService.submit(anotherNamespace, anotherRepository);
@@ -323,8 +383,8 @@ public class RemoteConfigLongPollServiceTest {
 
     final ArgumentCaptor<ApolloNotificationMessages> captor = ArgumentCaptor.forClass(ApolloNotificationMessages.class);
     final ArgumentCaptor<ApolloNotificationMessages> anotherCaptor = ArgumentCaptor.forClass(ApolloNotificationMessages.class);
-    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), captor.capture());
-    verify(anotherRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), anotherCaptor.capture());
+    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), captor.capture(), anyLong());
+    verify(anotherRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), anotherCaptor.capture(), anyLong());
 
     ApolloNotificationMessages result = captor.getValue();
     assertEquals(1, result.getDetails().size());
@@ -333,6 +393,16 @@ public class RemoteConfigLongPollServiceTest {
     ApolloNotificationMessages anotherResult = anotherCaptor.getValue();
     assertEquals(1, anotherResult.getDetails().size());
     assertEquals(anotherNotificationId, anotherResult.get(anotherKey).longValue());
+
+    final ArgumentCaptor<ApolloNotificationMessages> prefetchCaptor =
+        ArgumentCaptor.forClass(ApolloNotificationMessages.class);
+    verify(configBatchLoader, times(1)).prefetch(eq(ImmutableMap.of(someNamespace, "", anotherNamespace, "")),
+        prefetchCaptor.capture());
+
+    ApolloNotificationMessages prefetchMessages = prefetchCaptor.getValue();
+    assertEquals(2, prefetchMessages.getDetails().size());
+    assertEquals(someNotificationId, prefetchMessages.get(someKey).longValue());
+    assertEquals(anotherNotificationId, prefetchMessages.get(anotherKey).longValue());
   }
 
   @Test
@@ -372,7 +442,7 @@ public class RemoteConfigLongPollServiceTest {
         onNotified.set(true);
         return null;
       }
-    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class), anyLong());
 
     remoteConfigLongPollService.submit(someNamespace, someRepository);
 
@@ -382,7 +452,7 @@ public class RemoteConfigLongPollServiceTest {
     when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_NOT_MODIFIED);
 
     final ArgumentCaptor<ApolloNotificationMessages> captor = ArgumentCaptor.forClass(ApolloNotificationMessages.class);
-    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), captor.capture());
+    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), captor.capture(), anyLong());
 
     ApolloNotificationMessages captured = captor.getValue();
 
@@ -396,7 +466,7 @@ public class RemoteConfigLongPollServiceTest {
         anotherOnNotified.set(true);
         return null;
       }
-    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class), anyLong());
 
     String anotherKey = "anotherKey";
     long anotherNotificationId = 2;
@@ -409,7 +479,7 @@ public class RemoteConfigLongPollServiceTest {
 
     remoteConfigLongPollService.stopLongPollingRefresh();
 
-    verify(someRepository, times(2)).onLongPollNotified(any(ServiceDTO.class), captor.capture());
+    verify(someRepository, times(2)).onLongPollNotified(any(ServiceDTO.class), captor.capture(), anyLong());
 
     captured = captor.getValue();
 
@@ -418,6 +488,245 @@ public class RemoteConfigLongPollServiceTest {
     assertEquals(anotherNotificationId, captured.get(anotherKey).longValue());
   }
 
+  @Test
+  public void testSubmitNotificationStreamNamespace() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new MockNotificationStreamConfigUtil());
+    remoteConfigLongPollService = new RemoteConfigLongPollService();
+
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+
+    ApolloNotificationMessages notificationMessages = new ApolloNotificationMessages();
+    String someKey = "someKey";
+    long someNotificationId = 1;
+    notificationMessages.put(someKey, someNotificationId);
+
+    final ApolloConfigNotification someNotification = new ApolloConfigNotification(someNamespace, someNotificationId);
+    someNotification.setMessages(notificationMessages);
+
+    final AtomicInteger streamCount = new AtomicInteger();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        try {
+          TimeUnit.MILLISECONDS.sleep(50);
+        } catch (InterruptedException e) {
+        }
+        HttpRequest request = invocation.getArgumentAt(0, HttpRequest.class);
+
+        assertTrue(request.getUrl().contains(someServerUrl + "/notifications/stream?"));
+        assertTrue(request.getUrl().contains(someNamespace));
+
+        HttpEventStreamListener<List<ApolloConfigNotification>> listener =
+            invocation.getArgumentAt(2, HttpEventStreamListener.class);
+        //only the first stream sends the notification
+        if (streamCount.getAndIncrement() == 0 && listener.onHeartbeat()) {
+          listener.onEvent(Lists.newArrayList(someNotification));
+        }
+        return null;
+      }
+    }).when(httpUtil).doGetEventStream(any(HttpRequest.class), eq(responseType), any(HttpEventStreamListener.class));
+
+    final SettableFuture<Boolean> onNotified = SettableFuture.create();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        onNotified.set(true);
+        return null;
+      }
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class), anyLong());
+
+    remoteConfigLongPollService.submit(someNamespace, someRepository);
+
+    onNotified.get(5000, TimeUnit.MILLISECONDS);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    final ArgumentCaptor<ApolloNotificationMessages> captor = ArgumentCaptor.forClass(ApolloNotificationMessages.class);
+    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), captor.capture(), anyLong());
+
+    assertEquals(someNotificationId, captor.getValue().get(someKey).longValue());
+    verify(httpUtil, never()).doGet(any(HttpRequest.class), eq(responseType));
+  }
+
+  @Test
+  public void testSubmitNotificationStreamNamespaceWithStreamNotSupported() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new MockNotificationStreamConfigUtil());
+    remoteConfigLongPollService = new RemoteConfigLongPollService();
+
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+
+    doThrow(new ApolloConfigStatusCodeException(HttpServletResponse.SC_NOT_FOUND, "some error"))
+        .when(httpUtil).doGetEventStream(any(HttpRequest.class), eq(responseType), any(HttpEventStreamListener.class));
+
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_NOT_MODIFIED);
+    final SettableFuture<Boolean> longPollFinished = SettableFuture.create();
+
+    doAnswer(new Answer<HttpResponse<List<ApolloConfigNotification>>>() {
+      @Override
+      public HttpResponse<List<ApolloConfigNotification>> answer(InvocationOnMock invocation)
+          throws Throwable {
+        try {
+          TimeUnit.MILLISECONDS.sleep(50);
+        } catch (InterruptedException e) {
+        }
+        HttpRequest request = invocation.getArgumentAt(0, HttpRequest.class);
+
+        assertTrue(request.getUrl().contains(someServerUrl + "/notifications/v2?"));
+
+        longPollFinished.set(true);
+        return pollResponse;
+      }
+    }).when(httpUtil).doGet(any(HttpRequest.class), eq(responseType));
+
+    remoteConfigLongPollService.submit(someNamespace, someRepository);
+
+    longPollFinished.get(5000, TimeUnit.MILLISECONDS);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    verify(httpUtil, times(1))
+        .doGetEventStream(any(HttpRequest.class), eq(responseType), any(HttpEventStreamListener.class));
+  }
+
+  @Test
+  public void testSubmitLongPollNamespaceWithReconnectHint() throws Exception {
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_NOT_MODIFIED);
+    when(pollResponse.getRetryAfterInSeconds()).thenReturn(0L);
+    final AtomicInteger polls = new AtomicInteger();
+    final SettableFuture<Boolean> longPollFinished = SettableFuture.create();
+
+    doAnswer(new Answer<HttpResponse<List<ApolloConfigNotification>>>() {
+      @Override
+      public HttpResponse<List<ApolloConfigNotification>> answer(InvocationOnMock invocation)
+          throws Throwable {
+        try {
+          TimeUnit.MILLISECONDS.sleep(50);
+        } catch (InterruptedException e) {
+        }
+        if (polls.incrementAndGet() == 2) {
+          longPollFinished.set(true);
+        }
+        return pollResponse;
+      }
+    }).when(httpUtil).doGet(any(HttpRequest.class), eq(responseType));
+
+    remoteConfigLongPollService.submit(someNamespace, someRepository);
+
+    longPollFinished.get(5000, TimeUnit.MILLISECONDS);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    //the config service is reselected after released with the hint
+    verify(configServiceLocator, atLeast(2)).getConfigServices();
+  }
+
+  @Test
+  public void testSubmitLongPollNamespaceWithBinaryNotification() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new MockBinaryNotificationConfigUtil());
+    remoteConfigLongPollService = new RemoteConfigLongPollService();
+
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_NOT_MODIFIED);
+    final SettableFuture<Boolean> longPollFinished = SettableFuture.create();
+
+    doAnswer(new Answer<HttpResponse<List<ApolloConfigNotification>>>() {
+      @Override
+      public HttpResponse<List<ApolloConfigNotification>> answer(InvocationOnMock invocation)
+          throws Throwable {
+        try {
+          TimeUnit.MILLISECONDS.sleep(50);
+        } catch (InterruptedException e) {
+        }
+        HttpRequest request = invocation.getArgumentAt(0, HttpRequest.class);
+
+        assertTrue(request.getUrl().contains(someServerUrl + "/notifications/v2?"));
+        assertTrue(request.getUrl().contains("appId=" + someAppId));
+        assertFalse(request.getUrl().contains("notifications="));
+        assertEquals(NotificationsCodec.CONTENT_TYPE, request.getContentType());
+
+        EncodedNotifications notifications = NotificationsCodec.decode(request.getBody());
+        assertEquals(Lists.newArrayList(someNamespace), notifications.decodeNamespaceNames());
+        assertEquals(ConfigConsts.NOTIFICATION_ID_PLACEHOLDER, notifications.getNotificationId(0));
+
+        longPollFinished.set(true);
+        return pollResponse;
+      }
+    }).when(httpUtil).doPost(any(HttpRequest.class), eq(responseType));
+
+    remoteConfigLongPollService.submit(someNamespace, someRepository);
+
+    longPollFinished.get(5000, TimeUnit.MILLISECONDS);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    verify(httpUtil, never()).doGet(any(HttpRequest.class), eq(responseType));
+  }
+
+  @Test
+  public void testSubmitLongPollNamespaceWithBinaryNotificationNotSupported() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new MockBinaryNotificationConfigUtil());
+    remoteConfigLongPollService = new RemoteConfigLongPollService();
+
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+
+    doThrow(new ApolloConfigStatusCodeException(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "some error"))
+        .when(httpUtil).doPost(any(HttpRequest.class), eq(responseType));
+
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_NOT_MODIFIED);
+    final SettableFuture<Boolean> longPollFinished = SettableFuture.create();
+
+    doAnswer(new Answer<HttpResponse<List<ApolloConfigNotification>>>() {
+      @Override
+      public HttpResponse<List<ApolloConfigNotification>> answer(InvocationOnMock invocation)
+          throws Throwable {
+        try {
+          TimeUnit.MILLISECONDS.sleep(50);
+        } catch (InterruptedException e) {
+        }
+        HttpRequest request = invocation.getArgumentAt(0, HttpRequest.class);
+
+        assertTrue(request.getUrl().contains("notifications="));
+
+        longPollFinished.set(true);
+        return pollResponse;
+      }
+    }).when(httpUtil).doGet(any(HttpRequest.class), eq(responseType));
+
+    remoteConfigLongPollService.submit(someNamespace, someRepository);
+
+    longPollFinished.get(5000, TimeUnit.MILLISECONDS);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    verify(httpUtil, times(1)).doPost(any(HttpRequest.class), eq(responseType));
+  }
+
+  @Test
+  public void testAssembleNotificationStreamUrl() throws Exception {
+    String someNamespace = "someName";
+    long someNotificationId = 1;
+    Map<String, Long> notificationsMap = ImmutableMap.of(someNamespace, someNotificationId);
+
+    String notificationStreamUrl =
+        remoteConfigLongPollService
+            .assembleNotificationStreamUrl(someServerUrl, someAppId, someCluster, null, notificationsMap);
+
+    assertTrue(notificationStreamUrl.contains(someServerUrl + "/notifications/stream?"));
+    assertTrue(notificationStreamUrl.contains("appId=" + someAppId));
+    assertTrue(notificationStreamUrl.contains("cluster=" + someCluster));
+    assertTrue(notificationStreamUrl.contains(
+        "notifications=%5B%7B%22namespaceName%22%3A%22" + someNamespace
+            + "%22%2C%22notificationId%22%3A" + 1 + "%7D%5D"));
+  }
+
   @Test
   public void testAssembleLongPollRefreshUrl() throws Exception {
     String someUri = someServerUrl;
@@ -497,4 +806,17 @@ public class RemoteConfigLongPollServiceTest {
     }
   }
 
+  public static class MockNotificationStreamConfigUtil extends MockConfigUtil {
+    @Override
+    public boolean isNotificationStreamEnabled() {
+      return true;
+    }
+  }
+
+  public static class MockBinaryNotificationConfigUtil extends MockConfigUtil {
+    @Override
+    public boolean isBinaryNotificationEnabled() {
+      return true;
+    }
+  }
 }
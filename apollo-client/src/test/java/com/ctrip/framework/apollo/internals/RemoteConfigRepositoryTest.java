@@ -1,12 +1,14 @@
 package com.ctrip.framework.apollo.internals;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -35,6 +37,7 @@ import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.core.utils.ChecksumUtil;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.http.HttpRequest;
@@ -54,6 +57,8 @@ import com.google.gson.Gson;
 public class RemoteConfigRepositoryTest {
   @Mock
   private ConfigServiceLocator configServiceLocator;
+  @Mock
+  private RemoteConfigBatchLoader configBatchLoader;
   private String someNamespace;
   private String someServerUrl;
   private ConfigUtil configUtil;
@@ -63,6 +68,7 @@ public class RemoteConfigRepositoryTest {
   @Mock
   private static HttpResponse<List<ApolloConfigNotification>> pollResponse;
   private RemoteConfigLongPollService remoteConfigLongPollService;
+  private ReleasePropagationMonitor releasePropagationMonitor;
 
   @Before
   public void setUp() throws Exception {
@@ -84,6 +90,9 @@ public class RemoteConfigRepositoryTest {
 
     httpUtil = spy(new MockHttpUtil());
     MockInjector.setInstance(HttpUtil.class, httpUtil);
+    MockInjector.setInstance(RemoteConfigBatchLoader.class, configBatchLoader);
+    releasePropagationMonitor = new ReleasePropagationMonitor();
+    MockInjector.setInstance(ReleasePropagationMonitor.class, releasePropagationMonitor);
 
     remoteConfigLongPollService = new RemoteConfigLongPollService();
 
@@ -110,6 +119,22 @@ public class RemoteConfigRepositoryTest {
     remoteConfigLongPollService.stopLongPollingRefresh();
   }
 
+  @Test
+  public void testLoadConfigPrefetchedInBatch() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
+    ApolloConfig someApolloConfig = assembleApolloConfig(configurations);
+
+    when(configBatchLoader.take(someNamespace, null)).thenReturn(someApolloConfig);
+
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someNamespace);
+
+    Properties config = remoteConfigRepository.getConfig();
+
+    assertEquals(configurations, config);
+    verify(httpUtil, never()).doGet(any(HttpRequest.class), eq(ApolloConfig.class));
+    remoteConfigLongPollService.stopLongPollingRefresh();
+  }
+
   @Test(expected = ApolloConfigException.class)
   public void testGetRemoteConfigWithServerError() throws Exception {
 
@@ -196,6 +221,7 @@ public class RemoteConfigRepositoryTest {
 
     verify(someListener, times(1)).onRepositoryChange(eq(someNamespace), captor.capture());
     assertEquals(newConfigurations, captor.getValue());
+    assertEquals(1, releasePropagationMonitor.getLatency(ReleasePropagationMonitor.Stage.FETCHED).getCount());
 
     final ArgumentCaptor<HttpRequest> httpRequestArgumentCaptor = ArgumentCaptor.forClass(HttpRequest.class);
     verify(httpUtil, atLeast(2)).doGet(httpRequestArgumentCaptor.capture(), eq(ApolloConfig.class));
@@ -205,6 +231,77 @@ public class RemoteConfigRepositoryTest {
     assertTrue(request.getUrl().contains("messages=%7B%22details%22%3A%7B%22someKey%22%3A1%7D%7D"));
   }
 
+  @Test
+  public void testLoadConfigWithDelta() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue", "anotherKey", "anotherValue");
+    ApolloConfig someApolloConfig = assembleApolloConfig(configurations);
+
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(someApolloConfig);
+
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someNamespace);
+
+    Map<String, String> newConfigurations = ImmutableMap.of("someKey", "someNewValue");
+    ApolloConfig someDelta = assembleApolloConfigDelta(someApolloConfig.getReleaseKey(), "2",
+        ImmutableMap.of("someKey", "someNewValue"), Lists.newArrayList("anotherKey"),
+        ChecksumUtil.checksum(newConfigurations));
+
+    when(someResponse.getBody()).thenReturn(someDelta);
+
+    remoteConfigRepository.sync();
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    assertEquals(newConfigurations, remoteConfigRepository.getConfig());
+
+    final ArgumentCaptor<HttpRequest> captor = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpUtil, times(2)).doGet(captor.capture(), eq(ApolloConfig.class));
+    assertFalse(captor.getAllValues().get(0).getUrl().contains("delta=true"));
+    assertTrue(captor.getAllValues().get(1).getUrl().contains("delta=true"));
+  }
+
+  @Test
+  public void testLoadConfigWithDeltaChecksumMismatched() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
+    ApolloConfig someApolloConfig = assembleApolloConfig(configurations);
+
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(someApolloConfig);
+
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someNamespace);
+
+    ApolloConfig someDelta = assembleApolloConfigDelta(someApolloConfig.getReleaseKey(), "2",
+        ImmutableMap.of("someKey", "someNewValue"), null, "someInvalidChecksum");
+
+    when(someResponse.getBody()).thenReturn(someDelta);
+
+    try {
+      remoteConfigRepository.sync();
+    } catch (ApolloConfigException ex) {
+      //expected
+    }
+
+    assertEquals(configurations, remoteConfigRepository.getConfig());
+
+    Map<String, String> newConfigurations = ImmutableMap.of("someKey", "someNewValue");
+    ApolloConfig newApolloConfig = assembleApolloConfig(newConfigurations);
+    newApolloConfig.setReleaseKey("2");
+
+    when(someResponse.getBody()).thenReturn(newApolloConfig);
+
+    remoteConfigRepository.sync();
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    assertEquals(newConfigurations, remoteConfigRepository.getConfig());
+
+    //the complete config is requested after the delta mismatched
+    final ArgumentCaptor<HttpRequest> captor = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpUtil, times(3)).doGet(captor.capture(), eq(ApolloConfig.class));
+    assertTrue(captor.getAllValues().get(1).getUrl().contains("delta=true"));
+    assertFalse(captor.getAllValues().get(2).getUrl().contains("delta=true"));
+  }
+
   @Test
   public void testAssembleQueryConfigUrl() throws Exception {
     Gson gson = new Gson();
@@ -251,6 +348,19 @@ public class RemoteConfigRepositoryTest {
     return apolloConfig;
   }
 
+  private ApolloConfig assembleApolloConfigDelta(String baseReleaseKey, String releaseKey,
+                                                 Map<String, String> changedConfigurations,
+                                                 List<String> deletedKeys, String checksum) {
+    ApolloConfig apolloConfig = new ApolloConfig("appId", "cluster", someNamespace, releaseKey);
+
+    apolloConfig.setConfigurations(changedConfigurations);
+    apolloConfig.setBaseReleaseKey(baseReleaseKey);
+    apolloConfig.setDeletedKeys(deletedKeys);
+    apolloConfig.setChecksum(checksum);
+
+    return apolloConfig;
+  }
+
   public static class MockConfigUtil extends ConfigUtil {
     @Override
     public String getAppId() {
@@ -0,0 +1,96 @@
+package com.ctrip.framework.apollo.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.Maps;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class ConsistentHashRingTest {
+
+  @Test
+  public void testRouteToDistinctNodes() throws Exception {
+    ConsistentHashRing<String> ring = new ConsistentHashRing<>();
+    ring.addNode("someNode", "someNode", 100);
+    ring.addNode("anotherNode", "anotherNode", 100);
+
+    List<String> nodes = ring.route("someAppId", 3);
+
+    assertEquals(2, nodes.size());
+    assertNotEquals(nodes.get(0), nodes.get(1));
+  }
+
+  @Test
+  public void testRouteIsIndependentOfNodeOrder() throws Exception {
+    ConsistentHashRing<String> someRing = new ConsistentHashRing<>();
+    someRing.addNode("someNode", "someNode", 100);
+    someRing.addNode("anotherNode", "anotherNode", 100);
+    someRing.addNode("yetAnotherNode", "yetAnotherNode", 100);
+
+    ConsistentHashRing<String> anotherRing = new ConsistentHashRing<>();
+    anotherRing.addNode("yetAnotherNode", "yetAnotherNode", 100);
+    anotherRing.addNode("anotherNode", "anotherNode", 100);
+    anotherRing.addNode("someNode", "someNode", 100);
+
+    for (int i = 0; i < 100; i++) {
+      assertEquals(someRing.route("someAppId" + i, 2), anotherRing.route("someAppId" + i, 2));
+    }
+  }
+
+  @Test
+  public void testRouteWithNodeRemoved() throws Exception {
+    ConsistentHashRing<String> someRing = new ConsistentHashRing<>();
+    someRing.addNode("someNode", "someNode", 100);
+    someRing.addNode("anotherNode", "anotherNode", 100);
+    someRing.addNode("yetAnotherNode", "yetAnotherNode", 100);
+
+    ConsistentHashRing<String> anotherRing = new ConsistentHashRing<>();
+    anotherRing.addNode("someNode", "someNode", 100);
+    anotherRing.addNode("anotherNode", "anotherNode", 100);
+
+    for (int i = 0; i < 1000; i++) {
+      String someAppId = "someAppId" + i;
+      List<String> someNodes = someRing.route(someAppId, 2);
+      String owner = anotherRing.route(someAppId, 1).get(0);
+      //only the keys owned by the removed node are moved, and they are moved to its fallback
+      if (someNodes.get(0).equals("yetAnotherNode")) {
+        assertEquals(someNodes.get(1), owner);
+      } else {
+        assertEquals(someNodes.get(0), owner);
+      }
+    }
+  }
+
+  @Test
+  public void testRouteWithWeights() throws Exception {
+    ConsistentHashRing<String> ring = new ConsistentHashRing<>();
+    ring.addNode("someNode", "someNode", 100);
+    ring.addNode("anotherNode", "anotherNode", 300);
+    ring.addNode("offlineNode", "offlineNode", 0);
+
+    Map<String, Integer> owned = Maps.newHashMap();
+    owned.put("someNode", 0);
+    owned.put("anotherNode", 0);
+    int keys = 10000;
+    for (int i = 0; i < keys; i++) {
+      List<String> nodes = ring.route("someAppId" + i, 2);
+      assertEquals(2, nodes.size());
+      owned.put(nodes.get(0), owned.get(nodes.get(0)) + 1);
+    }
+
+    assertEquals(2, owned.size());
+    assertTrue(owned.get("anotherNode") > owned.get("someNode") * 2);
+  }
+
+  @Test
+  public void testRouteWithEmptyRing() throws Exception {
+    ConsistentHashRing<String> ring = new ConsistentHashRing<>();
+    ring.addNode("offlineNode", "offlineNode", 0);
+
+    assertTrue(ring.isEmpty());
+    assertTrue(ring.route("someAppId", 2).isEmpty());
+  }
+}
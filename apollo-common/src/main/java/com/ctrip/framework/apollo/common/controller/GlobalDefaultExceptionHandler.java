@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.common.controller;
 
 import com.ctrip.framework.apollo.common.exception.AbstractApolloHttpException;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.common.exception.TooManyRequestsException;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
@@ -73,6 +74,16 @@ public class GlobalDefaultExceptionHandler {
     return handleError(request, ex.getHttpStatus(), ex);
   }
 
+  @ExceptionHandler(TooManyRequestsException.class)
+  public ResponseEntity<Map<String, Object>> tooManyRequests(HttpServletRequest request,
+                                                             TooManyRequestsException ex) {
+    ResponseEntity<Map<String, Object>> response = handleError(request, ex.getHttpStatus(), ex, WARN);
+    HttpHeaders headers = new HttpHeaders();
+    headers.putAll(response.getHeaders());
+    headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterInSecond()));
+    return new ResponseEntity<>(response.getBody(), headers, response.getStatusCode());
+  }
+
   @ExceptionHandler(MethodArgumentNotValidException.class)
   public ResponseEntity<Map<String, Object>> handleMethodArgumentNotValidException(
       HttpServletRequest request, MethodArgumentNotValidException ex
@@ -0,0 +1,55 @@
+package com.ctrip.framework.apollo.common.dto;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * How a release propagates to the clients, identified by its release message
+ */
+public class ReleasePropagationDTO {
+  private long messageId;
+  private Long releaseId;
+  private String message;
+  private Date sentTime;
+  private List<ReleasePropagationStageDTO> stages;
+
+  public long getMessageId() {
+    return messageId;
+  }
+
+  public void setMessageId(long messageId) {
+    this.messageId = messageId;
+  }
+
+  public Long getReleaseId() {
+    return releaseId;
+  }
+
+  public void setReleaseId(Long releaseId) {
+    this.releaseId = releaseId;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public void setMessage(String message) {
+    this.message = message;
+  }
+
+  public Date getSentTime() {
+    return sentTime;
+  }
+
+  public void setSentTime(Date sentTime) {
+    this.sentTime = sentTime;
+  }
+
+  public List<ReleasePropagationStageDTO> getStages() {
+    return stages;
+  }
+
+  public void setStages(List<ReleasePropagationStageDTO> stages) {
+    this.stages = stages;
+  }
+}
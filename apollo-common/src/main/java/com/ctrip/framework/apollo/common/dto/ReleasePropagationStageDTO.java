@@ -0,0 +1,61 @@
+package com.ctrip.framework.apollo.common.dto;
+
+/**
+ * The latency percentiles of a release in one propagation stage, in milliseconds
+ */
+public class ReleasePropagationStageDTO {
+  private String stage;
+  private long count;
+  private long p50;
+  private long p90;
+  private long p99;
+  private long max;
+
+  public String getStage() {
+    return stage;
+  }
+
+  public void setStage(String stage) {
+    this.stage = stage;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public void setCount(long count) {
+    this.count = count;
+  }
+
+  public long getP50() {
+    return p50;
+  }
+
+  public void setP50(long p50) {
+    this.p50 = p50;
+  }
+
+  public long getP90() {
+    return p90;
+  }
+
+  public void setP90(long p90) {
+    this.p90 = p90;
+  }
+
+  public long getP99() {
+    return p99;
+  }
+
+  public void setP99(long p99) {
+    this.p99 = p99;
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  public void setMax(long max) {
+    this.max = max;
+  }
+}
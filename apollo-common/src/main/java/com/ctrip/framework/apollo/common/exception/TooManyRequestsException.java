@@ -0,0 +1,20 @@
+package com.ctrip.framework.apollo.common.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Thrown when the server is overloaded, the clients are asked to retry after the given seconds
+ */
+public class TooManyRequestsException extends AbstractApolloHttpException {
+  private final int retryAfterInSecond;
+
+  public TooManyRequestsException(String str, int retryAfterInSecond) {
+    super(str);
+    setHttpStatus(HttpStatus.TOO_MANY_REQUESTS);
+    this.retryAfterInSecond = retryAfterInSecond;
+  }
+
+  public int getRetryAfterInSecond() {
+    return retryAfterInSecond;
+  }
+}
@@ -3,13 +3,18 @@ package com.ctrip.framework.apollo.configservice;
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageScanner;
+import com.ctrip.framework.apollo.configservice.cache.ConfigCacheFactory;
+import com.ctrip.framework.apollo.configservice.cache.CaffeineConfigCacheFactory;
 import com.ctrip.framework.apollo.configservice.controller.ConfigFileController;
 import com.ctrip.framework.apollo.configservice.controller.NotificationController;
 import com.ctrip.framework.apollo.configservice.controller.NotificationControllerV2;
+import com.ctrip.framework.apollo.configservice.filter.ClientAdmissionFilter;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigServiceWithCache;
 import com.ctrip.framework.apollo.configservice.service.config.DefaultConfigService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.password.NoOpPasswordEncoder;
@@ -31,6 +36,12 @@ public class ConfigServiceAutoConfiguration {
     return new GrayReleaseRulesHolder();
   }
 
+  @Bean
+  @ConditionalOnMissingBean(ConfigCacheFactory.class)
+  public ConfigCacheFactory configCacheFactory() {
+    return new CaffeineConfigCacheFactory();
+  }
+
   @Bean
   public ConfigService configService() {
     if (bizConfig.isConfigServiceCacheEnabled()) {
@@ -39,6 +50,16 @@ public class ConfigServiceAutoConfiguration {
     return new DefaultConfigService();
   }
 
+  @Bean
+  public FilterRegistrationBean clientAdmissionFilter() {
+    FilterRegistrationBean clientAdmissionFilter = new FilterRegistrationBean();
+
+    clientAdmissionFilter.setFilter(new ClientAdmissionFilter(bizConfig));
+    clientAdmissionFilter.addUrlPatterns("/configs/*", "/configfiles/*", "/notifications/*");
+
+    return clientAdmissionFilter;
+  }
+
   @Bean
   public static NoOpPasswordEncoder passwordEncoder() {
     return (NoOpPasswordEncoder) NoOpPasswordEncoder.getInstance();
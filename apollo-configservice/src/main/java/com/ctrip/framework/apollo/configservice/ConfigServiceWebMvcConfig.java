@@ -0,0 +1,19 @@
+package com.ctrip.framework.apollo.configservice;
+
+import com.ctrip.framework.apollo.configservice.wrapper.EncodedApolloConfigHttpMessageConverter;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class ConfigServiceWebMvcConfig implements WebMvcConfigurer {
+
+  @Override
+  public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+    //should be ahead of the gson converter
+    converters.add(0, new EncodedApolloConfigHttpMessageConverter());
+  }
+}
@@ -0,0 +1,51 @@
+package com.ctrip.framework.apollo.configservice.cache;
+
+import com.ctrip.framework.apollo.biz.entity.Release;
+
+import java.util.Map;
+
+/**
+ * Estimates the bytes retained by the cached objects, the estimation is dominated by the release content
+ */
+public final class CacheWeights {
+  private static final int OBJECT_OVERHEAD = 16;
+  private static final int STRING_OVERHEAD = 40;
+  private static final int MAP_ENTRY_OVERHEAD = 32;
+  private static final int RELEASE_OVERHEAD = 128;
+
+  private CacheWeights() {
+  }
+
+  public static int of(String value) {
+    return value == null ? 0 : STRING_OVERHEAD + 2 * value.length();
+  }
+
+  public static int of(Release release) {
+    return release == null ? 0 : of(release, release.getConfigurations());
+  }
+
+  /**
+   * @param configurations the configurations of the release, which is passed in if it's already read
+   */
+  public static int of(Release release, String configurations) {
+    return RELEASE_OVERHEAD + of(configurations) + of(release.getReleaseKey()) + of(release.getName())
+        + of(release.getAppId()) + of(release.getClusterName()) + of(release.getNamespaceName())
+        + of(release.getComment());
+  }
+
+  public static int of(Map<String, String> map) {
+    int weight = OBJECT_OVERHEAD;
+    for (Map.Entry<String, String> entry : map.entrySet()) {
+      weight += MAP_ENTRY_OVERHEAD + of(entry.getKey()) + of(entry.getValue());
+    }
+    return weight;
+  }
+
+  public static int of(byte[] bytes) {
+    return bytes == null ? 0 : OBJECT_OVERHEAD + bytes.length;
+  }
+
+  public static int objectOverhead() {
+    return OBJECT_OVERHEAD;
+  }
+}
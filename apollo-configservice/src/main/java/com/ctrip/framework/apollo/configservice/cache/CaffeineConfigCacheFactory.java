@@ -0,0 +1,216 @@
+package com.ctrip.framework.apollo.configservice.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.cache.AbstractCache;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The default cache factory, which creates weight bounded caffeine caches, so the entries are evicted by the
+ * frequency-aware W-TinyLFU policy instead of LRU, and a scan of cold keys doesn't flush the hot ones.
+ * <p>
+ * The caffeine caches are exposed as guava caches to keep the callers unchanged. The maintenance, removal listeners
+ * and refreshes run on the caller thread, so {@link LoadingCache#refresh} is synchronous and keeps the current entry
+ * if the reload fails, the same as the guava one.
+ * <p>
+ * The statistics are exported as {@code cache.gets}, {@code cache.evictions}, {@code cache.load} etc. tagged with the
+ * cache name.
+ */
+public class CaffeineConfigCacheFactory implements ConfigCacheFactory {
+
+  @Override
+  public <K, V> Cache<K, V> createCache(ConfigCacheSpec<K, V> spec) {
+    com.github.benmanes.caffeine.cache.Cache<K, V> cache = newCaffeine(spec).build();
+    CaffeineCacheMetrics.monitor(Metrics.globalRegistry, cache, spec.getName());
+    return new CaffeineCache<>(cache);
+  }
+
+  @Override
+  public <K, V> LoadingCache<K, V> createLoadingCache(ConfigCacheSpec<K, V> spec, CacheLoader<K, V> loader) {
+    com.github.benmanes.caffeine.cache.LoadingCache<K, V> cache = newCaffeine(spec).build(
+        new com.github.benmanes.caffeine.cache.CacheLoader<K, V>() {
+          @Override
+          public V load(K key) throws Exception {
+            return loader.load(key);
+          }
+
+          @Override
+          public V reload(K key, V oldValue) throws Exception {
+            return loader.reload(key, oldValue).get();
+          }
+        });
+    CaffeineCacheMetrics.monitor(Metrics.globalRegistry, cache, spec.getName());
+    return new CaffeineLoadingCache<>(cache);
+  }
+
+  private <K, V> Caffeine<K, V> newCaffeine(ConfigCacheSpec<K, V> spec) {
+    Caffeine<K, V> builder = Caffeine.newBuilder()
+        .maximumWeight(spec.getMaximumWeightInBytes())
+        .weigher((K key, V value) -> spec.getWeigher().weigh(key, value))
+        .executor(Runnable::run)
+        .recordStats();
+    if (spec.getExpireAfterAccessInMinutes() > 0) {
+      builder.expireAfterAccess(spec.getExpireAfterAccessInMinutes(), TimeUnit.MINUTES);
+    }
+    if (spec.getExpireAfterWriteInMinutes() > 0) {
+      builder.expireAfterWrite(spec.getExpireAfterWriteInMinutes(), TimeUnit.MINUTES);
+    }
+    if (spec.getRemovalListener() != null) {
+      builder.removalListener((K key, V value, com.github.benmanes.caffeine.cache.RemovalCause cause) ->
+          spec.getRemovalListener().onRemoval(
+              RemovalNotification.create(key, value, RemovalCause.valueOf(cause.name()))));
+    }
+    return builder;
+  }
+
+  private static class CaffeineCache<K, V> extends AbstractCache<K, V> {
+    private final com.github.benmanes.caffeine.cache.Cache<K, V> cache;
+
+    CaffeineCache(com.github.benmanes.caffeine.cache.Cache<K, V> cache) {
+      this.cache = cache;
+    }
+
+    @Override
+    public V getIfPresent(Object key) {
+      return cache.getIfPresent(key);
+    }
+
+    @Override
+    public V get(K key, Callable<? extends V> valueLoader) throws ExecutionException {
+      return load(key, () -> cache.get(key, k -> {
+        try {
+          return valueLoader.call();
+        } catch (RuntimeException | Error ex) {
+          throw ex;
+        } catch (Exception ex) {
+          throw new CompletionException(ex);
+        }
+      }));
+    }
+
+    /**
+     * Translates the load failures to the exceptions of guava caches
+     */
+    V load(K key, Callable<V> loader) throws ExecutionException {
+      V value;
+      try {
+        value = loader.call();
+      } catch (CompletionException ex) {
+        throw new ExecutionException(ex.getCause());
+      } catch (RuntimeException ex) {
+        throw new UncheckedExecutionException(ex);
+      } catch (Error ex) {
+        throw new ExecutionError(ex);
+      } catch (Exception ex) {
+        throw new ExecutionException(ex);
+      }
+      if (value == null) {
+        throw new InvalidCacheLoadException("CacheLoader returned null for key " + key + ".");
+      }
+      return value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+      cache.put(key, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+      cache.putAll(m);
+    }
+
+    @Override
+    public void invalidate(Object key) {
+      cache.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+      cache.invalidateAll();
+    }
+
+    @Override
+    public long size() {
+      return cache.estimatedSize();
+    }
+
+    @Override
+    public CacheStats stats() {
+      com.github.benmanes.caffeine.cache.stats.CacheStats stats = cache.stats();
+      return new CacheStats(stats.hitCount(), stats.missCount(), stats.loadSuccessCount(), stats.loadFailureCount(),
+          stats.totalLoadTime(), stats.evictionCount());
+    }
+
+    @Override
+    public ConcurrentMap<K, V> asMap() {
+      return cache.asMap();
+    }
+
+    @Override
+    public void cleanUp() {
+      cache.cleanUp();
+    }
+  }
+
+  private static class CaffeineLoadingCache<K, V> extends CaffeineCache<K, V> implements LoadingCache<K, V> {
+    private final com.github.benmanes.caffeine.cache.LoadingCache<K, V> cache;
+
+    CaffeineLoadingCache(com.github.benmanes.caffeine.cache.LoadingCache<K, V> cache) {
+      super(cache);
+      this.cache = cache;
+    }
+
+    @Override
+    public V get(K key) throws ExecutionException {
+      return load(key, () -> cache.get(key));
+    }
+
+    @Override
+    public V getUnchecked(K key) {
+      try {
+        return get(key);
+      } catch (ExecutionException ex) {
+        throw new UncheckedExecutionException(ex.getCause());
+      }
+    }
+
+    @Override
+    public ImmutableMap<K, V> getAll(Iterable<? extends K> keys) throws ExecutionException {
+      Map<K, V> result = Maps.newLinkedHashMap();
+      for (K key : keys) {
+        result.put(key, get(key));
+      }
+      return ImmutableMap.copyOf(result);
+    }
+
+    @Override
+    @Deprecated
+    public V apply(K key) {
+      return getUnchecked(key);
+    }
+
+    @Override
+    public void refresh(K key) {
+      cache.refresh(key);
+    }
+  }
+}
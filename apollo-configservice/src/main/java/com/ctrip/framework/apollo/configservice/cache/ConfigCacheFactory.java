@@ -0,0 +1,18 @@
+package com.ctrip.framework.apollo.configservice.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+/**
+ * Creates the caches of config service, so the eviction policy could be replaced by declaring another bean.
+ * <p>
+ * The caches created should be bounded by the weight of the spec and export their hit, miss, eviction and load
+ * statistics with the name of the spec.
+ */
+public interface ConfigCacheFactory {
+
+  <K, V> Cache<K, V> createCache(ConfigCacheSpec<K, V> spec);
+
+  <K, V> LoadingCache<K, V> createLoadingCache(ConfigCacheSpec<K, V> spec, CacheLoader<K, V> loader);
+}
@@ -0,0 +1,70 @@
+package com.ctrip.framework.apollo.configservice.cache;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The specification of a config service cache
+ */
+public class ConfigCacheSpec<K, V> {
+  private final String name;
+  private final long maximumWeightInBytes;
+  private final Weigher<K, V> weigher;
+  private long expireAfterAccessInMinutes;
+  private long expireAfterWriteInMinutes;
+  private RemovalListener<K, V> removalListener;
+
+  /**
+   * @param name the name of the cache, which is used to tag the cache metrics
+   * @param maximumWeightInBytes the max estimated bytes of the entries
+   * @param weigher estimates the bytes of an entry
+   */
+  public ConfigCacheSpec(String name, long maximumWeightInBytes, Weigher<K, V> weigher) {
+    Preconditions.checkArgument(maximumWeightInBytes > 0, "maximumWeightInBytes must be positive");
+    this.name = name;
+    this.maximumWeightInBytes = maximumWeightInBytes;
+    this.weigher = weigher;
+  }
+
+  public ConfigCacheSpec<K, V> expireAfterAccess(long duration, TimeUnit unit) {
+    this.expireAfterAccessInMinutes = unit.toMinutes(duration);
+    return this;
+  }
+
+  public ConfigCacheSpec<K, V> expireAfterWrite(long duration, TimeUnit unit) {
+    this.expireAfterWriteInMinutes = unit.toMinutes(duration);
+    return this;
+  }
+
+  public ConfigCacheSpec<K, V> removalListener(RemovalListener<K, V> removalListener) {
+    this.removalListener = removalListener;
+    return this;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getMaximumWeightInBytes() {
+    return maximumWeightInBytes;
+  }
+
+  public Weigher<K, V> getWeigher() {
+    return weigher;
+  }
+
+  public long getExpireAfterAccessInMinutes() {
+    return expireAfterAccessInMinutes;
+  }
+
+  public long getExpireAfterWriteInMinutes() {
+    return expireAfterWriteInMinutes;
+  }
+
+  public RemovalListener<K, V> getRemovalListener() {
+    return removalListener;
+  }
+}
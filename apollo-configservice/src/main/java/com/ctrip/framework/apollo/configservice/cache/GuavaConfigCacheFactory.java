@@ -0,0 +1,46 @@
+package com.ctrip.framework.apollo.configservice.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cache factory which creates weight bounded guava caches, an alternative to {@link CaffeineConfigCacheFactory}.
+ * <p>
+ * The statistics are exported as {@code cache.gets}, {@code cache.evictions}, {@code cache.load} etc. tagged with the
+ * cache name.
+ */
+public class GuavaConfigCacheFactory implements ConfigCacheFactory {
+
+  @Override
+  public <K, V> Cache<K, V> createCache(ConfigCacheSpec<K, V> spec) {
+    return GuavaCacheMetrics.monitor(Metrics.globalRegistry, newCacheBuilder(spec).build(), spec.getName());
+  }
+
+  @Override
+  public <K, V> LoadingCache<K, V> createLoadingCache(ConfigCacheSpec<K, V> spec, CacheLoader<K, V> loader) {
+    return GuavaCacheMetrics.monitor(Metrics.globalRegistry, newCacheBuilder(spec).build(loader), spec.getName());
+  }
+
+  private <K, V> CacheBuilder<K, V> newCacheBuilder(ConfigCacheSpec<K, V> spec) {
+    CacheBuilder<K, V> builder = CacheBuilder.newBuilder()
+        .maximumWeight(spec.getMaximumWeightInBytes())
+        .weigher(spec.getWeigher())
+        .recordStats();
+    if (spec.getExpireAfterAccessInMinutes() > 0) {
+      builder.expireAfterAccess(spec.getExpireAfterAccessInMinutes(), TimeUnit.MINUTES);
+    }
+    if (spec.getExpireAfterWriteInMinutes() > 0) {
+      builder.expireAfterWrite(spec.getExpireAfterWriteInMinutes(), TimeUnit.MINUTES);
+    }
+    if (spec.getRemovalListener() != null) {
+      builder.removalListener(spec.getRemovalListener());
+    }
+    return builder;
+  }
+}
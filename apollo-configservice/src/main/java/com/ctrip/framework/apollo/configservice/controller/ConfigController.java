@@ -1,13 +1,21 @@
 package com.ctrip.framework.apollo.configservice.controller;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.message.ReleasePropagationTracker;
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
+import com.ctrip.framework.apollo.configservice.service.config.ReleaseDelta;
+import com.ctrip.framework.apollo.configservice.service.config.ReleaseSnapshot;
+import com.ctrip.framework.apollo.configservice.util.GzipUtil;
 import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.wrapper.EncodedApolloConfig;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigBatchQuery;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.google.common.base.Splitter;
@@ -15,9 +23,12 @@ import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -25,7 +36,6 @@ import org.springframework.web.bind.annotation.RestController;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -37,30 +47,44 @@ import java.util.stream.Collectors;
 @RestController
 @RequestMapping("/configs")
 public class ConfigController {
+  private static final int MAX_BATCH_NAMESPACES = 200;
   private static final Splitter X_FORWARDED_FOR_SPLITTER = Splitter.on(",").omitEmptyStrings()
       .trimResults();
   private final ConfigService configService;
   private final AppNamespaceServiceWithCache appNamespaceService;
   private final NamespaceUtil namespaceUtil;
   private final InstanceConfigAuditUtil instanceConfigAuditUtil;
+  private final BizConfig bizConfig;
+  private final ReleasePropagationTracker releasePropagationTracker;
   private final Gson gson;
 
-  private static final Type configurationTypeReference = new TypeToken<Map<String, String>>() {
-      }.getType();
-
   public ConfigController(
       final ConfigService configService,
       final AppNamespaceServiceWithCache appNamespaceService,
       final NamespaceUtil namespaceUtil,
       final InstanceConfigAuditUtil instanceConfigAuditUtil,
+      final BizConfig bizConfig,
+      final ReleasePropagationTracker releasePropagationTracker,
       final Gson gson) {
     this.configService = configService;
     this.appNamespaceService = appNamespaceService;
     this.namespaceUtil = namespaceUtil;
     this.instanceConfigAuditUtil = instanceConfigAuditUtil;
+    this.bizConfig = bizConfig;
+    this.releasePropagationTracker = releasePropagationTracker;
     this.gson = gson;
   }
 
+  /**
+   * Query the complete config, which is used when the delta is not supported, e.g. by config files
+   */
+  public ApolloConfig queryConfig(String appId, String clusterName, String namespace, String dataCenter,
+                                  String clientSideReleaseKey, String clientIp, String messagesAsString,
+                                  HttpServletRequest request, HttpServletResponse response) throws IOException {
+    return queryConfig(appId, clusterName, namespace, dataCenter, clientSideReleaseKey, clientIp, messagesAsString,
+        false, request, response);
+  }
+
   @GetMapping(value = "/{appId}/{clusterName}/{namespace:.+}")
   public ApolloConfig queryConfig(@PathVariable String appId, @PathVariable String clusterName,
                                   @PathVariable String namespace,
@@ -68,12 +92,10 @@ public class ConfigController {
                                   @RequestParam(value = "releaseKey", defaultValue = "-1") String clientSideReleaseKey,
                                   @RequestParam(value = "ip", required = false) String clientIp,
                                   @RequestParam(value = "messages", required = false) String messagesAsString,
+                                  @RequestParam(value = "delta", defaultValue = "false") boolean deltaSupported,
                                   HttpServletRequest request, HttpServletResponse response) throws IOException {
     String originalNamespace = namespace;
-    //strip out .properties suffix
-    namespace = namespaceUtil.filterNamespaceName(namespace);
-    //fix the character case issue, such as FX.apollo <-> fx.apollo
-    namespace = namespaceUtil.normalizeNamespace(appId, namespace);
+    namespace = normalizeNamespace(appId, namespace);
 
     if (Strings.isNullOrEmpty(clientIp)) {
       clientIp = tryToGetClientIp(request);
@@ -81,6 +103,145 @@ public class ConfigController {
 
     ApolloNotificationMessages clientMessages = transformMessages(messagesAsString);
 
+    LoadedReleases loadedReleases = findReleases(appId, clientIp, clusterName, namespace, dataCenter,
+        clientMessages);
+    List<Release> releases = loadedReleases.getReleases();
+
+    if (releases.isEmpty()) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND,
+          String.format(
+              "Could not load configurations with appId: %s, clusterName: %s, namespace: %s",
+              appId, clusterName, originalNamespace));
+      Tracer.logEvent("Apollo.Config.NotFound",
+          assembleKey(appId, clusterName, originalNamespace, dataCenter));
+      return null;
+    }
+
+    auditReleases(appId, clusterName, dataCenter, clientIp, releases);
+
+    String mergedReleaseKey = mergeReleaseKeys(releases);
+
+    if (mergedReleaseKey.equals(clientSideReleaseKey)) {
+      // Client side configuration is the same with server side, return 304
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      Tracer.logEvent("Apollo.Config.NotModified",
+          assembleKey(appId, loadedReleases.getAppClusterNameLoaded(), originalNamespace, dataCenter));
+      return null;
+    }
+
+    trackClientFetched(clientMessages, releases);
+
+    //the response may be compressed according to Accept-Encoding, so the caches in between should be aware of it
+    response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    return assembleApolloConfig(appId, loadedReleases.getAppClusterNameLoaded(), originalNamespace, dataCenter,
+        releases, mergedReleaseKey, deltaSupported ? clientSideReleaseKey : null, GzipUtil.acceptsGzip(request));
+  }
+
+  /**
+   * Query the config without a request, which is used to render the config files in background. Gray releases are not
+   * applied and no instance is audited, as there is no client ip.
+   *
+   * @param namespace      the normalized namespace
+   * @param clientMessages the messages to make sure the latest releases are loaded
+   * @return the config, or null if not found
+   */
+  public ApolloConfig queryConfig(String appId, String clusterName, String namespace, String dataCenter,
+                                  ApolloNotificationMessages clientMessages) {
+    LoadedReleases loadedReleases = findReleases(appId, null, clusterName, namespace, dataCenter, clientMessages);
+    List<Release> releases = loadedReleases.getReleases();
+
+    if (releases.isEmpty()) {
+      Tracer.logEvent("Apollo.Config.NotFound", assembleKey(appId, clusterName, namespace, dataCenter));
+      return null;
+    }
+
+    return assembleApolloConfig(appId, loadedReleases.getAppClusterNameLoaded(), namespace, dataCenter, releases,
+        mergeReleaseKeys(releases), null, false);
+  }
+
+  /**
+   * Query the configs of multiple namespaces in one request, only the modified and found ones are returned.
+   * <p>
+   * The query is posted, as the release keys of hundreds of namespaces would exceed the max header size in the query
+   * string.
+   *
+   * @param queryAsString the json of {@link ApolloConfigBatchQuery}, which has the map of namespace name -> client side
+   *                      release key, the release key could be empty if there is no config in client side
+   */
+  @PostMapping(value = "/batch")
+  public List<ApolloConfig> queryConfigs(@RequestParam(value = "appId") String appId,
+                                         @RequestParam(value = "cluster") String clusterName,
+                                         @RequestParam(value = "dataCenter", required = false) String dataCenter,
+                                         @RequestParam(value = "ip", required = false) String clientIp,
+                                         @RequestBody String queryAsString,
+                                         HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    ApolloConfigBatchQuery query = null;
+    try {
+      query = gson.fromJson(queryAsString, ApolloConfigBatchQuery.class);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+    }
+
+    Map<String, String> clientSideReleaseKeys = query == null ? null : query.getNamespaces();
+    if (CollectionUtils.isEmpty(clientSideReleaseKeys) || clientSideReleaseKeys.size() > MAX_BATCH_NAMESPACES) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          String.format("Invalid namespaces, at most %d namespaces are allowed: %s", MAX_BATCH_NAMESPACES,
+              queryAsString));
+      Tracer.logEvent("Apollo.Config.BadRequest", queryAsString);
+      return null;
+    }
+
+    if (Strings.isNullOrEmpty(clientIp)) {
+      clientIp = tryToGetClientIp(request);
+    }
+
+    ApolloNotificationMessages clientMessages = query.getMessages();
+
+    List<ApolloConfig> apolloConfigs = Lists.newArrayListWithCapacity(clientSideReleaseKeys.size());
+    List<Release> fetchedReleases = Lists.newArrayList();
+    for (Map.Entry<String, String> entry : clientSideReleaseKeys.entrySet()) {
+      String originalNamespace = entry.getKey();
+      String namespace = normalizeNamespace(appId, originalNamespace);
+
+      LoadedReleases loadedReleases = findReleases(appId, clientIp, clusterName, namespace, dataCenter,
+          clientMessages);
+      List<Release> releases = loadedReleases.getReleases();
+
+      if (releases.isEmpty()) {
+        Tracer.logEvent("Apollo.Config.NotFound", assembleKey(appId, clusterName, originalNamespace, dataCenter));
+        continue;
+      }
+
+      auditReleases(appId, clusterName, dataCenter, clientIp, releases);
+
+      String mergedReleaseKey = mergeReleaseKeys(releases);
+
+      if (mergedReleaseKey.equals(entry.getValue())) {
+        Tracer.logEvent("Apollo.Config.NotModified",
+            assembleKey(appId, loadedReleases.getAppClusterNameLoaded(), originalNamespace, dataCenter));
+        continue;
+      }
+
+      apolloConfigs.add(assembleApolloConfig(appId, loadedReleases.getAppClusterNameLoaded(), originalNamespace,
+          dataCenter, releases, mergedReleaseKey, null, false));
+      fetchedReleases.addAll(releases);
+    }
+
+    trackClientFetched(clientMessages, fetchedReleases);
+
+    return apolloConfigs;
+  }
+
+  private String normalizeNamespace(String appId, String namespace) {
+    //strip out .properties suffix
+    namespace = namespaceUtil.filterNamespaceName(namespace);
+    //fix the character case issue, such as FX.apollo <-> fx.apollo
+    return namespaceUtil.normalizeNamespace(appId, namespace);
+  }
+
+  private LoadedReleases findReleases(String appId, String clientIp, String clusterName, String namespace,
+                                      String dataCenter, ApolloNotificationMessages clientMessages) {
     List<Release> releases = Lists.newLinkedList();
 
     String appClusterNameLoaded = clusterName;
@@ -104,38 +265,77 @@ public class ConfigController {
       }
     }
 
-    if (releases.isEmpty()) {
-      response.sendError(HttpServletResponse.SC_NOT_FOUND,
-          String.format(
-              "Could not load configurations with appId: %s, clusterName: %s, namespace: %s",
-              appId, clusterName, originalNamespace));
-      Tracer.logEvent("Apollo.Config.NotFound",
-          assembleKey(appId, clusterName, originalNamespace, dataCenter));
-      return null;
-    }
-
-    auditReleases(appId, clusterName, dataCenter, clientIp, releases);
+    return new LoadedReleases(releases, appClusterNameLoaded);
+  }
 
-    String mergedReleaseKey = releases.stream().map(Release::getReleaseKey)
+  private String mergeReleaseKeys(List<Release> releases) {
+    return releases.size() == 1 ? releases.get(0).getReleaseKey() :
+        releases.stream().map(Release::getReleaseKey)
             .collect(Collectors.joining(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR));
+  }
 
-    if (mergedReleaseKey.equals(clientSideReleaseKey)) {
-      // Client side configuration is the same with server side, return 304
-      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-      Tracer.logEvent("Apollo.Config.NotModified",
-          assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
-      return null;
+  /**
+   * @param deltaBaseReleaseKey the client side release key if delta is supported, otherwise null
+   * @param gzipAccepted whether the precompressed configurations could be served
+   */
+  private ApolloConfig assembleApolloConfig(String appId, String appClusterNameLoaded, String originalNamespace,
+                                            String dataCenter, List<Release> releases, String mergedReleaseKey,
+                                            String deltaBaseReleaseKey, boolean gzipAccepted) {
+    ApolloConfig apolloConfig;
+    if (releases.size() == 1) {
+      ReleaseSnapshot snapshot = configService.findReleaseSnapshot(releases.get(0));
+      ReleaseDelta delta = deltaBaseReleaseKey != null ?
+          findReleaseDelta(deltaBaseReleaseKey, releases.get(0), snapshot) : null;
+      if (delta != null) {
+        apolloConfig = new ApolloConfig(appId, appClusterNameLoaded, originalNamespace, mergedReleaseKey);
+        apolloConfig.setConfigurations(delta.getChangedConfigurations());
+        apolloConfig.setDeletedKeys(delta.getDeletedKeys());
+        apolloConfig.setBaseReleaseKey(delta.getBaseReleaseKey());
+        apolloConfig.setChecksum(snapshot.getChecksum());
+        Tracer.logEvent("Apollo.Config.Delta", assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
+      } else {
+        //the most common case, serve the snapshot directly, so no parsing or serializing is needed
+        apolloConfig = new EncodedApolloConfig(appId, appClusterNameLoaded, originalNamespace, mergedReleaseKey,
+            snapshot.getConfigurations(), snapshot.getEncodedConfigurations(),
+            gzipAccepted ? snapshot.getDeflatedConfigurations() : null);
+      }
+    } else {
+      apolloConfig = new ApolloConfig(appId, appClusterNameLoaded, originalNamespace, mergedReleaseKey);
+      apolloConfig.setConfigurations(mergeReleaseConfigurations(releases));
     }
 
-    ApolloConfig apolloConfig = new ApolloConfig(appId, appClusterNameLoaded, originalNamespace,
-        mergedReleaseKey);
-    apolloConfig.setConfigurations(mergeReleaseConfigurations(releases));
-
     Tracer.logEvent("Apollo.Config.Found", assembleKey(appId, appClusterNameLoaded,
         originalNamespace, dataCenter));
     return apolloConfig;
   }
 
+  /**
+   * @return the delta from the client side release, or null if the complete configurations should be returned
+   */
+  private ReleaseDelta findReleaseDelta(String clientSideReleaseKey, Release release, ReleaseSnapshot snapshot) {
+    //the merged release keys of public namespaces are not supported
+    if (!bizConfig.isConfigDeltaEnabled() || Strings.isNullOrEmpty(clientSideReleaseKey) ||
+        "-1".equals(clientSideReleaseKey) || clientSideReleaseKey.contains(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)) {
+      return null;
+    }
+
+    ReleaseDelta delta;
+    try {
+      delta = configService.findReleaseDelta(clientSideReleaseKey, release);
+    } catch (Throwable ex) {
+      //the delta is only an optimization, serve the complete configurations instead
+      Tracer.logError(ex);
+      return null;
+    }
+
+    //no need to use the delta if it's not smaller
+    if (delta == null || delta.size() >= snapshot.getConfigurations().size()) {
+      return null;
+    }
+
+    return delta;
+  }
+
   private boolean namespaceBelongsToAppId(String appId, String namespaceName) {
     //Every app has an 'application' namespace
     if (Objects.equals(ConfigConsts.NAMESPACE_APPLICATION, namespaceName)) {
@@ -179,7 +379,7 @@ public class ConfigController {
   Map<String, String> mergeReleaseConfigurations(List<Release> releases) {
     Map<String, String> result = Maps.newHashMap();
     for (Release release : Lists.reverse(releases)) {
-      result.putAll(gson.fromJson(release.getConfigurations(), configurationTypeReference));
+      result.putAll(configService.findReleaseSnapshot(release).getConfigurations());
     }
     return result;
   }
@@ -213,6 +413,28 @@ public class ConfigController {
     return request.getRemoteAddr();
   }
 
+  /**
+   * The notified client fetches the new release with the messages it's notified with, the latest message of the
+   * fetched releases' own watch keys is the release message propagated to the client, the messages of the other
+   * watch keys, e.g. the other namespaces of a batch request, are not fetched by this response
+   */
+  private void trackClientFetched(ApolloNotificationMessages clientMessages, List<Release> fetchedReleases) {
+    if (clientMessages == null || clientMessages.isEmpty()) {
+      return;
+    }
+    long latestMessageId = -1;
+    for (Release release : fetchedReleases) {
+      Long messageId = clientMessages.get(ReleaseMessageKeyGenerator.generate(release.getAppId(),
+          release.getClusterName(), release.getNamespaceName()));
+      if (messageId != null && messageId > latestMessageId) {
+        latestMessageId = messageId;
+      }
+    }
+    if (latestMessageId > 0) {
+      releasePropagationTracker.onClientFetched(latestMessageId);
+    }
+  }
+
   ApolloNotificationMessages transformMessages(String messagesAsString) {
     ApolloNotificationMessages notificationMessages = null;
     if (!Strings.isNullOrEmpty(messagesAsString)) {
@@ -225,4 +447,22 @@ public class ConfigController {
 
     return notificationMessages;
   }
+
+  private static class LoadedReleases {
+    private final List<Release> releases;
+    private final String appClusterNameLoaded;
+
+    LoadedReleases(List<Release> releases, String appClusterNameLoaded) {
+      this.releases = releases;
+      this.appClusterNameLoaded = appClusterNameLoaded;
+    }
+
+    List<Release> getReleases() {
+      return releases;
+    }
+
+    String getAppClusterNameLoaded() {
+      return appClusterNameLoaded;
+    }
+  }
 }
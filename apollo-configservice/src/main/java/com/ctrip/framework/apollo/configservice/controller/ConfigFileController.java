@@ -1,27 +1,32 @@
 package com.ctrip.framework.apollo.configservice.controller;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.configservice.cache.CacheWeights;
+import com.ctrip.framework.apollo.configservice.cache.ConfigCacheFactory;
+import com.ctrip.framework.apollo.configservice.cache.ConfigCacheSpec;
+import com.ctrip.framework.apollo.configservice.util.ConcurrentSetMultimap;
+import com.ctrip.framework.apollo.configservice.util.GzipUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.util.WatchKeyInterner;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.core.utils.PropertiesUtil;
 import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.RemovalListener;
-import com.google.common.cache.RemovalNotification;
-import com.google.common.cache.Weigher;
-import com.google.common.collect.HashMultimap;
+import com.google.common.cache.RemovalCause;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Ints;
 import com.google.gson.Gson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,10 +42,13 @@ import org.springframework.web.bind.annotation.RestController;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -51,58 +59,82 @@ import java.util.concurrent.TimeUnit;
 public class ConfigFileController implements ReleaseMessageListener {
   private static final Logger logger = LoggerFactory.getLogger(ConfigFileController.class);
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  //the data center is the last part, which is not validated
+  private static final Splitter CACHE_KEY_SPLITTER = Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).limit(5);
   private static final Splitter X_FORWARDED_FOR_SPLITTER = Splitter.on(",").omitEmptyStrings()
       .trimResults();
-  private static final long MAX_CACHE_SIZE = 50 * 1024 * 1024; // 50MB
+  private static final int DEFAULT_MAX_CACHE_SIZE_IN_MB = 100;
   private static final long EXPIRE_AFTER_WRITE = 30;
+  //the clients are notified after the message is handled, so the time spent on rendering delays the notifications
+  private static final long MAX_WARM_UP_TIME_PER_MESSAGE_IN_MILLI = 1000;
+  private static final String PROPERTIES_CONTENT_TYPE = "text/plain;charset=UTF-8";
+  private static final String JSON_CONTENT_TYPE = "application/json;charset=UTF-8";
   private final HttpHeaders propertiesResponseHeaders;
   private final HttpHeaders jsonResponseHeaders;
   private final ResponseEntity<String> NOT_FOUND_RESPONSE;
-  private Cache<String, String> localCache;
-  private final Multimap<String, String>
-      watchedKeys2CacheKey = Multimaps.synchronizedSetMultimap(HashMultimap.create());
-  private final Multimap<String, String>
-      cacheKey2WatchedKeys = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+  private Cache<String, ConfigFileContent> localCache;
+  //the watched keys with release messages are interned, so only their ids are kept for each cache key
+  private final ConcurrentSetMultimap<Integer, String> watchedKeys2CacheKey = new ConcurrentSetMultimap<>();
+  private final ConcurrentMap<String, int[]> cacheKey2WatchedKeys = new ConcurrentHashMap<>();
+  //the watched keys without release messages, e.g. the data center clusters, are kept as is while they are cached,
+  //as the interned ids are never released
+  private final ConcurrentSetMultimap<String, String> unreleasedWatchedKeys2CacheKey = new ConcurrentSetMultimap<>();
+  private final ConcurrentMap<String, String[]> cacheKey2UnreleasedWatchedKeys = new ConcurrentHashMap<>();
   private static final Gson gson = new Gson();
 
   private final ConfigController configController;
   private final NamespaceUtil namespaceUtil;
   private final WatchKeysUtil watchKeysUtil;
   private final GrayReleaseRulesHolder grayReleaseRulesHolder;
+  private final BizConfig bizConfig;
+  private final WatchKeyInterner watchKeyInterner;
 
   public ConfigFileController(
       final ConfigController configController,
       final NamespaceUtil namespaceUtil,
       final WatchKeysUtil watchKeysUtil,
-      final GrayReleaseRulesHolder grayReleaseRulesHolder) {
-    localCache = CacheBuilder.newBuilder()
+      final GrayReleaseRulesHolder grayReleaseRulesHolder,
+      final ConfigCacheFactory configCacheFactory,
+      final BizConfig bizConfig,
+      final WatchKeyInterner watchKeyInterner) {
+    localCache = configCacheFactory.createCache(new ConfigCacheSpec<String, ConfigFileContent>("configFileCache",
+        bizConfig.configServiceCacheMaxSizeInBytes("config-file", DEFAULT_MAX_CACHE_SIZE_IN_MB),
+        (key, value) -> CacheWeights.of(key) + value.getWeight())
         .expireAfterWrite(EXPIRE_AFTER_WRITE, TimeUnit.MINUTES)
-        .weigher((Weigher<String, String>) (key, value) -> value == null ? 0 : value.length())
-        .maximumWeight(MAX_CACHE_SIZE)
         .removalListener(notification -> {
+          //the content is swapped when warmed up, the watched keys are still needed
+          if (notification.getCause() == RemovalCause.REPLACED) {
+            return;
+          }
           String cacheKey = notification.getKey();
           logger.debug("removing cache key: {}", cacheKey);
-          if (!cacheKey2WatchedKeys.containsKey(cacheKey)) {
-            return;
+          int[] watchedKeys = cacheKey2WatchedKeys.remove(cacheKey);
+          if (watchedKeys != null) {
+            for (int watchedKey : watchedKeys) {
+              watchedKeys2CacheKey.remove(watchedKey, cacheKey);
+            }
           }
-          //create a new list to avoid ConcurrentModificationException
-          List<String> watchedKeys = new ArrayList<>(cacheKey2WatchedKeys.get(cacheKey));
-          for (String watchedKey : watchedKeys) {
-            watchedKeys2CacheKey.remove(watchedKey, cacheKey);
+          String[] unreleasedWatchedKeys = cacheKey2UnreleasedWatchedKeys.remove(cacheKey);
+          if (unreleasedWatchedKeys != null) {
+            for (String unreleasedWatchedKey : unreleasedWatchedKeys) {
+              unreleasedWatchedKeys2CacheKey.remove(unreleasedWatchedKey, cacheKey);
+            }
           }
-          cacheKey2WatchedKeys.removeAll(cacheKey);
           logger.debug("removed cache key: {}", cacheKey);
-        })
-        .build();
+        }));
     propertiesResponseHeaders = new HttpHeaders();
-    propertiesResponseHeaders.add("Content-Type", "text/plain;charset=UTF-8");
+    propertiesResponseHeaders.add("Content-Type", PROPERTIES_CONTENT_TYPE);
+    propertiesResponseHeaders.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
     jsonResponseHeaders = new HttpHeaders();
-    jsonResponseHeaders.add("Content-Type", "application/json;charset=UTF-8");
+    jsonResponseHeaders.add("Content-Type", JSON_CONTENT_TYPE);
+    jsonResponseHeaders.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
     NOT_FOUND_RESPONSE = new ResponseEntity<>(HttpStatus.NOT_FOUND);
     this.configController = configController;
     this.namespaceUtil = namespaceUtil;
     this.watchKeysUtil = watchKeysUtil;
     this.grayReleaseRulesHolder = grayReleaseRulesHolder;
+    this.bizConfig = bizConfig;
+    this.watchKeyInterner = watchKeyInterner;
   }
 
   @GetMapping(value = "/{appId}/{clusterName}/{namespace:.+}")
@@ -115,7 +147,7 @@ public class ConfigFileController implements ReleaseMessageListener {
                                                         HttpServletResponse response)
       throws IOException {
 
-    String result =
+    ConfigFileContent result =
         queryConfig(ConfigFileOutputFormat.PROPERTIES, appId, clusterName, namespace, dataCenter,
             clientIp, request, response);
 
@@ -123,7 +155,7 @@ public class ConfigFileController implements ReleaseMessageListener {
       return NOT_FOUND_RESPONSE;
     }
 
-    return new ResponseEntity<>(result, propertiesResponseHeaders, HttpStatus.OK);
+    return buildResponse(result, propertiesResponseHeaders, PROPERTIES_CONTENT_TYPE, request, response);
   }
 
   @GetMapping(value = "/json/{appId}/{clusterName}/{namespace:.+}")
@@ -135,7 +167,7 @@ public class ConfigFileController implements ReleaseMessageListener {
                                                   HttpServletRequest request,
                                                   HttpServletResponse response) throws IOException {
 
-    String result =
+    ConfigFileContent result =
         queryConfig(ConfigFileOutputFormat.JSON, appId, clusterName, namespace, dataCenter,
             clientIp, request, response);
 
@@ -143,10 +175,52 @@ public class ConfigFileController implements ReleaseMessageListener {
       return NOT_FOUND_RESPONSE;
     }
 
-    return new ResponseEntity<>(result, jsonResponseHeaders, HttpStatus.OK);
+    return buildResponse(result, jsonResponseHeaders, JSON_CONTENT_TYPE, request, response);
   }
 
-  String queryConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
+  /**
+   * Returns 304 if the client already has the content, otherwise the content is returned. The precompressed content
+   * is written to the response directly, as it could not be returned as a string.
+   */
+  private ResponseEntity<String> buildResponse(ConfigFileContent content, HttpHeaders headers, String contentType,
+                                               HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    byte[] gzippedContent = content.getGzippedContent();
+    boolean gzipped = gzippedContent != null && GzipUtil.acceptsGzip(request);
+    String eTag = gzipped ? content.getGzippedETag() : content.getETag();
+
+    if (eTag != null && content.matches(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+      HttpHeaders notModifiedHeaders = new HttpHeaders();
+      notModifiedHeaders.setETag(eTag);
+      notModifiedHeaders.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+      Tracer.logEvent("ConfigFile.NotModified", eTag);
+      return new ResponseEntity<>(notModifiedHeaders, HttpStatus.NOT_MODIFIED);
+    }
+
+    if (!gzipped) {
+      if (eTag == null) {
+        return new ResponseEntity<>(content.getContent(), headers, HttpStatus.OK);
+      }
+      HttpHeaders responseHeaders = new HttpHeaders();
+      responseHeaders.putAll(headers);
+      responseHeaders.setETag(eTag);
+      return new ResponseEntity<>(content.getContent(), responseHeaders, HttpStatus.OK);
+    }
+
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType(contentType);
+    response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    if (eTag != null) {
+      response.setHeader(HttpHeaders.ETAG, eTag);
+    }
+    response.setHeader(HttpHeaders.CONTENT_ENCODING, GzipUtil.GZIP);
+    response.setContentLength(gzippedContent.length);
+    response.getOutputStream().write(gzippedContent);
+    response.flushBuffer();
+    return null;
+  }
+
+  ConfigFileContent queryConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
                      String namespace, String dataCenter, String clientIp,
                      HttpServletRequest request,
                      HttpServletResponse response) throws IOException {
@@ -168,15 +242,14 @@ public class ConfigFileController implements ReleaseMessageListener {
     //2. try to load gray release and return
     if (hasGrayReleaseRule) {
       Tracer.logEvent("ConfigFile.Cache.GrayRelease", cacheKey);
-      return loadConfig(outputFormat, appId, clusterName, namespace, dataCenter, clientIp,
-          request, response);
+      return loadConfig(outputFormat, appId, clusterName, namespace, dataCenter, clientIp, request, response);
     }
 
     //3. if not gray release, check weather cache exists, if exists, return
-    String result = localCache.getIfPresent(cacheKey);
+    ConfigFileContent result = localCache.getIfPresent(cacheKey);
 
     //4. if not exists, load from ConfigController
-    if (Strings.isNullOrEmpty(result)) {
+    if (result == null) {
       Tracer.logEvent("ConfigFile.Cache.Miss", cacheKey);
       result = loadConfig(outputFormat, appId, clusterName, namespace, dataCenter, clientIp,
           request, response);
@@ -188,21 +261,35 @@ public class ConfigFileController implements ReleaseMessageListener {
       //This step is mainly to avoid cache pollution
       if (grayReleaseRulesHolder.hasGrayReleaseRule(appId, clientIp, namespace)) {
         Tracer.logEvent("ConfigFile.Cache.GrayReleaseConflict", cacheKey);
-        return loadConfig(outputFormat, appId, clusterName, namespace, dataCenter, clientIp,
-            request, response);
+        return loadConfig(outputFormat, appId, clusterName, namespace, dataCenter, clientIp, request, response);
       }
 
+      //the cached content is compressed only once, so it could be served to all the clients accepting gzip
+      result = result.compress();
       localCache.put(cacheKey, result);
       logger.debug("adding cache for key: {}", cacheKey);
 
       Set<String> watchedKeys =
           watchKeysUtil.assembleAllWatchKeys(appId, clusterName, namespace, dataCenter);
 
+      //the keys of the release messages are interned when loaded, the keys from the clients are only looked up
+      List<Integer> watchedKeyIds = Lists.newArrayListWithCapacity(watchedKeys.size());
+      List<String> unreleasedWatchedKeys = Lists.newArrayList();
       for (String watchedKey : watchedKeys) {
-        watchedKeys2CacheKey.put(watchedKey, cacheKey);
+        int watchedKeyId = watchKeyInterner.find(watchedKey);
+        if (watchedKeyId == WatchKeyInterner.NOT_FOUND) {
+          unreleasedWatchedKeys.add(watchedKey);
+          unreleasedWatchedKeys2CacheKey.put(watchedKey, cacheKey);
+        } else {
+          watchedKeyIds.add(watchedKeyId);
+          watchedKeys2CacheKey.put(watchedKeyId, cacheKey);
+        }
       }
 
-      cacheKey2WatchedKeys.putAll(cacheKey, watchedKeys);
+      cacheKey2WatchedKeys.put(cacheKey, Ints.toArray(watchedKeyIds));
+      if (!unreleasedWatchedKeys.isEmpty()) {
+        cacheKey2UnreleasedWatchedKeys.put(cacheKey, unreleasedWatchedKeys.toArray(new String[0]));
+      }
       logger.debug("added cache for key: {}", cacheKey);
     } else {
       Tracer.logEvent("ConfigFile.Cache.Hit", cacheKey);
@@ -211,13 +298,18 @@ public class ConfigFileController implements ReleaseMessageListener {
     return result;
   }
 
-  private String loadConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
+  private ConfigFileContent loadConfig(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
                             String namespace, String dataCenter, String clientIp,
                             HttpServletRequest request,
                             HttpServletResponse response) throws IOException {
     ApolloConfig apolloConfig = configController.queryConfig(appId, clusterName, namespace,
         dataCenter, "-1", clientIp, null, request, response);
 
+    return render(outputFormat, apolloConfig);
+  }
+
+  private ConfigFileContent render(ConfigFileOutputFormat outputFormat, ApolloConfig apolloConfig)
+      throws IOException {
     if (apolloConfig == null || apolloConfig.getConfigurations() == null) {
       return null;
     }
@@ -235,7 +327,24 @@ public class ConfigFileController implements ReleaseMessageListener {
         break;
     }
 
-    return result;
+    return new ConfigFileContent(result, null, assembleETag(outputFormat, apolloConfig.getReleaseKey()));
+  }
+
+  /**
+   * The rendered content is determined by the release keys and the output format, so there is no need to hash the
+   * content itself
+   *
+   * @return the strong entity tag, or null if the release key is unknown
+   */
+  private String assembleETag(ConfigFileOutputFormat outputFormat, String releaseKey) {
+    if (Strings.isNullOrEmpty(releaseKey)) {
+      return null;
+    }
+    return Hashing.sha1().newHasher()
+        .putString(outputFormat.getValue(), StandardCharsets.UTF_8)
+        .putByte((byte) 0)
+        .putString(releaseKey, StandardCharsets.UTF_8)
+        .hash().toString();
   }
 
   String assembleCacheKey(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
@@ -258,16 +367,167 @@ public class ConfigFileController implements ReleaseMessageListener {
       return;
     }
 
-    if (!watchedKeys2CacheKey.containsKey(content)) {
+    //create a new list as the cache keys are removed when invalidated
+    List<String> cacheKeys = new ArrayList<>();
+    int watchedKey = watchKeyInterner.find(content);
+    if (watchedKey != WatchKeyInterner.NOT_FOUND && watchedKeys2CacheKey.containsKey(watchedKey)) {
+      cacheKeys.addAll(watchedKeys2CacheKey.get(watchedKey));
+    }
+    //the key may be cached before its first release message
+    if (unreleasedWatchedKeys2CacheKey.containsKey(content)) {
+      cacheKeys.addAll(unreleasedWatchedKeys2CacheKey.get(content));
+    }
+    if (cacheKeys.isEmpty()) {
       return;
     }
 
-    //create a new list to avoid ConcurrentModificationException
-    List<String> cacheKeys = new ArrayList<>(watchedKeys2CacheKey.get(content));
+    if (!bizConfig.isConfigFileWarmUpEnabled()) {
+      for (String cacheKey : cacheKeys) {
+        logger.debug("invalidate cache key: {}", cacheKey);
+        localCache.invalidate(cacheKey);
+      }
+      return;
+    }
 
+    //make sure the releases of this message are loaded instead of the cached ones
+    ApolloNotificationMessages messages = new ApolloNotificationMessages();
+    messages.put(content, message.getId());
+
+    //the cache keys not rendered in time are invalidated, so no client notified later is served with the old one
+    long deadline = System.currentTimeMillis() + MAX_WARM_UP_TIME_PER_MESSAGE_IN_MILLI;
     for (String cacheKey : cacheKeys) {
-      logger.debug("invalidate cache key: {}", cacheKey);
+      if (System.currentTimeMillis() < deadline) {
+        warmUp(cacheKey, messages);
+      } else {
+        logger.debug("invalidate cache key: {}", cacheKey);
+        localCache.invalidate(cacheKey);
+      }
+    }
+  }
+
+  /**
+   * Render the config file before the clients are notified and swap it into the cache, so the requests are served by
+   * the old one until the new one is ready instead of rendering it all at once. The cache is invalidated if it could
+   * not be rendered, then it's loaded when requested as usual.
+   */
+  private void warmUp(String cacheKey, ApolloNotificationMessages messages) {
+    ConfigFileContent current = localCache.getIfPresent(cacheKey);
+    //not requested any more
+    if (current == null) {
+      return;
+    }
+
+    List<String> keyParts = CACHE_KEY_SPLITTER.splitToList(cacheKey);
+    ConfigFileOutputFormat outputFormat = keyParts.size() < 4 ? null : ConfigFileOutputFormat.from(keyParts.get(0));
+    if (outputFormat == null) {
       localCache.invalidate(cacheKey);
+      return;
+    }
+
+    Transaction transaction = Tracer.newTransaction("ConfigFile.WarmUp", cacheKey);
+    try {
+      ConfigFileContent rendered = render(outputFormat, configController.queryConfig(keyParts.get(1),
+          keyParts.get(2), keyParts.get(3), keyParts.size() > 4 ? keyParts.get(4) : null, messages));
+      if (rendered == null) {
+        localCache.invalidate(cacheKey);
+      } else if (!localCache.asMap().replace(cacheKey, current, rendered.compress())) {
+        //invalidated or loaded by others, which is already the latest one
+        logger.debug("skip swapping cache key: {}", cacheKey);
+      }
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.warn("Render config file {} failed", cacheKey, ex);
+      localCache.invalidate(cacheKey);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  /**
+   * The rendered config file, with the precompressed content if it's large enough and the entity tags
+   */
+  static class ConfigFileContent {
+    private static final Splitter ETAG_SPLITTER = Splitter.on(",").omitEmptyStrings().trimResults();
+    private static final String WEAK_ETAG_PREFIX = "W/";
+    private static final String GZIP_ETAG_SUFFIX = "-" + GzipUtil.GZIP;
+    private final String content;
+    private final byte[] gzippedContent;
+    private final String eTagValue;
+    private final String eTag;
+    private final String gzippedETag;
+
+    /**
+     * @param eTagValue the opaque value of the entity tag without quotes, or null if unknown
+     */
+    ConfigFileContent(String content, byte[] gzippedContent, String eTagValue) {
+      this.content = content;
+      this.gzippedContent = gzippedContent;
+      this.eTagValue = eTagValue;
+      this.eTag = eTagValue == null ? null : "\"" + eTagValue + "\"";
+      //strong entity tags should be different for different content codings
+      this.gzippedETag = eTagValue == null || gzippedContent == null ? null
+          : "\"" + eTagValue + GZIP_ETAG_SUFFIX + "\"";
+    }
+
+    /**
+     * @return the content without entity tag and compression, or null if the content is null
+     */
+    static ConfigFileContent uncompressed(String content) {
+      return content == null ? null : new ConfigFileContent(content, null, null);
+    }
+
+    /**
+     * @return the content with the precompressed content if it's large enough
+     */
+    ConfigFileContent compress() {
+      byte[] compressed = GzipUtil.compressIfNecessary(content.getBytes(StandardCharsets.UTF_8));
+      if (compressed == null) {
+        return this;
+      }
+      return new ConfigFileContent(content, compressed, eTagValue);
+    }
+
+    /**
+     * Both the entity tags of the plain and gzipped content are matched, as they have the same content
+     *
+     * @param ifNoneMatch the If-None-Match header, e.g. "xyz", W/"xyz", *
+     */
+    boolean matches(String ifNoneMatch) {
+      if (eTag == null || Strings.isNullOrEmpty(ifNoneMatch)) {
+        return false;
+      }
+      for (String candidate : ETAG_SPLITTER.split(ifNoneMatch)) {
+        //If-None-Match uses the weak comparison
+        if (candidate.startsWith(WEAK_ETAG_PREFIX)) {
+          candidate = candidate.substring(WEAK_ETAG_PREFIX.length());
+        }
+        if ("*".equals(candidate) || eTag.equals(candidate) || candidate.equals(gzippedETag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    String getContent() {
+      return content;
+    }
+
+    byte[] getGzippedContent() {
+      return gzippedContent;
+    }
+
+    String getETag() {
+      return eTag;
+    }
+
+    String getGzippedETag() {
+      return gzippedETag;
+    }
+
+    int getWeight() {
+      return CacheWeights.objectOverhead() + CacheWeights.of(content) + CacheWeights.of(gzippedContent)
+          + CacheWeights.of(eTagValue) + CacheWeights.of(eTag) + CacheWeights.of(gzippedETag);
     }
   }
 
@@ -280,6 +540,18 @@ public class ConfigFileController implements ReleaseMessageListener {
       this.value = value;
     }
 
+    /**
+     * @return the format of the value, or null if unknown
+     */
+    static ConfigFileOutputFormat from(String value) {
+      for (ConfigFileOutputFormat format : values()) {
+        if (format.value.equals(value)) {
+          return format;
+        }
+      }
+      return null;
+    }
+
     public String getValue() {
       return value;
     }
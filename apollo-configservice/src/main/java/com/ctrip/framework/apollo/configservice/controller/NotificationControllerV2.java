@@ -3,37 +3,49 @@ package com.ctrip.framework.apollo.configservice.controller;
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
+import com.ctrip.framework.apollo.biz.message.ReleasePropagationTracker;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
+import com.ctrip.framework.apollo.configservice.util.ConcurrentSetMultimap;
+import com.ctrip.framework.apollo.configservice.util.LongPollHoldTimePolicy;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.util.NotificationFanOutScheduler;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationStreamWrapper;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.core.utils.NotificationsCodec;
+import com.ctrip.framework.apollo.core.utils.NotificationsCodec.EncodedNotifications;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
-import com.google.common.collect.HashMultimap;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.lang.reflect.Type;
 import java.util.Collection;
@@ -41,34 +53,53 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 @RestController
-@RequestMapping("/notifications/v2")
-public class NotificationControllerV2 implements ReleaseMessageListener {
+@RequestMapping("/notifications")
+public class NotificationControllerV2 implements ReleaseMessageListener, DisposableBean {
   private static final Logger logger = LoggerFactory.getLogger(NotificationControllerV2.class);
-  private final Multimap<String, DeferredResultWrapper> deferredResults =
-      Multimaps.synchronizedSetMultimap(HashMultimap.create());
+  //java client's read timeout of the notification stream is 90 seconds, so the heartbeat interval must be less than 90
+  private static final int NOTIFICATION_STREAM_HEARTBEAT_INTERVAL_IN_SECONDS = 30;
+  private static final int DECODED_NAMESPACE_NAMES_CACHE_MAX_SIZE = 10000;
+  private static final int DECODED_NAMESPACE_NAMES_CACHE_EXPIRE_IN_MINUTES = 10;
+  private static final long DRAIN_BATCH_INTERVAL_IN_MILLI = 100;
+  private final ConcurrentSetMultimap<String, DeferredResultWrapper> deferredResults =
+      new ConcurrentSetMultimap<>();
+  private final ConcurrentSetMultimap<String, NotificationStreamWrapper> notificationStreams =
+      new ConcurrentSetMultimap<>();
+  private final Set<NotificationStreamWrapper> allNotificationStreams = ConcurrentHashMap.newKeySet();
+  private final Set<DeferredResultWrapper> allDeferredResults = ConcurrentHashMap.newKeySet();
+  private volatile boolean draining = false;
+  private final ScheduledExecutorService heartbeatExecutorService;
+  private final Cache<DecodedNamespaceNamesKey, DecodedNamespaceNames> decodedNamespaceNamesCache = CacheBuilder.newBuilder()
+      .maximumSize(DECODED_NAMESPACE_NAMES_CACHE_MAX_SIZE)
+      .expireAfterAccess(DECODED_NAMESPACE_NAMES_CACHE_EXPIRE_IN_MINUTES, TimeUnit.MINUTES)
+      .build();
   private static final Splitter STRING_SPLITTER =
       Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).omitEmptyStrings();
   private static final Type notificationsTypeReference =
       new TypeToken<List<ApolloConfigNotification>>() {
       }.getType();
 
-  private final ExecutorService largeNotificationBatchExecutorService;
-
   private final WatchKeysUtil watchKeysUtil;
   private final ReleaseMessageServiceWithCache releaseMessageService;
   private final EntityManagerUtil entityManagerUtil;
   private final NamespaceUtil namespaceUtil;
   private final Gson gson;
   private final BizConfig bizConfig;
+  private final NotificationFanOutScheduler notificationFanOutScheduler;
+  private final LongPollHoldTimePolicy longPollHoldTimePolicy;
+  private final ReleasePropagationTracker releasePropagationTracker;
 
   @Autowired
   public NotificationControllerV2(
@@ -77,41 +108,90 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       final EntityManagerUtil entityManagerUtil,
       final NamespaceUtil namespaceUtil,
       final Gson gson,
-      final BizConfig bizConfig) {
-    largeNotificationBatchExecutorService = Executors.newSingleThreadExecutor(ApolloThreadFactory.create
-        ("NotificationControllerV2", true));
+      final BizConfig bizConfig,
+      final NotificationFanOutScheduler notificationFanOutScheduler,
+      final LongPollHoldTimePolicy longPollHoldTimePolicy,
+      final ReleasePropagationTracker releasePropagationTracker) {
     this.watchKeysUtil = watchKeysUtil;
     this.releaseMessageService = releaseMessageService;
     this.entityManagerUtil = entityManagerUtil;
     this.namespaceUtil = namespaceUtil;
     this.gson = gson;
     this.bizConfig = bizConfig;
+    this.notificationFanOutScheduler = notificationFanOutScheduler;
+    this.longPollHoldTimePolicy = longPollHoldTimePolicy;
+    this.releasePropagationTracker = releasePropagationTracker;
+    heartbeatExecutorService = Executors.newSingleThreadScheduledExecutor(ApolloThreadFactory
+        .create("NotificationControllerV2", true));
+    heartbeatExecutorService.scheduleWithFixedDelay(this::sendHeartbeats,
+        NOTIFICATION_STREAM_HEARTBEAT_INTERVAL_IN_SECONDS, NOTIFICATION_STREAM_HEARTBEAT_INTERVAL_IN_SECONDS,
+        TimeUnit.SECONDS);
   }
 
-  @GetMapping
+  @GetMapping("/v2")
   public DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> pollNotification(
       @RequestParam(value = "appId") String appId,
       @RequestParam(value = "cluster") String cluster,
       @RequestParam(value = "notifications") String notificationsAsString,
       @RequestParam(value = "dataCenter", required = false) String dataCenter,
       @RequestParam(value = "ip", required = false) String clientIp) {
-    List<ApolloConfigNotification> notifications = null;
+    List<ApolloConfigNotification> notifications = parseNotifications(notificationsAsString);
+    Map<String, ApolloConfigNotification> filteredNotifications = filterNotifications(appId, notifications);
+
+    if (CollectionUtils.isEmpty(filteredNotifications)) {
+      throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
+    }
+
+    return doPollNotification(appId, cluster, dataCenter, filteredNotifications);
+  }
 
+  /**
+   * The same as {@link #pollNotification(String, String, String, String, String)}, except that the notifications are
+   * posted in the compact binary format of {@link NotificationsCodec}
+   */
+  @PostMapping(value = "/v2", consumes = NotificationsCodec.CONTENT_TYPE)
+  public DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> pollNotification(
+      @RequestParam(value = "appId") String appId,
+      @RequestParam(value = "cluster") String cluster,
+      @RequestParam(value = "dataCenter", required = false) String dataCenter,
+      @RequestParam(value = "ip", required = false) String clientIp,
+      @RequestBody byte[] notificationsAsBytes) {
+    Map<String, ApolloConfigNotification> filteredNotifications = Maps.newHashMap();
     try {
-      notifications =
-          gson.fromJson(notificationsAsString, notificationsTypeReference);
-    } catch (Throwable ex) {
+      EncodedNotifications encodedNotifications = NotificationsCodec.decode(notificationsAsBytes);
+      DecodedNamespaceNames namespaceNames = findOrDecodeNamespaceNames(appId, encodedNotifications);
+      for (int i = 0; i < encodedNotifications.size(); i++) {
+        if (Strings.isNullOrEmpty(namespaceNames.originalNamespaces[i])) {
+          continue;
+        }
+        putFilteredNotification(filteredNotifications, namespaceNames.normalizedNamespaces[i],
+            new ApolloConfigNotification(namespaceNames.originalNamespaces[i],
+                encodedNotifications.getNotificationId(i)));
+      }
+    } catch (IllegalArgumentException ex) {
       Tracer.logError(ex);
     }
 
-    if (CollectionUtils.isEmpty(notifications)) {
-      throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
+    if (CollectionUtils.isEmpty(filteredNotifications)) {
+      throw new BadRequestException("Invalid format of binary notifications");
     }
 
-    DeferredResultWrapper deferredResultWrapper = new DeferredResultWrapper(bizConfig.longPollingTimeoutInMilli());
+    return doPollNotification(appId, cluster, dataCenter, filteredNotifications);
+  }
+
+  private DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> doPollNotification(
+      String appId, String cluster, String dataCenter, Map<String, ApolloConfigNotification> filteredNotifications) {
+    if (draining) {
+      //the config service is shutting down, let the client reconnect to another one
+      DeferredResultWrapper deferredResultWrapper = new DeferredResultWrapper(bizConfig.longPollingTimeoutInMilli());
+      deferredResultWrapper.setReconnectAfterResult(reconnectAfterInSeconds());
+      return deferredResultWrapper.getResult();
+    }
+
+    DeferredResultWrapper deferredResultWrapper =
+        new DeferredResultWrapper(longPollHoldTimePolicy.holdTimeInMilli(allDeferredResults.size()));
     Set<String> namespaces = Sets.newHashSet();
     Map<String, Long> clientSideNotifications = Maps.newHashMap();
-    Map<String, ApolloConfigNotification> filteredNotifications = filterNotifications(appId, notifications);
 
     for (Map.Entry<String, ApolloConfigNotification> notificationEntry : filteredNotifications.entrySet()) {
       String normalizedNamespace = notificationEntry.getKey();
@@ -123,10 +203,6 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       }
     }
 
-    if (CollectionUtils.isEmpty(namespaces)) {
-      throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
-    }
-
     Multimap<String, String> watchedKeysMap =
         watchKeysUtil.assembleAllWatchKeys(appId, cluster, namespaces, dataCenter);
 
@@ -145,6 +221,7 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       for (String key : watchedKeys) {
         deferredResults.remove(key, deferredResultWrapper);
       }
+      allDeferredResults.remove(deferredResultWrapper);
       logWatchedKeys(watchedKeys, "Apollo.LongPoll.CompletedKeys");
     });
 
@@ -152,6 +229,12 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
     for (String key : watchedKeys) {
       this.deferredResults.put(key, deferredResultWrapper);
     }
+    allDeferredResults.add(deferredResultWrapper);
+
+    //in case the draining started after the check above, but missed this poll
+    if (draining) {
+      deferredResultWrapper.setReconnectAfterResult(reconnectAfterInSeconds());
+    }
 
     logWatchedKeys(watchedKeys, "Apollo.LongPoll.RegisteredKeys");
     logger.debug("Listening {} from appId: {}, cluster: {}, namespace: {}, datacenter: {}",
@@ -182,6 +265,105 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
     return deferredResultWrapper.getResult();
   }
 
+  /**
+   * Keep one connection per client and push the notifications as server-sent events, so that the client doesn't need
+   * to reconnect and resend the notifications after each change
+   */
+  @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamNotifications(
+      @RequestParam(value = "appId") String appId,
+      @RequestParam(value = "cluster") String cluster,
+      @RequestParam(value = "notifications") String notificationsAsString,
+      @RequestParam(value = "dataCenter", required = false) String dataCenter,
+      @RequestParam(value = "ip", required = false) String clientIp) {
+    List<ApolloConfigNotification> notifications = parseNotifications(notificationsAsString);
+
+    NotificationStreamWrapper notificationStream =
+        new NotificationStreamWrapper(bizConfig.notificationStreamTimeoutInMilli());
+    Set<String> namespaces = Sets.newHashSet();
+    Map<String, Long> clientSideNotifications = Maps.newHashMap();
+    Map<String, ApolloConfigNotification> filteredNotifications = filterNotifications(appId, notifications);
+
+    for (Map.Entry<String, ApolloConfigNotification> notificationEntry : filteredNotifications.entrySet()) {
+      String normalizedNamespace = notificationEntry.getKey();
+      ApolloConfigNotification notification = notificationEntry.getValue();
+      namespaces.add(normalizedNamespace);
+      clientSideNotifications.put(normalizedNamespace, notification.getNotificationId());
+      if (!Objects.equals(notification.getNamespaceName(), normalizedNamespace)) {
+        notificationStream.recordNamespaceNameNormalizedResult(notification.getNamespaceName(), normalizedNamespace);
+      }
+    }
+
+    if (CollectionUtils.isEmpty(namespaces)) {
+      throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
+    }
+
+    //the watch keys are assembled only once for the whole stream
+    Multimap<String, String> watchedKeysMap =
+        watchKeysUtil.assembleAllWatchKeys(appId, cluster, namespaces, dataCenter);
+
+    Set<String> watchedKeys = Sets.newHashSet(watchedKeysMap.values());
+
+    //register before the check, the same as long polling
+    notificationStream.onTimeout(() -> logWatchedKeys(watchedKeys, "Apollo.NotificationStream.TimeOutKeys"));
+
+    notificationStream.onCompletion(() -> {
+      //unregister all keys
+      for (String key : watchedKeys) {
+        notificationStreams.remove(key, notificationStream);
+      }
+      allNotificationStreams.remove(notificationStream);
+      logWatchedKeys(watchedKeys, "Apollo.NotificationStream.CompletedKeys");
+    });
+
+    //register all keys
+    for (String key : watchedKeys) {
+      notificationStreams.put(key, notificationStream);
+    }
+    allNotificationStreams.add(notificationStream);
+
+    if (draining) {
+      //the config service is shutting down, let the client reconnect to another one
+      notificationStream.complete();
+    }
+
+    logWatchedKeys(watchedKeys, "Apollo.NotificationStream.RegisteredKeys");
+    logger.debug("Streaming {} from appId: {}, cluster: {}, namespace: {}, datacenter: {}",
+        watchedKeys, appId, cluster, namespaces, dataCenter);
+
+    List<ReleaseMessage> latestReleaseMessages =
+        releaseMessageService.findLatestReleaseMessagesGroupByMessages(watchedKeys);
+
+    //the db connection should not be held by the stream
+    entityManagerUtil.closeEntityManager();
+
+    List<ApolloConfigNotification> newNotifications =
+        getApolloConfigNotifications(namespaces, clientSideNotifications, watchedKeysMap,
+            latestReleaseMessages);
+
+    if (!CollectionUtils.isEmpty(newNotifications)) {
+      notificationStream.send(newNotifications);
+    }
+
+    return notificationStream.getEmitter();
+  }
+
+  private List<ApolloConfigNotification> parseNotifications(String notificationsAsString) {
+    List<ApolloConfigNotification> notifications = null;
+
+    try {
+      notifications =
+          gson.fromJson(notificationsAsString, notificationsTypeReference);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+    }
+
+    if (CollectionUtils.isEmpty(notifications)) {
+      throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
+    }
+    return notifications;
+  }
+
   private Map<String, ApolloConfigNotification> filterNotifications(String appId,
                                                                     List<ApolloConfigNotification> notifications) {
     Map<String, ApolloConfigNotification> filteredNotifications = Maps.newHashMap();
@@ -194,18 +376,59 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       notification.setNamespaceName(originalNamespace);
       //fix the character case issue, such as FX.apollo <-> fx.apollo
       String normalizedNamespace = namespaceUtil.normalizeNamespace(appId, originalNamespace);
+      putFilteredNotification(filteredNotifications, normalizedNamespace, notification);
+    }
+    return filteredNotifications;
+  }
 
-      // in case client side namespace name has character case issue and has difference notification ids
-      // such as FX.apollo = 1 but fx.apollo = 2, we should let FX.apollo have the chance to update its notification id
-      // which means we should record FX.apollo = 1 here and ignore fx.apollo = 2
-      if (filteredNotifications.containsKey(normalizedNamespace) &&
-          filteredNotifications.get(normalizedNamespace).getNotificationId() < notification.getNotificationId()) {
-        continue;
+  private void putFilteredNotification(Map<String, ApolloConfigNotification> filteredNotifications,
+                                       String normalizedNamespace, ApolloConfigNotification notification) {
+    // in case client side namespace name has character case issue and has difference notification ids
+    // such as FX.apollo = 1 but fx.apollo = 2, we should let FX.apollo have the chance to update its notification id
+    // which means we should record FX.apollo = 1 here and ignore fx.apollo = 2
+    if (filteredNotifications.containsKey(normalizedNamespace) &&
+        filteredNotifications.get(normalizedNamespace).getNotificationId() < notification.getNotificationId()) {
+      return;
+    }
+
+    filteredNotifications.put(normalizedNamespace, notification);
+  }
+
+  /**
+   * The namespace names of a client rarely change between polls, so the names filtered and normalized before are
+   * reused if the client of the same app posts the same names block again and the app namespaces are not changed, the
+   * names are normalized with the app id, so they are cached by the app id and the fingerprint of the names block
+   */
+  private DecodedNamespaceNames findOrDecodeNamespaceNames(String appId, EncodedNotifications encodedNotifications) {
+    DecodedNamespaceNamesKey key = new DecodedNamespaceNamesKey(appId, encodedNotifications.getFingerprint());
+    DecodedNamespaceNames cached = decodedNamespaceNamesCache.getIfPresent(key);
+    long appNamespacesVersion = namespaceUtil.getAppNamespacesVersion();
+    if (cached != null && cached.appNamespacesVersion == appNamespacesVersion
+        && encodedNotifications.hasSameNamespaceNames(cached.namespaceNames)) {
+      //the names block is the same, but the count of notification ids might be tampered
+      if (encodedNotifications.size() != cached.originalNamespaces.length) {
+        throw new IllegalArgumentException("Namespace names don't match the notification ids");
       }
+      return cached;
+    }
 
-      filteredNotifications.put(normalizedNamespace, notification);
+    List<String> names = encodedNotifications.decodeNamespaceNames();
+    String[] originalNamespaces = new String[names.size()];
+    String[] normalizedNamespaces = new String[names.size()];
+    for (int i = 0; i < names.size(); i++) {
+      if (Strings.isNullOrEmpty(names.get(i))) {
+        continue;
+      }
+      //strip out .properties suffix
+      originalNamespaces[i] = namespaceUtil.filterNamespaceName(names.get(i));
+      //fix the character case issue, such as FX.apollo <-> fx.apollo
+      normalizedNamespaces[i] = namespaceUtil.normalizeNamespace(appId, originalNamespaces[i]);
     }
-    return filteredNotifications;
+
+    DecodedNamespaceNames decoded = new DecodedNamespaceNames(appNamespacesVersion,
+        encodedNotifications.getNamespaceNames(), originalNamespaces, normalizedNamespaces);
+    decodedNamespaceNamesCache.put(key, decoded);
+    return decoded;
   }
 
   private List<ApolloConfigNotification> getApolloConfigNotifications(Set<String> namespaces,
@@ -258,44 +481,126 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       return;
     }
 
-    if (!deferredResults.containsKey(content)) {
-      return;
+    Collection<DeferredResultWrapper> results = deferredResults.get(content);
+    Collection<NotificationStreamWrapper> streams = notificationStreams.get(content);
+    long fetchDelayWindow = calculateFetchDelayWindow(results.size() + streams.size());
+
+    if (!results.isEmpty()) {
+      ApolloConfigNotification configNotification = new ApolloConfigNotification(changedNamespace, message.getId());
+      configNotification.addMessage(content, message.getId());
+      configNotification.setFetchDelayWindowInMilli(fetchDelayWindow);
+      notifySubscribers(content, results, result -> {
+        result.setResult(configNotification);
+        releasePropagationTracker.onClientNotified(message);
+      });
     }
 
-    //create a new list to avoid ConcurrentModificationException
-    List<DeferredResultWrapper> results = Lists.newArrayList(deferredResults.get(content));
+    if (!streams.isEmpty()) {
+      ApolloConfigNotification configNotification = new ApolloConfigNotification(changedNamespace, message.getId());
+      configNotification.addMessage(content, message.getId());
+      configNotification.setFetchDelayWindowInMilli(fetchDelayWindow);
+      notifySubscribers(content, streams, stream -> {
+        stream.send(configNotification);
+        releasePropagationTracker.onClientNotified(message);
+      });
+    }
+  }
 
-    ApolloConfigNotification configNotification = new ApolloConfigNotification(changedNamespace, message.getId());
-    configNotification.addMessage(content, message.getId());
+  /**
+   * All the subscribers would fetch the config right after notified, so they are suggested to spread the fetches in a
+   * window scaled to the subscriber count, e.g. 10000 subscribers with 1000 qps would be spread in 10 seconds, which is
+   * bounded by the max fetch delay
+   */
+  private long calculateFetchDelayWindow(int subscribers) {
+    int maxFetchDelay = bizConfig.notificationMaxFetchDelayInMilli();
+    if (maxFetchDelay <= 0 || subscribers <= 1) {
+      return 0;
+    }
+    return Math.min(maxFetchDelay, 1000L * subscribers / bizConfig.notificationFetchQpsPerKey());
+  }
 
+  /**
+   * @param subscribers the registered subscribers, which could be iterated while clients are registering or unregistering
+   */
+  private <T> void notifySubscribers(String content, Collection<T> subscribers, Consumer<T> notifier) {
     //do async notification if too many clients
-    if (results.size() > bizConfig.releaseMessageNotificationBatch()) {
-      largeNotificationBatchExecutorService.submit(() -> {
-        logger.debug("Async notify {} clients for key {} with batch {}", results.size(), content,
-            bizConfig.releaseMessageNotificationBatch());
-        for (int i = 0; i < results.size(); i++) {
-          if (i > 0 && i % bizConfig.releaseMessageNotificationBatch() == 0) {
-            try {
-              TimeUnit.MILLISECONDS.sleep(bizConfig.releaseMessageNotificationBatchIntervalInMilli());
-            } catch (InterruptedException e) {
-              //ignore
-            }
-          }
-          logger.debug("Async notify {}", results.get(i));
-          results.get(i).setResult(configNotification);
-        }
-      });
+    if (subscribers.size() > bizConfig.releaseMessageNotificationBatch()) {
+      //create a new list so that clients registered after this message won't be notified again
+      List<T> results = Lists.newArrayList(subscribers);
+      logger.debug("Async notify {} clients for key {}", results.size(), content);
+      notificationFanOutScheduler.schedule(content, results, notifier);
       return;
     }
 
-    logger.debug("Notify {} clients for key {}", results.size(), content);
+    logger.debug("Notify {} clients for key {}", subscribers.size(), content);
 
-    for (DeferredResultWrapper result : results) {
-      result.setResult(configNotification);
+    for (T subscriber : subscribers) {
+      notifier.accept(subscriber);
     }
     logger.debug("Notification completed");
   }
 
+  /**
+   * Release the held long polls and notification streams gradually in the drain window instead of dropping them all at
+   * once on shutdown, otherwise all the clients would reconnect to the other config services at the same time
+   */
+  @Override
+  public void destroy() {
+    draining = true;
+    heartbeatExecutorService.shutdown();
+
+    List<Runnable> releases = Lists.newArrayList();
+    for (DeferredResultWrapper deferredResultWrapper : allDeferredResults) {
+      releases.add(() -> deferredResultWrapper.setReconnectAfterResult(reconnectAfterInSeconds()));
+    }
+    for (NotificationStreamWrapper notificationStream : allNotificationStreams) {
+      releases.add(notificationStream::complete);
+    }
+
+    long drainWindow = bizConfig.longPollingDrainWindowInMilli();
+    long batches = Math.max(1, drainWindow / DRAIN_BATCH_INTERVAL_IN_MILLI);
+    long batchSize = Math.max(1, (releases.size() + batches - 1) / batches);
+    logger.info("Draining {} long polls and notification streams in {} ms", releases.size(), drainWindow);
+
+    boolean interrupted = false;
+    for (int i = 0; i < releases.size(); i++) {
+      if (i > 0 && i % batchSize == 0 && !interrupted) {
+        try {
+          TimeUnit.MILLISECONDS.sleep(DRAIN_BATCH_INTERVAL_IN_MILLI);
+        } catch (InterruptedException ex) {
+          //release the rest at once
+          interrupted = true;
+          Thread.currentThread().interrupt();
+        }
+      }
+      try {
+        releases.get(i).run();
+      } catch (Throwable ex) {
+        logger.debug("Release long poll or notification stream failed", ex);
+      }
+    }
+  }
+
+  /**
+   * The released clients are suggested to reconnect at a random time in the drain window, in addition to being released
+   * gradually
+   */
+  private long reconnectAfterInSeconds() {
+    long drainWindowInSeconds = TimeUnit.MILLISECONDS.toSeconds(bizConfig.longPollingDrainWindowInMilli());
+    return ThreadLocalRandom.current().nextLong(drainWindowInSeconds + 1);
+  }
+
+  private void sendHeartbeats() {
+    try {
+      for (NotificationStreamWrapper notificationStream : allNotificationStreams) {
+        notificationStream.sendHeartbeat();
+      }
+    } catch (Throwable ex) {
+      logger.error("Send heartbeats to notification streams failed", ex);
+      Tracer.logError(ex);
+    }
+  }
+
   private static final Function<String, String> retrieveNamespaceFromReleaseMessage =
       releaseMessage -> {
         if (Strings.isNullOrEmpty(releaseMessage)) {
@@ -315,4 +620,50 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       Tracer.logEvent(eventName, watchedKey);
     }
   }
+
+  private static class DecodedNamespaceNamesKey {
+    private final String appId;
+    private final long fingerprint;
+    private final int hashCode;
+
+    DecodedNamespaceNamesKey(String appId, long fingerprint) {
+      this.appId = appId;
+      this.fingerprint = fingerprint;
+      this.hashCode = Objects.hash(appId, fingerprint);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      DecodedNamespaceNamesKey that = (DecodedNamespaceNamesKey) o;
+      return hashCode == that.hashCode &&
+          fingerprint == that.fingerprint &&
+          Objects.equals(appId, that.appId);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static class DecodedNamespaceNames {
+    private final long appNamespacesVersion;
+    private final byte[] namespaceNames;
+    private final String[] originalNamespaces;
+    private final String[] normalizedNamespaces;
+
+    DecodedNamespaceNames(long appNamespacesVersion, byte[] namespaceNames,
+                          String[] originalNamespaces, String[] normalizedNamespaces) {
+      this.appNamespacesVersion = appNamespacesVersion;
+      this.namespaceNames = namespaceNames;
+      this.originalNamespaces = originalNamespaces;
+      this.normalizedNamespaces = normalizedNamespaces;
+    }
+  }
 }
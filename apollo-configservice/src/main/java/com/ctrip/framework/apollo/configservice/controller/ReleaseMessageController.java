@@ -0,0 +1,37 @@
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.HttpReleaseMessageTransport;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Receives the release messages pushed by admin service
+ */
+@RestController
+@RequestMapping("/release-messages")
+public class ReleaseMessageController {
+  private final HttpReleaseMessageTransport releaseMessageTransport;
+
+  public ReleaseMessageController(final HttpReleaseMessageTransport releaseMessageTransport) {
+    this.releaseMessageTransport = releaseMessageTransport;
+  }
+
+  @PostMapping
+  public ResponseEntity<Void> receiveMessage(
+      @RequestHeader(value = HttpReleaseMessageTransport.PUSH_TOKEN_HEADER, required = false) String token,
+      @RequestBody ReleaseMessage releaseMessage) {
+    if (!releaseMessageTransport.isAuthorized(token)) {
+      Tracer.logEvent("Apollo.ReleaseMessage.Unauthorized", releaseMessage.getMessage());
+      return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+    }
+    releaseMessageTransport.receive(releaseMessage);
+    return new ResponseEntity<>(HttpStatus.OK);
+  }
+}
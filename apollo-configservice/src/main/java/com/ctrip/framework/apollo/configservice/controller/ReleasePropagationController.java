@@ -0,0 +1,72 @@
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.biz.message.ReleasePropagation;
+import com.ctrip.framework.apollo.biz.message.ReleasePropagationStage;
+import com.ctrip.framework.apollo.biz.message.ReleasePropagationTracker;
+import com.ctrip.framework.apollo.common.dto.ReleasePropagationDTO;
+import com.ctrip.framework.apollo.common.dto.ReleasePropagationStageDTO;
+import com.ctrip.framework.apollo.common.exception.NotFoundException;
+import com.ctrip.framework.apollo.core.utils.LatencyHistogram;
+import com.google.common.collect.Lists;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reports how the recent releases propagate to the clients of this config service
+ */
+@RestController
+@RequestMapping("/release-messages")
+public class ReleasePropagationController {
+  private final ReleasePropagationTracker releasePropagationTracker;
+
+  public ReleasePropagationController(final ReleasePropagationTracker releasePropagationTracker) {
+    this.releasePropagationTracker = releasePropagationTracker;
+  }
+
+  /**
+   * @param messageId the id of the release message, i.e. the notification id received by the clients
+   */
+  @GetMapping("/{messageId}/propagation")
+  public ReleasePropagationDTO getPropagation(@PathVariable("messageId") long messageId) {
+    ReleasePropagation propagation = releasePropagationTracker.findPropagation(messageId);
+    if (propagation == null) {
+      throw new NotFoundException(String.format("Propagation of release message %d is not tracked", messageId));
+    }
+
+    ReleasePropagationDTO propagationDTO = new ReleasePropagationDTO();
+    propagationDTO.setMessageId(propagation.getMessageId());
+    propagationDTO.setReleaseId(propagation.getReleaseId());
+    propagationDTO.setMessage(propagation.getMessage());
+    propagationDTO.setSentTime(new Date(propagation.getSentTime()));
+
+    Map<ReleasePropagationStage, LatencyHistogram> latencies = propagation.getLatencies();
+    List<ReleasePropagationStageDTO> stages = Lists.newArrayListWithCapacity(latencies.size());
+    for (ReleasePropagationStage stage : ReleasePropagationStage.values()) {
+      LatencyHistogram latency = latencies.get(stage);
+      if (latency != null) {
+        stages.add(transformStage(stage, latency));
+      }
+    }
+    propagationDTO.setStages(stages);
+
+    return propagationDTO;
+  }
+
+  private ReleasePropagationStageDTO transformStage(ReleasePropagationStage stage, LatencyHistogram latency) {
+    ReleasePropagationStageDTO stageDTO = new ReleasePropagationStageDTO();
+    stageDTO.setStage(stage.name().toLowerCase(Locale.ROOT));
+    stageDTO.setCount(latency.getCount());
+    stageDTO.setP50(latency.getValueAtPercentile(50));
+    stageDTO.setP90(latency.getValueAtPercentile(90));
+    stageDTO.setP99(latency.getValueAtPercentile(99));
+    stageDTO.setMax(latency.getMax());
+    return stageDTO;
+  }
+}
@@ -0,0 +1,176 @@
+package com.ctrip.framework.apollo.configservice.filter;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the request rate of each client, i.e. app id and ip, with token buckets, the requests exceeding the rate are
+ * rejected with 429 and Retry-After immediately, so that the clients requesting too frequently, e.g. restarting in a
+ * crash loop, won't exhaust the server threads.
+ * <p>
+ * The config requests and notification requests have separate buckets, as they have quite different rates.
+ * <p>
+ * The client ip is the remote address of the connection, the X-Forwarded-For header is only used when the connection
+ * is from a trusted proxy. The ip reported by the client is never used, otherwise the clients could evade the limit.
+ */
+public class ClientAdmissionFilter implements Filter {
+  private static final String NOTIFICATIONS_PATH_PREFIX = "/notifications";
+  private static final String CONFIG_FILES_PATH = "configfiles";
+  private static final String CONFIG_FILES_JSON_PATH = "json";
+  private static final long MAX_CLIENTS = 100000;
+  private static final long CLIENT_EXPIRE_AFTER_ACCESS_IN_MINUTES = 5;
+  private static final Splitter X_FORWARDED_FOR_SPLITTER = Splitter.on(",").omitEmptyStrings()
+      .trimResults();
+  private static final Splitter PATH_SPLITTER = Splitter.on("/").omitEmptyStrings();
+  private static final String CLIENT_KEY_SEPARATOR = "@";
+
+  private final BizConfig bizConfig;
+  private final Cache<String, RateLimiter> configRateLimiters;
+  private final Cache<String, RateLimiter> notificationRateLimiters;
+  private final Counter configRejectedCounter;
+  private final Counter notificationRejectedCounter;
+
+  public ClientAdmissionFilter(final BizConfig bizConfig) {
+    this.bizConfig = bizConfig;
+    configRateLimiters = buildRateLimiterCache();
+    notificationRateLimiters = buildRateLimiterCache();
+    configRejectedCounter = Metrics.counter("apollo.config.admission.rejected", "type", "config");
+    notificationRejectedCounter = Metrics.counter("apollo.config.admission.rejected", "type", "notification");
+  }
+
+  @Override
+  public void init(FilterConfig filterConfig) throws ServletException {
+    //nothing
+  }
+
+  @Override
+  public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain)
+      throws IOException, ServletException {
+    if (!bizConfig.isConfigServiceAdmissionEnabled()) {
+      chain.doFilter(req, resp);
+      return;
+    }
+
+    HttpServletRequest request = (HttpServletRequest) req;
+    HttpServletResponse response = (HttpServletResponse) resp;
+
+    String path = request.getRequestURI().substring(request.getContextPath().length());
+    boolean notification = path.startsWith(NOTIFICATIONS_PATH_PREFIX);
+    String client = tryToGetAppId(request, path) + CLIENT_KEY_SEPARATOR + tryToGetClientIp(request);
+
+    int qps;
+    RateLimiter rateLimiter;
+    if (notification) {
+      qps = bizConfig.configServiceAdmissionNotificationQpsPerClient();
+      rateLimiter = findRateLimiter(notificationRateLimiters, client, qps);
+    } else {
+      qps = bizConfig.configServiceAdmissionConfigQpsPerClient();
+      rateLimiter = findRateLimiter(configRateLimiters, client, qps);
+    }
+
+    if (rateLimiter.tryAcquire()) {
+      chain.doFilter(req, resp);
+      return;
+    }
+
+    (notification ? notificationRejectedCounter : configRejectedCounter).increment();
+    Tracer.logEvent("Apollo.Admission.Rejected", notification ? "notification" : "config");
+
+    //a random delay is added, so that the rejected clients won't come back at the same time
+    int retryAfter = bizConfig.configServiceAdmissionRetryAfterInSecond();
+    response.setHeader(HttpHeaders.RETRY_AFTER,
+        String.valueOf(retryAfter + ThreadLocalRandom.current().nextInt(retryAfter + 1)));
+    response.sendError(HttpStatus.TOO_MANY_REQUESTS.value(),
+        String.format("Too many requests from %s, the permitted rate is %d per second", client, qps));
+  }
+
+  @Override
+  public void destroy() {
+    //nothing
+  }
+
+  private RateLimiter findRateLimiter(Cache<String, RateLimiter> rateLimiters, String client, int qps) {
+    RateLimiter rateLimiter;
+    try {
+      rateLimiter = rateLimiters.get(client, () -> RateLimiter.create(qps));
+    } catch (ExecutionException ex) {
+      //should not happen
+      throw new IllegalStateException(ex);
+    }
+    //the rate is changed in the config
+    if (rateLimiter.getRate() != qps) {
+      rateLimiter.setRate(qps);
+    }
+    return rateLimiter;
+  }
+
+  /**
+   * The app id is in the query parameters of /configs/batch and /notifications, and in the paths of /configs and
+   * /configfiles
+   */
+  private String tryToGetAppId(HttpServletRequest request, String path) {
+    String appId = request.getParameter("appId");
+    if (!Strings.isNullOrEmpty(appId)) {
+      return appId;
+    }
+    List<String> segments = PATH_SPLITTER.splitToList(path);
+    int appIdIndex = 1;
+    if (segments.size() > appIdIndex && CONFIG_FILES_PATH.equals(segments.get(0))
+        && CONFIG_FILES_JSON_PATH.equals(segments.get(appIdIndex))) {
+      appIdIndex++;
+    }
+    return segments.size() > appIdIndex ? segments.get(appIdIndex) : "";
+  }
+
+  /**
+   * The X-Forwarded-For header is appended by each proxy, so the rightmost ip not of the trusted proxies is the client
+   */
+  private String tryToGetClientIp(HttpServletRequest request) {
+    String remoteAddr = request.getRemoteAddr();
+    List<String> trustedProxies = bizConfig.configServiceAdmissionTrustedProxies();
+    if (!trustedProxies.contains(remoteAddr)) {
+      return remoteAddr;
+    }
+    String forwardedFor = request.getHeader("X-FORWARDED-FOR");
+    if (Strings.isNullOrEmpty(forwardedFor)) {
+      return remoteAddr;
+    }
+    List<String> forwardedIps = X_FORWARDED_FOR_SPLITTER.splitToList(forwardedFor);
+    for (int i = forwardedIps.size() - 1; i >= 0; i--) {
+      if (!trustedProxies.contains(forwardedIps.get(i))) {
+        return forwardedIps.get(i);
+      }
+    }
+    return forwardedIps.isEmpty() ? remoteAddr : forwardedIps.get(0);
+  }
+
+  private static Cache<String, RateLimiter> buildRateLimiterCache() {
+    return CacheBuilder.newBuilder()
+        .maximumSize(MAX_CLIENTS)
+        .expireAfterAccess(CLIENT_EXPIRE_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
+        .build();
+  }
+}
@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.configservice.service;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.repository.AppNamespaceRepository;
+import com.ctrip.framework.apollo.biz.snapshot.CacheSnapshotStore;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.configservice.wrapper.CaseInsensitiveMapWrapper;
 import com.ctrip.framework.apollo.core.ConfigConsts;
@@ -21,13 +22,18 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -37,15 +43,17 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
   private static final Logger logger = LoggerFactory.getLogger(AppNamespaceServiceWithCache.class);
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
       .skipNulls();
+  private static final String SNAPSHOT_NAME = "app-namespaces";
   private final AppNamespaceRepository appNamespaceRepository;
   private final BizConfig bizConfig;
+  private final CacheSnapshotStore cacheSnapshotStore;
 
   private int scanInterval;
   private TimeUnit scanIntervalTimeUnit;
   private int rebuildInterval;
   private TimeUnit rebuildIntervalTimeUnit;
   private ScheduledExecutorService scheduledExecutorService;
-  private long maxIdScanned;
+  private volatile long maxIdScanned;
 
   //store namespaceName -> AppNamespace
   private CaseInsensitiveMapWrapper<AppNamespace> publicAppNamespaceCache;
@@ -56,11 +64,16 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
   //store id -> AppNamespace
   private Map<Long, AppNamespace> appNamespaceIdCache;
 
+  //increased whenever the app namespaces are changed
+  private final AtomicLong version = new AtomicLong();
+
   public AppNamespaceServiceWithCache(
       final AppNamespaceRepository appNamespaceRepository,
-      final BizConfig bizConfig) {
+      final BizConfig bizConfig,
+      final CacheSnapshotStore cacheSnapshotStore) {
     this.appNamespaceRepository = appNamespaceRepository;
     this.bizConfig = bizConfig;
+    this.cacheSnapshotStore = cacheSnapshotStore;
     initialize();
   }
 
@@ -113,9 +126,19 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
     return result;
   }
 
+  /**
+   * The version is increased whenever app namespaces are added, updated or deleted, so the results derived from them
+   * could be cached until the version changes
+   */
+  public long getVersion() {
+    return version.get();
+  }
+
   @Override
   public void afterPropertiesSet() throws Exception {
     populateDataBaseInterval();
+    //the updated or deleted app namespaces since the snapshot are rebuilt at once
+    long rebuildInitialDelay = restoreSnapshot() ? 0 : rebuildInterval;
     scanNewAppNamespaces(); //block the startup process until load finished
     scheduledExecutorService.scheduleAtFixedRate(() -> {
       Transaction transaction = Tracer.newTransaction("Apollo.AppNamespaceServiceWithCache",
@@ -129,9 +152,71 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
       } finally {
         transaction.complete();
       }
-    }, rebuildInterval, rebuildInterval, rebuildIntervalTimeUnit);
+    }, rebuildInitialDelay, rebuildInterval, rebuildIntervalTimeUnit);
     scheduledExecutorService.scheduleWithFixedDelay(this::scanNewAppNamespaces, scanInterval,
         scanInterval, scanIntervalTimeUnit);
+    cacheSnapshotStore.register(SNAPSHOT_NAME, this::writeSnapshot);
+  }
+
+  private boolean restoreSnapshot() {
+    List<AppNamespace> restored = Lists.newArrayList();
+    Long watermark = cacheSnapshotStore.load(SNAPSHOT_NAME, in -> readSnapshot(in, restored));
+    if (watermark == null) {
+      return false;
+    }
+    mergeAppNamespaces(restored);
+    maxIdScanned = watermark;
+    logger.info("Restored {} app namespaces from snapshot with maxIdScanned {}", restored.size(), watermark);
+    return true;
+  }
+
+  private void writeSnapshot(DataOutput out) throws IOException {
+    //the watermark is taken before the app namespaces, so the ones merged meanwhile would be loaded again
+    long watermark = maxIdScanned;
+    List<AppNamespace> appNamespaces = Lists.newArrayList(appNamespaceIdCache.values());
+    out.writeLong(watermark);
+    out.writeInt(appNamespaces.size());
+    for (AppNamespace appNamespace : appNamespaces) {
+      out.writeLong(appNamespace.getId());
+      CacheSnapshotStore.writeString(out, appNamespace.getAppId());
+      CacheSnapshotStore.writeString(out, appNamespace.getName());
+      CacheSnapshotStore.writeString(out, appNamespace.getFormat());
+      out.writeBoolean(appNamespace.isPublic());
+      CacheSnapshotStore.writeString(out, appNamespace.getComment());
+      CacheSnapshotStore.writeString(out, appNamespace.getDataChangeCreatedBy());
+      writeDate(out, appNamespace.getDataChangeCreatedTime());
+      CacheSnapshotStore.writeString(out, appNamespace.getDataChangeLastModifiedBy());
+      writeDate(out, appNamespace.getDataChangeLastModifiedTime());
+    }
+  }
+
+  private Long readSnapshot(DataInput in, List<AppNamespace> appNamespaces) throws IOException {
+    long watermark = in.readLong();
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      AppNamespace appNamespace = new AppNamespace();
+      appNamespace.setId(in.readLong());
+      appNamespace.setAppId(CacheSnapshotStore.readString(in));
+      appNamespace.setName(CacheSnapshotStore.readString(in));
+      appNamespace.setFormat(CacheSnapshotStore.readString(in));
+      appNamespace.setPublic(in.readBoolean());
+      appNamespace.setComment(CacheSnapshotStore.readString(in));
+      appNamespace.setDataChangeCreatedBy(CacheSnapshotStore.readString(in));
+      appNamespace.setDataChangeCreatedTime(readDate(in));
+      appNamespace.setDataChangeLastModifiedBy(CacheSnapshotStore.readString(in));
+      appNamespace.setDataChangeLastModifiedTime(readDate(in));
+      appNamespaces.add(appNamespace);
+    }
+    return watermark;
+  }
+
+  private void writeDate(DataOutput out, Date date) throws IOException {
+    out.writeLong(date == null ? -1 : date.getTime());
+  }
+
+  private Date readDate(DataInput in) throws IOException {
+    long time = in.readLong();
+    return time < 0 ? null : new Date(time);
   }
 
   private void scanNewAppNamespaces() {
@@ -174,6 +259,7 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
         publicAppNamespaceCache.put(appNamespace.getName(), appNamespace);
       }
     }
+    version.incrementAndGet();
   }
 
   //for those updated or deleted app namespaces
@@ -227,6 +313,7 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
           //just in case isPublic changes
           publicAppNamespaceCache.remove(thatInCache.getName());
         }
+        version.incrementAndGet();
         logger.info("Found AppNamespace changes, old: {}, new: {}", thatInCache, appNamespace);
       }
     }
@@ -251,6 +338,7 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
           publicAppNamespaceCache.remove(deleted.getName());
         }
       }
+      version.incrementAndGet();
       logger.info("Found AppNamespace deleted, {}", deleted);
     }
   }
@@ -5,22 +5,26 @@ import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
+import com.ctrip.framework.apollo.biz.snapshot.CacheSnapshotStore;
+import com.ctrip.framework.apollo.configservice.util.IntLongArrayMap;
+import com.ctrip.framework.apollo.configservice.util.WatchKeyInterner;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -33,29 +37,38 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, InitializingBean {
   private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageServiceWithCache
       .class);
+  private static final String SNAPSHOT_NAME = "release-messages";
   private final ReleaseMessageRepository releaseMessageRepository;
   private final BizConfig bizConfig;
+  private final CacheSnapshotStore cacheSnapshotStore;
+  private final WatchKeyInterner watchKeyInterner;
 
   private int scanInterval;
   private TimeUnit scanIntervalTimeUnit;
 
   private volatile long maxIdScanned;
 
-  private ConcurrentMap<String, ReleaseMessage> releaseMessageCache;
+  //interned message id -> latest release message id
+  private IntLongArrayMap releaseMessageCache;
 
   private AtomicBoolean doScan;
   private ExecutorService executorService;
 
   public ReleaseMessageServiceWithCache(
       final ReleaseMessageRepository releaseMessageRepository,
-      final BizConfig bizConfig) {
+      final BizConfig bizConfig,
+      final CacheSnapshotStore cacheSnapshotStore,
+      final WatchKeyInterner watchKeyInterner) {
     this.releaseMessageRepository = releaseMessageRepository;
     this.bizConfig = bizConfig;
+    this.cacheSnapshotStore = cacheSnapshotStore;
+    this.watchKeyInterner = watchKeyInterner;
     initialize();
   }
 
   private void initialize() {
-    releaseMessageCache = Maps.newConcurrentMap();
+    maxIdScanned = 0;
+    releaseMessageCache = new IntLongArrayMap();
     doScan = new AtomicBoolean(true);
     executorService = Executors.newSingleThreadExecutor(ApolloThreadFactory
         .create("ReleaseMessageServiceWithCache", true));
@@ -67,16 +80,20 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     }
 
     long maxReleaseMessageId = 0;
-    ReleaseMessage result = null;
+    int resultKey = WatchKeyInterner.NOT_FOUND;
     for (String message : messages) {
-      ReleaseMessage releaseMessage = releaseMessageCache.get(message);
-      if (releaseMessage != null && releaseMessage.getId() > maxReleaseMessageId) {
-        maxReleaseMessageId = releaseMessage.getId();
-        result = releaseMessage;
+      int key = watchKeyInterner.find(message);
+      if (key == WatchKeyInterner.NOT_FOUND) {
+        continue;
+      }
+      long releaseMessageId = releaseMessageCache.get(key);
+      if (releaseMessageId > maxReleaseMessageId) {
+        maxReleaseMessageId = releaseMessageId;
+        resultKey = key;
       }
     }
 
-    return result;
+    return resultKey == WatchKeyInterner.NOT_FOUND ? null : toReleaseMessage(resultKey, maxReleaseMessageId);
   }
 
   public List<ReleaseMessage> findLatestReleaseMessagesGroupByMessages(Set<String> messages) {
@@ -86,15 +103,28 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     List<ReleaseMessage> releaseMessages = Lists.newArrayList();
 
     for (String message : messages) {
-      ReleaseMessage releaseMessage = releaseMessageCache.get(message);
-      if (releaseMessage != null) {
-        releaseMessages.add(releaseMessage);
+      int key = watchKeyInterner.find(message);
+      if (key == WatchKeyInterner.NOT_FOUND) {
+        continue;
+      }
+      long releaseMessageId = releaseMessageCache.get(key);
+      if (releaseMessageId != IntLongArrayMap.ABSENT) {
+        releaseMessages.add(toReleaseMessage(key, releaseMessageId));
       }
     }
 
     return releaseMessages;
   }
 
+  /**
+   * Only the message and id are cached, the release message is assembled when queried
+   */
+  private ReleaseMessage toReleaseMessage(int key, long releaseMessageId) {
+    ReleaseMessage releaseMessage = new ReleaseMessage(watchKeyInterner.getKey(key));
+    releaseMessage.setId(releaseMessageId);
+    return releaseMessage;
+  }
+
   @Override
   public void handleMessage(ReleaseMessage message, String channel) {
     //Could stop once the ReleaseMessageScanner starts to work
@@ -121,7 +151,10 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     populateDataBaseInterval();
     //block the startup process until load finished
     //this should happen before ReleaseMessageScanner due to autowire
-    loadReleaseMessages(0);
+    //only the messages after the snapshot are loaded if it's restored
+    restoreSnapshot();
+    loadReleaseMessages(maxIdScanned);
+    cacheSnapshotStore.register(SNAPSHOT_NAME, this::writeSnapshot);
 
     executorService.submit(() -> {
       while (doScan.get() && !Thread.currentThread().isInterrupted()) {
@@ -146,9 +179,8 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
   }
 
   private synchronized void mergeReleaseMessage(ReleaseMessage releaseMessage) {
-    ReleaseMessage old = releaseMessageCache.get(releaseMessage.getMessage());
-    if (old == null || releaseMessage.getId() > old.getId()) {
-      releaseMessageCache.put(releaseMessage.getMessage(), releaseMessage);
+    int key = watchKeyInterner.intern(releaseMessage.getMessage());
+    if (releaseMessageCache.putIfGreater(key, releaseMessage.getId())) {
       maxIdScanned = releaseMessage.getId();
     }
   }
@@ -170,7 +202,52 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     }
   }
 
+  private void restoreSnapshot() {
+    List<ReleaseMessage> restored = Lists.newArrayList();
+    Long watermark = cacheSnapshotStore.load(SNAPSHOT_NAME, in -> readSnapshot(in, restored));
+    if (watermark == null) {
+      return;
+    }
+    for (ReleaseMessage releaseMessage : restored) {
+      releaseMessageCache.putIfGreater(watchKeyInterner.intern(releaseMessage.getMessage()), releaseMessage.getId());
+    }
+    maxIdScanned = watermark;
+    logger.info("Restored {} release messages from snapshot with maxIdScanned {}", restored.size(), watermark);
+  }
+
+  private void writeSnapshot(DataOutput out) throws IOException {
+    //the watermark is taken before the messages, so the messages merged meanwhile would be loaded again when restored
+    long watermark = maxIdScanned;
+    List<ReleaseMessage> releaseMessages = Lists.newArrayList();
+    releaseMessageCache.forEach((key, releaseMessageId) ->
+        releaseMessages.add(toReleaseMessage(key, releaseMessageId)));
+    out.writeLong(watermark);
+    out.writeInt(releaseMessages.size());
+    for (ReleaseMessage releaseMessage : releaseMessages) {
+      out.writeLong(releaseMessage.getId());
+      CacheSnapshotStore.writeString(out, releaseMessage.getMessage());
+    }
+  }
+
+  private Long readSnapshot(DataInput in, List<ReleaseMessage> releaseMessages) throws IOException {
+    long watermark = in.readLong();
+    int size = in.readInt();
+    for (int i = 0; i < size; i++) {
+      long id = in.readLong();
+      ReleaseMessage releaseMessage = new ReleaseMessage(CacheSnapshotStore.readString(in));
+      releaseMessage.setId(id);
+      releaseMessages.add(releaseMessage);
+    }
+    return watermark;
+  }
+
   private void populateDataBaseInterval() {
+    //the pushed messages are handled via ReleaseMessageScanner, so only reconcile with database periodically
+    if (bizConfig.isReleaseMessagePushEnabled()) {
+      scanInterval = bizConfig.releaseMessageReconcileIntervalInMilli();
+      scanIntervalTimeUnit = TimeUnit.MILLISECONDS;
+      return;
+    }
     scanInterval = bizConfig.releaseMessageCacheScanInterval();
     scanIntervalTimeUnit = bizConfig.releaseMessageCacheScanIntervalTimeUnit();
   }
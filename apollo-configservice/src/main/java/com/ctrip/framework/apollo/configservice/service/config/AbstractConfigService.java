@@ -73,6 +73,24 @@ public abstract class AbstractConfigService implements ConfigService {
     return release;
   }
 
+  /**
+   * Check whether the client may load gray releases of the namespace
+   */
+  protected boolean hasGrayReleaseRule(String clientAppId, String clientIp, String configNamespace) {
+    return grayReleaseRulesHolder.hasGrayReleaseRule(clientAppId, clientIp, configNamespace);
+  }
+
+  /**
+   * Calculate the delta between releases, only the releases of the same namespace are comparable
+   */
+  protected ReleaseDelta calculateReleaseDelta(Release baseRelease, Release release) {
+    if (baseRelease == null || !Objects.equals(baseRelease.getAppId(), release.getAppId()) ||
+        !Objects.equals(baseRelease.getNamespaceName(), release.getNamespaceName())) {
+      return null;
+    }
+    return new ReleaseDelta(findReleaseSnapshot(baseRelease), findReleaseSnapshot(release));
+  }
+
   /**
    * Find active release by id
    */
@@ -23,4 +23,21 @@ public interface ConfigService extends ReleaseMessageListener {
    */
   Release loadConfig(String clientAppId, String clientIp, String configAppId, String
       configClusterName, String configNamespace, String dataCenter, ApolloNotificationMessages clientMessages);
+
+  /**
+   * Find the snapshot of the release, whose configurations are parsed and encoded
+   *
+   * @param release the release loaded by {@link #loadConfig}
+   * @return the release snapshot
+   */
+  ReleaseSnapshot findReleaseSnapshot(Release release);
+
+  /**
+   * Find the changes of configurations from the base release to the release
+   *
+   * @param baseReleaseKey the release key of the client side configurations
+   * @param release the release loaded by {@link #loadConfig}
+   * @return the release delta, or null if the base release is not found or not of the same namespace
+   */
+  ReleaseDelta findReleaseDelta(String baseReleaseKey, Release release);
 }
@@ -1,18 +1,29 @@
 package com.ctrip.framework.apollo.configservice.service.config;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
-import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.service.ReleaseMessageService;
 import com.ctrip.framework.apollo.biz.service.ReleaseService;
+import com.ctrip.framework.apollo.biz.snapshot.CacheSnapshotStore;
 import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
+import com.ctrip.framework.apollo.common.exception.ServiceException;
+import com.ctrip.framework.apollo.common.exception.TooManyRequestsException;
+import com.ctrip.framework.apollo.configservice.cache.CacheWeights;
+import com.ctrip.framework.apollo.configservice.cache.ConfigCacheFactory;
+import com.ctrip.framework.apollo.configservice.cache.ConfigCacheSpec;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.tracer.Tracer;
@@ -20,12 +31,25 @@ import com.ctrip.framework.apollo.tracer.spi.Transaction;
 
 import java.util.Optional;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import javax.annotation.PostConstruct;
 
@@ -37,11 +61,25 @@ import javax.annotation.PostConstruct;
 public class ConfigServiceWithCache extends AbstractConfigService {
   private static final Logger logger = LoggerFactory.getLogger(ConfigServiceWithCache.class);
   private static final long DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES = 60;//1 hour
+  private static final int DEFAULT_MAX_CONFIG_CACHE_SIZE_IN_MB = 256;
+  private static final int DEFAULT_MAX_CONFIG_ID_CACHE_SIZE_IN_MB = 64;
+  private static final int DEFAULT_MAX_RELEASE_SNAPSHOT_CACHE_SIZE_IN_MB = 256;
+  private static final int DEFAULT_MAX_RELEASE_KEY_CACHE_SIZE_IN_MB = 16;
+  private static final int DEFAULT_MAX_FALLBACK_CACHE_SIZE_IN_MB = 256;
+  private static final int DEFAULT_MAX_EFFECTIVE_RELEASE_CACHE_SIZE_IN_MB = 64;
+  private static final int DEFAULT_MAX_RELEASE_DELTA_CACHE_SIZE_IN_MB = 32;
   private static final String TRACER_EVENT_CACHE_INVALIDATE = "ConfigCache.Invalidate";
   private static final String TRACER_EVENT_CACHE_LOAD = "ConfigCache.LoadFromDB";
   private static final String TRACER_EVENT_CACHE_LOAD_ID = "ConfigCache.LoadFromDBById";
   private static final String TRACER_EVENT_CACHE_GET = "ConfigCache.Get";
   private static final String TRACER_EVENT_CACHE_GET_ID = "ConfigCache.GetById";
+  private static final String TRACER_EVENT_SNAPSHOT_BUILD = "ConfigCache.BuildReleaseSnapshot";
+  private static final String TRACER_EVENT_DELTA_BUILD = "ConfigCache.BuildReleaseDelta";
+  private static final String TRACER_EVENT_EFFECTIVE_RELEASE_BUILD = "ConfigCache.BuildEffectiveRelease";
+  private static final String TRACER_EVENT_CACHE_SERVE_STALE = "ConfigCache.ServeStale";
+  private static final String TRACER_EVENT_CACHE_LOAD_REJECTED = "ConfigCache.LoadRejected";
+  private static final String FALLBACK_SNAPSHOT_NAME = "config-cache-fallback";
+  private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
   private static final Splitter STRING_SPLITTER =
       Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).omitEmptyStrings();
 
@@ -51,21 +89,105 @@ public class ConfigServiceWithCache extends AbstractConfigService {
   @Autowired
   private ReleaseMessageService releaseMessageService;
 
+  @Autowired
+  private BizConfig bizConfig;
+
+  @Autowired
+  private CacheSnapshotStore cacheSnapshotStore;
+
+  @Autowired
+  private ConfigCacheFactory configCacheFactory;
+
   private LoadingCache<String, ConfigCacheEntry> configCache;
 
   private LoadingCache<Long, Optional<Release>> configIdCache;
 
+  //store release id -> ReleaseSnapshot, release is immutable once created, so it's safe to cache by id
+  private Cache<Long, ReleaseSnapshot> releaseSnapshotCache;
+
+  //store release key -> release id of the snapshots built, so the deltas are only calculated from the known releases
+  private Cache<String, Long> releaseIdByKeyCache;
+
+  //store base release id + release id -> ReleaseDelta, the clients of the same namespace usually share the same one
+  private Cache<String, Optional<ReleaseDelta>> releaseDeltaCache;
+
+  //store appId+cluster+dataCenter+namespace -> the release resolved with cluster/data center/default fallback
+  private Cache<EffectiveReleaseKey, EffectiveRelease> effectiveReleaseCache;
+
+  //store watch key -> the effective releases resolved with the watch key, to invalidate them by release messages
+  private ConcurrentMap<String, Set<EffectiveReleaseKey>> effectiveReleaseKeysByWatchKey;
+
+  //increased by every release message, the effective releases resolved concurrently are not cached
+  private AtomicLong effectiveReleaseVersion;
+
+  private boolean staleIfErrorEnabled;
+
+  //store the last entry loaded from database of each key, which is served when database is unavailable
+  private Cache<String, ConfigCacheEntry> lastKnownConfigCache;
+
+  //the keys being served with the last known entries
+  private Set<String> staleKeys;
+
+  private DatabaseCircuitBreaker databaseCircuitBreaker;
+
+  private Counter staleServedCounter;
+
+  //the database loads of the requests in progress, which are limited when admission is enabled
+  private final AtomicInteger concurrentDatabaseLoads = new AtomicInteger();
+
+  private Counter databaseLoadRejectedCounter;
+
   private ConfigCacheEntry nullConfigCacheEntry;
 
   public ConfigServiceWithCache() {
-    nullConfigCacheEntry = new ConfigCacheEntry(ConfigConsts.NOTIFICATION_ID_PLACEHOLDER, null);
+    nullConfigCacheEntry = new ConfigCacheEntry(ConfigConsts.NOTIFICATION_ID_PLACEHOLDER, null, 0);
   }
 
   @PostConstruct
   void initialize() {
-    configCache = CacheBuilder.newBuilder()
+    databaseLoadRejectedCounter = Metrics.counter("apollo.config.admission.rejected", "type", "database");
+    staleIfErrorEnabled = bizConfig.isConfigServiceStaleIfErrorEnabled();
+    if (staleIfErrorEnabled) {
+      initializeStaleIfError();
+    }
+    effectiveReleaseKeysByWatchKey = Maps.newConcurrentMap();
+    effectiveReleaseVersion = new AtomicLong();
+    effectiveReleaseCache = configCacheFactory.createCache(new ConfigCacheSpec<EffectiveReleaseKey, EffectiveRelease>(
+        "effectiveReleaseCache", bizConfig.configServiceCacheMaxSizeInBytes("effective-release",
+        DEFAULT_MAX_EFFECTIVE_RELEASE_CACHE_SIZE_IN_MB), (key, effectiveRelease) -> key.getWeight() +
+        effectiveRelease.getWeight())
         .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
-        .build(new CacheLoader<String, ConfigCacheEntry>() {
+        .removalListener(notification -> {
+          //the key is registered to the watch keys of the new value before replacing
+          if (notification.getCause() == RemovalCause.REPLACED) {
+            return;
+          }
+          for (String watchKey : notification.getValue().getWatchKeys()) {
+            //drop the watch key once it has no effective releases, so that the map doesn't grow with stale keys
+            effectiveReleaseKeysByWatchKey.computeIfPresent(watchKey, (k, keys) -> {
+              keys.remove(notification.getKey());
+              return keys.isEmpty() ? null : keys;
+            });
+          }
+        }));
+    releaseSnapshotCache = configCacheFactory.createCache(new ConfigCacheSpec<Long, ReleaseSnapshot>(
+        "releaseSnapshotCache", bizConfig.configServiceCacheMaxSizeInBytes("release-snapshot",
+        DEFAULT_MAX_RELEASE_SNAPSHOT_CACHE_SIZE_IN_MB), (key, snapshot) -> snapshot.getWeight())
+        .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES));
+    releaseIdByKeyCache = configCacheFactory.createCache(new ConfigCacheSpec<String, Long>(
+        "releaseIdByKeyCache", bizConfig.configServiceCacheMaxSizeInBytes("release-key",
+        DEFAULT_MAX_RELEASE_KEY_CACHE_SIZE_IN_MB), (key, id) -> CacheWeights.of(key) + CacheWeights.objectOverhead())
+        .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES));
+    releaseDeltaCache = configCacheFactory.createCache(new ConfigCacheSpec<String, Optional<ReleaseDelta>>(
+        "releaseDeltaCache", bizConfig.configServiceCacheMaxSizeInBytes("release-delta",
+        DEFAULT_MAX_RELEASE_DELTA_CACHE_SIZE_IN_MB), (key, delta) -> CacheWeights.of(key) +
+        CacheWeights.objectOverhead() + (delta.isPresent() ? delta.get().getWeight() : 0))
+        .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES));
+    configCache = configCacheFactory.createLoadingCache(new ConfigCacheSpec<String, ConfigCacheEntry>(
+        "configCache", bizConfig.configServiceCacheMaxSizeInBytes("release", DEFAULT_MAX_CONFIG_CACHE_SIZE_IN_MB),
+        (key, cacheEntry) -> CacheWeights.of(key) + cacheEntry.getWeight())
+        .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES),
+        new CacheLoader<String, ConfigCacheEntry>() {
           @Override
           public ConfigCacheEntry load(String key) throws Exception {
             List<String> namespaceInfo = STRING_SPLITTER.splitToList(key);
@@ -75,40 +197,29 @@ public class ConfigServiceWithCache extends AbstractConfigService {
               return nullConfigCacheEntry;
             }
 
-            Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD, key);
-            try {
-              ReleaseMessage latestReleaseMessage = releaseMessageService.findLatestReleaseMessageForMessages(Lists
-                  .newArrayList(key));
-              Release latestRelease = releaseService.findLatestActiveRelease(namespaceInfo.get(0), namespaceInfo.get(1),
-                  namespaceInfo.get(2));
-
-              transaction.setStatus(Transaction.SUCCESS);
-
-              long notificationId = latestReleaseMessage == null ? ConfigConsts.NOTIFICATION_ID_PLACEHOLDER : latestReleaseMessage
-                  .getId();
-
-              if (notificationId == ConfigConsts.NOTIFICATION_ID_PLACEHOLDER && latestRelease == null) {
-                return nullConfigCacheEntry;
-              }
-
-              return new ConfigCacheEntry(notificationId, latestRelease);
-            } catch (Throwable ex) {
-              transaction.setStatus(ex);
-              throw ex;
-            } finally {
-              transaction.complete();
+            if (staleIfErrorEnabled) {
+              return loadConfigCacheEntryOrLastKnown(key, namespaceInfo);
             }
+            return loadConfigCacheEntry(key, namespaceInfo);
           }
         });
-    configIdCache = CacheBuilder.newBuilder()
-        .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
-        .build(new CacheLoader<Long, Optional<Release>>() {
+    configIdCache = configCacheFactory.createLoadingCache(new ConfigCacheSpec<Long, Optional<Release>>(
+        "configIdCache", bizConfig.configServiceCacheMaxSizeInBytes("release-id",
+        DEFAULT_MAX_CONFIG_ID_CACHE_SIZE_IN_MB),
+        (key, release) -> CacheWeights.objectOverhead() + (release.isPresent() ?
+            findReleaseSnapshot(release.get()).getReleaseWeight() : 0))
+        .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES),
+        new CacheLoader<Long, Optional<Release>>() {
           @Override
           public Optional<Release> load(Long key) throws Exception {
             Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD_ID, String.valueOf(key));
             try {
               Release release = releaseService.findActiveOne(key);
 
+              if (release != null) {
+                findReleaseSnapshot(release);
+              }
+
               transaction.setStatus(Transaction.SUCCESS);
 
               return Optional.ofNullable(release);
@@ -122,10 +233,186 @@ public class ConfigServiceWithCache extends AbstractConfigService {
         });
   }
 
+  private void initializeStaleIfError() {
+    lastKnownConfigCache = configCacheFactory.createCache(new ConfigCacheSpec<String, ConfigCacheEntry>(
+        "lastKnownConfigCache", bizConfig.configServiceCacheMaxSizeInBytes("fallback",
+        DEFAULT_MAX_FALLBACK_CACHE_SIZE_IN_MB), (key, cacheEntry) -> CacheWeights.of(key) + cacheEntry.getWeight()));
+    staleKeys = Sets.newConcurrentHashSet();
+    databaseCircuitBreaker = new DatabaseCircuitBreaker(bizConfig.configServiceCircuitBreakerFailureThreshold(),
+        bizConfig.configServiceCircuitBreakerOpenIntervalInMilli());
+    staleServedCounter = Metrics.counter("apollo.config.cache.stale.served");
+    Metrics.gauge("apollo.config.cache.stale.keys", staleKeys, Set::size);
+    Metrics.gauge("apollo.config.cache.stale.max.age.seconds", this, ConfigServiceWithCache::getMaxStaleAgeInSeconds);
+    Metrics.gauge("apollo.config.database.circuit.open", databaseCircuitBreaker, breaker -> breaker.isOpen() ? 1 : 0);
+
+    //the last known entries survive restarts, in case database is unavailable when restarted
+    Map<String, ConfigCacheEntry> restored = cacheSnapshotStore.load(FALLBACK_SNAPSHOT_NAME, this::readFallbackSnapshot);
+    if (restored != null) {
+      lastKnownConfigCache.putAll(restored);
+    }
+    cacheSnapshotStore.register(FALLBACK_SNAPSHOT_NAME, this::writeFallbackSnapshot);
+  }
+
+  /**
+   * Serve the last known entry if database is unavailable. The circuit breaker stops querying database for a while
+   * after continuous failures, so that a database failover won't turn into a retry storm.
+   */
+  private ConfigCacheEntry loadConfigCacheEntryOrLastKnown(String key, List<String> namespaceInfo) {
+    ConfigCacheEntry lastKnown = lastKnownConfigCache.getIfPresent(key);
+    if (!databaseCircuitBreaker.allowRequest()) {
+      if (lastKnown == null) {
+        throw new ServiceException(String.format("Database is unavailable, no last known config for %s", key));
+      }
+      return serveLastKnown(key, lastKnown);
+    }
+
+    ConfigCacheEntry cacheEntry;
+    try {
+      cacheEntry = loadConfigCacheEntry(key, namespaceInfo);
+    } catch (Throwable ex) {
+      databaseCircuitBreaker.recordFailure();
+      if (lastKnown == null) {
+        throw ex;
+      }
+      logger.warn("Load config {} from database failed, serve the last known one", key, ex);
+      return serveLastKnown(key, lastKnown);
+    }
+
+    databaseCircuitBreaker.recordSuccess();
+    lastKnownConfigCache.put(key, cacheEntry);
+    staleKeys.remove(key);
+    return cacheEntry;
+  }
+
+  private ConfigCacheEntry serveLastKnown(String key, ConfigCacheEntry lastKnown) {
+    Tracer.logEvent(TRACER_EVENT_CACHE_SERVE_STALE, key);
+    staleServedCounter.increment();
+    staleKeys.add(key);
+    return lastKnown.asStale();
+  }
+
+  private ConfigCacheEntry loadConfigCacheEntry(String key, List<String> namespaceInfo) {
+    Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD, key);
+    try {
+      ReleaseMessage latestReleaseMessage = releaseMessageService.findLatestReleaseMessageForMessages(Lists
+          .newArrayList(key));
+      Release latestRelease = releaseService.findLatestActiveRelease(namespaceInfo.get(0), namespaceInfo.get(1),
+          namespaceInfo.get(2));
+
+      transaction.setStatus(Transaction.SUCCESS);
+
+      long notificationId = latestReleaseMessage == null ? ConfigConsts.NOTIFICATION_ID_PLACEHOLDER : latestReleaseMessage
+          .getId();
+
+      if (notificationId == ConfigConsts.NOTIFICATION_ID_PLACEHOLDER && latestRelease == null) {
+        return nullConfigCacheEntry;
+      }
+
+      //prepare the snapshot when loading, so requests won't need to parse the configurations
+      int weight = 0;
+      if (latestRelease != null) {
+        weight = findReleaseSnapshot(latestRelease).getReleaseWeight();
+      }
+
+      return new ConfigCacheEntry(notificationId, latestRelease, weight);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      throw ex;
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  /**
+   * The release of the clients without gray release rules is resolved once and then served by a single lookup, until
+   * any of the clusters in the fallback chain is released again
+   */
+  @Override
+  public Release loadConfig(String clientAppId, String clientIp, String configAppId, String configClusterName,
+      String configNamespace, String dataCenter, ApolloNotificationMessages clientMessages) {
+    if (hasGrayReleaseRule(clientAppId, clientIp, configNamespace)) {
+      return super.loadConfig(clientAppId, clientIp, configAppId, configClusterName, configNamespace, dataCenter,
+          clientMessages);
+    }
+
+    EffectiveReleaseKey key = new EffectiveReleaseKey(configAppId, configClusterName, dataCenter, configNamespace);
+    EffectiveRelease effectiveRelease = effectiveReleaseCache.getIfPresent(key);
+    if (effectiveRelease != null && !effectiveRelease.isOutdated(clientMessages)) {
+      return effectiveRelease.getRelease();
+    }
+
+    long version = effectiveReleaseVersion.get();
+    Release release = super.loadConfig(clientAppId, clientIp, configAppId, configClusterName, configNamespace,
+        dataCenter, clientMessages);
+    cacheEffectiveRelease(key, release, version);
+
+    return release;
+  }
+
+  private void cacheEffectiveRelease(EffectiveReleaseKey key, Release release, long version) {
+    List<String> candidateWatchKeys = Lists.newArrayListWithCapacity(3);
+    if (!Objects.equals(ConfigConsts.CLUSTER_NAME_DEFAULT, key.clusterName)) {
+      candidateWatchKeys.add(ReleaseMessageKeyGenerator.generate(key.appId, key.clusterName, key.namespaceName));
+    }
+    if (!Strings.isNullOrEmpty(key.dataCenter) && !Objects.equals(key.dataCenter, key.clusterName)) {
+      candidateWatchKeys.add(ReleaseMessageKeyGenerator.generate(key.appId, key.dataCenter, key.namespaceName));
+    }
+    candidateWatchKeys.add(ReleaseMessageKeyGenerator.generate(key.appId, ConfigConsts.CLUSTER_NAME_DEFAULT,
+        key.namespaceName));
+
+    //only the clusters till the one with release are watched, the releases of the rest don't take effect
+    List<String> watchKeys = Lists.newArrayListWithCapacity(candidateWatchKeys.size());
+    long[] notificationIds = new long[candidateWatchKeys.size()];
+    for (String watchKey : candidateWatchKeys) {
+      ConfigCacheEntry cacheEntry = configCache.getIfPresent(watchKey);
+      //evicted or invalidated during the resolution, or served with the last known one as database is unavailable
+      if (cacheEntry == null || cacheEntry.isStale()) {
+        return;
+      }
+      notificationIds[watchKeys.size()] = cacheEntry.getNotificationId();
+      watchKeys.add(watchKey);
+      if (cacheEntry.getRelease() != null) {
+        break;
+      }
+    }
+
+    Tracer.logEvent(TRACER_EVENT_EFFECTIVE_RELEASE_BUILD, watchKeys.get(0));
+    EffectiveRelease effectiveRelease = new EffectiveRelease(release, watchKeys, notificationIds);
+    for (String watchKey : watchKeys) {
+      //registered within compute, so that it couldn't be added to a set being dropped by the removal listener
+      effectiveReleaseKeysByWatchKey.compute(watchKey, (k, keys) -> {
+        Set<EffectiveReleaseKey> registeredKeys = keys == null ? Sets.newConcurrentHashSet() : keys;
+        registeredKeys.add(key);
+        return registeredKeys;
+      });
+    }
+    effectiveReleaseCache.put(key, effectiveRelease);
+
+    //some of the watch keys were released during the resolution
+    if (effectiveReleaseVersion.get() != version) {
+      effectiveReleaseCache.asMap().remove(key, effectiveRelease);
+    }
+  }
+
+  private void invalidateEffectiveReleases(String watchKey) {
+    effectiveReleaseVersion.incrementAndGet();
+    Set<EffectiveReleaseKey> keys = effectiveReleaseKeysByWatchKey.get(watchKey);
+    if (keys == null) {
+      return;
+    }
+    for (EffectiveReleaseKey key : keys) {
+      effectiveReleaseCache.invalidate(key);
+    }
+  }
+
   @Override
   protected Release findActiveOne(long id, ApolloNotificationMessages clientMessages) {
     Tracer.logEvent(TRACER_EVENT_CACHE_GET_ID, String.valueOf(id));
-    return configIdCache.getUnchecked(id).orElse(null);
+    Optional<Release> release = configIdCache.getIfPresent(id);
+    if (release == null) {
+      release = loadWithAdmission(String.valueOf(id), () -> configIdCache.getUnchecked(id));
+    }
+    return release.orElse(null);
   }
 
   @Override
@@ -135,24 +422,175 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 
     Tracer.logEvent(TRACER_EVENT_CACHE_GET, key);
 
-    ConfigCacheEntry cacheEntry = configCache.getUnchecked(key);
+    ConfigCacheEntry cacheEntry = configCache.getIfPresent(key);
+    if (cacheEntry == null) {
+      try {
+        cacheEntry = loadWithAdmission(key, () -> configCache.getUnchecked(key));
+      } catch (TooManyRequestsException ex) {
+        ConfigCacheEntry lastKnown = staleIfErrorEnabled ? lastKnownConfigCache.getIfPresent(key) : null;
+        if (lastKnown == null) {
+          throw ex;
+        }
+        return lastKnown.getRelease();
+      }
+    }
 
-    //cache is out-dated
-    if (clientMessages != null && clientMessages.has(key) &&
-        clientMessages.get(key) > cacheEntry.getNotificationId()) {
-      //invalidate the cache and try to load from db again
-      invalidate(key);
-      cacheEntry = configCache.getUnchecked(key);
+    //cache is out-dated, or served with the last known one
+    if (cacheEntry.isStale() || (clientMessages != null && clientMessages.has(key) &&
+        clientMessages.get(key) > cacheEntry.getNotificationId())) {
+      boolean stale = cacheEntry.isStale();
+      try {
+        //invalidate the cache and try to load from db again
+        cacheEntry = loadWithAdmission(key, () -> {
+          reload(key);
+          return configCache.getUnchecked(key);
+        });
+      } catch (TooManyRequestsException ex) {
+        //the stale one is served anyway, but the client knows there is a newer one, so it should retry later
+        if (!stale) {
+          throw ex;
+        }
+      }
     }
 
     return cacheEntry.getRelease();
   }
 
+  /**
+   * Limit the concurrent database loads of the requests, the requests exceeding the limit are rejected with 429 instead
+   * of waiting for the database connections. The loads triggered by release messages are not limited.
+   */
+  private <T> T loadWithAdmission(String key, Supplier<T> loader) {
+    if (!bizConfig.isConfigServiceAdmissionEnabled()) {
+      return loader.get();
+    }
+    try {
+      if (concurrentDatabaseLoads.incrementAndGet() > bizConfig.configServiceAdmissionMaxConcurrentDatabaseLoads()) {
+        Tracer.logEvent(TRACER_EVENT_CACHE_LOAD_REJECTED, key);
+        databaseLoadRejectedCounter.increment();
+        int retryAfter = bizConfig.configServiceAdmissionRetryAfterInSecond();
+        throw new TooManyRequestsException(String.format("Too many configs are being loaded, rejected %s", key),
+            retryAfter + ThreadLocalRandom.current().nextInt(retryAfter + 1));
+      }
+      return loader.get();
+    } finally {
+      concurrentDatabaseLoads.decrementAndGet();
+    }
+  }
+
+  @Override
+  public ReleaseSnapshot findReleaseSnapshot(Release release) {
+    ReleaseSnapshot snapshot = releaseSnapshotCache.getIfPresent(release.getId());
+    if (snapshot == null) {
+      //concurrent builds are harmless since the snapshots are identical
+      Tracer.logEvent(TRACER_EVENT_SNAPSHOT_BUILD, String.valueOf(release.getId()));
+      snapshot = new ReleaseSnapshot(release);
+      releaseSnapshotCache.put(release.getId(), snapshot);
+      if (release.getReleaseKey() != null) {
+        releaseIdByKeyCache.put(release.getReleaseKey(), release.getId());
+      }
+    }
+    return snapshot;
+  }
+
+  /**
+   * The base release is never queried from database, the delta is only calculated if the base release was served by
+   * this instance and is still cached. So the release keys sent by the clients couldn't cause database queries, and
+   * the complete configurations are served when database is unavailable.
+   */
+  @Override
+  public ReleaseDelta findReleaseDelta(String baseReleaseKey, Release release) {
+    Long baseReleaseId = releaseIdByKeyCache.getIfPresent(baseReleaseKey);
+    ReleaseSnapshot baseSnapshot = baseReleaseId == null ? null : releaseSnapshotCache.getIfPresent(baseReleaseId);
+    if (baseSnapshot == null) {
+      return null;
+    }
+
+    String key = STRING_JOINER.join(baseReleaseId, release.getId());
+    Optional<ReleaseDelta> delta = releaseDeltaCache.getIfPresent(key);
+    if (delta == null) {
+      Tracer.logEvent(TRACER_EVENT_DELTA_BUILD, key);
+      delta = Optional.ofNullable(calculateReleaseDelta(baseSnapshot.getRelease(), release));
+      releaseDeltaCache.put(key, delta);
+    }
+    return delta.orElse(null);
+  }
+
   private void invalidate(String key) {
     configCache.invalidate(key);
     Tracer.logEvent(TRACER_EVENT_CACHE_INVALIDATE, key);
   }
 
+  private void reload(String key) {
+    if (!staleIfErrorEnabled) {
+      invalidate(key);
+      return;
+    }
+    //the current entry is kept if the reload fails
+    Tracer.logEvent(TRACER_EVENT_CACHE_INVALIDATE, key);
+    configCache.refresh(key);
+  }
+
+  private double getMaxStaleAgeInSeconds() {
+    long now = System.currentTimeMillis();
+    long maxAge = 0;
+    for (String key : staleKeys) {
+      ConfigCacheEntry lastKnown = lastKnownConfigCache.getIfPresent(key);
+      if (lastKnown != null) {
+        maxAge = Math.max(maxAge, now - lastKnown.getLoadedTime());
+      }
+    }
+    return TimeUnit.MILLISECONDS.toSeconds(maxAge);
+  }
+
+  private void writeFallbackSnapshot(DataOutput out) throws IOException {
+    Map<String, ConfigCacheEntry> entries = Maps.newHashMap(lastKnownConfigCache.asMap());
+    out.writeInt(entries.size());
+    for (Map.Entry<String, ConfigCacheEntry> entry : entries.entrySet()) {
+      ConfigCacheEntry cacheEntry = entry.getValue();
+      CacheSnapshotStore.writeString(out, entry.getKey());
+      out.writeLong(cacheEntry.getNotificationId());
+      out.writeLong(cacheEntry.getLoadedTime());
+      Release release = cacheEntry.getRelease();
+      out.writeBoolean(release != null);
+      if (release == null) {
+        continue;
+      }
+      out.writeLong(release.getId());
+      CacheSnapshotStore.writeString(out, release.getReleaseKey());
+      CacheSnapshotStore.writeString(out, release.getName());
+      CacheSnapshotStore.writeString(out, release.getAppId());
+      CacheSnapshotStore.writeString(out, release.getClusterName());
+      CacheSnapshotStore.writeString(out, release.getNamespaceName());
+      CacheSnapshotStore.writeString(out, release.getComment());
+      CacheSnapshotStore.writeString(out, release.getConfigurations());
+    }
+  }
+
+  private Map<String, ConfigCacheEntry> readFallbackSnapshot(DataInput in) throws IOException {
+    int size = in.readInt();
+    Map<String, ConfigCacheEntry> entries = Maps.newHashMapWithExpectedSize(size);
+    for (int i = 0; i < size; i++) {
+      String key = CacheSnapshotStore.readString(in);
+      long notificationId = in.readLong();
+      long loadedTime = in.readLong();
+      Release release = null;
+      if (in.readBoolean()) {
+        release = new Release();
+        release.setId(in.readLong());
+        release.setReleaseKey(CacheSnapshotStore.readString(in));
+        release.setName(CacheSnapshotStore.readString(in));
+        release.setAppId(CacheSnapshotStore.readString(in));
+        release.setClusterName(CacheSnapshotStore.readString(in));
+        release.setNamespaceName(CacheSnapshotStore.readString(in));
+        release.setComment(CacheSnapshotStore.readString(in));
+        release.setConfigurations(CacheSnapshotStore.readString(in));
+      }
+      entries.put(key, new ConfigCacheEntry(notificationId, release, CacheWeights.of(release), loadedTime, false));
+    }
+    return entries;
+  }
+
   @Override
   public void handleMessage(ReleaseMessage message, String channel) {
     logger.info("message received - channel: {}, message: {}", channel, message);
@@ -161,22 +599,142 @@ public class ConfigServiceWithCache extends AbstractConfigService {
     }
 
     try {
-      invalidate(message.getMessage());
+      reload(message.getMessage());
 
       //warm up the cache
       configCache.getUnchecked(message.getMessage());
     } catch (Throwable ex) {
       //ignore
+    } finally {
+      invalidateEffectiveReleases(message.getMessage());
+    }
+  }
+
+  private static class EffectiveReleaseKey {
+    private final String appId;
+    private final String clusterName;
+    private final String dataCenter;
+    private final String namespaceName;
+    private final int hashCode;
+
+    EffectiveReleaseKey(String appId, String clusterName, String dataCenter, String namespaceName) {
+      this.appId = appId;
+      this.clusterName = clusterName;
+      this.dataCenter = Strings.nullToEmpty(dataCenter);
+      this.namespaceName = namespaceName;
+      this.hashCode = Objects.hash(appId, clusterName, this.dataCenter, namespaceName);
+    }
+
+    int getWeight() {
+      return CacheWeights.objectOverhead() + CacheWeights.of(appId) + CacheWeights.of(clusterName) +
+          CacheWeights.of(dataCenter) + CacheWeights.of(namespaceName);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      EffectiveReleaseKey that = (EffectiveReleaseKey) o;
+      return hashCode == that.hashCode &&
+          Objects.equals(appId, that.appId) &&
+          Objects.equals(clusterName, that.clusterName) &&
+          Objects.equals(dataCenter, that.dataCenter) &&
+          Objects.equals(namespaceName, that.namespaceName);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static class EffectiveRelease {
+    private final Release release;
+    private final List<String> watchKeys;
+    private final long[] notificationIds;
+
+    EffectiveRelease(Release release, List<String> watchKeys, long[] notificationIds) {
+      this.release = release;
+      this.watchKeys = watchKeys;
+      this.notificationIds = notificationIds;
+    }
+
+    Release getRelease() {
+      return release;
+    }
+
+    List<String> getWatchKeys() {
+      return watchKeys;
+    }
+
+    /**
+     * The release itself is not counted, which is shared with and weighed by the config cache
+     */
+    int getWeight() {
+      int weight = CacheWeights.objectOverhead() + CacheWeights.objectOverhead() + 8 * notificationIds.length;
+      for (String watchKey : watchKeys) {
+        weight += CacheWeights.of(watchKey);
+      }
+      return weight;
+    }
+
+    /**
+     * The client has received newer release messages than the ones the release was resolved with
+     */
+    boolean isOutdated(ApolloNotificationMessages clientMessages) {
+      if (clientMessages == null || clientMessages.isEmpty()) {
+        return false;
+      }
+      for (int i = 0; i < watchKeys.size(); i++) {
+        Long notificationId = clientMessages.get(watchKeys.get(i));
+        if (notificationId != null && notificationId > notificationIds[i]) {
+          return true;
+        }
+      }
+      return false;
     }
   }
 
   private static class ConfigCacheEntry {
     private final long notificationId;
     private final Release release;
+    private final int releaseWeight;
+    private final long loadedTime;
+    private final boolean stale;
+
+    public ConfigCacheEntry(long notificationId, Release release, int releaseWeight) {
+      this(notificationId, release, releaseWeight, System.currentTimeMillis(), false);
+    }
 
-    public ConfigCacheEntry(long notificationId, Release release) {
+    ConfigCacheEntry(long notificationId, Release release, int releaseWeight, long loadedTime, boolean stale) {
       this.notificationId = notificationId;
       this.release = release;
+      this.releaseWeight = releaseWeight;
+      this.loadedTime = loadedTime;
+      this.stale = stale;
+    }
+
+    ConfigCacheEntry asStale() {
+      return new ConfigCacheEntry(notificationId, release, releaseWeight, loadedTime, true);
+    }
+
+    long getLoadedTime() {
+      return loadedTime;
+    }
+
+    /**
+     * The entry is the last known one served when database is unavailable
+     */
+    boolean isStale() {
+      return stale;
+    }
+
+    int getWeight() {
+      return CacheWeights.objectOverhead() + releaseWeight;
     }
 
     public long getNotificationId() {
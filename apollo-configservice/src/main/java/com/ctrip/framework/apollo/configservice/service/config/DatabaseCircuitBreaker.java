@@ -0,0 +1,70 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops querying the database for a while after continuous failures.
+ * <p>
+ * Once the open interval passes, only one request is allowed to probe the database, the circuit is closed if it
+ * succeeds, otherwise it stays open for another interval.
+ */
+class DatabaseCircuitBreaker {
+  private static final Logger logger = LoggerFactory.getLogger(DatabaseCircuitBreaker.class);
+  private static final long CLOSED = -1;
+
+  private final int failureThreshold;
+  private final long openIntervalInNanos;
+  private final Ticker ticker;
+  private final AtomicInteger continuousFailures = new AtomicInteger();
+  //the time the circuit is opened or probed, CLOSED if it's closed
+  private final AtomicLong openedTime = new AtomicLong(CLOSED);
+
+  DatabaseCircuitBreaker(int failureThreshold, long openIntervalInMilli) {
+    this(failureThreshold, openIntervalInMilli, Ticker.systemTicker());
+  }
+
+  DatabaseCircuitBreaker(int failureThreshold, long openIntervalInMilli, Ticker ticker) {
+    this.failureThreshold = failureThreshold;
+    this.openIntervalInNanos = TimeUnit.MILLISECONDS.toNanos(openIntervalInMilli);
+    this.ticker = ticker;
+  }
+
+  boolean allowRequest() {
+    long opened = openedTime.get();
+    if (opened == CLOSED) {
+      return true;
+    }
+    long now = ticker.read();
+    //only one request could probe the database after the open interval
+    return now - opened >= openIntervalInNanos && openedTime.compareAndSet(opened, now);
+  }
+
+  void recordSuccess() {
+    continuousFailures.set(0);
+    if (openedTime.getAndSet(CLOSED) != CLOSED) {
+      Tracer.logEvent("Apollo.ConfigService.CircuitBreaker", "close");
+      logger.info("Database is available again, circuit breaker closed");
+    }
+  }
+
+  void recordFailure() {
+    if (continuousFailures.incrementAndGet() < failureThreshold) {
+      return;
+    }
+    if (openedTime.getAndSet(ticker.read()) == CLOSED) {
+      Tracer.logEvent("Apollo.ConfigService.CircuitBreaker", "open");
+      logger.warn("Database failed {} times continuously, circuit breaker opened", continuousFailures.get());
+    }
+  }
+
+  boolean isOpen() {
+    return openedTime.get() != CLOSED;
+  }
+}
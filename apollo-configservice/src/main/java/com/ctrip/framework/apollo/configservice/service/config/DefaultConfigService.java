@@ -4,9 +4,13 @@ import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.service.ReleaseService;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.tracer.Tracer;
 
+import com.google.common.collect.Sets;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.List;
+
 /**
  * config service with no cache
  *
@@ -29,6 +33,26 @@ public class DefaultConfigService extends AbstractConfigService {
         configNamespace);
   }
 
+  @Override
+  public ReleaseSnapshot findReleaseSnapshot(Release release) {
+    return new ReleaseSnapshot(release);
+  }
+
+  /**
+   * The base release is queried like the releases served, the complete configurations are served if it fails
+   */
+  @Override
+  public ReleaseDelta findReleaseDelta(String baseReleaseKey, Release release) {
+    List<Release> baseReleases;
+    try {
+      baseReleases = releaseService.findByReleaseKeys(Sets.newHashSet(baseReleaseKey));
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+      return null;
+    }
+    return calculateReleaseDelta(baseReleases.isEmpty() ? null : baseReleases.get(0), release);
+  }
+
   @Override
   public void handleMessage(ReleaseMessage message, String channel) {
     // since there is no cache, so do nothing
@@ -0,0 +1,81 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.ctrip.framework.apollo.configservice.cache.CacheWeights;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The changes of configurations between two releases of the same namespace, which is immutable
+ */
+public class ReleaseDelta {
+  private final String baseReleaseKey;
+  private final Map<String, String> changedConfigurations;
+  private final List<String> deletedKeys;
+  private final int weight;
+
+  public ReleaseDelta(ReleaseSnapshot base, ReleaseSnapshot target) {
+    this.baseReleaseKey = base.getRelease().getReleaseKey();
+
+    Map<String, String> baseConfigurations = base.getConfigurations();
+    Map<String, String> changed = Maps.newHashMap();
+    for (Map.Entry<String, String> entry : target.getConfigurations().entrySet()) {
+      if (!baseConfigurations.containsKey(entry.getKey()) ||
+          !Objects.equals(baseConfigurations.get(entry.getKey()), entry.getValue())) {
+        changed.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    List<String> deleted = Lists.newArrayList();
+    for (String key : baseConfigurations.keySet()) {
+      if (!target.getConfigurations().containsKey(key)) {
+        deleted.add(key);
+      }
+    }
+
+    this.changedConfigurations = Collections.unmodifiableMap(changed);
+    this.deletedKeys = Collections.unmodifiableList(deleted);
+
+    int weight = CacheWeights.of(this.baseReleaseKey) + CacheWeights.of(this.changedConfigurations);
+    for (String key : this.deletedKeys) {
+      weight += CacheWeights.of(key);
+    }
+    this.weight = weight;
+  }
+
+  public String getBaseReleaseKey() {
+    return baseReleaseKey;
+  }
+
+  /**
+   * @return the added and modified configurations, which is read only
+   */
+  public Map<String, String> getChangedConfigurations() {
+    return changedConfigurations;
+  }
+
+  /**
+   * @return the deleted keys, which is read only
+   */
+  public List<String> getDeletedKeys() {
+    return deletedKeys;
+  }
+
+  /**
+   * @return the count of the changed and deleted keys
+   */
+  public int size() {
+    return changedConfigurations.size() + deletedKeys.size();
+  }
+
+  /**
+   * @return the estimated bytes of the delta
+   */
+  public int getWeight() {
+    return weight;
+  }
+}
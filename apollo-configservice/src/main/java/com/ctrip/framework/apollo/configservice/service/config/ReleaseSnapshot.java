@@ -0,0 +1,94 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.configservice.cache.CacheWeights;
+import com.ctrip.framework.apollo.configservice.util.DeflatedContent;
+import com.ctrip.framework.apollo.configservice.util.GzipUtil;
+import com.ctrip.framework.apollo.core.utils.ChecksumUtil;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An immutable view of a release, its configurations are parsed and encoded only once
+ */
+public class ReleaseSnapshot {
+  private static final Gson gson = new Gson();
+  private static final Type configurationTypeReference = new TypeToken<Map<String, String>>() {
+  }.getType();
+
+  private final Release release;
+  private final Map<String, String> configurations;
+  private final byte[] encodedConfigurations;
+  private final DeflatedContent deflatedConfigurations;
+  private final String checksum;
+  private final int weight;
+  private final int releaseWeight;
+
+  public ReleaseSnapshot(Release release) {
+    this.release = release;
+    String rawConfigurations = release.getConfigurations();
+    Map<String, String> parsed = gson.fromJson(rawConfigurations, configurationTypeReference);
+    this.configurations = parsed == null ? Collections.emptyMap() : Collections.unmodifiableMap(parsed);
+    this.encodedConfigurations = gson.toJson(this.configurations).getBytes(StandardCharsets.UTF_8);
+    this.deflatedConfigurations = GzipUtil.deflateIfNecessary(this.encodedConfigurations);
+    this.checksum = ChecksumUtil.checksum(this.configurations);
+    //the release itself is not counted, which is weighed by the release caches
+    this.weight = CacheWeights.of(this.configurations) + CacheWeights.of(this.encodedConfigurations)
+        + CacheWeights.of(this.deflatedConfigurations == null ? null : this.deflatedConfigurations.getDeflated())
+        + CacheWeights.of(this.checksum);
+    this.releaseWeight = CacheWeights.of(release, rawConfigurations);
+  }
+
+  public Release getRelease() {
+    return release;
+  }
+
+  /**
+   * @return the parsed configurations, which is read only
+   */
+  public Map<String, String> getConfigurations() {
+    return configurations;
+  }
+
+  /**
+   * @return the configurations encoded as json in UTF-8, callers should not modify it
+   */
+  public byte[] getEncodedConfigurations() {
+    return encodedConfigurations;
+  }
+
+  /**
+   * @return the encoded configurations compressed as deflate blocks to be embedded in the gzip responses, or null if
+   * they are too small to be compressed
+   */
+  public DeflatedContent getDeflatedConfigurations() {
+    return deflatedConfigurations;
+  }
+
+  /**
+   * @return the checksum of the configurations, which is used by clients to verify the configurations assembled
+   * from deltas
+   */
+  public String getChecksum() {
+    return checksum;
+  }
+
+  /**
+   * @return the estimated bytes of the snapshot
+   */
+  public int getWeight() {
+    return weight;
+  }
+
+  /**
+   * @return the estimated bytes of the release
+   */
+  public int getReleaseWeight() {
+    return releaseWeight;
+  }
+}
@@ -0,0 +1,84 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A set multimap designed for registries with lots of concurrent puts and removes, e.g. long polling requests.
+ * <ul>
+ *   <li>put and remove are O(1) and don't hold any global lock, the common path is lock free</li>
+ *   <li>values of a key could be iterated while they are being modified, so there is no need to copy them</li>
+ * </ul>
+ */
+public class ConcurrentSetMultimap<K, V> {
+  private final ConcurrentMap<K, ValueSet<V>> delegate = new ConcurrentHashMap<>();
+
+  public void put(K key, V value) {
+    ValueSet<V> valueSet = delegate.get(key);
+    if (valueSet != null) {
+      valueSet.values.add(value);
+      //the value set is not removed, the value is added successfully
+      if (!valueSet.removed) {
+        return;
+      }
+    }
+
+    //the value set is absent or being removed, so add it with the bin locked
+    delegate.compute(key, (k, existing) -> {
+      if (existing == null) {
+        existing = new ValueSet<>();
+      }
+      existing.values.add(value);
+      return existing;
+    });
+  }
+
+  public void remove(K key, V value) {
+    ValueSet<V> valueSet = delegate.get(key);
+    if (valueSet == null || !valueSet.values.remove(value) || !valueSet.values.isEmpty()) {
+      return;
+    }
+
+    //remove the empty value set, the removed flag must be set before checking emptiness
+    delegate.computeIfPresent(key, (k, existing) -> {
+      existing.removed = true;
+      if (!existing.values.isEmpty()) {
+        existing.removed = false;
+        return existing;
+      }
+      return null;
+    });
+  }
+
+  public boolean containsKey(K key) {
+    return delegate.containsKey(key);
+  }
+
+  /**
+   * @return a live read only view of the values, which could be iterated without copying
+   */
+  public Collection<V> get(K key) {
+    ValueSet<V> valueSet = delegate.get(key);
+    return valueSet == null ? Collections.emptySet() : valueSet.readOnlyValues;
+  }
+
+  /**
+   * @return the total count of key-value pairs, which is O(n) for the keys
+   */
+  public int size() {
+    int size = 0;
+    for (ValueSet<V> valueSet : delegate.values()) {
+      size += valueSet.values.size();
+    }
+    return size;
+  }
+
+  private static class ValueSet<V> {
+    private final Set<V> values = ConcurrentHashMap.newKeySet();
+    private final Set<V> readOnlyValues = Collections.unmodifiableSet(values);
+    private volatile boolean removed;
+  }
+}
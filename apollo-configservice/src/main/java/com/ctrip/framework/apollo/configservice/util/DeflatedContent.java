@@ -0,0 +1,38 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+/**
+ * Content compressed as raw deflate blocks which are flushed but not finished, so that they could be embedded in a
+ * gzip member between other blocks, see {@link GzipUtil#writeGzipMember}.
+ */
+public class DeflatedContent {
+  private final byte[] deflated;
+  private final long crc32;
+  private final int length;
+
+  DeflatedContent(byte[] deflated, long crc32, int length) {
+    this.deflated = deflated;
+    this.crc32 = crc32;
+    this.length = length;
+  }
+
+  /**
+   * @return the deflate blocks, which end at a byte boundary without the final block, callers should not modify it
+   */
+  public byte[] getDeflated() {
+    return deflated;
+  }
+
+  /**
+   * @return the CRC-32 of the uncompressed content
+   */
+  public long getCrc32() {
+    return crc32;
+  }
+
+  /**
+   * @return the length of the uncompressed content
+   */
+  public int getLength() {
+    return length;
+  }
+}
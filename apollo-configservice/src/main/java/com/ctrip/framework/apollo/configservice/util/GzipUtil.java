@@ -0,0 +1,213 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Helpers for the precompressed responses.
+ * <p>
+ * The compressed bytes are computed once and kept with the cached content, so no compression happens per response.
+ * The small per request fields are written around the precompressed part as stored deflate blocks of the same gzip
+ * member, and the CRC-32 of the member is combined from the ones of the parts.
+ */
+public final class GzipUtil {
+  public static final String GZIP = "gzip";
+  /**
+   * Small content is not worth compressing, the gzip header and trailer take 18 bytes
+   */
+  public static final int MIN_COMPRESS_SIZE = 1024;
+  private static final Splitter ENCODING_SPLITTER = Splitter.on(",").omitEmptyStrings().trimResults();
+  private static final Splitter QUALITY_SPLITTER = Splitter.on(";").trimResults();
+  private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+  private static final int MAX_STORED_BLOCK_SIZE = 0xffff;
+  private static final long CRC32_POLYNOMIAL = 0xedb88320L;
+
+  private GzipUtil() {
+  }
+
+  /**
+   * @return the compressed bytes, or null if the content is too small to be compressed
+   */
+  public static byte[] compressIfNecessary(byte[] content) {
+    if (content == null || content.length < MIN_COMPRESS_SIZE) {
+      return null;
+    }
+    return compress(content);
+  }
+
+  public static byte[] compress(byte[] content) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, content.length / 4));
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(content);
+    } catch (IOException ex) {
+      //should not happen as it's all in memory
+      throw new UncheckedIOException(ex);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * @return the deflate blocks of the content to be embedded in a gzip member, or null if the content is too small to be
+   * compressed
+   */
+  public static DeflatedContent deflateIfNecessary(byte[] content) {
+    if (content == null || content.length < MIN_COMPRESS_SIZE) {
+      return null;
+    }
+    return deflate(content);
+  }
+
+  public static DeflatedContent deflate(byte[] content) {
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      deflater.setInput(content);
+      ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, content.length / 4));
+      byte[] buffer = new byte[8192];
+      int count;
+      //sync flush ends the blocks at a byte boundary, and the final block is written by the gzip member
+      do {
+        count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+        out.write(buffer, 0, count);
+      } while (count == buffer.length);
+      return new DeflatedContent(out.toByteArray(), crc32(content), content.length);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Writes a single gzip member of the leading bytes, the deflated content and the trailing bytes, the leading and
+   * trailing bytes are written as stored blocks, so nothing is compressed here.
+   */
+  public static void writeGzipMember(OutputStream out, byte[] leading, DeflatedContent content, byte[] trailing)
+      throws IOException {
+    out.write(GZIP_HEADER);
+    writeStoredBlocks(out, leading);
+    out.write(content.getDeflated());
+    writeStoredBlocks(out, trailing);
+    //an empty final stored block
+    out.write(new byte[]{1, 0, 0, (byte) 0xff, (byte) 0xff});
+
+    long crc = crc32Combine(crc32Combine(crc32(leading), content.getCrc32(), content.getLength()), crc32(trailing),
+        trailing.length);
+    writeIntLE(out, crc);
+    writeIntLE(out, (long) leading.length + content.getLength() + trailing.length);
+  }
+
+  private static void writeStoredBlocks(OutputStream out, byte[] bytes) throws IOException {
+    for (int offset = 0; offset < bytes.length; offset += MAX_STORED_BLOCK_SIZE) {
+      int length = Math.min(MAX_STORED_BLOCK_SIZE, bytes.length - offset);
+      //BFINAL = 0, BTYPE = 00, padded to the byte boundary, then LEN and NLEN
+      out.write(0);
+      out.write(length & 0xff);
+      out.write((length >>> 8) & 0xff);
+      out.write(~length & 0xff);
+      out.write((~length >>> 8) & 0xff);
+      out.write(bytes, offset, length);
+    }
+  }
+
+  private static void writeIntLE(OutputStream out, long value) throws IOException {
+    for (int i = 0; i < 4; i++) {
+      out.write((int) (value >>> (8 * i)) & 0xff);
+    }
+  }
+
+  private static long crc32(byte[] bytes) {
+    CRC32 crc32 = new CRC32();
+    crc32.update(bytes);
+    return crc32.getValue();
+  }
+
+  /**
+   * @return the CRC-32 of the concatenated content, which is calculated from the CRC-32 of both parts in O(log(n))
+   * time, the same as crc32_combine of zlib
+   */
+  static long crc32Combine(long crc1, long crc2, long length2) {
+    if (length2 <= 0) {
+      return crc1;
+    }
+    long[] even = new long[32];
+    long[] odd = new long[32];
+
+    //the operator of one zero bit
+    odd[0] = CRC32_POLYNOMIAL;
+    long row = 1;
+    for (int n = 1; n < 32; n++) {
+      odd[n] = row;
+      row <<= 1;
+    }
+    //the operators of two and four zero bits
+    gf2MatrixSquare(even, odd);
+    gf2MatrixSquare(odd, even);
+
+    //apply length2 zero bytes to crc1, the first square is the operator of one zero byte
+    do {
+      gf2MatrixSquare(even, odd);
+      if ((length2 & 1) != 0) {
+        crc1 = gf2MatrixTimes(even, crc1);
+      }
+      length2 >>= 1;
+      if (length2 == 0) {
+        break;
+      }
+      gf2MatrixSquare(odd, even);
+      if ((length2 & 1) != 0) {
+        crc1 = gf2MatrixTimes(odd, crc1);
+      }
+      length2 >>= 1;
+    } while (length2 != 0);
+
+    return crc1 ^ crc2;
+  }
+
+  private static long gf2MatrixTimes(long[] matrix, long vector) {
+    long sum = 0;
+    for (int i = 0; vector != 0; i++, vector >>>= 1) {
+      if ((vector & 1) != 0) {
+        sum ^= matrix[i];
+      }
+    }
+    return sum;
+  }
+
+  private static void gf2MatrixSquare(long[] square, long[] matrix) {
+    for (int n = 0; n < 32; n++) {
+      square[n] = gf2MatrixTimes(matrix, matrix[n]);
+    }
+  }
+
+  /**
+   * @return whether the request accepts gzip encoding, e.g. Accept-Encoding: gzip, deflate
+   */
+  public static boolean acceptsGzip(HttpServletRequest request) {
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    if (Strings.isNullOrEmpty(acceptEncoding)) {
+      return false;
+    }
+    for (String encoding : ENCODING_SPLITTER.split(acceptEncoding)) {
+      //only gzip;q=0 is treated as not acceptable, other qualities are ignored
+      Iterable<String> parts = QUALITY_SPLITTER.split(encoding);
+      String coding = parts.iterator().next();
+      if (!GZIP.equalsIgnoreCase(coding) && !"*".equals(coding)) {
+        continue;
+      }
+      for (String part : parts) {
+        if (part.replace(" ", "").matches("q=0(\\.0*)?")) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+}
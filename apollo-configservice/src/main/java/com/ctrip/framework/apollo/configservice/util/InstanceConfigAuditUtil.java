@@ -5,8 +5,11 @@ import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
 import com.ctrip.framework.apollo.biz.service.InstanceService;
@@ -14,19 +17,25 @@ import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
 import org.springframework.beans.factory.InitializingBean;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -40,85 +49,150 @@ public class InstanceConfigAuditUtil implements InitializingBean {
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
   private final ExecutorService auditExecutorService;
   private final AtomicBoolean auditStopped;
-  private BlockingQueue<InstanceConfigAuditModel> audits = Queues.newLinkedBlockingQueue
-      (INSTANCE_CONFIG_AUDIT_MAX_SIZE);
+  //audits of the same instance are always handled by the same worker
+  private final List<BlockingQueue<InstanceConfigAuditModel>> audits;
+  //the audits waiting in the queues, used to coalesce the duplicate ones
+  private final Set<InstanceConfigAuditModel> pendingAudits = Sets.newConcurrentHashSet();
+  private final AtomicLong droppedAudits = new AtomicLong();
+  private final Counter droppedAuditsCounter;
+  private final int auditBatch;
   private Cache<String, Long> instanceCache;
   private Cache<String, String> instanceConfigReleaseKeyCache;
 
   private final InstanceService instanceService;
 
-  public InstanceConfigAuditUtil(final InstanceService instanceService) {
+  public InstanceConfigAuditUtil(final InstanceService instanceService, final BizConfig bizConfig) {
     this.instanceService = instanceService;
-    auditExecutorService = Executors.newSingleThreadExecutor(
+    int workers = bizConfig.instanceConfigAuditWorkers();
+    auditBatch = bizConfig.instanceConfigAuditBatch();
+    audits = Lists.newArrayListWithCapacity(workers);
+    for (int i = 0; i < workers; i++) {
+      audits.add(Queues.newLinkedBlockingQueue(INSTANCE_CONFIG_AUDIT_MAX_SIZE / workers));
+    }
+    auditExecutorService = Executors.newFixedThreadPool(workers,
         ApolloThreadFactory.create("InstanceConfigAuditUtil", true));
     auditStopped = new AtomicBoolean(false);
     instanceCache = CacheBuilder.newBuilder().expireAfterAccess(1, TimeUnit.HOURS)
         .maximumSize(INSTANCE_CACHE_MAX_SIZE).build();
     instanceConfigReleaseKeyCache = CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.DAYS)
         .maximumSize(INSTANCE_CONFIG_CACHE_MAX_SIZE).build();
+    droppedAuditsCounter = Metrics.counter("apollo.instance.config.audit.dropped");
+    Metrics.gauge("apollo.instance.config.audit.queue.depth", this, InstanceConfigAuditUtil::getAuditQueueDepth);
   }
 
   public boolean audit(String appId, String clusterName, String dataCenter, String
       ip, String configAppId, String configClusterName, String configNamespace, String releaseKey) {
-    return this.audits.offer(new InstanceConfigAuditModel(appId, clusterName, dataCenter, ip,
-        configAppId, configClusterName, configNamespace, releaseKey));
+    InstanceConfigAuditModel auditModel = new InstanceConfigAuditModel(appId, clusterName, dataCenter, ip,
+        configAppId, configClusterName, configNamespace, releaseKey);
+    //the same audit is waiting in the queue
+    if (!pendingAudits.add(auditModel)) {
+      return true;
+    }
+    if (findAuditQueue(auditModel).offer(auditModel)) {
+      return true;
+    }
+    pendingAudits.remove(auditModel);
+    droppedAudits.incrementAndGet();
+    droppedAuditsCounter.increment();
+    return false;
   }
 
-  void doAudit(InstanceConfigAuditModel auditModel) {
-    String instanceCacheKey = assembleInstanceKey(auditModel.getAppId(), auditModel
-        .getClusterName(), auditModel.getIp(), auditModel.getDataCenter());
-    Long instanceId = instanceCache.getIfPresent(instanceCacheKey);
-    if (instanceId == null) {
-      instanceId = prepareInstanceId(auditModel);
-      instanceCache.put(instanceCacheKey, instanceId);
+  public long getDroppedAudits() {
+    return droppedAudits.get();
+  }
+
+  public int getAuditQueueDepth() {
+    int depth = 0;
+    for (BlockingQueue<InstanceConfigAuditModel> auditQueue : audits) {
+      depth += auditQueue.size();
+    }
+    return depth;
+  }
+
+  void doAudits(List<InstanceConfigAuditModel> auditModels) {
+    //only the latest audit of the same instance config matters
+    Map<String, InstanceConfigAuditModel> toAudit = Maps.newLinkedHashMap();
+    Map<String, Long> instanceIds = Maps.newHashMap();
+    for (InstanceConfigAuditModel auditModel : auditModels) {
+      String instanceCacheKey = assembleInstanceKey(auditModel.getAppId(), auditModel
+          .getClusterName(), auditModel.getIp(), auditModel.getDataCenter());
+      Long instanceId = instanceCache.getIfPresent(instanceCacheKey);
+      if (instanceId == null) {
+        instanceId = prepareInstanceId(auditModel);
+        instanceCache.put(instanceCacheKey, instanceId);
+      }
+
+      String instanceConfigCacheKey = assembleInstanceConfigKey(instanceId, auditModel
+          .getConfigAppId(), auditModel.getConfigNamespace());
+      toAudit.remove(instanceConfigCacheKey);
+      toAudit.put(instanceConfigCacheKey, auditModel);
+      instanceIds.put(instanceConfigCacheKey, instanceId);
     }
 
     //load instance config release key from cache, and check if release key is the same
-    String instanceConfigCacheKey = assembleInstanceConfigKey(instanceId, auditModel
-        .getConfigAppId(), auditModel.getConfigNamespace());
-    String cacheReleaseKey = instanceConfigReleaseKeyCache.getIfPresent(instanceConfigCacheKey);
+    Iterator<Map.Entry<String, InstanceConfigAuditModel>> iterator = toAudit.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, InstanceConfigAuditModel> entry = iterator.next();
+      String cacheReleaseKey = instanceConfigReleaseKeyCache.getIfPresent(entry.getKey());
+
+      //if release key is the same, then skip audit
+      if (cacheReleaseKey != null && Objects.equals(cacheReleaseKey, entry.getValue().getReleaseKey())) {
+        iterator.remove();
+        continue;
+      }
 
-    //if release key is the same, then skip audit
-    if (cacheReleaseKey != null && Objects.equals(cacheReleaseKey, auditModel.getReleaseKey())) {
-      return;
+      instanceConfigReleaseKeyCache.put(entry.getKey(), entry.getValue().getReleaseKey());
     }
 
-    instanceConfigReleaseKeyCache.put(instanceConfigCacheKey, auditModel.getReleaseKey());
+    if (toAudit.isEmpty()) {
+      return;
+    }
 
     //if release key is not the same or cannot find in cache, then do audit
-    InstanceConfig instanceConfig = instanceService.findInstanceConfig(instanceId, auditModel
-        .getConfigAppId(), auditModel.getConfigNamespace());
-
-    if (instanceConfig != null) {
-      if (!Objects.equals(instanceConfig.getReleaseKey(), auditModel.getReleaseKey())) {
-        instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
-        instanceConfig.setReleaseKey(auditModel.getReleaseKey());
-        instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
-      } else if (offerTimeAndLastModifiedTimeCloseEnough(auditModel.getOfferTime(),
-          instanceConfig.getDataChangeLastModifiedTime())) {
-        //when releaseKey is the same, optimize to reduce writes if the record was updated not long ago
-        return;
+    Map<String, InstanceConfig> instanceConfigs = Maps.newHashMap();
+    for (InstanceConfig instanceConfig : instanceService.findInstanceConfigs(
+        toAudit.keySet().stream().map(instanceIds::get).collect(Collectors.toSet()))) {
+      instanceConfigs.put(assembleInstanceConfigKey(instanceConfig.getInstanceId(),
+          instanceConfig.getConfigAppId(), instanceConfig.getConfigNamespaceName()), instanceConfig);
+    }
+
+    List<InstanceConfig> toUpsert = Lists.newArrayList();
+    for (Map.Entry<String, InstanceConfigAuditModel> entry : toAudit.entrySet()) {
+      InstanceConfigAuditModel auditModel = entry.getValue();
+      InstanceConfig instanceConfig = instanceConfigs.get(entry.getKey());
+
+      if (instanceConfig != null) {
+        if (!Objects.equals(instanceConfig.getReleaseKey(), auditModel.getReleaseKey())) {
+          instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
+          instanceConfig.setReleaseKey(auditModel.getReleaseKey());
+          instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
+        } else if (offerTimeAndLastModifiedTimeCloseEnough(auditModel.getOfferTime(),
+            instanceConfig.getDataChangeLastModifiedTime())) {
+          //when releaseKey is the same, optimize to reduce writes if the record was updated not long ago
+          continue;
+        }
+        //we need to update no matter the release key is the same or not, to ensure the
+        //last modified time is updated each day
+        instanceConfig.setDataChangeLastModifiedTime(auditModel.getOfferTime());
+        toUpsert.add(instanceConfig);
+        continue;
       }
-      //we need to update no matter the release key is the same or not, to ensure the
-      //last modified time is updated each day
+
+      instanceConfig = new InstanceConfig();
+      instanceConfig.setInstanceId(instanceIds.get(entry.getKey()));
+      instanceConfig.setConfigAppId(auditModel.getConfigAppId());
+      instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
+      instanceConfig.setConfigNamespaceName(auditModel.getConfigNamespace());
+      instanceConfig.setReleaseKey(auditModel.getReleaseKey());
+      instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
+      instanceConfig.setDataChangeCreatedTime(auditModel.getOfferTime());
       instanceConfig.setDataChangeLastModifiedTime(auditModel.getOfferTime());
-      instanceService.updateInstanceConfig(instanceConfig);
-      return;
+      toUpsert.add(instanceConfig);
     }
 
-    instanceConfig = new InstanceConfig();
-    instanceConfig.setInstanceId(instanceId);
-    instanceConfig.setConfigAppId(auditModel.getConfigAppId());
-    instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
-    instanceConfig.setConfigNamespaceName(auditModel.getConfigNamespace());
-    instanceConfig.setReleaseKey(auditModel.getReleaseKey());
-    instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
-    instanceConfig.setDataChangeCreatedTime(auditModel.getOfferTime());
-
-    try {
-      instanceService.createInstanceConfig(instanceConfig);
-    } catch (DataIntegrityViolationException ex) {
-      //concurrent insertion, safe to ignore
+    //the instance configs created concurrently by other config services are updated by the unique key
+    if (!toUpsert.isEmpty()) {
+      instanceService.batchUpsertInstanceConfigs(toUpsert);
     }
   }
 
@@ -151,20 +225,38 @@ public class InstanceConfigAuditUtil implements InitializingBean {
 
   @Override
   public void afterPropertiesSet() throws Exception {
-    auditExecutorService.submit(() -> {
-      while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
-        try {
-          InstanceConfigAuditModel model = audits.poll();
-          if (model == null) {
-            TimeUnit.SECONDS.sleep(1);
-            continue;
+    for (BlockingQueue<InstanceConfigAuditModel> auditQueue : audits) {
+      auditExecutorService.submit(() -> {
+        List<InstanceConfigAuditModel> auditModels = Lists.newArrayListWithCapacity(auditBatch);
+        while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
+          try {
+            InstanceConfigAuditModel model = auditQueue.poll(1, TimeUnit.SECONDS);
+            if (model == null) {
+              continue;
+            }
+            auditModels.add(model);
+            auditQueue.drainTo(auditModels, auditBatch - 1);
+            //removeAll of the concurrent set may iterate the whole set and look up each element in the list
+            for (InstanceConfigAuditModel auditModel : auditModels) {
+              pendingAudits.remove(auditModel);
+            }
+            doAudits(auditModels);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+          } catch (Throwable ex) {
+            Tracer.logError(ex);
+          } finally {
+            auditModels.clear();
           }
-          doAudit(model);
-        } catch (Throwable ex) {
-          Tracer.logError(ex);
         }
-      }
-    });
+      });
+    }
+  }
+
+  private BlockingQueue<InstanceConfigAuditModel> findAuditQueue(InstanceConfigAuditModel auditModel) {
+    int hash = Objects.hash(auditModel.getAppId(), auditModel.getClusterName(), auditModel.getIp(),
+        auditModel.getDataCenter());
+    return audits.get(Math.floorMod(hash, audits.size()));
   }
 
   private String assembleInstanceKey(String appId, String cluster, String ip, String datacenter) {
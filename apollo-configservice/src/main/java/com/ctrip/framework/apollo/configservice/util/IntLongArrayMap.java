@@ -0,0 +1,93 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A map from dense int keys, e.g. the ids of {@link WatchKeyInterner}, to positive long values, e.g. release message
+ * ids. It's backed by an array growing with the max key, so there are no boxed keys, values or entry objects.
+ * <ul>
+ *   <li>reads are lock free and always see the latest writes</li>
+ *   <li>writes are serialized, which is fine as they are much less than reads</li>
+ *   <li>0 is treated as absent, so the values must be positive</li>
+ * </ul>
+ */
+public class IntLongArrayMap {
+  public static final long ABSENT = 0;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private volatile AtomicLongArray values = new AtomicLongArray(INITIAL_CAPACITY);
+  private int size;
+
+  public long get(int key) {
+    AtomicLongArray current = values;
+    return key >= 0 && key < current.length() ? current.get(key) : ABSENT;
+  }
+
+  /**
+   * @return the previous value, or {@link #ABSENT} if there was none
+   */
+  public synchronized long put(int key, long value) {
+    if (value <= ABSENT) {
+      throw new IllegalArgumentException("Value must be positive: " + value);
+    }
+    long previous = ensureCapacity(key).getAndSet(key, value);
+    if (previous == ABSENT) {
+      size++;
+    }
+    return previous;
+  }
+
+  /**
+   * Put the value only if it's greater than the current one, e.g. to keep the latest message id
+   *
+   * @return whether the value is put
+   */
+  public synchronized boolean putIfGreater(int key, long value) {
+    if (value <= get(key)) {
+      return false;
+    }
+    put(key, value);
+    return true;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * Iterate the present entries, the entries put meanwhile may or may not be visited
+   */
+  public void forEach(IntLongConsumer consumer) {
+    AtomicLongArray current = values;
+    for (int key = 0; key < current.length(); key++) {
+      long value = current.get(key);
+      if (value != ABSENT) {
+        consumer.accept(key, value);
+      }
+    }
+  }
+
+  private AtomicLongArray ensureCapacity(int key) {
+    if (key < 0) {
+      throw new IllegalArgumentException("Key must not be negative: " + key);
+    }
+    AtomicLongArray current = values;
+    if (key < current.length()) {
+      return current;
+    }
+    int capacity = current.length();
+    while (capacity <= key) {
+      capacity = capacity * 2;
+    }
+    AtomicLongArray grown = new AtomicLongArray(capacity);
+    for (int i = 0; i < current.length(); i++) {
+      grown.set(i, current.get(i));
+    }
+    values = grown;
+    return grown;
+  }
+
+  public interface IntLongConsumer {
+    void accept(int key, long value);
+  }
+}
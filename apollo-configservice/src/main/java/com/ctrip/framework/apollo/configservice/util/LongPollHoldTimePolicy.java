@@ -0,0 +1,43 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides how long a long poll is held. If the adaptive hold time is enabled, the more polls this config service holds,
+ * the shorter they are held, so that the clients would reconnect and be balanced to other config services sooner.
+ * <p>
+ * The adaptive hold time is also jittered, otherwise the clients connected at the same time, e.g. after a restart,
+ * would keep reconnecting at the same time.
+ */
+@Component
+public class LongPollHoldTimePolicy {
+  private static final double MAX_JITTER_RATIO = 0.1;
+
+  private final BizConfig bizConfig;
+
+  @Autowired
+  public LongPollHoldTimePolicy(final BizConfig bizConfig) {
+    this.bizConfig = bizConfig;
+  }
+
+  /**
+   * @param heldPolls the number of long polls being held by this config service
+   * @return the hold time, which is never longer than the long polling timeout since the client's read timeout is based
+   * on it
+   */
+  public long holdTimeInMilli(int heldPolls) {
+    long maxTimeout = bizConfig.longPollingTimeoutInMilli();
+    if (!bizConfig.isLongPollingAdaptiveHoldTimeEnabled()) {
+      return maxTimeout;
+    }
+    long minTimeout = Math.min(bizConfig.longPollingMinTimeoutInMilli(), maxTimeout);
+
+    double load = Math.min(1, (double) Math.max(0, heldPolls) / bizConfig.longPollingFullLoadConnections());
+
+    long holdTime = maxTimeout - (long) ((maxTimeout - minTimeout) * load);
+    return holdTime - (long) (holdTime * MAX_JITTER_RATIO * ThreadLocalRandom.current().nextDouble());
+  }
+}
@@ -38,4 +38,11 @@ public class NamespaceUtil {
 
     return namespaceName;
   }
+
+  /**
+   * @return the version of the app namespaces, the normalized namespace names are stale once it's changed
+   */
+  public long getAppNamespacesVersion() {
+    return appNamespaceServiceWithCache.getVersion();
+  }
 }
@@ -0,0 +1,168 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Notifies large amount of clients in the background.
+ * <ul>
+ *   <li>the notifications are done by a pool of workers, the rate is limited by a token bucket per instance</li>
+ *   <li>concurrent fan outs are interleaved batch by batch, so a hot namespace won't starve the others</li>
+ * </ul>
+ */
+@Component
+public class NotificationFanOutScheduler {
+  private static final Logger logger = LoggerFactory.getLogger(NotificationFanOutScheduler.class);
+  private final BlockingQueue<FanOut<?>> fanOuts = new LinkedBlockingQueue<>();
+  private final AtomicInteger pendingFanOuts = new AtomicInteger();
+  private final AtomicLong pendingClients = new AtomicLong();
+  private final ExecutorService workerExecutorService;
+  private final TokenBucket tokenBucket = new TokenBucket();
+  private final Timer fanOutLatency;
+  private final BizConfig bizConfig;
+
+  public NotificationFanOutScheduler(final BizConfig bizConfig) {
+    this.bizConfig = bizConfig;
+    fanOutLatency = Metrics.timer("apollo.notification.fanout.latency");
+    Metrics.gauge("apollo.notification.fanout.pending.releases", pendingFanOuts);
+    Metrics.gauge("apollo.notification.fanout.pending.clients", pendingClients);
+
+    int workers = bizConfig.releaseMessageNotificationWorkers();
+    workerExecutorService = Executors.newFixedThreadPool(workers, ApolloThreadFactory.create
+        ("NotificationFanOutScheduler", true));
+    for (int i = 0; i < workers; i++) {
+      workerExecutorService.submit(this::doFanOut);
+    }
+  }
+
+  /**
+   * Notify the clients asynchronously
+   * @param key the key of the fan out, e.g. the release message
+   * @param clients the clients to notify, which should not be modified afterwards
+   * @param notifier the action to notify one client
+   */
+  public <T> void schedule(String key, List<T> clients, Consumer<? super T> notifier) {
+    if (clients.isEmpty()) {
+      return;
+    }
+    pendingFanOuts.incrementAndGet();
+    pendingClients.addAndGet(clients.size());
+    fanOuts.add(new FanOut<>(key, clients, notifier));
+  }
+
+  public int getPendingFanOuts() {
+    return pendingFanOuts.get();
+  }
+
+  public long getPendingClients() {
+    return pendingClients.get();
+  }
+
+  private void doFanOut() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        FanOut<?> fanOut = fanOuts.take();
+        int batch = bizConfig.releaseMessageNotificationBatch();
+        int start = fanOut.next;
+        int end = Math.min(start + batch, fanOut.clients.size());
+        fanOut.next = end;
+
+        //put the rest back to the tail, so that other workers could continue with it or other fan outs
+        if (end < fanOut.clients.size()) {
+          fanOuts.add(fanOut);
+        }
+
+        tokenBucket.acquire(end - start, bizConfig.releaseMessageNotificationRatePerSecond(), batch);
+
+        fanOut.notifyClients(start, end);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      } catch (Throwable ex) {
+        logger.error("Notification fan out failed", ex);
+        Tracer.logError(ex);
+      }
+    }
+  }
+
+  /**
+   * A token bucket which allows a burst of one batch at most, the tokens are reserved in advance so that the
+   * workers are served in order
+   */
+  private static class TokenBucket {
+    private double tokens;
+    private long lastRefillTime;
+    private boolean started;
+
+    void acquire(int permits, int ratePerSecond, int capacity) throws InterruptedException {
+      long waitNanos;
+      synchronized (this) {
+        long now = System.nanoTime();
+        if (!started) {
+          //the bucket is full at the beginning
+          tokens = capacity;
+          started = true;
+        } else {
+          tokens = Math.min(capacity, tokens + (now - lastRefillTime) * ratePerSecond / 1e9);
+        }
+        lastRefillTime = now;
+        tokens -= permits;
+        waitNanos = tokens >= 0 ? 0 : (long) (-tokens * 1e9 / ratePerSecond);
+      }
+      if (waitNanos > 0) {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      }
+    }
+  }
+
+  private class FanOut<T> {
+    private final String key;
+    private final List<T> clients;
+    private final Consumer<? super T> notifier;
+    private final long startTime;
+    private final AtomicInteger remaining;
+    //only accessed by the worker which takes the fan out from the queue
+    private int next;
+
+    FanOut(String key, List<T> clients, Consumer<? super T> notifier) {
+      this.key = key;
+      this.clients = clients;
+      this.notifier = notifier;
+      this.startTime = System.nanoTime();
+      this.remaining = new AtomicInteger(clients.size());
+    }
+
+    void notifyClients(int start, int end) {
+      logger.debug("Async notify clients [{}, {}) of {} clients for key {}", start, end, clients.size(), key);
+      for (int i = start; i < end; i++) {
+        try {
+          notifier.accept(clients.get(i));
+        } catch (Throwable ex) {
+          logger.error("Notify {} failed for key {}", clients.get(i), key, ex);
+        }
+      }
+
+      pendingClients.addAndGet(start - end);
+      if (remaining.addAndGet(start - end) == 0) {
+        pendingFanOuts.decrementAndGet();
+        fanOutLatency.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        logger.debug("Async notification completed for key {}", key);
+      }
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps each watch key, i.e. appId+cluster+namespace, to a compact int id, so the caches and indexes could be keyed by
+ * the ids with primitive maps, e.g. {@link IntLongArrayMap}, and only one copy of each key string is kept.
+ * <p>
+ * The ids are dense and start from 0, and they are never released, so only the keys of the release messages should be
+ * interned, the keys from the clients should be looked up with {@link #find(String)}.
+ */
+@Component
+public class WatchKeyInterner {
+  public static final int NOT_FOUND = -1;
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+  //id -> key, the array is replaced when growing, the key is set before the id is published
+  private volatile String[] keys = new String[INITIAL_CAPACITY];
+  private int nextId;
+
+  public int intern(String key) {
+    Integer id = ids.get(key);
+    if (id != null) {
+      return id;
+    }
+    synchronized (this) {
+      id = ids.get(key);
+      if (id != null) {
+        return id;
+      }
+      String[] current = keys;
+      if (nextId == current.length) {
+        current = Arrays.copyOf(current, current.length * 2);
+        keys = current;
+      }
+      current[nextId] = key;
+      ids.put(key, nextId);
+      return nextId++;
+    }
+  }
+
+  /**
+   * @return the id of the key, or {@link #NOT_FOUND} if it's never interned
+   */
+  public int find(String key) {
+    Integer id = ids.get(key);
+    return id == null ? NOT_FOUND : id;
+  }
+
+  /**
+   * @return the key of the id, or null if the id is not assigned
+   */
+  public String getKey(int id) {
+    String[] current = keys;
+    return id >= 0 && id < current.length ? current[id] : null;
+  }
+
+  public int size() {
+    return ids.size();
+  }
+}
@@ -5,7 +5,11 @@ import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithC
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import org.springframework.stereotype.Component;
@@ -14,6 +18,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -22,10 +27,18 @@ import java.util.stream.Collectors;
 @Component
 public class WatchKeysUtil {
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  private static final long MAX_CACHE_SIZE = 10000;
+  private static final long EXPIRE_AFTER_ACCESS_IN_MINUTES = 10;
   private final AppNamespaceServiceWithCache appNamespaceService;
+  //the same clients poll with the same namespaces all the time, so the assembled watch keys are cached
+  private final Cache<WatchKeysCacheKey, CachedWatchKeys> watchKeysCache;
 
   public WatchKeysUtil(final AppNamespaceServiceWithCache appNamespaceService) {
     this.appNamespaceService = appNamespaceService;
+    this.watchKeysCache = CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHE_SIZE)
+        .expireAfterAccess(EXPIRE_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
+        .build();
   }
 
   /**
@@ -33,19 +46,39 @@ public class WatchKeysUtil {
    */
   public Set<String> assembleAllWatchKeys(String appId, String clusterName, String namespace,
                                           String dataCenter) {
-    Multimap<String, String> watchedKeysMap =
-        assembleAllWatchKeys(appId, clusterName, Sets.newHashSet(namespace), dataCenter);
-    return Sets.newHashSet(watchedKeysMap.get(namespace));
+    return findOrAssembleAllWatchKeys(appId, clusterName, ImmutableSet.of(namespace), dataCenter).get(namespace);
   }
 
   /**
    * Assemble watch keys for the given appId, cluster, namespaces, dataCenter combination
    *
-   * @return a multimap with namespace as the key and watch keys as the value
+   * @return an immutable multimap with namespace as the key and watch keys as the value
    */
   public Multimap<String, String> assembleAllWatchKeys(String appId, String clusterName,
                                                        Set<String> namespaces,
                                                        String dataCenter) {
+    return findOrAssembleAllWatchKeys(appId, clusterName, namespaces, dataCenter);
+  }
+
+  private ImmutableSetMultimap<String, String> findOrAssembleAllWatchKeys(String appId, String clusterName,
+                                                                          Set<String> namespaces,
+                                                                          String dataCenter) {
+    WatchKeysCacheKey cacheKey = new WatchKeysCacheKey(appId, clusterName, namespaces, dataCenter);
+    //the version is taken before assembling, so the result of outdated app namespaces won't be served afterwards
+    long version = appNamespaceService.getVersion();
+    CachedWatchKeys cached = watchKeysCache.getIfPresent(cacheKey);
+    if (cached != null && cached.version == version) {
+      return cached.watchKeys;
+    }
+
+    ImmutableSetMultimap<String, String> watchKeys =
+        ImmutableSetMultimap.copyOf(doAssembleAllWatchKeys(appId, clusterName, namespaces, dataCenter));
+    watchKeysCache.put(cacheKey, new CachedWatchKeys(version, watchKeys));
+    return watchKeys;
+  }
+
+  private Multimap<String, String> doAssembleAllWatchKeys(String appId, String clusterName, Set<String> namespaces,
+                                                          String dataCenter) {
     Multimap<String, String> watchedKeysMap =
         assembleWatchKeys(appId, clusterName, namespaces, dataCenter);
 
@@ -139,4 +172,46 @@ public class WatchKeysUtil {
 
     return appNamespaces.stream().map(AppNamespace::getName).collect(Collectors.toSet());
   }
+
+  private static final class WatchKeysCacheKey {
+    private final String appId;
+    private final String clusterName;
+    private final Set<String> namespaces;
+    private final String dataCenter;
+
+    private WatchKeysCacheKey(String appId, String clusterName, Set<String> namespaces, String dataCenter) {
+      this.appId = appId;
+      this.clusterName = clusterName;
+      this.namespaces = ImmutableSet.copyOf(namespaces);
+      this.dataCenter = dataCenter;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof WatchKeysCacheKey)) {
+        return false;
+      }
+      WatchKeysCacheKey that = (WatchKeysCacheKey) o;
+      return Objects.equals(appId, that.appId) && Objects.equals(clusterName, that.clusterName)
+          && Objects.equals(namespaces, that.namespaces) && Objects.equals(dataCenter, that.dataCenter);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(appId, clusterName, namespaces, dataCenter);
+    }
+  }
+
+  private static final class CachedWatchKeys {
+    private final long version;
+    private final ImmutableSetMultimap<String, String> watchKeys;
+
+    private CachedWatchKeys(long version, ImmutableSetMultimap<String, String> watchKeys) {
+      this.version = version;
+      this.watchKeys = watchKeys;
+    }
+  }
 }
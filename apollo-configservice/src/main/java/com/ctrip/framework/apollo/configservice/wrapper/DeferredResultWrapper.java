@@ -5,6 +5,7 @@ import com.google.common.collect.Maps;
 
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.context.request.async.DeferredResult;
@@ -61,6 +62,16 @@ public class DeferredResultWrapper {
     result.setResult(new ResponseEntity<>(notifications, HttpStatus.OK));
   }
 
+  /**
+   * Release the poll without notifications, the client is suggested to reconnect after the seconds, e.g. when the
+   * config service is shutting down
+   */
+  public void setReconnectAfterResult(long reconnectAfterInSeconds) {
+    result.setResult(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+        .header(HttpHeaders.RETRY_AFTER, String.valueOf(reconnectAfterInSeconds))
+        .<List<ApolloConfigNotification>>build());
+  }
+
   public DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> getResult() {
     return result;
   }
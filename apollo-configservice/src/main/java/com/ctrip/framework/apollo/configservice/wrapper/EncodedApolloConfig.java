@@ -0,0 +1,52 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.configservice.util.DeflatedContent;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+
+import java.util.Map;
+
+/**
+ * ApolloConfig whose configurations are already encoded as json, so that the response could be written
+ * without serializing the configurations again.
+ */
+public class EncodedApolloConfig extends ApolloConfig {
+  private transient volatile byte[] encodedConfigurations;
+  private transient volatile DeflatedContent deflatedConfigurations;
+
+  public EncodedApolloConfig(String appId, String cluster, String namespaceName, String releaseKey,
+                             Map<String, String> configurations, byte[] encodedConfigurations) {
+    this(appId, cluster, namespaceName, releaseKey, configurations, encodedConfigurations, null);
+  }
+
+  /**
+   * @param deflatedConfigurations the encoded configurations compressed as deflate blocks, if not null the response is
+   *                               written with gzip encoding, so it should only be set when the client accepts gzip
+   */
+  public EncodedApolloConfig(String appId, String cluster, String namespaceName, String releaseKey,
+                             Map<String, String> configurations, byte[] encodedConfigurations,
+                             DeflatedContent deflatedConfigurations) {
+    super(appId, cluster, namespaceName, releaseKey);
+    super.setConfigurations(configurations);
+    this.encodedConfigurations = encodedConfigurations;
+    this.deflatedConfigurations = deflatedConfigurations;
+  }
+
+  public byte[] getEncodedConfigurations() {
+    return encodedConfigurations;
+  }
+
+  public DeflatedContent getDeflatedConfigurations() {
+    return deflatedConfigurations;
+  }
+
+  /**
+   * The pre-encoded configurations no longer match once the configurations are changed, so they are dropped and the
+   * configurations are serialized as a plain {@link ApolloConfig}
+   */
+  @Override
+  public void setConfigurations(Map<String, String> configurations) {
+    super.setConfigurations(configurations);
+    this.encodedConfigurations = null;
+    this.deflatedConfigurations = null;
+  }
+}
@@ -0,0 +1,127 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.configservice.util.GzipUtil;
+import com.google.gson.Gson;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes {@link EncodedApolloConfig} with its pre-encoded configurations, the output is the same as the one
+ * serialized by gson.
+ * <p>
+ * If the configurations are precompressed, the response is written as a single gzip member: the leading fields, the
+ * precompressed configurations and the trailing fields, the small fields are written as stored blocks, so nothing is
+ * compressed per response.
+ */
+public class EncodedApolloConfigHttpMessageConverter extends AbstractHttpMessageConverter<EncodedApolloConfig> {
+  private static final Gson gson = new Gson();
+  private static final byte[] OBJECT_START = "{".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] OBJECT_END = "}".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] FIELD_SEPARATOR = ",".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] APP_ID_FIELD = fieldName("appId");
+  private static final byte[] CLUSTER_FIELD = fieldName("cluster");
+  private static final byte[] NAMESPACE_NAME_FIELD = fieldName("namespaceName");
+  private static final byte[] CONFIGURATIONS_FIELD = fieldName("configurations");
+  private static final byte[] RELEASE_KEY_FIELD = fieldName("releaseKey");
+
+  public EncodedApolloConfigHttpMessageConverter() {
+    super(StandardCharsets.UTF_8, MediaType.APPLICATION_JSON);
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return EncodedApolloConfig.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  public boolean canRead(Class<?> clazz, MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  protected EncodedApolloConfig readInternal(Class<? extends EncodedApolloConfig> clazz,
+                                             HttpInputMessage inputMessage) throws HttpMessageNotReadableException {
+    throw new UnsupportedOperationException("EncodedApolloConfig is write only");
+  }
+
+  @Override
+  protected void writeInternal(EncodedApolloConfig config, HttpOutputMessage outputMessage) throws IOException {
+    if (config.getDeflatedConfigurations() != null && config.getEncodedConfigurations() != null) {
+      writeGzipped(config, outputMessage);
+      return;
+    }
+    byte[] encodedConfigurations = config.getEncodedConfigurations();
+    //the configurations are changed after being encoded
+    if (encodedConfigurations == null && config.getConfigurations() != null) {
+      encodedConfigurations = gson.toJson(config.getConfigurations()).getBytes(StandardCharsets.UTF_8);
+    }
+    OutputStream body = outputMessage.getBody();
+    boolean hasField = writeLeadingFields(body, config);
+    if (encodedConfigurations != null) {
+      writeFieldName(body, CONFIGURATIONS_FIELD, hasField);
+      body.write(encodedConfigurations);
+      hasField = true;
+    }
+    writeTrailingFields(body, config, hasField);
+    body.flush();
+  }
+
+  private void writeGzipped(EncodedApolloConfig config, HttpOutputMessage outputMessage) throws IOException {
+    //headers must be set before the body is written
+    outputMessage.getHeaders().set(HttpHeaders.CONTENT_ENCODING, GzipUtil.GZIP);
+
+    ByteArrayOutputStream leading = new ByteArrayOutputStream();
+    writeFieldName(leading, CONFIGURATIONS_FIELD, writeLeadingFields(leading, config));
+    ByteArrayOutputStream trailing = new ByteArrayOutputStream();
+    writeTrailingFields(trailing, config, true);
+
+    OutputStream body = outputMessage.getBody();
+    GzipUtil.writeGzipMember(body, leading.toByteArray(), config.getDeflatedConfigurations(), trailing.toByteArray());
+    body.flush();
+  }
+
+  private boolean writeLeadingFields(OutputStream out, EncodedApolloConfig config) throws IOException {
+    out.write(OBJECT_START);
+    boolean hasField = writeStringField(out, APP_ID_FIELD, config.getAppId(), false);
+    hasField = writeStringField(out, CLUSTER_FIELD, config.getCluster(), hasField);
+    return writeStringField(out, NAMESPACE_NAME_FIELD, config.getNamespaceName(), hasField);
+  }
+
+  private void writeTrailingFields(OutputStream out, EncodedApolloConfig config, boolean hasField)
+      throws IOException {
+    writeStringField(out, RELEASE_KEY_FIELD, config.getReleaseKey(), hasField);
+    out.write(OBJECT_END);
+  }
+
+  private boolean writeStringField(OutputStream body, byte[] name, String value, boolean hasField)
+      throws IOException {
+    //null fields are skipped, the same as gson does
+    if (value == null) {
+      return hasField;
+    }
+    writeFieldName(body, name, hasField);
+    body.write(gson.toJson(value).getBytes(StandardCharsets.UTF_8));
+    return true;
+  }
+
+  private void writeFieldName(OutputStream body, byte[] name, boolean hasField) throws IOException {
+    if (hasField) {
+      body.write(FIELD_SEPARATOR);
+    }
+    body.write(name);
+  }
+
+  private static byte[] fieldName(String name) {
+    return (gson.toJson(name) + ":").getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,111 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A server-sent events stream of the notifications, which is kept open for multiple notifications
+ */
+public class NotificationStreamWrapper {
+  private static final Logger logger = LoggerFactory.getLogger(NotificationStreamWrapper.class);
+  public static final String NOTIFICATIONS_EVENT = "notifications";
+  private static final String HEARTBEAT_COMMENT = "heartbeat";
+  private static final Gson gson = new Gson();
+
+  private Map<String, String> normalizedNamespaceNameToOriginalNamespaceName;
+  private final SseEmitter emitter;
+
+  public NotificationStreamWrapper(long timeoutInMilli) {
+    emitter = new SseEmitter(timeoutInMilli);
+  }
+
+  public void recordNamespaceNameNormalizedResult(String originalNamespaceName, String normalizedNamespaceName) {
+    if (normalizedNamespaceNameToOriginalNamespaceName == null) {
+      normalizedNamespaceNameToOriginalNamespaceName = Maps.newHashMap();
+    }
+    normalizedNamespaceNameToOriginalNamespaceName.put(normalizedNamespaceName, originalNamespaceName);
+  }
+
+  /**
+   * The stream is completed when timeout, so that the client would reconnect
+   */
+  public void onTimeout(Runnable timeoutCallback) {
+    emitter.onTimeout(() -> {
+      timeoutCallback.run();
+      emitter.complete();
+    });
+  }
+
+  public void onCompletion(Runnable completionCallback) {
+    emitter.onCompletion(completionCallback);
+  }
+
+  public void send(ApolloConfigNotification notification) {
+    send(Lists.newArrayList(notification));
+  }
+
+  /**
+   * The namespace name is used as a key in client side, so we have to send the original one instead of the correct
+   * one. The notifications may be shared by other streams, so they are copied before renaming.
+   */
+  public void send(List<ApolloConfigNotification> notifications) {
+    List<ApolloConfigNotification> toSend = notifications;
+    if (normalizedNamespaceNameToOriginalNamespaceName != null) {
+      toSend = Lists.newArrayListWithCapacity(notifications.size());
+      for (ApolloConfigNotification notification : notifications) {
+        String originalNamespaceName = normalizedNamespaceNameToOriginalNamespaceName
+            .get(notification.getNamespaceName());
+        if (originalNamespaceName == null) {
+          toSend.add(notification);
+          continue;
+        }
+        ApolloConfigNotification renamed =
+            new ApolloConfigNotification(originalNamespaceName, notification.getNotificationId());
+        renamed.setMessages(notification.getMessages());
+        toSend.add(renamed);
+      }
+    }
+
+    doSend(SseEmitter.event().name(NOTIFICATIONS_EVENT).data(gson.toJson(toSend)));
+  }
+
+  /**
+   * Keep the connection alive and find out the broken ones
+   */
+  public void sendHeartbeat() {
+    doSend(SseEmitter.event().comment(HEARTBEAT_COMMENT));
+  }
+
+  /**
+   * Close the stream, so that the client would reconnect
+   */
+  public void complete() {
+    emitter.complete();
+  }
+
+  public SseEmitter getEmitter() {
+    return emitter;
+  }
+
+  private void doSend(SseEmitter.SseEventBuilder event) {
+    try {
+      emitter.send(event);
+    } catch (IOException ex) {
+      //the client is disconnected
+      logger.debug("Send to notification stream failed", ex);
+      emitter.completeWithError(ex);
+    } catch (IllegalStateException ex) {
+      //the stream is already completed
+      logger.debug("Notification stream is already completed", ex);
+    }
+  }
+}
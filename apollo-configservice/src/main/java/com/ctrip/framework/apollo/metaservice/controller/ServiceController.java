@@ -1,55 +1,57 @@
 package com.ctrip.framework.apollo.metaservice.controller;
 
-import com.ctrip.framework.apollo.core.dto.ServiceDTO;
-import com.ctrip.framework.apollo.metaservice.service.DiscoveryService;
-import com.netflix.appinfo.InstanceInfo;
+import com.ctrip.framework.apollo.metaservice.service.DiscoveryResponseCache;
+import com.ctrip.framework.apollo.metaservice.service.DiscoveryResponseCache.DiscoveryResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.List;
-import java.util.function.Function;
-import java.util.stream.Collectors;
-
 @RestController
 @RequestMapping("/services")
 public class ServiceController {
 
-  private final DiscoveryService discoveryService;
-
-  private static Function<InstanceInfo, ServiceDTO> instanceInfoToServiceDTOFunc = instance -> {
-    ServiceDTO service = new ServiceDTO();
-    service.setAppName(instance.getAppName());
-    service.setInstanceId(instance.getInstanceId());
-    service.setHomepageUrl(instance.getHomePageUrl());
-    return service;
-  };
+  private final DiscoveryResponseCache discoveryResponseCache;
 
-  public ServiceController(final DiscoveryService discoveryService) {
-    this.discoveryService = discoveryService;
+  public ServiceController(final DiscoveryResponseCache discoveryResponseCache) {
+    this.discoveryResponseCache = discoveryResponseCache;
   }
 
 
   @RequestMapping("/meta")
-  public List<ServiceDTO> getMetaService() {
-    List<InstanceInfo> instances = discoveryService.getMetaServiceInstances();
-    List<ServiceDTO> result = instances.stream().map(instanceInfoToServiceDTOFunc).collect(Collectors.toList());
-    return result;
+  public ResponseEntity<byte[]> getMetaService(
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    return buildResponse(discoveryResponseCache.getMetaServices(), ifNoneMatch);
   }
 
   @RequestMapping("/config")
-  public List<ServiceDTO> getConfigService(
+  public ResponseEntity<byte[]> getConfigService(
       @RequestParam(value = "appId", defaultValue = "") String appId,
-      @RequestParam(value = "ip", required = false) String clientIp) {
-    List<InstanceInfo> instances = discoveryService.getConfigServiceInstances();
-    List<ServiceDTO> result = instances.stream().map(instanceInfoToServiceDTOFunc).collect(Collectors.toList());
-    return result;
+      @RequestParam(value = "ip", required = false) String clientIp,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    return buildResponse(discoveryResponseCache.getConfigServices(), ifNoneMatch);
   }
 
   @RequestMapping("/admin")
-  public List<ServiceDTO> getAdminService() {
-    List<InstanceInfo> instances = discoveryService.getAdminServiceInstances();
-    List<ServiceDTO> result = instances.stream().map(instanceInfoToServiceDTOFunc).collect(Collectors.toList());
-    return result;
+  public ResponseEntity<byte[]> getAdminService(
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    return buildResponse(discoveryResponseCache.getAdminServices(), ifNoneMatch);
+  }
+
+  /**
+   * The services are serialized already, 304 is returned if the client has the latest ones
+   */
+  private ResponseEntity<byte[]> buildResponse(DiscoveryResponse discoveryResponse, String ifNoneMatch) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.setETag(discoveryResponse.getETag());
+    if (discoveryResponse.matches(ifNoneMatch)) {
+      return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+    }
+    headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+    return new ResponseEntity<>(discoveryResponse.getBody(), headers, HttpStatus.OK);
   }
 }
@@ -0,0 +1,183 @@
+package com.ctrip.framework.apollo.metaservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.core.ServiceNameConsts;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.CacheRefreshedEvent;
+import com.netflix.discovery.EurekaClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the serialized discovery responses, so that the clients refreshing the services don't need to transform and
+ * serialize the instances on each request, and the ones with the latest entity tag only get 304.
+ * <p>
+ * The responses are rebuilt when the eureka client refreshes its registry, and the entity tags are changed only if the
+ * responses are changed. The services are sorted by the instance id, so the same instances in another order don't
+ * change the entity tag.
+ */
+@Service
+public class DiscoveryResponseCache {
+  private static final Logger logger = LoggerFactory.getLogger(DiscoveryResponseCache.class);
+  private static final List<String> CACHED_SERVICE_NAMES = Arrays.asList(ServiceNameConsts.APOLLO_CONFIGSERVICE,
+      ServiceNameConsts.APOLLO_METASERVICE, ServiceNameConsts.APOLLO_ADMINSERVICE);
+  //the weight of a config service in the consistent hash ring, which could be set in the eureka metadata
+  private static final String WEIGHT_METADATA_KEY = "weight";
+  private static final int DEFAULT_WEIGHT = 1;
+  private static final int MAX_WEIGHT = 100;
+  private static final Comparator<ServiceDTO> SERVICE_COMPARATOR = Comparator.comparing(ServiceDTO::getInstanceId,
+      Comparator.nullsFirst(Comparator.naturalOrder()));
+
+  private final DiscoveryService discoveryService;
+  private final BizConfig bizConfig;
+  private final Gson gson = new Gson();
+  private final ConcurrentMap<String, DiscoveryResponse> responses = Maps.newConcurrentMap();
+
+  public DiscoveryResponseCache(final DiscoveryService discoveryService, final BizConfig bizConfig,
+                                final EurekaClient eurekaClient) {
+    this.discoveryService = discoveryService;
+    this.bizConfig = bizConfig;
+    eurekaClient.registerEventListener(event -> {
+      if (event instanceof CacheRefreshedEvent) {
+        rebuild();
+      }
+    });
+  }
+
+  public DiscoveryResponse getConfigServices() {
+    return get(ServiceNameConsts.APOLLO_CONFIGSERVICE);
+  }
+
+  public DiscoveryResponse getMetaServices() {
+    return get(ServiceNameConsts.APOLLO_METASERVICE);
+  }
+
+  public DiscoveryResponse getAdminServices() {
+    return get(ServiceNameConsts.APOLLO_ADMINSERVICE);
+  }
+
+  private DiscoveryResponse get(String serviceName) {
+    DiscoveryResponse response = responses.get(serviceName);
+    if (response == null) {
+      //not built yet, e.g. before the first registry refresh
+      response = build(serviceName);
+      responses.putIfAbsent(serviceName, response);
+    }
+    return response;
+  }
+
+  private void rebuild() {
+    for (String serviceName : CACHED_SERVICE_NAMES) {
+      try {
+        DiscoveryResponse response = build(serviceName);
+        DiscoveryResponse previous = responses.get(serviceName);
+        if (previous == null || !previous.getETag().equals(response.getETag())) {
+          responses.put(serviceName, response);
+          Tracer.logEvent("Apollo.MetaService.DiscoveryChanged", serviceName);
+        }
+      } catch (Throwable ex) {
+        //keep serving the previous response
+        logger.error("Rebuild discovery response of {} failed", serviceName, ex);
+        Tracer.logError(ex);
+      }
+    }
+  }
+
+  private DiscoveryResponse build(String serviceName) {
+    List<InstanceInfo> instances = discoveryService.getServiceInstances(serviceName);
+    boolean affinityEnabled = ServiceNameConsts.APOLLO_CONFIGSERVICE.equals(serviceName)
+        && bizConfig.isConfigServiceAffinityEnabled();
+    int virtualNodesPerWeight = affinityEnabled ? bizConfig.configServiceAffinityVirtualNodes() : 0;
+
+    List<ServiceDTO> services = Lists.newArrayListWithCapacity(instances.size());
+    for (InstanceInfo instance : instances) {
+      ServiceDTO service = new ServiceDTO();
+      service.setAppName(instance.getAppName());
+      service.setInstanceId(instance.getInstanceId());
+      service.setHomepageUrl(instance.getHomePageUrl());
+      //publish the consistent hash ring, the client would route its app id to the owner and fallback in the ring
+      if (affinityEnabled) {
+        service.setVirtualNodes(weightOf(instance) * virtualNodesPerWeight);
+      }
+      services.add(service);
+    }
+    //the registry doesn't keep the order of the instances, sort them so the entity tag only changes with the content
+    services.sort(SERVICE_COMPARATOR);
+
+    byte[] body = gson.toJson(services).getBytes(StandardCharsets.UTF_8);
+    return new DiscoveryResponse(body, Hashing.sha1().hashBytes(body).toString());
+  }
+
+  /**
+   * @return the weight in the metadata, 0 means the instance owns no app ids, e.g. when it's going to be offline
+   */
+  private int weightOf(InstanceInfo instance) {
+    String weight = instance.getMetadata() == null ? null : instance.getMetadata().get(WEIGHT_METADATA_KEY);
+    if (Strings.isNullOrEmpty(weight)) {
+      return DEFAULT_WEIGHT;
+    }
+    try {
+      return Math.min(MAX_WEIGHT, Math.max(0, Integer.parseInt(weight.trim())));
+    } catch (NumberFormatException ex) {
+      logger.warn("Invalid weight {} of config service {}", weight, instance.getInstanceId());
+      return DEFAULT_WEIGHT;
+    }
+  }
+
+  public static class DiscoveryResponse {
+    private static final Splitter ETAG_SPLITTER = Splitter.on(",").omitEmptyStrings().trimResults();
+    private static final String WEAK_ETAG_PREFIX = "W/";
+    private final byte[] body;
+    private final String eTag;
+
+    DiscoveryResponse(byte[] body, String eTagValue) {
+      this.body = body;
+      this.eTag = "\"" + eTagValue + "\"";
+    }
+
+    /**
+     * @return the serialized service list, which must not be modified
+     */
+    public byte[] getBody() {
+      return body;
+    }
+
+    public String getETag() {
+      return eTag;
+    }
+
+    /**
+     * @param ifNoneMatch the If-None-Match header, e.g. "xyz", W/"xyz", *
+     */
+    public boolean matches(String ifNoneMatch) {
+      if (Strings.isNullOrEmpty(ifNoneMatch)) {
+        return false;
+      }
+      for (String candidate : ETAG_SPLITTER.split(ifNoneMatch)) {
+        //If-None-Match uses the weak comparison
+        if (candidate.startsWith(WEAK_ETAG_PREFIX)) {
+          candidate = candidate.substring(WEAK_ETAG_PREFIX.length());
+        }
+        if ("*".equals(candidate) || eTag.equals(candidate)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -20,25 +20,21 @@ public class DiscoveryService {
   }
 
   public List<InstanceInfo> getConfigServiceInstances() {
-    Application application = eurekaClient.getApplication(ServiceNameConsts.APOLLO_CONFIGSERVICE);
-    if (application == null) {
-      Tracer.logEvent("Apollo.EurekaDiscovery.NotFound", ServiceNameConsts.APOLLO_CONFIGSERVICE);
-    }
-    return application != null ? application.getInstances() : Collections.emptyList();
+    return getServiceInstances(ServiceNameConsts.APOLLO_CONFIGSERVICE);
   }
 
   public List<InstanceInfo> getMetaServiceInstances() {
-    Application application = eurekaClient.getApplication(ServiceNameConsts.APOLLO_METASERVICE);
-    if (application == null) {
-      Tracer.logEvent("Apollo.EurekaDiscovery.NotFound", ServiceNameConsts.APOLLO_METASERVICE);
-    }
-    return application != null ? application.getInstances() : Collections.emptyList();
+    return getServiceInstances(ServiceNameConsts.APOLLO_METASERVICE);
   }
 
   public List<InstanceInfo> getAdminServiceInstances() {
-    Application application = eurekaClient.getApplication(ServiceNameConsts.APOLLO_ADMINSERVICE);
+    return getServiceInstances(ServiceNameConsts.APOLLO_ADMINSERVICE);
+  }
+
+  public List<InstanceInfo> getServiceInstances(String serviceName) {
+    Application application = eurekaClient.getApplication(serviceName);
     if (application == null) {
-      Tracer.logEvent("Apollo.EurekaDiscovery.NotFound", ServiceNameConsts.APOLLO_ADMINSERVICE);
+      Tracer.logEvent("Apollo.EurekaDiscovery.NotFound", serviceName);
     }
     return application != null ? application.getInstances() : Collections.emptyList();
   }
@@ -0,0 +1,108 @@
+package com.ctrip.framework.apollo.configservice.cache;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CaffeineConfigCacheFactoryTest {
+  private CaffeineConfigCacheFactory caffeineConfigCacheFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    caffeineConfigCacheFactory = new CaffeineConfigCacheFactory();
+  }
+
+  @Test
+  public void testCreateCacheBoundedByWeight() throws Exception {
+    String someKey = "someKey";
+    String anotherKey = "anotherKey";
+    String someValue = "someValue";
+    String someLargeValue = Strings.repeat(someValue, 100);
+    List<RemovalCause> removalCauses = Lists.newArrayList();
+
+    Cache<String, String> someCache = caffeineConfigCacheFactory.createCache(new ConfigCacheSpec<String, String>(
+        "someCaffeineCache", CacheWeights.of(someLargeValue) - 1, (key, value) -> CacheWeights.of(value))
+        .removalListener(notification -> removalCauses.add(notification.getCause())));
+
+    someCache.put(someKey, someValue);
+    someCache.put(anotherKey, someLargeValue);
+    someCache.cleanUp();
+
+    assertEquals(someValue, someCache.getIfPresent(someKey));
+    assertNull(someCache.getIfPresent(anotherKey));
+    assertEquals(1, someCache.stats().evictionCount());
+    assertEquals(Lists.newArrayList(RemovalCause.SIZE), removalCauses);
+  }
+
+  @Test
+  public void testCreateLoadingCacheWithStats() throws Exception {
+    String someKey = "someKey";
+
+    LoadingCache<String, String> someCache = caffeineConfigCacheFactory.createLoadingCache(
+        new ConfigCacheSpec<String, String>("someCaffeineLoadingCache", 1024, (key, value) -> CacheWeights.of(value)),
+        new CacheLoader<String, String>() {
+          @Override
+          public String load(String key) throws Exception {
+            return key.toUpperCase();
+          }
+        });
+
+    assertEquals(someKey.toUpperCase(), someCache.getUnchecked(someKey));
+    assertEquals(someKey.toUpperCase(), someCache.getUnchecked(someKey));
+
+    assertEquals(1, someCache.stats().hitCount());
+    assertEquals(1, someCache.stats().missCount());
+    assertEquals(1, someCache.stats().loadSuccessCount());
+  }
+
+  @Test
+  public void testRefreshKeepsCurrentValueIfReloadFails() throws Exception {
+    String someKey = "someKey";
+    AtomicBoolean failing = new AtomicBoolean();
+
+    LoadingCache<String, String> someCache = caffeineConfigCacheFactory.createLoadingCache(
+        new ConfigCacheSpec<String, String>("someRefreshedCache", 1024, (key, value) -> CacheWeights.of(value)),
+        new CacheLoader<String, String>() {
+          @Override
+          public String load(String key) throws Exception {
+            if (failing.get()) {
+              throw new IllegalStateException("load failed");
+            }
+            return key.toUpperCase();
+          }
+        });
+
+    assertEquals(someKey.toUpperCase(), someCache.getUnchecked(someKey));
+
+    failing.set(true);
+    someCache.refresh(someKey);
+
+    assertEquals(someKey.toUpperCase(), someCache.getIfPresent(someKey));
+  }
+
+  @Test(expected = UncheckedExecutionException.class)
+  public void testGetUncheckedWithLoadFailure() throws Exception {
+    LoadingCache<String, String> someCache = caffeineConfigCacheFactory.createLoadingCache(
+        new ConfigCacheSpec<String, String>("someFailedCache", 1024, (key, value) -> CacheWeights.of(value)),
+        new CacheLoader<String, String>() {
+          @Override
+          public String load(String key) throws Exception {
+            throw new Exception("load failed");
+          }
+        });
+
+    someCache.getUnchecked("someKey");
+  }
+}
@@ -0,0 +1,59 @@
+package com.ctrip.framework.apollo.configservice.cache;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class GuavaConfigCacheFactoryTest {
+  private GuavaConfigCacheFactory guavaConfigCacheFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    guavaConfigCacheFactory = new GuavaConfigCacheFactory();
+  }
+
+  @Test
+  public void testCreateCacheBoundedByWeight() throws Exception {
+    String someKey = "someKey";
+    String anotherKey = "anotherKey";
+    String someValue = "someValue";
+    String someLargeValue = Strings.repeat(someValue, 100);
+
+    Cache<String, String> someCache = guavaConfigCacheFactory.createCache(new ConfigCacheSpec<String, String>(
+        "someCache", CacheWeights.of(someLargeValue) - 1, (key, value) -> CacheWeights.of(value)));
+
+    someCache.put(someKey, someValue);
+    someCache.put(anotherKey, someLargeValue);
+
+    assertEquals(someValue, someCache.getIfPresent(someKey));
+    assertNull(someCache.getIfPresent(anotherKey));
+    assertEquals(1, someCache.stats().evictionCount());
+  }
+
+  @Test
+  public void testCreateLoadingCacheWithStats() throws Exception {
+    String someKey = "someKey";
+
+    LoadingCache<String, String> someCache = guavaConfigCacheFactory.createLoadingCache(
+        new ConfigCacheSpec<String, String>("someLoadingCache", 1024, (key, value) -> CacheWeights.of(value)),
+        new CacheLoader<String, String>() {
+          @Override
+          public String load(String key) throws Exception {
+            return key.toUpperCase();
+          }
+        });
+
+    assertEquals(someKey.toUpperCase(), someCache.getUnchecked(someKey));
+    assertEquals(someKey.toUpperCase(), someCache.getUnchecked(someKey));
+
+    assertEquals(1, someCache.stats().hitCount());
+    assertEquals(1, someCache.stats().missCount());
+    assertEquals(1, someCache.stats().loadSuccessCount());
+  }
+}
@@ -1,17 +1,25 @@
 package com.ctrip.framework.apollo.configservice.controller;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.message.ReleasePropagationTracker;
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
+import com.ctrip.framework.apollo.configservice.service.config.ReleaseDelta;
+import com.ctrip.framework.apollo.configservice.service.config.ReleaseSnapshot;
 import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigBatchQuery;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.utils.ChecksumUtil;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 import org.junit.Before;
@@ -22,10 +30,12 @@ import org.mockito.junit.MockitoJUnitRunner;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -60,13 +70,17 @@ public class ConfigControllerTest {
   private InstanceConfigAuditUtil instanceConfigAuditUtil;
   @Mock
   private HttpServletRequest someRequest;
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private ReleasePropagationTracker releasePropagationTracker;
   private Gson gson = new Gson();
 
   @Before
   public void setUp() throws Exception {
     configController = spy(new ConfigController(
-        configService, appNamespaceService, namespaceUtil, instanceConfigAuditUtil, gson
-    ));
+        configService, appNamespaceService, namespaceUtil, instanceConfigAuditUtil, bizConfig, releasePropagationTracker,
+        gson));
 
     someAppId = "1";
     someClusterName = "someClusterName";
@@ -80,7 +94,11 @@ public class ConfigControllerTest {
 
     when(someRelease.getAppId()).thenReturn(someAppId);
     when(someRelease.getClusterName()).thenReturn(someClusterName);
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
     when(someRelease.getConfigurations()).thenReturn(someValidConfiguration);
+    when(somePublicRelease.getAppId()).thenReturn("somePublicAppId");
+    when(somePublicRelease.getClusterName()).thenReturn(defaultClusterName);
+    when(somePublicRelease.getNamespaceName()).thenReturn(somePublicNamespaceName);
     when(somePublicRelease.getConfigurations()).thenReturn(somePublicConfiguration);
     when(namespaceUtil.filterNamespaceName(defaultNamespaceName)).thenReturn(defaultNamespaceName);
     when(namespaceUtil.filterNamespaceName(somePublicNamespaceName)).thenReturn(somePublicNamespaceName);
@@ -89,6 +107,8 @@ public class ConfigControllerTest {
 
     someMessagesAsString = "someValidJson";
     when(configController.transformMessages(someMessagesAsString)).thenReturn(someNotificationMessages);
+    when(configService.findReleaseSnapshot(any(Release.class)))
+        .thenAnswer(invocation -> new ReleaseSnapshot(invocation.getArgument(0)));
   }
 
   @Test
@@ -116,6 +136,160 @@ public class ConfigControllerTest {
         someClientIp, someAppId, someClusterName, defaultNamespaceName, someServerSideNewReleaseKey);
   }
 
+  @Test
+  public void testQueryConfigTracksClientFetched() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    long someMessageId = 1;
+    long anotherNamespaceMessageId = 3;
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+    ApolloNotificationMessages notificationMessages = new ApolloNotificationMessages();
+    notificationMessages.put(ReleaseMessageKeyGenerator.generate(someAppId, someClusterName, defaultNamespaceName),
+        someMessageId);
+    //the latest message is of another namespace, which is not fetched
+    notificationMessages.put(ReleaseMessageKeyGenerator.generate(someAppId, someClusterName, "anotherNamespace"),
+        anotherNamespaceMessageId);
+
+    when(configController.transformMessages(someMessagesAsString)).thenReturn(notificationMessages);
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, notificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+
+    configController.queryConfig(someAppId, someClusterName, defaultNamespaceName, someDataCenter,
+        someClientSideReleaseKey, someClientIp, someMessagesAsString, someRequest, someResponse);
+
+    verify(releasePropagationTracker, times(1)).onClientFetched(someMessageId);
+    verify(releasePropagationTracker, never()).onClientFetched(anotherNamespaceMessageId);
+  }
+
+  @Test
+  public void testQueryConfigWithDelta() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+    Release someBaseRelease = mock(Release.class);
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+    when(someRelease.getConfigurations()).thenReturn("{\"k1\":\"v1\",\"k2\":\"v2-new\",\"k3\":\"v3\"}");
+    ReleaseSnapshot snapshot = new ReleaseSnapshot(someRelease);
+    when(someBaseRelease.getReleaseKey()).thenReturn(someClientSideReleaseKey);
+    when(someBaseRelease.getConfigurations()).thenReturn("{\"k1\":\"v1\",\"k2\":\"v2\",\"k3\":\"v3\",\"k4\":\"v4\"}");
+    ReleaseDelta delta = new ReleaseDelta(new ReleaseSnapshot(someBaseRelease), snapshot);
+    when(configService.findReleaseDelta(someClientSideReleaseKey, someRelease)).thenReturn(delta);
+    when(bizConfig.isConfigDeltaEnabled()).thenReturn(true);
+
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someMessagesAsString, true, someRequest, someResponse);
+
+    assertEquals(someServerSideNewReleaseKey, result.getReleaseKey());
+    assertEquals(someClientSideReleaseKey, result.getBaseReleaseKey());
+    assertEquals(ImmutableMap.of("k2", "v2-new"), result.getConfigurations());
+    assertEquals(Lists.newArrayList("k4"), result.getDeletedKeys());
+    assertEquals(ChecksumUtil.checksum(snapshot.getConfigurations()), result.getChecksum());
+  }
+
+  @Test
+  public void testQueryConfigWithDeltaNotSmaller() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+    Release someBaseRelease = mock(Release.class);
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+    when(someBaseRelease.getConfigurations()).thenReturn("{\"apollo.bar\": \"bar\"}");
+    ReleaseSnapshot snapshot = new ReleaseSnapshot(someRelease);
+    ReleaseDelta delta = new ReleaseDelta(new ReleaseSnapshot(someBaseRelease), snapshot);
+    when(configService.findReleaseDelta(someClientSideReleaseKey, someRelease)).thenReturn(delta);
+    when(bizConfig.isConfigDeltaEnabled()).thenReturn(true);
+
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someMessagesAsString, true, someRequest, someResponse);
+
+    assertNull(result.getBaseReleaseKey());
+    assertEquals(snapshot.getConfigurations(), result.getConfigurations());
+  }
+
+  @Test
+  public void testQueryConfigWithDeltaFailed() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+    ReleaseSnapshot snapshot = new ReleaseSnapshot(someRelease);
+    when(configService.findReleaseDelta(someClientSideReleaseKey, someRelease))
+        .thenThrow(new RuntimeException("database is unavailable"));
+    when(bizConfig.isConfigDeltaEnabled()).thenReturn(true);
+
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someMessagesAsString, true, someRequest, someResponse);
+
+    assertEquals(someServerSideNewReleaseKey, result.getReleaseKey());
+    assertNull(result.getBaseReleaseKey());
+    assertEquals(snapshot.getConfigurations(), result.getConfigurations());
+  }
+
+  @Test
+  public void testQueryConfigsInBatch() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    String someNamespaceNotExists = "someNamespaceNotExists";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+    Map<String, String> clientSideReleaseKeys = Maps.newLinkedHashMap();
+    clientSideReleaseKeys.put(defaultNamespaceName, someClientSideReleaseKey);
+    clientSideReleaseKeys.put(someNamespaceNotExists, "");
+    String someWatchKey = "someWatchKey";
+    long someNotificationId = 1;
+    ApolloNotificationMessages someMessages = new ApolloNotificationMessages();
+    someMessages.put(someWatchKey, someNotificationId);
+
+    when(namespaceUtil.filterNamespaceName(someNamespaceNotExists)).thenReturn(someNamespaceNotExists);
+    when(namespaceUtil.normalizeNamespace(someAppId, someNamespaceNotExists)).thenReturn(someNamespaceNotExists);
+    when(configService.loadConfig(eq(someAppId), eq(someClientIp), eq(someAppId), eq(someClusterName),
+        eq(defaultNamespaceName), eq(someDataCenter),
+        argThat((ApolloNotificationMessages messages) -> messages.get(someWatchKey) == someNotificationId)))
+        .thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+
+    List<ApolloConfig> result = configController.queryConfigs(someAppId, someClusterName, someDataCenter,
+        someClientIp, gson.toJson(new ApolloConfigBatchQuery(clientSideReleaseKeys, someMessages)),
+        someRequest, someResponse);
+
+    assertEquals(1, result.size());
+    assertEquals(defaultNamespaceName, result.get(0).getNamespaceName());
+    assertEquals(someServerSideNewReleaseKey, result.get(0).getReleaseKey());
+    assertEquals("foo", result.get(0).getConfigurations().get("apollo.bar"));
+    verify(configService, times(1)).loadConfig(eq(someAppId), eq(someClientIp), eq(someAppId),
+        eq(someClusterName), eq(someNamespaceNotExists), eq(someDataCenter), any(ApolloNotificationMessages.class));
+    verify(instanceConfigAuditUtil, times(1)).audit(someAppId, someClusterName, someDataCenter,
+        someClientIp, someAppId, someClusterName, defaultNamespaceName, someServerSideNewReleaseKey);
+  }
+
+  @Test
+  public void testQueryConfigsInBatchWithInvalidNamespaces() throws Exception {
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+
+    List<ApolloConfig> result = configController.queryConfigs(someAppId, someClusterName, someDataCenter,
+        someClientIp, "someInvalidJson", someRequest, someResponse);
+
+    assertNull(result);
+    verify(someResponse, times(1)).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+  }
+
   @Test
   public void testQueryConfigFile() throws Exception {
     String someClientSideReleaseKey = "1";
@@ -200,6 +374,7 @@ public class ConfigControllerTest {
 
     assertNull(result);
     verify(someResponse, times(1)).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    verify(releasePropagationTracker, never()).onClientFetched(anyLong());
   }
 
   @Test
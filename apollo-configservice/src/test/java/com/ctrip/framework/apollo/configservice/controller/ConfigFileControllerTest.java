@@ -1,16 +1,22 @@
 package com.ctrip.framework.apollo.configservice.controller;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.configservice.cache.CaffeineConfigCacheFactory;
+import com.ctrip.framework.apollo.configservice.util.ConcurrentSetMultimap;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.util.WatchKeyInterner;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Ints;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import org.junit.Before;
@@ -18,18 +24,32 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -46,6 +66,8 @@ public class ConfigFileControllerTest {
   private NamespaceUtil namespaceUtil;
   @Mock
   private GrayReleaseRulesHolder grayReleaseRulesHolder;
+  @Mock
+  private BizConfig bizConfig;
   private ConfigFileController configFileController;
   private String someAppId;
   private String someClusterName;
@@ -56,13 +78,20 @@ public class ConfigFileControllerTest {
   private HttpServletResponse someResponse;
   @Mock
   private HttpServletRequest someRequest;
-  Multimap<String, String> watchedKeys2CacheKey;
-  Multimap<String, String> cacheKey2WatchedKeys;
+  ConcurrentSetMultimap<Integer, String> watchedKeys2CacheKey;
+  Map<String, int[]> cacheKey2WatchedKeys;
+  ConcurrentSetMultimap<String, String> unreleasedWatchedKeys2CacheKey;
+  Map<String, String[]> cacheKey2UnreleasedWatchedKeys;
+  WatchKeyInterner watchKeyInterner;
 
   @Before
   public void setUp() throws Exception {
+    when(bizConfig.configServiceCacheMaxSizeInBytes(anyString(), anyInt())).thenReturn(10 * 1024 * 1024L);
+
+    watchKeyInterner = new WatchKeyInterner();
     configFileController = new ConfigFileController(
-        configController, namespaceUtil, watchKeysUtil, grayReleaseRulesHolder
+        configController, namespaceUtil, watchKeysUtil, grayReleaseRulesHolder, new CaffeineConfigCacheFactory(), bizConfig,
+        watchKeyInterner
     );
 
     someAppId = "someAppId";
@@ -77,11 +106,17 @@ public class ConfigFileControllerTest {
         .thenReturn(false);
 
     watchedKeys2CacheKey =
-        (Multimap<String, String>) ReflectionTestUtils
+        (ConcurrentSetMultimap<Integer, String>) ReflectionTestUtils
             .getField(configFileController, "watchedKeys2CacheKey");
     cacheKey2WatchedKeys =
-        (Multimap<String, String>) ReflectionTestUtils
+        (Map<String, int[]>) ReflectionTestUtils
             .getField(configFileController, "cacheKey2WatchedKeys");
+    unreleasedWatchedKeys2CacheKey =
+        (ConcurrentSetMultimap<String, String>) ReflectionTestUtils
+            .getField(configFileController, "unreleasedWatchedKeys2CacheKey");
+    cacheKey2UnreleasedWatchedKeys =
+        (Map<String, String[]>) ReflectionTestUtils
+            .getField(configFileController, "cacheKey2UnreleasedWatchedKeys");
   }
 
   @Test
@@ -110,17 +145,23 @@ public class ConfigFileControllerTest {
         .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
         .thenReturn(watchKeys);
 
+    //only some watch key has release messages
+    int someWatchKeyId = watchKeyInterner.intern(someWatchKey);
+
     ResponseEntity<String> response =
         configFileController
             .queryConfigAsProperties(someAppId, someClusterName, someNamespace, someDataCenter,
                 someClientIp, someRequest, someResponse);
 
-    assertEquals(2, watchedKeys2CacheKey.size());
-    assertEquals(2, cacheKey2WatchedKeys.size());
-    assertTrue(watchedKeys2CacheKey.containsEntry(someWatchKey, cacheKey));
-    assertTrue(watchedKeys2CacheKey.containsEntry(anotherWatchKey, cacheKey));
-    assertTrue(cacheKey2WatchedKeys.containsEntry(cacheKey, someWatchKey));
-    assertTrue(cacheKey2WatchedKeys.containsEntry(cacheKey, anotherWatchKey));
+    assertEquals(1, watchedKeys2CacheKey.size());
+    assertEquals(1, cacheKey2WatchedKeys.size());
+    assertTrue(watchedKeys2CacheKey.get(someWatchKeyId).contains(cacheKey));
+    assertTrue(Ints.contains(cacheKey2WatchedKeys.get(cacheKey), someWatchKeyId));
+    assertEquals(1, unreleasedWatchedKeys2CacheKey.size());
+    assertTrue(unreleasedWatchedKeys2CacheKey.get(anotherWatchKey).contains(cacheKey));
+    assertArrayEquals(new String[]{anotherWatchKey}, cacheKey2UnreleasedWatchedKeys.get(cacheKey));
+    //the watch keys from the clients are not interned
+    assertEquals(WatchKeyInterner.NOT_FOUND, watchKeyInterner.find(anotherWatchKey));
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
     assertTrue(response.getBody().contains(String.format("%s=%s", someKey, someValue)));
@@ -168,6 +209,103 @@ public class ConfigFileControllerTest {
     assertEquals(configurations, gson.fromJson(response.getBody(), responseType));
   }
 
+  @Test
+  public void testQueryConfigAsJsonWithGzip() throws Exception {
+    String someKey = "someKey";
+    String someValue = Strings.repeat("someValue", 1000);
+    Gson gson = new Gson();
+    Type responseType = new TypeToken<Map<String, String>>(){}.getType();
+
+    MockHttpServletRequest someGzipRequest = new MockHttpServletRequest();
+    someGzipRequest.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+    MockHttpServletResponse someGzipResponse = new MockHttpServletResponse();
+
+    Map<String, String> configurations = ImmutableMap.of(someKey, someValue);
+    ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(configController
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
+            someGzipRequest, someGzipResponse)).thenReturn(someApolloConfig);
+    when(someApolloConfig.getConfigurations()).thenReturn(configurations);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
+        .thenReturn(Sets.newHashSet("someWatchKey"));
+
+    ResponseEntity<String> response =
+        configFileController
+            .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someGzipRequest, someGzipResponse);
+
+    //the precompressed content is written to the response directly
+    assertNull(response);
+    assertEquals("gzip", someGzipResponse.getHeader(HttpHeaders.CONTENT_ENCODING));
+    assertEquals(HttpHeaders.ACCEPT_ENCODING, someGzipResponse.getHeader(HttpHeaders.VARY));
+    byte[] compressed = someGzipResponse.getContentAsByteArray();
+    assertTrue(compressed.length < someValue.length());
+    String content = new String(ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))),
+        StandardCharsets.UTF_8);
+    assertEquals(configurations, gson.fromJson(content, responseType));
+
+    //clients not accepting gzip are served with the same cached content
+    ResponseEntity<String> anotherResponse =
+        configFileController
+            .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someRequest, someResponse);
+
+    assertEquals(HttpStatus.OK, anotherResponse.getStatusCode());
+    assertEquals(content, anotherResponse.getBody());
+  }
+
+  @Test
+  public void testQueryConfigWithIfNoneMatch() throws Exception {
+    String someReleaseKey = "someReleaseKey";
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
+
+    MockHttpServletRequest someConditionalRequest = new MockHttpServletRequest();
+    MockHttpServletResponse someConditionalResponse = new MockHttpServletResponse();
+
+    ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(someApolloConfig.getConfigurations()).thenReturn(configurations);
+    when(someApolloConfig.getReleaseKey()).thenReturn(someReleaseKey);
+    when(configController
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
+            someConditionalRequest, someConditionalResponse)).thenReturn(someApolloConfig);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
+        .thenReturn(Sets.newHashSet("someWatchKey"));
+
+    ResponseEntity<String> response =
+        configFileController
+            .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someConditionalRequest, someConditionalResponse);
+
+    String someETag = response.getHeaders().getETag();
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertNotNull(someETag);
+
+    //the other format has a different entity tag
+    ResponseEntity<String> propertiesResponse =
+        configFileController
+            .queryConfigAsProperties(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someConditionalRequest, someConditionalResponse);
+    assertNotEquals(someETag, propertiesResponse.getHeaders().getETag());
+
+    someConditionalRequest.addHeader(HttpHeaders.IF_NONE_MATCH, "\"anotherETag\", " + someETag);
+
+    ResponseEntity<String> anotherResponse =
+        configFileController
+            .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someConditionalRequest, someConditionalResponse);
+
+    assertEquals(HttpStatus.NOT_MODIFIED, anotherResponse.getStatusCode());
+    assertEquals(someETag, anotherResponse.getHeaders().getETag());
+    assertNull(anotherResponse.getBody());
+
+    //the cached content is served without querying config controller again
+    verify(configController, times(2))
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
+            someConditionalRequest, someConditionalResponse);
+  }
+
   @Test
   public void testQueryConfigWithGrayRelease() throws Exception {
     String someKey = "someKey";
@@ -203,8 +341,10 @@ public class ConfigFileControllerTest {
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
     assertEquals(configurations, gson.fromJson(response.getBody(), responseType));
-    assertTrue(watchedKeys2CacheKey.isEmpty());
+    assertEquals(0, watchedKeys2CacheKey.size());
     assertTrue(cacheKey2WatchedKeys.isEmpty());
+    assertEquals(0, unreleasedWatchedKeys2CacheKey.size());
+    assertTrue(cacheKey2UnreleasedWatchedKeys.isEmpty());
   }
 
   @Test
@@ -218,20 +358,100 @@ public class ConfigFileControllerTest {
     ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
     when(someReleaseMessage.getMessage()).thenReturn(someWatchKey);
 
-    Cache<String, String> cache =
-        (Cache<String, String>) ReflectionTestUtils.getField(configFileController, "localCache");
-    cache.put(someCacheKey, someValue);
-    cache.put(anotherCacheKey, someValue);
+    Cache<String, ConfigFileController.ConfigFileContent> cache =
+        (Cache<String, ConfigFileController.ConfigFileContent>) ReflectionTestUtils
+            .getField(configFileController, "localCache");
+    cache.put(someCacheKey, ConfigFileController.ConfigFileContent.uncompressed(someValue));
+    cache.put(anotherCacheKey, ConfigFileController.ConfigFileContent.uncompressed(someValue));
 
-    watchedKeys2CacheKey.putAll(someWatchKey, Lists.newArrayList(someCacheKey, anotherCacheKey));
-    watchedKeys2CacheKey.putAll(anotherWatchKey, Lists.newArrayList(someCacheKey, anotherCacheKey));
+    int someWatchKeyId = watchKeyInterner.intern(someWatchKey);
+    int anotherWatchKeyId = watchKeyInterner.intern(anotherWatchKey);
+    watchedKeys2CacheKey.put(someWatchKeyId, someCacheKey);
+    watchedKeys2CacheKey.put(someWatchKeyId, anotherCacheKey);
+    watchedKeys2CacheKey.put(anotherWatchKeyId, someCacheKey);
+    watchedKeys2CacheKey.put(anotherWatchKeyId, anotherCacheKey);
 
-    cacheKey2WatchedKeys.putAll(someCacheKey, Lists.newArrayList(someWatchKey, anotherWatchKey));
-    cacheKey2WatchedKeys.putAll(anotherCacheKey, Lists.newArrayList(someWatchKey, anotherWatchKey));
+    cacheKey2WatchedKeys.put(someCacheKey, new int[]{someWatchKeyId, anotherWatchKeyId});
+    cacheKey2WatchedKeys.put(anotherCacheKey, new int[]{someWatchKeyId, anotherWatchKeyId});
 
     configFileController.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
 
-    assertTrue(watchedKeys2CacheKey.isEmpty());
+    assertEquals(0, watchedKeys2CacheKey.size());
     assertTrue(cacheKey2WatchedKeys.isEmpty());
+    assertEquals(0, unreleasedWatchedKeys2CacheKey.size());
+    assertTrue(cacheKey2UnreleasedWatchedKeys.isEmpty());
+  }
+
+  @Test
+  public void testHandleFirstMessageOfWatchKey() throws Exception {
+    String someWatchKey = "someWatchKey";
+    String someCacheKey = "someCacheKey";
+    String someValue = "someValue";
+
+    Cache<String, ConfigFileController.ConfigFileContent> cache =
+        (Cache<String, ConfigFileController.ConfigFileContent>) ReflectionTestUtils
+            .getField(configFileController, "localCache");
+    cache.put(someCacheKey, ConfigFileController.ConfigFileContent.uncompressed(someValue));
+    unreleasedWatchedKeys2CacheKey.put(someWatchKey, someCacheKey);
+    cacheKey2UnreleasedWatchedKeys.put(someCacheKey, new String[]{someWatchKey});
+
+    //the key of the release message is interned when it's loaded
+    watchKeyInterner.intern(someWatchKey);
+    configFileController.handleMessage(new ReleaseMessage(someWatchKey), Topics.APOLLO_RELEASE_TOPIC);
+
+    assertNull(cache.getIfPresent(someCacheKey));
+    assertEquals(0, unreleasedWatchedKeys2CacheKey.size());
+    assertTrue(cacheKey2UnreleasedWatchedKeys.isEmpty());
+  }
+
+  @Test
+  public void testHandleMessageWithWarmUp() throws Exception {
+    String someWatchKey = "someWatchKey";
+    long someNotificationId = 1;
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
+    Map<String, String> anotherConfigurations = ImmutableMap.of("someKey", "anotherValue");
+    Gson gson = new Gson();
+    Type responseType = new TypeToken<Map<String, String>>(){}.getType();
+
+    when(bizConfig.isConfigFileWarmUpEnabled()).thenReturn(true);
+
+    ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(someApolloConfig.getConfigurations()).thenReturn(configurations);
+    ApolloConfig anotherApolloConfig = mock(ApolloConfig.class);
+    when(anotherApolloConfig.getConfigurations()).thenReturn(anotherConfigurations);
+    when(configController
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
+            someRequest, someResponse)).thenReturn(someApolloConfig);
+    when(configController.queryConfig(eq(someAppId), eq(someClusterName), eq(someNamespace), eq(someDataCenter),
+        any(ApolloNotificationMessages.class))).thenReturn(anotherApolloConfig);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
+        .thenReturn(Sets.newHashSet(someWatchKey));
+
+    ResponseEntity<String> response =
+        configFileController
+            .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someRequest, someResponse);
+
+    assertEquals(configurations, gson.fromJson(response.getBody(), responseType));
+
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(someNotificationId);
+    configFileController.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    ResponseEntity<String> anotherResponse =
+        configFileController
+            .queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter,
+                someClientIp, someRequest, someResponse);
+
+    //the rendered content is swapped in and the watched keys are kept
+    assertEquals(anotherConfigurations, gson.fromJson(anotherResponse.getBody(), responseType));
+    assertTrue(unreleasedWatchedKeys2CacheKey.containsKey(someWatchKey));
+    verify(configController, times(1))
+        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
+            someRequest, someResponse);
+    verify(configController, times(1)).queryConfig(eq(someAppId), eq(someClusterName), eq(someNamespace),
+        eq(someDataCenter), argThat((ApolloNotificationMessages messages) ->
+            messages.get(someWatchKey) == someNotificationId));
   }
 }
@@ -2,31 +2,45 @@ package com.ctrip.framework.apollo.configservice.controller;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.ReleasePropagationTracker;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
+import com.ctrip.framework.apollo.configservice.util.ConcurrentSetMultimap;
+import com.ctrip.framework.apollo.configservice.util.LongPollHoldTimePolicy;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.util.NotificationFanOutScheduler;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationStreamWrapper;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.utils.NotificationsCodec;
 import com.google.common.base.Joiner;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Bytes;
 import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.request.async.DeferredResult;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
@@ -34,6 +48,8 @@ import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -59,20 +75,26 @@ public class NotificationControllerV2Test {
   private WatchKeysUtil watchKeysUtil;
   @Mock
   private BizConfig bizConfig;
+  @Mock
+  private LongPollHoldTimePolicy longPollHoldTimePolicy;
+  @Mock
+  private ReleasePropagationTracker releasePropagationTracker;
 
   private Gson gson;
 
-  private Multimap<String, DeferredResultWrapper> deferredResults;
+  private ConcurrentSetMultimap<String, DeferredResultWrapper> deferredResults;
 
   @Before
   public void setUp() throws Exception {
     gson = new Gson();
-    controller = new NotificationControllerV2(
-        watchKeysUtil, releaseMessageService, entityManagerUtil, namespaceUtil, gson, bizConfig
-    );
 
     when(bizConfig.releaseMessageNotificationBatch()).thenReturn(100);
-    when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(5);
+    when(bizConfig.releaseMessageNotificationWorkers()).thenReturn(2);
+
+    controller = new NotificationControllerV2(
+        watchKeysUtil, releaseMessageService, entityManagerUtil, namespaceUtil, gson, bizConfig,
+        new NotificationFanOutScheduler(bizConfig), longPollHoldTimePolicy, releasePropagationTracker
+    );
 
     someAppId = "someAppId";
     someCluster = "someCluster";
@@ -89,7 +111,7 @@ public class NotificationControllerV2Test {
     when(namespaceUtil.normalizeNamespace(someAppId, somePublicNamespace)).thenReturn(somePublicNamespace);
 
     deferredResults =
-        (Multimap<String, DeferredResultWrapper>) ReflectionTestUtils.getField(controller, "deferredResults");
+        (ConcurrentSetMultimap<String, DeferredResultWrapper>) ReflectionTestUtils.getField(controller, "deferredResults");
   }
 
   @Test
@@ -294,6 +316,52 @@ public class NotificationControllerV2Test {
     ApolloNotificationMessages notificationMessages = response.getBody().get(0).getMessages();
     assertEquals(1, notificationMessages.getDetails().size());
     assertEquals(someId, notificationMessages.get(anotherWatchKey).longValue());
+    verify(releasePropagationTracker, times(1)).onClientNotified(someReleaseMessage);
+  }
+
+  @Test
+  public void testPollNotificationWithHandleMessageAndFetchDelayWindow() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+    int someFetchQps = 1;
+    int someMaxFetchDelay = 1500;
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(watchKeysMap);
+
+    when(bizConfig.notificationFetchQpsPerKey()).thenReturn(someFetchQps);
+    when(bizConfig.notificationMaxFetchDelayInMilli()).thenReturn(someMaxFetchDelay);
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp);
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        anotherDeferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp);
+
+    long someId = 1;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(someId);
+
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    ResponseEntity<List<ApolloConfigNotification>> response =
+        (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
+    ResponseEntity<List<ApolloConfigNotification>> anotherResponse =
+        (ResponseEntity<List<ApolloConfigNotification>>) anotherDeferredResult.getResult();
+
+    //2 subscribers with 1 qps should be spread in 2 seconds, which is bounded by the max fetch delay
+    assertEquals(someMaxFetchDelay, response.getBody().get(0).getFetchDelayWindowInMilli());
+    assertEquals(someMaxFetchDelay, anotherResponse.getBody().get(0).getFetchDelayWindowInMilli());
   }
 
   @Test
@@ -314,7 +382,7 @@ public class NotificationControllerV2Test {
             someDataCenter)).thenReturn(watchKeysMap);
 
     when(bizConfig.releaseMessageNotificationBatch()).thenReturn(someBatch);
-    when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(someBatchInterval);
+    when(bizConfig.releaseMessageNotificationRatePerSecond()).thenReturn(someBatch * 1000 / someBatchInterval);
 
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
@@ -340,6 +408,286 @@ public class NotificationControllerV2Test {
     assertTrue(deferredResult.hasResult() && anotherDeferredResult.hasResult());
   }
 
+  @Test
+  public void testStreamNotificationAndHandleMessage() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(watchKeysMap);
+    when(bizConfig.notificationStreamTimeoutInMilli()).thenReturn(60000L);
+
+    MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+    MvcResult mvcResult = mockMvc.perform(get("/notifications/stream")
+        .param("appId", someAppId)
+        .param("cluster", someCluster)
+        .param("notifications", notificationAsString)
+        .param("dataCenter", someDataCenter)
+        .param("ip", someClientIp))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    ConcurrentSetMultimap<String, NotificationStreamWrapper> notificationStreams =
+        (ConcurrentSetMultimap<String, NotificationStreamWrapper>) ReflectionTestUtils
+            .getField(controller, "notificationStreams");
+
+    assertEquals(watchKeysMap.size(), notificationStreams.size());
+    assertEquals("", mvcResult.getResponse().getContentAsString());
+
+    long someId = 10;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(someId);
+
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    List<ApolloConfigNotification> notifications = parseStreamEvent(mvcResult.getResponse().getContentAsString());
+
+    assertEquals(1, notifications.size());
+    assertEquals(defaultNamespace, notifications.get(0).getNamespaceName());
+    assertEquals(someId, notifications.get(0).getNotificationId());
+    assertEquals(someId, notifications.get(0).getMessages().get(someWatchKey).longValue());
+
+    //the stream is kept open after notified
+    assertEquals(watchKeysMap.size(), notificationStreams.size());
+  }
+
+  @Test
+  public void testStreamNotificationWithNewReleaseMessage() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+    long someId = someNotificationId + 1;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(someId);
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(watchKeysMap);
+    when(bizConfig.notificationStreamTimeoutInMilli()).thenReturn(60000L);
+    when(releaseMessageService.findLatestReleaseMessagesGroupByMessages(Sets.newHashSet(someWatchKey)))
+        .thenReturn(Lists.newArrayList(someReleaseMessage));
+
+    MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+    MvcResult mvcResult = mockMvc.perform(get("/notifications/stream")
+        .param("appId", someAppId)
+        .param("cluster", someCluster)
+        .param("notifications", notificationAsString)
+        .param("dataCenter", someDataCenter))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+
+    List<ApolloConfigNotification> notifications = parseStreamEvent(mvcResult.getResponse().getContentAsString());
+
+    assertEquals(1, notifications.size());
+    assertEquals(defaultNamespace, notifications.get(0).getNamespaceName());
+    assertEquals(someId, notifications.get(0).getNotificationId());
+    verify(entityManagerUtil, times(1)).closeEntityManager();
+  }
+
+  @Test
+  public void testPollNotificationWithBinaryNotifications() throws Exception {
+    String someWatchKey = "someKey";
+    String somePublicWatchKey = "somePublicWatchKey";
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+    watchKeysMap.putAll(assembleMultiMap(somePublicNamespace, Lists.newArrayList(somePublicWatchKey)));
+
+    byte[] someNotifications = NotificationsCodec.encode(Lists.newArrayList(
+        assembleApolloConfigNotification(defaultNamespace, someNotificationId),
+        assembleApolloConfigNotification(somePublicNamespace, someNotificationId)));
+    byte[] anotherNotifications = NotificationsCodec.encode(Lists.newArrayList(
+        assembleApolloConfigNotification(defaultNamespace, someNotificationId + 1),
+        assembleApolloConfigNotification(somePublicNamespace, someNotificationId + 1)));
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace, somePublicNamespace),
+            someDataCenter)).thenReturn(watchKeysMap);
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> someDeferredResult =
+        controller.pollNotification(someAppId, someCluster, someDataCenter, someClientIp, someNotifications);
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> anotherDeferredResult =
+        controller.pollNotification(someAppId, someCluster, someDataCenter, someClientIp, anotherNotifications);
+
+    assertWatchKeys(watchKeysMap, someDeferredResult);
+    assertWatchKeys(watchKeysMap, anotherDeferredResult);
+
+    //the namespace names are decoded only once since they are not changed
+    verify(namespaceUtil, times(1)).filterNamespaceName(defaultNamespace);
+    verify(namespaceUtil, times(1)).normalizeNamespace(someAppId, somePublicNamespace);
+  }
+
+  @Test
+  public void testPollNotificationWithBinaryNotificationsAndAppNamespacesChanged() throws Exception {
+    String someWatchKey = "someKey";
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    byte[] someNotifications = NotificationsCodec.encode(Lists.newArrayList(
+        assembleApolloConfigNotification(defaultNamespace, someNotificationId)));
+
+    when(namespaceUtil.getAppNamespacesVersion()).thenReturn(1L, 2L);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(watchKeysMap);
+
+    controller.pollNotification(someAppId, someCluster, someDataCenter, someClientIp, someNotifications);
+    controller.pollNotification(someAppId, someCluster, someDataCenter, someClientIp, someNotifications);
+
+    verify(namespaceUtil, times(2)).normalizeNamespace(someAppId, defaultNamespace);
+  }
+
+  @Test
+  public void testPollNotificationWithBinaryNotificationsOfMultipleApps() throws Exception {
+    String anotherAppId = "anotherAppId";
+    String someWatchKey = "someKey";
+    String anotherWatchKey = "anotherKey";
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+    Multimap<String, String> anotherWatchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(anotherWatchKey));
+
+    byte[] someNotifications = NotificationsCodec.encode(Lists.newArrayList(
+        assembleApolloConfigNotification(defaultNamespace, someNotificationId)));
+
+    when(namespaceUtil.normalizeNamespace(anotherAppId, defaultNamespace)).thenReturn(defaultNamespace);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(watchKeysMap);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(anotherAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(anotherWatchKeysMap);
+
+    //the apps polling with the same names block don't evict each other's decoded names
+    for (int i = 0; i < 2; i++) {
+      assertWatchKeys(watchKeysMap,
+          controller.pollNotification(someAppId, someCluster, someDataCenter, someClientIp, someNotifications));
+      assertWatchKeys(anotherWatchKeysMap,
+          controller.pollNotification(anotherAppId, someCluster, someDataCenter, someClientIp, someNotifications));
+    }
+
+    verify(namespaceUtil, times(1)).normalizeNamespace(someAppId, defaultNamespace);
+    verify(namespaceUtil, times(1)).normalizeNamespace(anotherAppId, defaultNamespace);
+  }
+
+  @Test(expected = BadRequestException.class)
+  public void testPollNotificationWithInvalidBinaryNotifications() throws Exception {
+    byte[] someNotifications = NotificationsCodec.encode(Lists.newArrayList(
+        assembleApolloConfigNotification(defaultNamespace, someNotificationId)));
+
+    controller.pollNotification(someAppId, someCluster, someDataCenter, someClientIp,
+        Arrays.copyOf(someNotifications, someNotifications.length - 1));
+  }
+
+  @Test(expected = BadRequestException.class)
+  public void testPollNotificationWithBinaryNotificationsOfMismatchedCountAndCachedNames() throws Exception {
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList("someKey"));
+
+    byte[] someNotifications = NotificationsCodec.encode(Lists.newArrayList(
+        assembleApolloConfigNotification(defaultNamespace, someNotificationId)));
+    //version, fingerprint, count and the only notification id take 1, 8, 1 and 1 bytes, so the id is repeated with
+    //the count changed to 2 and the names block kept the same
+    byte[] anotherNotifications = Bytes.concat(Arrays.copyOf(someNotifications, 9), new byte[]{2},
+        Arrays.copyOfRange(someNotifications, 10, 11),
+        Arrays.copyOfRange(someNotifications, 10, someNotifications.length));
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(watchKeysMap);
+
+    //the names are decoded and cached
+    controller.pollNotification(someAppId, someCluster, someDataCenter, someClientIp, someNotifications);
+
+    //the same names block with 2 notification ids
+    controller.pollNotification(someAppId, someCluster, someDataCenter, someClientIp, anotherNotifications);
+  }
+
+  @Test
+  public void testPollNotificationWithAdaptiveHoldTime() throws Exception {
+    long someHoldTime = 12345;
+    String someWatchKey = "someKey";
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    when(longPollHoldTimePolicy.holdTimeInMilli(0)).thenReturn(someHoldTime);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(watchKeysMap);
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> deferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter, someClientIp);
+
+    assertEquals(someHoldTime, ReflectionTestUtils.getField(deferredResult, "timeout"));
+  }
+
+  @Test
+  public void testDrainHeldPolls() throws Exception {
+    String someWatchKey = "someKey";
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    when(bizConfig.longPollingDrainWindowInMilli()).thenReturn(0L);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(watchKeysMap);
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> someDeferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter, someClientIp);
+
+    assertFalse(someDeferredResult.hasResult());
+
+    controller.destroy();
+
+    ResponseEntity<List<ApolloConfigNotification>> someResponse =
+        (ResponseEntity<List<ApolloConfigNotification>>) someDeferredResult.getResult();
+    assertEquals(HttpStatus.NOT_MODIFIED, someResponse.getStatusCode());
+    assertEquals("0", someResponse.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+    //the polls after draining are released at once
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> anotherDeferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter, someClientIp);
+
+    ResponseEntity<List<ApolloConfigNotification>> anotherResponse =
+        (ResponseEntity<List<ApolloConfigNotification>>) anotherDeferredResult.getResult();
+    assertEquals(HttpStatus.NOT_MODIFIED, anotherResponse.getStatusCode());
+    assertEquals("0", anotherResponse.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    verify(watchKeysUtil, times(1)).assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+        someDataCenter);
+  }
+
+  private List<ApolloConfigNotification> parseStreamEvent(String content) {
+    String dataPrefix = "data:";
+    assertTrue(content.startsWith("event:" + NotificationStreamWrapper.NOTIFICATIONS_EVENT));
+    String data = content.substring(content.indexOf(dataPrefix) + dataPrefix.length()).trim();
+    return gson.fromJson(data, new TypeToken<List<ApolloConfigNotification>>() {
+    }.getType());
+  }
+
   private String transformApolloConfigNotificationsToString(
       String namespace, long notificationId) {
     List<ApolloConfigNotification> notifications =
@@ -0,0 +1,67 @@
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.InMemoryReleasePropagationStore;
+import com.ctrip.framework.apollo.biz.message.ReleasePropagationTracker;
+import com.ctrip.framework.apollo.common.dto.ReleasePropagationDTO;
+import com.ctrip.framework.apollo.common.dto.ReleasePropagationStageDTO;
+import com.ctrip.framework.apollo.common.exception.NotFoundException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReleasePropagationControllerTest {
+  private ReleasePropagationController releasePropagationController;
+  private ReleasePropagationTracker releasePropagationTracker;
+
+  @Before
+  public void setUp() throws Exception {
+    releasePropagationTracker = new ReleasePropagationTracker(new InMemoryReleasePropagationStore());
+    releasePropagationController = new ReleasePropagationController(releasePropagationTracker);
+  }
+
+  @Test
+  public void testGetPropagation() throws Exception {
+    long someMessageId = 1;
+    String someMessage = "someAppId+someCluster+someNamespace";
+    long someSentTime = System.currentTimeMillis() - 2000;
+    int someClients = 10;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someMessage);
+    someReleaseMessage.setId(someMessageId);
+    someReleaseMessage.setDataChangeLastModifiedTime(new Date(someSentTime));
+
+    releasePropagationTracker.onMessageScanned(someReleaseMessage);
+    for (int i = 0; i < someClients; i++) {
+      releasePropagationTracker.onClientNotified(someReleaseMessage);
+      releasePropagationTracker.onClientFetched(someMessageId);
+    }
+
+    ReleasePropagationDTO propagation = releasePropagationController.getPropagation(someMessageId);
+
+    assertEquals(someMessageId, propagation.getMessageId());
+    assertEquals(someMessage, propagation.getMessage());
+    assertEquals(someSentTime, propagation.getSentTime().getTime());
+    assertNull(propagation.getReleaseId());
+    assertEquals(3, propagation.getStages().size());
+    assertEquals("message_scanned", propagation.getStages().get(0).getStage());
+    assertEquals(1, propagation.getStages().get(0).getCount());
+    assertEquals("client_notified", propagation.getStages().get(1).getStage());
+    ReleasePropagationStageDTO clientFetched = propagation.getStages().get(2);
+    assertEquals("client_fetched", clientFetched.getStage());
+    assertEquals(someClients, clientFetched.getCount());
+    assertTrue(clientFetched.getP50() >= 2000);
+    assertTrue(clientFetched.getP50() <= clientFetched.getP90());
+    assertTrue(clientFetched.getP90() <= clientFetched.getP99());
+    assertTrue(clientFetched.getP99() <= clientFetched.getMax());
+  }
+
+  @Test(expected = NotFoundException.class)
+  public void testGetPropagationNotTracked() throws Exception {
+    releasePropagationController.getPropagation(1);
+  }
+}
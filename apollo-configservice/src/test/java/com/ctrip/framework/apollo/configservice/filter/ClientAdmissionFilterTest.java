@@ -0,0 +1,173 @@
+package com.ctrip.framework.apollo.configservice.filter;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ClientAdmissionFilterTest {
+  private ClientAdmissionFilter clientAdmissionFilter;
+
+  @Mock
+  private BizConfig bizConfig;
+
+  private String someClientIp;
+  private String anotherClientIp;
+  private String someProxyIp;
+  private int someRetryAfter;
+
+  @Before
+  public void setUp() throws Exception {
+    clientAdmissionFilter = new ClientAdmissionFilter(bizConfig);
+
+    someClientIp = "1.1.1.1";
+    anotherClientIp = "2.2.2.2";
+    someProxyIp = "3.3.3.3";
+    someRetryAfter = 2;
+  }
+
+  @Test
+  public void testDoFilterWithAdmissionDisabled() throws Exception {
+    when(bizConfig.isConfigServiceAdmissionEnabled()).thenReturn(false);
+
+    for (int i = 0; i < 10; i++) {
+      MockHttpServletResponse response = doFilter("/configs/someAppId/default/application", someClientIp);
+
+      assertEquals(HttpStatus.OK.value(), response.getStatus());
+    }
+  }
+
+  @Test
+  public void testDoFilterWithTooManyRequests() throws Exception {
+    when(bizConfig.isConfigServiceAdmissionEnabled()).thenReturn(true);
+    when(bizConfig.configServiceAdmissionConfigQpsPerClient()).thenReturn(1);
+    when(bizConfig.configServiceAdmissionRetryAfterInSecond()).thenReturn(someRetryAfter);
+
+    MockHttpServletResponse response = doFilter("/configs/someAppId/default/application", someClientIp);
+    MockHttpServletResponse rejectedResponse = doFilter("/configs/someAppId/default/application", someClientIp);
+    MockHttpServletResponse anotherClientResponse = doFilter("/configs/someAppId/default/application",
+        anotherClientIp);
+
+    assertEquals(HttpStatus.OK.value(), response.getStatus());
+    assertNull(response.getHeader(HttpHeaders.RETRY_AFTER));
+
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), rejectedResponse.getStatus());
+    String retryAfter = rejectedResponse.getHeader(HttpHeaders.RETRY_AFTER);
+    assertNotNull(retryAfter);
+    assertTrue(Integer.parseInt(retryAfter) >= someRetryAfter && Integer.parseInt(retryAfter) <= someRetryAfter * 2);
+
+    assertEquals(HttpStatus.OK.value(), anotherClientResponse.getStatus());
+  }
+
+  @Test
+  public void testDoFilterWithSeparateNotificationBucket() throws Exception {
+    when(bizConfig.isConfigServiceAdmissionEnabled()).thenReturn(true);
+    when(bizConfig.configServiceAdmissionConfigQpsPerClient()).thenReturn(1);
+    when(bizConfig.configServiceAdmissionNotificationQpsPerClient()).thenReturn(1);
+
+    MockHttpServletResponse response = doFilter("/configs/someAppId/default/application", someClientIp);
+    MockHttpServletResponse notificationResponse = doFilter("/notifications/v2", someClientIp);
+
+    assertEquals(HttpStatus.OK.value(), response.getStatus());
+    assertEquals(HttpStatus.OK.value(), notificationResponse.getStatus());
+  }
+
+  @Test
+  public void testDoFilterWithSeparateAppBuckets() throws Exception {
+    when(bizConfig.isConfigServiceAdmissionEnabled()).thenReturn(true);
+    when(bizConfig.configServiceAdmissionConfigQpsPerClient()).thenReturn(1);
+
+    MockHttpServletResponse response = doFilter("/configs/someAppId/default/application", someClientIp);
+    MockHttpServletResponse anotherAppResponse = doFilter("/configfiles/json/anotherAppId/default/application",
+        someClientIp);
+    MockHttpServletRequest batchRequest = new MockHttpServletRequest("GET", "/configs/batch");
+    batchRequest.setParameter("appId", "yetAnotherAppId");
+    batchRequest.setRemoteAddr(someClientIp);
+    MockHttpServletResponse batchResponse = doFilter(batchRequest);
+
+    assertEquals(HttpStatus.OK.value(), response.getStatus());
+    assertEquals(HttpStatus.OK.value(), anotherAppResponse.getStatus());
+    assertEquals(HttpStatus.OK.value(), batchResponse.getStatus());
+  }
+
+  @Test
+  public void testDoFilterIgnoresReportedIp() throws Exception {
+    when(bizConfig.isConfigServiceAdmissionEnabled()).thenReturn(true);
+    when(bizConfig.configServiceAdmissionConfigQpsPerClient()).thenReturn(1);
+    when(bizConfig.configServiceAdmissionRetryAfterInSecond()).thenReturn(someRetryAfter);
+
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/configs/someAppId/default/application");
+    request.setParameter("ip", someClientIp);
+    request.setRemoteAddr(someClientIp);
+    MockHttpServletRequest anotherRequest = new MockHttpServletRequest("GET",
+        "/configs/someAppId/default/application");
+    anotherRequest.setParameter("ip", anotherClientIp);
+    anotherRequest.setRemoteAddr(someClientIp);
+
+    assertEquals(HttpStatus.OK.value(), doFilter(request).getStatus());
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), doFilter(anotherRequest).getStatus());
+  }
+
+  @Test
+  public void testDoFilterWithTrustedProxy() throws Exception {
+    when(bizConfig.isConfigServiceAdmissionEnabled()).thenReturn(true);
+    when(bizConfig.configServiceAdmissionConfigQpsPerClient()).thenReturn(1);
+    when(bizConfig.configServiceAdmissionTrustedProxies()).thenReturn(Lists.newArrayList(someProxyIp));
+
+    MockHttpServletResponse response = doFilter(assembleForwardedRequest(someProxyIp, someClientIp));
+    MockHttpServletResponse anotherClientResponse = doFilter(assembleForwardedRequest(someProxyIp,
+        anotherClientIp + ", " + someProxyIp));
+
+    assertEquals(HttpStatus.OK.value(), response.getStatus());
+    assertEquals(HttpStatus.OK.value(), anotherClientResponse.getStatus());
+  }
+
+  @Test
+  public void testDoFilterWithUntrustedProxy() throws Exception {
+    when(bizConfig.isConfigServiceAdmissionEnabled()).thenReturn(true);
+    when(bizConfig.configServiceAdmissionConfigQpsPerClient()).thenReturn(1);
+    when(bizConfig.configServiceAdmissionRetryAfterInSecond()).thenReturn(someRetryAfter);
+
+    MockHttpServletResponse response = doFilter(assembleForwardedRequest(someProxyIp, someClientIp));
+    MockHttpServletResponse spoofedResponse = doFilter(assembleForwardedRequest(someProxyIp, anotherClientIp));
+
+    assertEquals(HttpStatus.OK.value(), response.getStatus());
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), spoofedResponse.getStatus());
+  }
+
+  private MockHttpServletRequest assembleForwardedRequest(String remoteAddr, String forwardedFor) {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", "/configs/someAppId/default/application");
+    request.setRemoteAddr(remoteAddr);
+    request.addHeader("X-Forwarded-For", forwardedFor);
+    return request;
+  }
+
+  private MockHttpServletResponse doFilter(String uri, String clientIp) throws Exception {
+    MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+    request.setRemoteAddr(clientIp);
+    return doFilter(request);
+  }
+
+  private MockHttpServletResponse doFilter(MockHttpServletRequest request) throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    clientAdmissionFilter.doFilter(request, response, new MockFilterChain());
+
+    return response;
+  }
+}
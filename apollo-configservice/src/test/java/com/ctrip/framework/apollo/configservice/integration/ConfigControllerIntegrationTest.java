@@ -2,9 +2,12 @@ package com.ctrip.framework.apollo.configservice.integration;
 
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
 import com.google.common.base.Joiner;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
 
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigBatchQuery;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -15,6 +18,7 @@ import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.client.HttpStatusCodeException;
 
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -189,6 +193,31 @@ public class ConfigControllerIntegrationTest extends AbstractBaseIntegrationTest
     assertEquals(HttpStatus.NOT_FOUND, httpException.getStatusCode());
   }
 
+  @Test
+  @Sql(scripts = "/integration-test/test-release.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
+  @Sql(scripts = "/integration-test/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
+  public void testQueryConfigsInBatch() throws Exception {
+    String someNamespaceNotExists = "someNamespaceNotExists";
+    Map<String, String> clientSideReleaseKeys = Maps.newLinkedHashMap();
+    clientSideReleaseKeys.put(ConfigConsts.NAMESPACE_APPLICATION, "");
+    clientSideReleaseKeys.put(someNamespace, "TEST-RELEASE-KEY2");
+    clientSideReleaseKeys.put(someNamespaceNotExists, "");
+
+    ResponseEntity<ApolloConfig[]> response = restTemplate
+        .postForEntity("http://{baseurl}/configs/batch?appId={appId}&cluster={clusterName}",
+            new Gson().toJson(new ApolloConfigBatchQuery(clientSideReleaseKeys, null)), ApolloConfig[].class,
+            getHostUrl(), someAppId, someCluster);
+    ApolloConfig[] result = response.getBody();
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    //someNamespace is not modified and someNamespaceNotExists is not found
+    assertEquals(1, result.length);
+    assertEquals(ConfigConsts.NAMESPACE_APPLICATION, result[0].getNamespaceName());
+    assertEquals(ConfigConsts.CLUSTER_NAME_DEFAULT, result[0].getCluster());
+    assertEquals("TEST-RELEASE-KEY1", result[0].getReleaseKey());
+    assertEquals("v1", result[0].getConfigurations().get("k1"));
+  }
+
   @Test
   @Sql(scripts = "/integration-test/test-release.sql", executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD)
   @Sql(scripts = "/integration-test/cleanup.sql", executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD)
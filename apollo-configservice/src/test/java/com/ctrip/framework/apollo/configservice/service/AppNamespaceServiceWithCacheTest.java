@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.configservice.service;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.repository.AppNamespaceRepository;
+import com.ctrip.framework.apollo.biz.snapshot.CacheSnapshotStore;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -34,6 +35,9 @@ public class AppNamespaceServiceWithCacheTest {
   @Mock
   private BizConfig bizConfig;
 
+  @Mock
+  private CacheSnapshotStore cacheSnapshotStore;
+
   private int scanInterval;
   private TimeUnit scanIntervalTimeUnit;
   private Comparator<AppNamespace> appNamespaceComparator = (o1, o2) -> (int) (o1.getId() -
@@ -41,7 +45,7 @@ public class AppNamespaceServiceWithCacheTest {
 
   @Before
   public void setUp() throws Exception {
-    appNamespaceServiceWithCache = new AppNamespaceServiceWithCache(appNamespaceRepository, bizConfig);
+    appNamespaceServiceWithCache = new AppNamespaceServiceWithCache(appNamespaceRepository, bizConfig, cacheSnapshotStore);
 
     scanInterval = 50;
     scanIntervalTimeUnit = TimeUnit.MILLISECONDS;
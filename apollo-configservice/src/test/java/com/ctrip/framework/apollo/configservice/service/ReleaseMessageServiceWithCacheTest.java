@@ -4,10 +4,14 @@ import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
+import com.ctrip.framework.apollo.biz.snapshot.CacheSnapshotStore;
+import com.ctrip.framework.apollo.configservice.util.WatchKeyInterner;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -36,6 +40,12 @@ public class ReleaseMessageServiceWithCacheTest {
   @Mock
   private BizConfig bizConfig;
 
+  @Mock
+  private CacheSnapshotStore cacheSnapshotStore;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   private int scanInterval;
 
   private TimeUnit scanIntervalTimeUnit;
@@ -44,7 +54,7 @@ public class ReleaseMessageServiceWithCacheTest {
 
   public void setUp() throws Exception {
     releaseMessageServiceWithCache = new ReleaseMessageServiceWithCache(
-        releaseMessageRepository, bizConfig
+        releaseMessageRepository, bizConfig, cacheSnapshotStore, new WatchKeyInterner()
     );
 
     scanInterval = 10;
@@ -162,7 +172,8 @@ public class ReleaseMessageServiceWithCacheTest {
 
     assertEquals(someMessageId, latestReleaseMsg.getId());
     assertEquals(someMessageContent, latestReleaseMsg.getMessage());
-    assertEquals(latestReleaseMsg, latestReleaseMsgGroupByMsgContent.get(0));
+    assertEquals(latestReleaseMsg.getId(), latestReleaseMsgGroupByMsgContent.get(0).getId());
+    assertEquals(latestReleaseMsg.getMessage(), latestReleaseMsgGroupByMsgContent.get(0).getMessage());
 
     long newMessageId = 2;
     ReleaseMessage newMessage = assembleReleaseMsg(newMessageId, someMessageContent);
@@ -182,7 +193,8 @@ public class ReleaseMessageServiceWithCacheTest {
 
     assertEquals(newMessageId, newLatestReleaseMsg.getId());
     assertEquals(someMessageContent, newLatestReleaseMsg.getMessage());
-    assertEquals(newLatestReleaseMsg, newLatestReleaseMsgGroupByMsgContent.get(0));
+    assertEquals(newLatestReleaseMsg.getId(), newLatestReleaseMsgGroupByMsgContent.get(0).getId());
+    assertEquals(newLatestReleaseMsg.getMessage(), newLatestReleaseMsgGroupByMsgContent.get(0).getMessage());
   }
 
   @Test
@@ -206,7 +218,8 @@ public class ReleaseMessageServiceWithCacheTest {
 
     assertEquals(someMessageId, latestReleaseMsg.getId());
     assertEquals(someMessageContent, latestReleaseMsg.getMessage());
-    assertEquals(latestReleaseMsg, latestReleaseMsgGroupByMsgContent.get(0));
+    assertEquals(latestReleaseMsg.getId(), latestReleaseMsgGroupByMsgContent.get(0).getId());
+    assertEquals(latestReleaseMsg.getMessage(), latestReleaseMsgGroupByMsgContent.get(0).getMessage());
 
     long newMessageId = 2;
     ReleaseMessage newMessage = assembleReleaseMsg(newMessageId, someMessageContent);
@@ -223,7 +236,47 @@ public class ReleaseMessageServiceWithCacheTest {
 
     assertEquals(newMessageId, newLatestReleaseMsg.getId());
     assertEquals(someMessageContent, newLatestReleaseMsg.getMessage());
-    assertEquals(newLatestReleaseMsg, newLatestReleaseMsgGroupByMsgContent.get(0));
+    assertEquals(newLatestReleaseMsg.getId(), newLatestReleaseMsgGroupByMsgContent.get(0).getId());
+    assertEquals(newLatestReleaseMsg.getMessage(), newLatestReleaseMsgGroupByMsgContent.get(0).getMessage());
+  }
+
+  @Test
+  public void testRestoreFromSnapshot() throws Exception {
+    String someMessageContent = "someMessage";
+    String anotherMessageContent = "anotherMessage";
+    ReleaseMessage someMessage = assembleReleaseMsg(1, someMessageContent);
+    ReleaseMessage anotherMessage = assembleReleaseMsg(2, anotherMessageContent);
+    ReleaseMessage newMessage = assembleReleaseMsg(3, someMessageContent);
+
+    when(bizConfig.isCacheSnapshotEnabled()).thenReturn(true);
+    when(bizConfig.cacheSnapshotPath()).thenReturn(temporaryFolder.getRoot().getAbsolutePath());
+    when(bizConfig.cacheSnapshotIntervalInSecond()).thenReturn(60);
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Lists.newArrayList(someMessage, anotherMessage));
+
+    CacheSnapshotStore someCacheSnapshotStore = new CacheSnapshotStore(bizConfig);
+    ReleaseMessageServiceWithCache someReleaseMessageServiceWithCache = new ReleaseMessageServiceWithCache(
+        releaseMessageRepository, bizConfig, someCacheSnapshotStore, new WatchKeyInterner());
+    someReleaseMessageServiceWithCache.afterPropertiesSet();
+    //save snapshot on shutdown
+    someCacheSnapshotStore.destroy();
+
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(2L))
+        .thenReturn(Lists.newArrayList(newMessage));
+
+    CacheSnapshotStore anotherCacheSnapshotStore = new CacheSnapshotStore(bizConfig);
+    ReleaseMessageServiceWithCache anotherReleaseMessageServiceWithCache = new ReleaseMessageServiceWithCache(
+        releaseMessageRepository, bizConfig, anotherCacheSnapshotStore, new WatchKeyInterner());
+    anotherReleaseMessageServiceWithCache.afterPropertiesSet();
+    anotherCacheSnapshotStore.destroy();
+
+    assertEquals(newMessage.getId(), anotherReleaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(someMessageContent)).getId());
+    assertEquals(anotherMessage.getId(), anotherReleaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(anotherMessageContent)).getId());
+
+    //only the new messages are loaded from database
+    verify(releaseMessageRepository, times(1)).findFirst500ByIdGreaterThanOrderByIdAsc(0L);
   }
 
   private ReleaseMessage assembleReleaseMsg(long id, String msgContent) {
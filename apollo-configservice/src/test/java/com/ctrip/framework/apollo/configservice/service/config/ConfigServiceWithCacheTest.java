@@ -1,15 +1,23 @@
 package com.ctrip.framework.apollo.configservice.service.config;
 
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.service.ReleaseMessageService;
 import com.ctrip.framework.apollo.biz.service.ReleaseService;
+import com.ctrip.framework.apollo.biz.snapshot.CacheSnapshotStore;
 import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
+import com.ctrip.framework.apollo.configservice.cache.CaffeineConfigCacheFactory;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.common.exception.TooManyRequestsException;
 
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -17,9 +25,20 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -39,6 +58,12 @@ public class ConfigServiceWithCacheTest {
   private Release someRelease;
   @Mock
   private ReleaseMessage someReleaseMessage;
+  @Mock
+  private GrayReleaseRulesHolder grayReleaseRulesHolder;
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private CacheSnapshotStore cacheSnapshotStore;
 
   private String someAppId;
   private String someClusterName;
@@ -52,6 +77,12 @@ public class ConfigServiceWithCacheTest {
     configServiceWithCache = new ConfigServiceWithCache();
     ReflectionTestUtils.setField(configServiceWithCache, "releaseService", releaseService);
     ReflectionTestUtils.setField(configServiceWithCache, "releaseMessageService", releaseMessageService);
+    ReflectionTestUtils.setField(configServiceWithCache, "grayReleaseRulesHolder", grayReleaseRulesHolder);
+    ReflectionTestUtils.setField(configServiceWithCache, "bizConfig", bizConfig);
+    ReflectionTestUtils.setField(configServiceWithCache, "cacheSnapshotStore", cacheSnapshotStore);
+    ReflectionTestUtils.setField(configServiceWithCache, "configCacheFactory", new CaffeineConfigCacheFactory());
+
+    when(bizConfig.configServiceCacheMaxSizeInBytes(anyString(), anyInt())).thenReturn(10 * 1024 * 1024L);
 
     configServiceWithCache.initialize();
 
@@ -276,4 +307,335 @@ public class ConfigServiceWithCacheTest {
     verify(releaseMessageService, times(1)).findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
     verify(releaseService, times(1)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
   }
+
+  @Test
+  public void testFindLatestActiveReleaseWithDatabaseUnavailable() throws Exception {
+    Release anotherRelease = mock(Release.class);
+    long someNewNotificationId = someNotificationId + 1;
+
+    enableStaleIfError(1, 0);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (someReleaseMessage);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(someRelease)
+        .thenThrow(new RuntimeException("database unavailable"))
+        .thenReturn(anotherRelease);
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages);
+
+    someNotificationMessages.put(someKey, someNewNotificationId);
+
+    Release staleRelease = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages);
+    Release newRelease = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages);
+
+    assertSame(someRelease, release);
+    assertSame(someRelease, staleRelease);
+    assertSame(anotherRelease, newRelease);
+    verify(releaseService, times(3)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+  }
+
+  @Test
+  public void testFindLatestActiveReleaseWithCircuitBreakerOpen() throws Exception {
+    long someNewNotificationId = someNotificationId + 1;
+
+    enableStaleIfError(1, 60000);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (someReleaseMessage);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(someRelease)
+        .thenThrow(new RuntimeException("database unavailable"));
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages);
+
+    someNotificationMessages.put(someKey, someNewNotificationId);
+
+    Release staleRelease = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages);
+    Release anotherStaleRelease = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages);
+
+    assertSame(someRelease, release);
+    assertSame(someRelease, staleRelease);
+    assertSame(someRelease, anotherStaleRelease);
+    //the database is not queried once the circuit breaker is open
+    verify(releaseService, times(2)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+  }
+
+  @Test
+  public void testFindLatestActiveReleaseWithCircuitBreakerOpenAndNoLastKnownRelease() throws Exception {
+    enableStaleIfError(1, 60000);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenThrow(new RuntimeException("database unavailable"));
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+            someNotificationMessages);
+        fail("Should throw exception when database is unavailable");
+      } catch (UncheckedExecutionException ex) {
+        //expected
+      }
+    }
+
+    verify(releaseMessageService, times(1)).findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
+  }
+
+  @Test
+  public void testFindLatestActiveReleaseWithTooManyDatabaseLoads() throws Exception {
+    when(bizConfig.isConfigServiceAdmissionEnabled()).thenReturn(true);
+    when(bizConfig.configServiceAdmissionMaxConcurrentDatabaseLoads()).thenReturn(1);
+    when(bizConfig.configServiceAdmissionRetryAfterInSecond()).thenReturn(1);
+
+    //simulate another load in progress
+    ((AtomicInteger) ReflectionTestUtils.getField(configServiceWithCache, "concurrentDatabaseLoads")).set(1);
+
+    try {
+      configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+          someNotificationMessages);
+      fail("Should reject the database load");
+    } catch (TooManyRequestsException ex) {
+      assertTrue(ex.getRetryAfterInSecond() >= 1);
+    }
+
+    ((AtomicInteger) ReflectionTestUtils.getField(configServiceWithCache, "concurrentDatabaseLoads")).set(0);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (someReleaseMessage);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(someRelease);
+
+    assertSame(someRelease, configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages));
+    verify(releaseService, times(1)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+  }
+
+  @Test
+  public void testLoadConfigWithEffectiveRelease() throws Exception {
+    String someClientAppId = "someClientAppId";
+    String someClientIp = "someClientIp";
+    String someDataCenter = "someDataCenter";
+    long someNewNotificationId = someNotificationId + 1;
+    ReleaseMessage anotherReleaseMessage = mock(ReleaseMessage.class);
+    Release anotherRelease = mock(Release.class);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn
+        (someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    Release release = configServiceWithCache.loadConfig(someClientAppId, someClientIp, someAppId, someClusterName,
+        someNamespaceName, someDataCenter, someNotificationMessages);
+    Release cachedRelease = configServiceWithCache.loadConfig(someClientAppId, someClientIp, someAppId,
+        someClusterName, someNamespaceName, someDataCenter, someNotificationMessages);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (anotherReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn
+        (anotherRelease);
+    when(anotherReleaseMessage.getMessage()).thenReturn(someKey);
+    when(anotherReleaseMessage.getId()).thenReturn(someNewNotificationId);
+
+    configServiceWithCache.handleMessage(anotherReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    //the watch keys are dropped with the invalidated effective release
+    assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(configServiceWithCache, "effectiveReleaseKeysByWatchKey"))
+        .isEmpty());
+
+    Release newRelease = configServiceWithCache.loadConfig(someClientAppId, someClientIp, someAppId,
+        someClusterName, someNamespaceName, someDataCenter, someNotificationMessages);
+
+    assertSame(someRelease, release);
+    assertSame(someRelease, cachedRelease);
+    assertSame(anotherRelease, newRelease);
+
+    verify(grayReleaseRulesHolder, times(3)).hasGrayReleaseRule(someClientAppId, someClientIp, someNamespaceName);
+    verify(grayReleaseRulesHolder, times(2)).findReleaseIdFromGrayReleaseRule(someClientAppId, someClientIp,
+        someAppId, someClusterName, someNamespaceName);
+    verify(releaseService, never()).findLatestActiveRelease(someAppId, ConfigConsts.CLUSTER_NAME_DEFAULT,
+        someNamespaceName);
+  }
+
+  @Test
+  public void testLoadConfigWithEffectiveReleaseFallbackToDefault() throws Exception {
+    String someClientAppId = "someClientAppId";
+    String someClientIp = "someClientIp";
+    String someDefaultKey = ReleaseMessageKeyGenerator.generate(someAppId, ConfigConsts.CLUSTER_NAME_DEFAULT,
+        someNamespaceName);
+    long someNewNotificationId = someNotificationId + 1;
+    ReleaseMessage anotherReleaseMessage = mock(ReleaseMessage.class);
+    Release anotherRelease = mock(Release.class);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someDefaultKey)))
+        .thenReturn(someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, ConfigConsts.CLUSTER_NAME_DEFAULT, someNamespaceName))
+        .thenReturn(someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    Release release = configServiceWithCache.loadConfig(someClientAppId, someClientIp, someAppId, someClusterName,
+        someNamespaceName, null, someNotificationMessages);
+    Release cachedRelease = configServiceWithCache.loadConfig(someClientAppId, someClientIp, someAppId,
+        someClusterName, someNamespaceName, null, someNotificationMessages);
+
+    //the client has received a newer message of the default cluster
+    someNotificationMessages.put(someDefaultKey, someNewNotificationId);
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someDefaultKey)))
+        .thenReturn(anotherReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, ConfigConsts.CLUSTER_NAME_DEFAULT, someNamespaceName))
+        .thenReturn(anotherRelease);
+    when(anotherReleaseMessage.getId()).thenReturn(someNewNotificationId);
+
+    Release newRelease = configServiceWithCache.loadConfig(someClientAppId, someClientIp, someAppId,
+        someClusterName, someNamespaceName, null, someNotificationMessages);
+
+    assertSame(someRelease, release);
+    assertSame(someRelease, cachedRelease);
+    assertSame(anotherRelease, newRelease);
+
+    verify(releaseService, times(1)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+    verify(releaseService, times(2)).findLatestActiveRelease(someAppId, ConfigConsts.CLUSTER_NAME_DEFAULT,
+        someNamespaceName);
+  }
+
+  @Test
+  public void testLoadConfigWithGrayReleaseRule() throws Exception {
+    String someClientAppId = "someClientAppId";
+    String someClientIp = "someClientIp";
+    long someGrayReleaseId = 2;
+    Release someGrayRelease = mock(Release.class);
+
+    when(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, someClientIp, someNamespaceName))
+        .thenReturn(true);
+    when(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(someClientAppId, someClientIp, someAppId,
+        someClusterName, someNamespaceName)).thenReturn(someGrayReleaseId);
+    when(releaseService.findActiveOne(someGrayReleaseId)).thenReturn(someGrayRelease);
+
+    Release release = configServiceWithCache.loadConfig(someClientAppId, someClientIp, someAppId, someClusterName,
+        someNamespaceName, null, someNotificationMessages);
+    Release anotherRelease = configServiceWithCache.loadConfig(someClientAppId, someClientIp, someAppId,
+        someClusterName, someNamespaceName, null, someNotificationMessages);
+
+    assertSame(someGrayRelease, release);
+    assertSame(someGrayRelease, anotherRelease);
+
+    verify(grayReleaseRulesHolder, times(2)).findReleaseIdFromGrayReleaseRule(someClientAppId, someClientIp,
+        someAppId, someClusterName, someNamespaceName);
+  }
+
+  private void enableStaleIfError(int failureThreshold, long openIntervalInMilli) {
+    when(bizConfig.isConfigServiceStaleIfErrorEnabled()).thenReturn(true);
+    when(bizConfig.configServiceCircuitBreakerFailureThreshold()).thenReturn(failureThreshold);
+    when(bizConfig.configServiceCircuitBreakerOpenIntervalInMilli()).thenReturn(openIntervalInMilli);
+
+    configServiceWithCache.initialize();
+  }
+
+  @Test
+  public void testFindReleaseSnapshot() throws Exception {
+    long someId = 1;
+    String someConfigurations = "{\"someKey\":\"someValue\"}";
+
+    when(someRelease.getId()).thenReturn(someId);
+    when(someRelease.getConfigurations()).thenReturn(someConfigurations);
+
+    ReleaseSnapshot snapshot = configServiceWithCache.findReleaseSnapshot(someRelease);
+    ReleaseSnapshot anotherSnapshot = configServiceWithCache.findReleaseSnapshot(someRelease);
+
+    assertSame(snapshot, anotherSnapshot);
+    assertEquals("someValue", snapshot.getConfigurations().get("someKey"));
+    assertEquals(someConfigurations, new String(snapshot.getEncodedConfigurations(), StandardCharsets.UTF_8));
+
+    verify(someRelease, times(1)).getConfigurations();
+  }
+
+  @Test
+  public void testFindReleaseSnapshotPreparedWhenLoadingRelease() throws Exception {
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn
+        (someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+    when(someRelease.getConfigurations()).thenReturn("{}");
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+
+    ReleaseSnapshot snapshot = configServiceWithCache.findReleaseSnapshot(release);
+
+    assertSame(someRelease, snapshot.getRelease());
+    assertEquals(0, snapshot.getConfigurations().size());
+
+    verify(someRelease, times(1)).getConfigurations();
+  }
+
+  @Test
+  public void testFindReleaseDelta() throws Exception {
+    long someId = 2;
+    long someBaseId = 1;
+    String someBaseReleaseKey = "someBaseReleaseKey";
+    Release someBaseRelease = mock(Release.class);
+
+    when(someRelease.getId()).thenReturn(someId);
+    when(someRelease.getAppId()).thenReturn(someAppId);
+    when(someRelease.getNamespaceName()).thenReturn(someNamespaceName);
+    when(someRelease.getConfigurations()).thenReturn("{\"k1\":\"v1\",\"k2\":\"v2-new\",\"k4\":\"v4\"}");
+    when(someBaseRelease.getId()).thenReturn(someBaseId);
+    when(someBaseRelease.getAppId()).thenReturn(someAppId);
+    when(someBaseRelease.getNamespaceName()).thenReturn(someNamespaceName);
+    when(someBaseRelease.getReleaseKey()).thenReturn(someBaseReleaseKey);
+    when(someBaseRelease.getConfigurations()).thenReturn("{\"k1\":\"v1\",\"k2\":\"v2\",\"k3\":\"v3\"}");
+
+    //served before
+    configServiceWithCache.findReleaseSnapshot(someBaseRelease);
+
+    ReleaseDelta delta = configServiceWithCache.findReleaseDelta(someBaseReleaseKey, someRelease);
+    ReleaseDelta anotherDelta = configServiceWithCache.findReleaseDelta(someBaseReleaseKey, someRelease);
+
+    assertSame(delta, anotherDelta);
+    assertEquals(someBaseReleaseKey, delta.getBaseReleaseKey());
+    assertEquals(ImmutableMap.of("k2", "v2-new", "k4", "v4"), delta.getChangedConfigurations());
+    assertEquals(Lists.newArrayList("k3"), delta.getDeletedKeys());
+    assertEquals(3, delta.size());
+
+    verify(releaseService, never()).findByReleaseKeys(anySet());
+  }
+
+  @Test
+  public void testFindReleaseDeltaWithBaseReleaseNotCached() throws Exception {
+    String someBaseReleaseKey = "someBaseReleaseKey";
+
+    assertNull(configServiceWithCache.findReleaseDelta(someBaseReleaseKey, someRelease));
+
+    verify(releaseService, never()).findByReleaseKeys(anySet());
+  }
+
+  @Test
+  public void testFindReleaseDeltaWithBaseReleaseOfAnotherNamespace() throws Exception {
+    long someId = 2;
+    long someBaseId = 1;
+    String someBaseReleaseKey = "someBaseReleaseKey";
+    Release someBaseRelease = mock(Release.class);
+
+    when(someRelease.getId()).thenReturn(someId);
+    when(someRelease.getAppId()).thenReturn(someAppId);
+    when(someRelease.getNamespaceName()).thenReturn(someNamespaceName);
+    when(someBaseRelease.getId()).thenReturn(someBaseId);
+    when(someBaseRelease.getReleaseKey()).thenReturn(someBaseReleaseKey);
+    when(someBaseRelease.getAppId()).thenReturn(someAppId);
+    when(someBaseRelease.getNamespaceName()).thenReturn("anotherNamespaceName");
+
+    configServiceWithCache.findReleaseSnapshot(someBaseRelease);
+
+    assertNull(configServiceWithCache.findReleaseDelta(someBaseReleaseKey, someRelease));
+  }
 }
@@ -0,0 +1,67 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DatabaseCircuitBreakerTest {
+  private DatabaseCircuitBreaker databaseCircuitBreaker;
+  private AtomicLong someTime;
+  private long someOpenIntervalInMilli;
+
+  @Before
+  public void setUp() throws Exception {
+    someTime = new AtomicLong();
+    someOpenIntervalInMilli = 1000;
+    databaseCircuitBreaker = new DatabaseCircuitBreaker(2, someOpenIntervalInMilli, new Ticker() {
+      @Override
+      public long read() {
+        return someTime.get();
+      }
+    });
+  }
+
+  @Test
+  public void testOpenAfterContinuousFailures() throws Exception {
+    databaseCircuitBreaker.recordFailure();
+    databaseCircuitBreaker.recordSuccess();
+    databaseCircuitBreaker.recordFailure();
+
+    assertFalse(databaseCircuitBreaker.isOpen());
+    assertTrue(databaseCircuitBreaker.allowRequest());
+
+    databaseCircuitBreaker.recordFailure();
+
+    assertTrue(databaseCircuitBreaker.isOpen());
+    assertFalse(databaseCircuitBreaker.allowRequest());
+  }
+
+  @Test
+  public void testProbeAfterOpenInterval() throws Exception {
+    databaseCircuitBreaker.recordFailure();
+    databaseCircuitBreaker.recordFailure();
+
+    someTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(someOpenIntervalInMilli));
+
+    //only one request could probe
+    assertTrue(databaseCircuitBreaker.allowRequest());
+    assertFalse(databaseCircuitBreaker.allowRequest());
+
+    databaseCircuitBreaker.recordFailure();
+    someTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(someOpenIntervalInMilli));
+
+    assertTrue(databaseCircuitBreaker.allowRequest());
+
+    databaseCircuitBreaker.recordSuccess();
+
+    assertFalse(databaseCircuitBreaker.isOpen());
+    assertTrue(databaseCircuitBreaker.allowRequest());
+    assertTrue(databaseCircuitBreaker.allowRequest());
+  }
+}
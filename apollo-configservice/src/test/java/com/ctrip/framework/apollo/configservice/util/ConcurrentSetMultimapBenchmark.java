@@ -0,0 +1,167 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares the throughput of the long polling registry with the synchronized multimap used before.
+ * <p>
+ * Each worker simulates a long polling request: registers several watch keys, one of them is a hot key shared by all
+ * clients, then unregisters them. A notifier thread keeps iterating the values of the hot key as if a release message
+ * was received. Run the main method directly, it's not a unit test so surefire doesn't pick it up by its name.
+ */
+public class ConcurrentSetMultimapBenchmark {
+  private static final int KEYS = 1000;
+  private static final int KEYS_PER_REQUEST = 3;
+  private static final String HOT_KEY = "someAppId+default+application";
+  private static final long WARM_UP_MILLIS = 1000;
+  private static final long MEASURE_MILLIS = 3000;
+
+  interface Registry {
+    void put(String key, Object value);
+
+    void remove(String key, Object value);
+
+    int notify(String key);
+  }
+
+  public static void main(String[] args) throws Exception {
+    int maxThreads = Runtime.getRuntime().availableProcessors();
+
+    System.out.printf("%-14s%-10s%20s%20s%n", "registry", "threads", "requests/s", "notified/s");
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      run("synchronized", threads, synchronizedRegistry());
+      run("concurrent", threads, concurrentRegistry());
+    }
+  }
+
+  private static Registry synchronizedRegistry() {
+    Multimap<String, Object> multimap = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+    return new Registry() {
+      @Override
+      public void put(String key, Object value) {
+        multimap.put(key, value);
+      }
+
+      @Override
+      public void remove(String key, Object value) {
+        multimap.remove(key, value);
+      }
+
+      @Override
+      public int notify(String key) {
+        //the old implementation copied the values to avoid ConcurrentModificationException
+        List<Object> values = Lists.newArrayList(multimap.get(key));
+        return values.size();
+      }
+    };
+  }
+
+  private static Registry concurrentRegistry() {
+    ConcurrentSetMultimap<String, Object> multimap = new ConcurrentSetMultimap<>();
+    return new Registry() {
+      @Override
+      public void put(String key, Object value) {
+        multimap.put(key, value);
+      }
+
+      @Override
+      public void remove(String key, Object value) {
+        multimap.remove(key, value);
+      }
+
+      @Override
+      public int notify(String key) {
+        int notified = 0;
+        for (Object ignored : multimap.get(key)) {
+          notified++;
+        }
+        return notified;
+      }
+    };
+  }
+
+  private static void run(String name, int threads, Registry registry) throws Exception {
+    String[] keys = new String[KEYS];
+    for (int i = 0; i < KEYS; i++) {
+      keys[i] = "someAppId+default+namespace" + i;
+    }
+
+    AtomicBoolean running = new AtomicBoolean(true);
+    AtomicBoolean measuring = new AtomicBoolean(false);
+    LongAdder requests = new LongAdder();
+    LongAdder notified = new LongAdder();
+    CountDownLatch startLatch = new CountDownLatch(1);
+    ExecutorService executorService = Executors.newFixedThreadPool(threads + 1);
+    List<Future<?>> futures = Lists.newArrayList();
+
+    //keep some clients registered all the time like the real long polling requests
+    for (int i = 0; i < 10000; i++) {
+      registry.put(HOT_KEY, new Object());
+    }
+
+    for (int i = 0; i < threads; i++) {
+      futures.add(executorService.submit(() -> {
+        startLatch.await();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String[] watchKeys = new String[KEYS_PER_REQUEST];
+        while (running.get()) {
+          Object request = new Object();
+          watchKeys[0] = HOT_KEY;
+          for (int j = 1; j < KEYS_PER_REQUEST; j++) {
+            watchKeys[j] = keys[random.nextInt(KEYS)];
+          }
+          for (String watchKey : watchKeys) {
+            registry.put(watchKey, request);
+          }
+          for (String watchKey : watchKeys) {
+            registry.remove(watchKey, request);
+          }
+          if (measuring.get()) {
+            requests.increment();
+          }
+        }
+        return null;
+      }));
+    }
+
+    futures.add(executorService.submit(() -> {
+      startLatch.await();
+      while (running.get()) {
+        int count = registry.notify(HOT_KEY);
+        if (measuring.get()) {
+          notified.add(count);
+        }
+      }
+      return null;
+    }));
+
+    startLatch.countDown();
+    TimeUnit.MILLISECONDS.sleep(WARM_UP_MILLIS);
+    measuring.set(true);
+    TimeUnit.MILLISECONDS.sleep(MEASURE_MILLIS);
+    measuring.set(false);
+    running.set(false);
+
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executorService.shutdown();
+
+    double seconds = MEASURE_MILLIS / 1000.0;
+    System.out.printf("%-14s%-10d%20.0f%20.0f%n", name, threads, requests.sum() / seconds,
+        notified.sum() / seconds);
+  }
+}
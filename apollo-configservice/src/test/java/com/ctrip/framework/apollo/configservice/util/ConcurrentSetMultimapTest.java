@@ -0,0 +1,208 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentSetMultimapTest {
+  private ConcurrentSetMultimap<String, String> multimap;
+
+  @Before
+  public void setUp() throws Exception {
+    multimap = new ConcurrentSetMultimap<>();
+  }
+
+  @Test
+  public void testPutAndGet() throws Exception {
+    String someKey = "someKey";
+    String anotherKey = "anotherKey";
+    String someValue = "someValue";
+    String anotherValue = "anotherValue";
+
+    multimap.put(someKey, someValue);
+    multimap.put(someKey, anotherValue);
+    multimap.put(someKey, someValue);
+    multimap.put(anotherKey, someValue);
+
+    assertEquals(Sets.newHashSet(someValue, anotherValue), Sets.newHashSet(multimap.get(someKey)));
+    assertEquals(Sets.newHashSet(someValue), Sets.newHashSet(multimap.get(anotherKey)));
+    assertTrue(multimap.containsKey(someKey));
+    assertEquals(3, multimap.size());
+  }
+
+  @Test
+  public void testGetWithKeyAbsent() throws Exception {
+    assertTrue(multimap.get("someKey").isEmpty());
+    assertFalse(multimap.containsKey("someKey"));
+  }
+
+  @Test
+  public void testRemove() throws Exception {
+    String someKey = "someKey";
+    String someValue = "someValue";
+    String anotherValue = "anotherValue";
+
+    multimap.put(someKey, someValue);
+    multimap.put(someKey, anotherValue);
+
+    multimap.remove(someKey, someValue);
+
+    assertEquals(Sets.newHashSet(anotherValue), Sets.newHashSet(multimap.get(someKey)));
+
+    multimap.remove(someKey, anotherValue);
+
+    assertFalse(multimap.containsKey(someKey));
+    assertEquals(0, multimap.size());
+  }
+
+  @Test
+  public void testGetIsLiveView() throws Exception {
+    String someKey = "someKey";
+    String someValue = "someValue";
+    String anotherValue = "anotherValue";
+
+    multimap.put(someKey, someValue);
+
+    Collection<String> values = multimap.get(someKey);
+
+    multimap.put(someKey, anotherValue);
+
+    assertEquals(2, values.size());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testGetIsReadOnly() throws Exception {
+    String someKey = "someKey";
+
+    multimap.put(someKey, "someValue");
+
+    multimap.get(someKey).add("anotherValue");
+  }
+
+  @Test
+  public void testIterateWhileModifying() throws Exception {
+    String someKey = "someKey";
+
+    for (int i = 0; i < 10; i++) {
+      multimap.put(someKey, String.valueOf(i));
+    }
+
+    for (String value : multimap.get(someKey)) {
+      multimap.remove(someKey, value);
+      multimap.put(someKey, value + "-new");
+    }
+
+    assertTrue(multimap.containsKey(someKey));
+  }
+
+  @Test
+  public void testConcurrentPutAndRemove() throws Exception {
+    String someKey = "someKey";
+    int threads = 8;
+    int loops = 10000;
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    CountDownLatch startLatch = new CountDownLatch(1);
+    List<Future<?>> futures = Lists.newArrayList();
+
+    for (int i = 0; i < threads; i++) {
+      String value = String.valueOf(i);
+      futures.add(executorService.submit(() -> {
+        startLatch.await();
+        for (int j = 0; j < loops; j++) {
+          multimap.put(someKey, value);
+          multimap.remove(someKey, value);
+        }
+        //leave the value registered at last
+        multimap.put(someKey, value);
+        return null;
+      }));
+    }
+
+    startLatch.countDown();
+
+    for (Future<?> future : futures) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+    executorService.shutdown();
+
+    //no value should be lost on a removed value set
+    assertEquals(threads, multimap.get(someKey).size());
+    assertEquals(threads, multimap.size());
+  }
+
+  @Test
+  public void testIterateHotKeyWhileRegistering() throws Exception {
+    String hotKey = "someAppId+default+application";
+    int permanentValues = 100;
+    int threads = 4;
+    int loops = 5000;
+    for (int i = 0; i < permanentValues; i++) {
+      multimap.put(hotKey, "permanent" + i);
+    }
+    ExecutorService executorService = Executors.newFixedThreadPool(threads + 1);
+    CountDownLatch startLatch = new CountDownLatch(1);
+    AtomicBoolean running = new AtomicBoolean(true);
+    List<Future<?>> futures = Lists.newArrayList();
+
+    //each worker registers a long poll with the hot key and another key, then unregisters it
+    for (int i = 0; i < threads; i++) {
+      String anotherKey = "anotherKey" + i;
+      futures.add(executorService.submit(() -> {
+        startLatch.await();
+        for (int j = 0; j < loops; j++) {
+          String request = anotherKey + "-" + j;
+          multimap.put(hotKey, request);
+          multimap.put(anotherKey, request);
+          multimap.remove(hotKey, request);
+          multimap.remove(anotherKey, request);
+        }
+        return null;
+      }));
+    }
+
+    //the notifier iterates the hot key as if a release message is received
+    Future<Integer> notifier = executorService.submit(() -> {
+      startLatch.await();
+      int minNotified = Integer.MAX_VALUE;
+      while (running.get()) {
+        int notified = 0;
+        for (String ignored : multimap.get(hotKey)) {
+          notified++;
+        }
+        minNotified = Math.min(minNotified, notified);
+      }
+      return minNotified;
+    });
+
+    startLatch.countDown();
+
+    for (Future<?> future : futures) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+    running.set(false);
+    int minNotified = notifier.get(10, TimeUnit.SECONDS);
+    executorService.shutdown();
+
+    //the clients registered all the time are never missed
+    assertTrue(minNotified >= permanentValues);
+    assertEquals(permanentValues, multimap.get(hotKey).size());
+    assertEquals(permanentValues, multimap.size());
+    for (int i = 0; i < threads; i++) {
+      assertFalse(multimap.containsKey("anotherKey" + i));
+    }
+  }
+}
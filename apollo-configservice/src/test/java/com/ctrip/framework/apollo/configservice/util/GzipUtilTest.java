@@ -0,0 +1,112 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GzipUtilTest {
+
+  @Test
+  public void testCompressIfNecessary() throws Exception {
+    byte[] someContent = Strings.repeat("someContent", 100).getBytes(StandardCharsets.UTF_8);
+    byte[] smallContent = "smallContent".getBytes(StandardCharsets.UTF_8);
+
+    byte[] compressed = GzipUtil.compressIfNecessary(someContent);
+
+    assertNotNull(compressed);
+    assertTrue(compressed.length < someContent.length);
+    assertArrayEquals(someContent,
+        ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    assertNull(GzipUtil.compressIfNecessary(smallContent));
+    assertNull(GzipUtil.compressIfNecessary(null));
+  }
+
+  @Test
+  public void testWriteGzipMember() throws Exception {
+    byte[] leading = "{\"someField\":".getBytes(StandardCharsets.UTF_8);
+    byte[] someContent = Strings.repeat("someContent", 100).getBytes(StandardCharsets.UTF_8);
+    //larger than a stored block
+    byte[] trailing = Strings.repeat("someTrailing", 10000).getBytes(StandardCharsets.UTF_8);
+
+    DeflatedContent deflated = GzipUtil.deflateIfNecessary(someContent);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    GzipUtil.writeGzipMember(out, leading, deflated, trailing);
+    byte[] gzipped = out.toByteArray();
+
+    //the crc and size in the trailer are verified by GZIPInputStream
+    assertArrayEquals(concat(leading, someContent, trailing),
+        ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzipped))));
+    assertSingleMember(gzipped);
+    assertNull(GzipUtil.deflateIfNecessary("smallContent".getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testCrc32Combine() throws Exception {
+    byte[] someContent = "someContent".getBytes(StandardCharsets.UTF_8);
+    byte[] anotherContent = Strings.repeat("anotherContent", 100).getBytes(StandardCharsets.UTF_8);
+
+    assertEquals(crc32(concat(someContent, anotherContent)),
+        GzipUtil.crc32Combine(crc32(someContent), crc32(anotherContent), anotherContent.length));
+    assertEquals(crc32(someContent), GzipUtil.crc32Combine(crc32(someContent), crc32(new byte[0]), 0));
+  }
+
+  @Test
+  public void testAcceptsGzip() throws Exception {
+    assertTrue(GzipUtil.acceptsGzip(requestWithAcceptEncoding("gzip")));
+    assertTrue(GzipUtil.acceptsGzip(requestWithAcceptEncoding("deflate, GZIP;q=0.8")));
+    assertTrue(GzipUtil.acceptsGzip(requestWithAcceptEncoding("*")));
+    assertFalse(GzipUtil.acceptsGzip(requestWithAcceptEncoding("gzip;q=0")));
+    assertFalse(GzipUtil.acceptsGzip(requestWithAcceptEncoding("deflate, br")));
+    assertFalse(GzipUtil.acceptsGzip(new MockHttpServletRequest()));
+  }
+
+  private MockHttpServletRequest requestWithAcceptEncoding(String acceptEncoding) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader("Accept-Encoding", acceptEncoding);
+    return request;
+  }
+
+  /**
+   * The deflate stream after the 10 bytes header ends with the final block, followed only by the 8 bytes trailer
+   */
+  public static void assertSingleMember(byte[] gzipped) throws Exception {
+    Inflater inflater = new Inflater(true);
+    inflater.setInput(Arrays.copyOfRange(gzipped, 10, gzipped.length));
+    byte[] buffer = new byte[8192];
+    while (!inflater.finished()) {
+      assertTrue(inflater.inflate(buffer) > 0 || inflater.finished());
+    }
+    assertEquals(8, inflater.getRemaining());
+    inflater.end();
+  }
+
+  private long crc32(byte[] bytes) {
+    CRC32 crc32 = new CRC32();
+    crc32.update(bytes);
+    return crc32.getValue();
+  }
+
+  private byte[] concat(byte[]... parts) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] part : parts) {
+      out.write(part);
+    }
+    return out.toByteArray();
+  }
+}
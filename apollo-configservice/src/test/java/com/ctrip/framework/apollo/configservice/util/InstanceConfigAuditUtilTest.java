@@ -1,8 +1,11 @@
 package com.ctrip.framework.apollo.configservice.util;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
 import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -10,11 +13,16 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Date;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 /**
@@ -26,6 +34,8 @@ public class InstanceConfigAuditUtilTest {
 
   @Mock
   private InstanceService instanceService;
+  @Mock
+  private BizConfig bizConfig;
   private BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel> audits;
 
   private String someAppId;
@@ -41,10 +51,13 @@ public class InstanceConfigAuditUtilTest {
 
   @Before
   public void setUp() throws Exception {
-    instanceConfigAuditUtil = new InstanceConfigAuditUtil(instanceService);
+    when(bizConfig.instanceConfigAuditWorkers()).thenReturn(1);
+    when(bizConfig.instanceConfigAuditBatch()).thenReturn(100);
+
+    instanceConfigAuditUtil = new InstanceConfigAuditUtil(instanceService, bizConfig);
 
-    audits = (BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel>)
-        ReflectionTestUtils.getField(instanceConfigAuditUtil, "audits");
+    audits = ((List<BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel>>)
+        ReflectionTestUtils.getField(instanceConfigAuditUtil, "audits")).get(0);
 
     someAppId = "someAppId";
     someClusterName = "someClusterName";
@@ -72,22 +85,74 @@ public class InstanceConfigAuditUtilTest {
   }
 
   @Test
-  public void testDoAudit() throws Exception {
+  public void testAuditWithDuplicateAudits() throws Exception {
+    assertTrue(instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey));
+    assertTrue(instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey));
+
+    assertEquals(1, audits.size());
+    assertEquals(1, instanceConfigAuditUtil.getAuditQueueDepth());
+  }
+
+  @Test
+  public void testAuditWithQueueFull() throws Exception {
+    int capacity = audits.remainingCapacity();
+    for (int i = 0; i < capacity; i++) {
+      assertTrue(instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+          someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey + i));
+    }
+
+    boolean result = instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey);
+
+    assertFalse(result);
+    assertEquals(1, instanceConfigAuditUtil.getDroppedAudits());
+    assertEquals(capacity, instanceConfigAuditUtil.getAuditQueueDepth());
+  }
+
+  @Test
+  public void testDoAudits() throws Exception {
     long someInstanceId = 1;
     Instance someInstance = mock(Instance.class);
 
     when(someInstance.getId()).thenReturn(someInstanceId);
     when(instanceService.createInstance(any(Instance.class))).thenReturn(someInstance);
 
-    instanceConfigAuditUtil.doAudit(someAuditModel);
+    instanceConfigAuditUtil.doAudits(Lists.newArrayList(someAuditModel));
 
     verify(instanceService, times(1)).findInstance(someAppId, someClusterName, someDataCenter,
         someIp);
     verify(instanceService, times(1)).createInstance(any(Instance.class));
-    verify(instanceService, times(1)).findInstanceConfig(someInstanceId, someConfigAppId,
-        someConfigNamespace);
-    verify(instanceService, times(1)).createInstanceConfig(any(InstanceConfig.class));
+    verify(instanceService, times(1)).findInstanceConfigs(Sets.newHashSet(someInstanceId));
+    verify(instanceService, times(1)).batchUpsertInstanceConfigs(anyList());
   }
 
+  @Test
+  public void testDoAuditsWithExistingInstanceConfig() throws Exception {
+    long someInstanceId = 1;
+    String anotherReleaseKey = "anotherReleaseKey";
+    Instance someInstance = mock(Instance.class);
+    InstanceConfig someInstanceConfig = new InstanceConfig();
+    someInstanceConfig.setInstanceId(someInstanceId);
+    someInstanceConfig.setConfigAppId(someConfigAppId);
+    someInstanceConfig.setConfigNamespaceName(someConfigNamespace);
+    someInstanceConfig.setReleaseKey(someReleaseKey);
+    someInstanceConfig.setDataChangeLastModifiedTime(new Date());
+    InstanceConfigAuditUtil.InstanceConfigAuditModel anotherAuditModel =
+        new InstanceConfigAuditUtil.InstanceConfigAuditModel(someAppId, someClusterName, someDataCenter, someIp,
+            someConfigAppId, someConfigClusterName, someConfigNamespace, anotherReleaseKey);
+
+    when(someInstance.getId()).thenReturn(someInstanceId);
+    when(instanceService.findInstance(someAppId, someClusterName, someDataCenter, someIp)).thenReturn(someInstance);
+    when(instanceService.findInstanceConfigs(Sets.newHashSet(someInstanceId)))
+        .thenReturn(Lists.newArrayList(someInstanceConfig));
+
+    instanceConfigAuditUtil.doAudits(Lists.newArrayList(someAuditModel, anotherAuditModel));
 
+    verify(instanceService, times(1)).findInstance(someAppId, someClusterName, someDataCenter,
+        someIp);
+    verify(instanceService, times(1)).batchUpsertInstanceConfigs(Lists.newArrayList(someInstanceConfig));
+    assertEquals(anotherReleaseKey, someInstanceConfig.getReleaseKey());
+  }
 }
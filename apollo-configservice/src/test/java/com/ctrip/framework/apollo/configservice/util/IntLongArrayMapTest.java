@@ -0,0 +1,68 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.google.common.collect.Maps;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IntLongArrayMapTest {
+  private IntLongArrayMap map;
+
+  @Before
+  public void setUp() throws Exception {
+    map = new IntLongArrayMap();
+  }
+
+  @Test
+  public void testPutAndGet() throws Exception {
+    int someKey = 1;
+    int anotherKey = 100000;
+    long someValue = 10;
+    long anotherValue = 20;
+
+    assertEquals(IntLongArrayMap.ABSENT, map.put(someKey, someValue));
+    assertEquals(IntLongArrayMap.ABSENT, map.put(anotherKey, anotherValue));
+    assertEquals(someValue, map.put(someKey, anotherValue));
+
+    assertEquals(anotherValue, map.get(someKey));
+    assertEquals(anotherValue, map.get(anotherKey));
+    assertEquals(IntLongArrayMap.ABSENT, map.get(2));
+    assertEquals(IntLongArrayMap.ABSENT, map.get(Integer.MAX_VALUE));
+    assertEquals(2, map.size());
+  }
+
+  @Test
+  public void testPutIfGreater() throws Exception {
+    int someKey = 1;
+
+    assertTrue(map.putIfGreater(someKey, 2));
+    assertFalse(map.putIfGreater(someKey, 1));
+    assertFalse(map.putIfGreater(someKey, 2));
+    assertTrue(map.putIfGreater(someKey, 3));
+
+    assertEquals(3, map.get(someKey));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPutWithNonPositiveValue() throws Exception {
+    map.put(1, 0);
+  }
+
+  @Test
+  public void testForEach() throws Exception {
+    map.put(1, 10);
+    map.put(5000, 20);
+
+    Map<Integer, Long> entries = Maps.newHashMap();
+    map.forEach(entries::put);
+
+    assertEquals(2, entries.size());
+    assertEquals(10, entries.get(1).longValue());
+    assertEquals(20, entries.get(5000).longValue());
+  }
+}
@@ -0,0 +1,85 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LongPollHoldTimePolicyTest {
+  @Mock
+  private BizConfig bizConfig;
+  private long someMaxTimeout;
+  private long someMinTimeout;
+  private int someFullLoadConnections;
+  private LongPollHoldTimePolicy policy;
+
+  @Before
+  public void setUp() throws Exception {
+    someMaxTimeout = 60000;
+    someMinTimeout = 30000;
+    someFullLoadConnections = 100;
+
+    when(bizConfig.longPollingTimeoutInMilli()).thenReturn(someMaxTimeout);
+
+    policy = new LongPollHoldTimePolicy(bizConfig);
+  }
+
+  @Test
+  public void testHoldTimeWithAdaptiveHoldTimeDisabled() throws Exception {
+    assertEquals(someMaxTimeout, policy.holdTimeInMilli(0));
+    assertEquals(someMaxTimeout, policy.holdTimeInMilli(someFullLoadConnections * 2));
+  }
+
+  @Test
+  public void testHoldTimeWithoutLoad() throws Exception {
+    enableAdaptiveHoldTime();
+
+    long holdTime = policy.holdTimeInMilli(0);
+
+    assertTrue(holdTime <= someMaxTimeout);
+    assertTrue(holdTime >= someMaxTimeout * 0.9);
+  }
+
+  @Test
+  public void testHoldTimeWithConnectionsFullyLoaded() throws Exception {
+    enableAdaptiveHoldTime();
+
+    long holdTime = policy.holdTimeInMilli(someFullLoadConnections * 2);
+
+    assertTrue(holdTime <= someMinTimeout);
+    assertTrue(holdTime >= someMinTimeout * 0.9);
+  }
+
+  @Test
+  public void testHoldTimeWithConnectionsHalfLoaded() throws Exception {
+    enableAdaptiveHoldTime();
+
+    long holdTime = policy.holdTimeInMilli(someFullLoadConnections / 2);
+
+    long expected = (someMaxTimeout + someMinTimeout) / 2;
+    assertTrue(holdTime <= expected);
+    assertTrue(holdTime >= expected * 0.9);
+  }
+
+  @Test
+  public void testHoldTimeWithMinTimeoutLongerThanMaxTimeout() throws Exception {
+    when(bizConfig.isLongPollingAdaptiveHoldTimeEnabled()).thenReturn(true);
+    when(bizConfig.longPollingMinTimeoutInMilli()).thenReturn(someMaxTimeout * 2);
+    when(bizConfig.longPollingFullLoadConnections()).thenReturn(someFullLoadConnections);
+
+    assertTrue(policy.holdTimeInMilli(someFullLoadConnections) <= someMaxTimeout);
+  }
+
+  private void enableAdaptiveHoldTime() {
+    when(bizConfig.isLongPollingAdaptiveHoldTimeEnabled()).thenReturn(true);
+    when(bizConfig.longPollingMinTimeoutInMilli()).thenReturn(someMinTimeout);
+    when(bizConfig.longPollingFullLoadConnections()).thenReturn(someFullLoadConnections);
+  }
+}
@@ -0,0 +1,147 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationFanOutSchedulerTest {
+  @Mock
+  private BizConfig bizConfig;
+
+  @Test
+  public void testSchedule() throws Exception {
+    int someClients = 50;
+    when(bizConfig.releaseMessageNotificationWorkers()).thenReturn(4);
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(7);
+    when(bizConfig.releaseMessageNotificationRatePerSecond()).thenReturn(100000);
+
+    NotificationFanOutScheduler scheduler = new NotificationFanOutScheduler(bizConfig);
+
+    List<Integer> notified = Collections.synchronizedList(Lists.newArrayList());
+    CountDownLatch latch = new CountDownLatch(someClients);
+
+    scheduler.schedule("someKey", range(0, someClients), client -> {
+      notified.add(client);
+      latch.countDown();
+    });
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    List<Integer> sortedNotified = Lists.newArrayList(notified);
+    Collections.sort(sortedNotified);
+    assertEquals(range(0, someClients), sortedNotified);
+
+    waitUntilIdle(scheduler);
+  }
+
+  @Test
+  public void testScheduleWithRateLimited() throws Exception {
+    int someClients = 30;
+    int someBatch = 10;
+    int someRate = 100;
+    when(bizConfig.releaseMessageNotificationWorkers()).thenReturn(4);
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(someBatch);
+    when(bizConfig.releaseMessageNotificationRatePerSecond()).thenReturn(someRate);
+
+    NotificationFanOutScheduler scheduler = new NotificationFanOutScheduler(bizConfig);
+
+    CountDownLatch latch = new CountDownLatch(someClients);
+    long start = System.nanoTime();
+
+    scheduler.schedule("someKey", range(0, someClients), client -> latch.countDown());
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+    //the first batch is notified at once, the other 20 clients need 200ms at least
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    assertTrue(elapsedMillis >= (someClients - someBatch) * 1000 / someRate - 10);
+  }
+
+  @Test
+  public void testScheduleWithFairInterleaving() throws Exception {
+    int someBatch = 2;
+    when(bizConfig.releaseMessageNotificationWorkers()).thenReturn(1);
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(someBatch);
+    when(bizConfig.releaseMessageNotificationRatePerSecond()).thenReturn(100000);
+
+    NotificationFanOutScheduler scheduler = new NotificationFanOutScheduler(bizConfig);
+
+    List<String> notified = Collections.synchronizedList(Lists.newArrayList());
+    CountDownLatch blockLatch = new CountDownLatch(1);
+    CountDownLatch latch = new CountDownLatch(8);
+
+    //block the only worker so that the following fan outs are queued together
+    scheduler.schedule("blockingKey", Lists.newArrayList("blocking"), client -> {
+      try {
+        blockLatch.await();
+      } catch (InterruptedException ex) {
+        //ignore
+      }
+    });
+    scheduler.schedule("someKey", Lists.newArrayList("a1", "a2", "a3", "a4"), client -> {
+      notified.add(client);
+      latch.countDown();
+    });
+    scheduler.schedule("anotherKey", Lists.newArrayList("b1", "b2", "b3", "b4"), client -> {
+      notified.add(client);
+      latch.countDown();
+    });
+
+    blockLatch.countDown();
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(Lists.newArrayList("a1", "a2", "b1", "b2", "a3", "a4", "b3", "b4"), notified);
+
+    waitUntilIdle(scheduler);
+  }
+
+  @Test
+  public void testScheduleWithNotifierFailed() throws Exception {
+    when(bizConfig.releaseMessageNotificationWorkers()).thenReturn(1);
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(10);
+    when(bizConfig.releaseMessageNotificationRatePerSecond()).thenReturn(100000);
+
+    NotificationFanOutScheduler scheduler = new NotificationFanOutScheduler(bizConfig);
+
+    CountDownLatch latch = new CountDownLatch(1);
+
+    scheduler.schedule("someKey", Lists.newArrayList(1, 2), client -> {
+      if (client == 1) {
+        throw new RuntimeException("some exception");
+      }
+      latch.countDown();
+    });
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+    waitUntilIdle(scheduler);
+  }
+
+  private void waitUntilIdle(NotificationFanOutScheduler scheduler) throws InterruptedException {
+    for (int i = 0; i < 100 && scheduler.getPendingFanOuts() > 0; i++) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    assertEquals(0, scheduler.getPendingFanOuts());
+    assertEquals(0, scheduler.getPendingClients());
+  }
+
+  private List<Integer> range(int start, int end) {
+    List<Integer> result = Lists.newArrayList();
+    for (int i = start; i < end; i++) {
+      result.add(i);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,54 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class WatchKeyInternerTest {
+  private WatchKeyInterner watchKeyInterner;
+
+  @Before
+  public void setUp() throws Exception {
+    watchKeyInterner = new WatchKeyInterner();
+  }
+
+  @Test
+  public void testIntern() throws Exception {
+    String someKey = "someAppId+default+application";
+    String anotherKey = "someAppId+default+someNamespace";
+
+    int someId = watchKeyInterner.intern(someKey);
+    int anotherId = watchKeyInterner.intern(anotherKey);
+
+    assertNotEquals(someId, anotherId);
+    assertEquals(someId, watchKeyInterner.intern(new String(someKey)));
+    assertEquals(someId, watchKeyInterner.find(someKey));
+    assertEquals(someKey, watchKeyInterner.getKey(someId));
+    assertEquals(anotherKey, watchKeyInterner.getKey(anotherId));
+    assertEquals(2, watchKeyInterner.size());
+  }
+
+  @Test
+  public void testFindWithKeyNotInterned() throws Exception {
+    assertEquals(WatchKeyInterner.NOT_FOUND, watchKeyInterner.find("someKey"));
+    assertNull(watchKeyInterner.getKey(0));
+    assertNull(watchKeyInterner.getKey(WatchKeyInterner.NOT_FOUND));
+    assertEquals(0, watchKeyInterner.size());
+  }
+
+  @Test
+  public void testInternWithManyKeys() throws Exception {
+    int someSize = 5000;
+
+    for (int i = 0; i < someSize; i++) {
+      assertEquals(i, watchKeyInterner.intern(String.valueOf(i)));
+    }
+
+    for (int i = 0; i < someSize; i++) {
+      assertEquals(String.valueOf(i), watchKeyInterner.getKey(i));
+    }
+  }
+}
@@ -17,7 +17,10 @@ import java.util.Collection;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -160,6 +163,47 @@ public class WatchKeysUtilTest {
     assertWatchKeys(somePublicAppId, clusters, somePublicNamespace, watchKeysMap.get(somePublicNamespace));
   }
 
+  @Test
+  public void testAssembleAllWatchKeysWithCache() throws Exception {
+    Multimap<String, String> watchKeysMap =
+        watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster,
+            Sets.newHashSet(someNamespace, somePublicNamespace), someDC);
+    Multimap<String, String> anotherWatchKeysMap =
+        watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster,
+            Sets.newHashSet(somePublicNamespace, someNamespace), someDC);
+
+    assertSame(watchKeysMap, anotherWatchKeysMap);
+    verify(appNamespaceService, times(1))
+        .findByAppIdAndNamespaces(someAppId, Sets.newHashSet(someNamespace, somePublicNamespace));
+  }
+
+  @Test
+  public void testAssembleAllWatchKeysWithAppNamespacesChanged() throws Exception {
+    long someVersion = 1;
+    long anotherVersion = 2;
+    Set<String> namespaces = Sets.newHashSet(someNamespace, somePublicNamespace);
+
+    when(appNamespaceService.getVersion()).thenReturn(someVersion);
+    when(appNamespaceService.findByAppIdAndNamespaces(someAppId, namespaces))
+        .thenReturn(Lists.newArrayList(someAppNamespace))
+        .thenReturn(Lists.newArrayList(someAppNamespace, somePublicAppNamespace));
+
+    Multimap<String, String> watchKeysMap =
+        watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster, namespaces, someDC);
+
+    when(appNamespaceService.getVersion()).thenReturn(anotherVersion);
+
+    Multimap<String, String> anotherWatchKeysMap =
+        watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster, namespaces, someDC);
+
+    Set<String> clusters = Sets.newHashSet(defaultCluster, someCluster, someDC);
+
+    //the public namespace is created in the app, so it's not watched any more
+    assertEquals(clusters.size() * 3, watchKeysMap.size());
+    assertEquals(clusters.size() * 2, anotherWatchKeysMap.size());
+    assertWatchKeys(someAppId, clusters, somePublicNamespace, anotherWatchKeysMap.get(somePublicNamespace));
+  }
+
   private void assertWatchKeys(String appId, Set<String> clusters, String namespaceName,
                                Collection<String> watchedKeys) {
     for (String cluster : clusters) {
@@ -0,0 +1,131 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.configservice.util.GzipUtil;
+import com.ctrip.framework.apollo.configservice.util.GzipUtilTest;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EncodedApolloConfigHttpMessageConverterTest {
+  private EncodedApolloConfigHttpMessageConverter converter;
+  private Gson gson;
+
+  @Before
+  public void setUp() throws Exception {
+    converter = new EncodedApolloConfigHttpMessageConverter();
+    gson = new Gson();
+  }
+
+  @Test
+  public void testWrite() throws Exception {
+    Map<String, String> someConfigurations = ImmutableMap.of("someKey", "someValue", "anotherKey", "<\"html\">");
+    EncodedApolloConfig someConfig = new EncodedApolloConfig("someAppId", "someCluster", "someNamespace",
+        "someReleaseKey", someConfigurations,
+        gson.toJson(someConfigurations).getBytes(StandardCharsets.UTF_8));
+
+    MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+    converter.write(someConfig, MediaType.APPLICATION_JSON, outputMessage);
+
+    ApolloConfig result = gson.fromJson(outputMessage.getBodyAsString(StandardCharsets.UTF_8), ApolloConfig.class);
+
+    assertEquals(someConfig.getAppId(), result.getAppId());
+    assertEquals(someConfig.getCluster(), result.getCluster());
+    assertEquals(someConfig.getNamespaceName(), result.getNamespaceName());
+    assertEquals(someConfig.getReleaseKey(), result.getReleaseKey());
+    assertEquals(someConfigurations, result.getConfigurations());
+  }
+
+  @Test
+  public void testWriteGzipped() throws Exception {
+    Map<String, String> someConfigurations = ImmutableMap.of("someKey", "someValue", "anotherKey", "<\"html\">");
+    byte[] someEncodedConfigurations = gson.toJson(someConfigurations).getBytes(StandardCharsets.UTF_8);
+    EncodedApolloConfig someConfig = new EncodedApolloConfig("someAppId", "someCluster", "someNamespace",
+        "someReleaseKey", someConfigurations, someEncodedConfigurations,
+        GzipUtil.deflate(someEncodedConfigurations));
+
+    MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+    converter.write(someConfig, MediaType.APPLICATION_JSON, outputMessage);
+
+    assertEquals("gzip", outputMessage.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+
+    GzipUtilTest.assertSingleMember(outputMessage.getBodyAsBytes());
+    String body = new String(ByteStreams.toByteArray(
+        new GZIPInputStream(new ByteArrayInputStream(outputMessage.getBodyAsBytes()))), StandardCharsets.UTF_8);
+    ApolloConfig result = gson.fromJson(body, ApolloConfig.class);
+
+    assertEquals(someConfig.getAppId(), result.getAppId());
+    assertEquals(someConfig.getCluster(), result.getCluster());
+    assertEquals(someConfig.getNamespaceName(), result.getNamespaceName());
+    assertEquals(someConfig.getReleaseKey(), result.getReleaseKey());
+    assertEquals(someConfigurations, result.getConfigurations());
+  }
+
+  @Test
+  public void testWriteWithoutGzip() throws Exception {
+    Map<String, String> someConfigurations = ImmutableMap.of("someKey", "someValue");
+    EncodedApolloConfig someConfig = new EncodedApolloConfig("someAppId", "someCluster", "someNamespace",
+        "someReleaseKey", someConfigurations, gson.toJson(someConfigurations).getBytes(StandardCharsets.UTF_8));
+
+    MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+    converter.write(someConfig, MediaType.APPLICATION_JSON, outputMessage);
+
+    assertNull(outputMessage.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    assertEquals(gson.toJson(someConfig), outputMessage.getBodyAsString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testWriteWithConfigurationsChanged() throws Exception {
+    Map<String, String> someConfigurations = ImmutableMap.of("someKey", "someValue");
+    Map<String, String> anotherConfigurations = ImmutableMap.of("anotherKey", "anotherValue");
+    byte[] someEncodedConfigurations = gson.toJson(someConfigurations).getBytes(StandardCharsets.UTF_8);
+    EncodedApolloConfig someConfig = new EncodedApolloConfig("someAppId", "someCluster", "someNamespace",
+        "someReleaseKey", someConfigurations, someEncodedConfigurations,
+        GzipUtil.deflate(someEncodedConfigurations));
+
+    someConfig.setConfigurations(anotherConfigurations);
+
+    MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+    converter.write(someConfig, MediaType.APPLICATION_JSON, outputMessage);
+
+    assertNull(outputMessage.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    assertEquals(gson.toJson(someConfig), outputMessage.getBodyAsString(StandardCharsets.UTF_8));
+    assertEquals(anotherConfigurations, gson.fromJson(outputMessage.getBodyAsString(StandardCharsets.UTF_8),
+        ApolloConfig.class).getConfigurations());
+  }
+
+  @Test
+  public void testWriteWithNullFields() throws Exception {
+    EncodedApolloConfig someConfig = new EncodedApolloConfig(null, "someCluster", null, "someReleaseKey", null,
+        null);
+
+    MockHttpOutputMessage outputMessage = new MockHttpOutputMessage();
+    converter.write(someConfig, MediaType.APPLICATION_JSON, outputMessage);
+
+    assertEquals("{\"cluster\":\"someCluster\",\"releaseKey\":\"someReleaseKey\"}",
+        outputMessage.getBodyAsString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testSupports() throws Exception {
+    assertTrue(converter.canWrite(EncodedApolloConfig.class, MediaType.APPLICATION_JSON));
+    assertFalse(converter.canWrite(ApolloConfig.class, MediaType.APPLICATION_JSON));
+    assertFalse(converter.canRead(EncodedApolloConfig.class, MediaType.APPLICATION_JSON));
+  }
+}
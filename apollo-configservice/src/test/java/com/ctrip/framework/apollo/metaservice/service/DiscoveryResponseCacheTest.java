@@ -0,0 +1,158 @@
+package com.ctrip.framework.apollo.metaservice.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.core.ServiceNameConsts;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.metaservice.service.DiscoveryResponseCache.DiscoveryResponse;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.CacheRefreshedEvent;
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.EurekaEventListener;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DiscoveryResponseCacheTest {
+  @Mock
+  private DiscoveryService discoveryService;
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private EurekaClient eurekaClient;
+  private DiscoveryResponseCache discoveryResponseCache;
+  private EurekaEventListener eurekaEventListener;
+  private InstanceInfo someInstance;
+  private InstanceInfo anotherInstance;
+
+  @Before
+  public void setUp() throws Exception {
+    discoveryResponseCache = new DiscoveryResponseCache(discoveryService, bizConfig, eurekaClient);
+
+    ArgumentCaptor<EurekaEventListener> listenerCaptor = ArgumentCaptor.forClass(EurekaEventListener.class);
+    verify(eurekaClient).registerEventListener(listenerCaptor.capture());
+    eurekaEventListener = listenerCaptor.getValue();
+
+    someInstance = mockInstance("someInstance", Collections.emptyMap());
+    anotherInstance = mockInstance("anotherInstance", ImmutableMap.of("weight", "3"));
+  }
+
+  @Test
+  public void testGetConfigServices() throws Exception {
+    when(discoveryService.getServiceInstances(ServiceNameConsts.APOLLO_CONFIGSERVICE))
+        .thenReturn(Lists.newArrayList(someInstance));
+
+    DiscoveryResponse response = discoveryResponseCache.getConfigServices();
+    DiscoveryResponse anotherResponse = discoveryResponseCache.getConfigServices();
+
+    List<ServiceDTO> services = parse(response);
+    assertEquals(1, services.size());
+    assertEquals("someInstance", services.get(0).getInstanceId());
+    assertEquals("http://someInstance", services.get(0).getHomepageUrl());
+    assertNull(services.get(0).getVirtualNodes());
+    assertSame(response, anotherResponse);
+    verify(discoveryService, times(1)).getServiceInstances(ServiceNameConsts.APOLLO_CONFIGSERVICE);
+  }
+
+  @Test
+  public void testGetConfigServicesWithAffinityEnabled() throws Exception {
+    when(bizConfig.isConfigServiceAffinityEnabled()).thenReturn(true);
+    when(bizConfig.configServiceAffinityVirtualNodes()).thenReturn(100);
+    when(discoveryService.getServiceInstances(ServiceNameConsts.APOLLO_CONFIGSERVICE))
+        .thenReturn(Lists.newArrayList(someInstance, anotherInstance));
+
+    List<ServiceDTO> services = parse(discoveryResponseCache.getConfigServices());
+
+    //sorted by the instance id
+    assertEquals("anotherInstance", services.get(0).getInstanceId());
+    assertEquals(300, services.get(0).getVirtualNodes().intValue());
+    assertEquals("someInstance", services.get(1).getInstanceId());
+    assertEquals(100, services.get(1).getVirtualNodes().intValue());
+  }
+
+  @Test
+  public void testRebuildWithInstancesReordered() throws Exception {
+    when(discoveryService.getServiceInstances(ServiceNameConsts.APOLLO_CONFIGSERVICE))
+        .thenReturn(Lists.newArrayList(someInstance, anotherInstance),
+            Lists.newArrayList(anotherInstance, someInstance));
+
+    DiscoveryResponse response = discoveryResponseCache.getConfigServices();
+
+    eurekaEventListener.onEvent(new CacheRefreshedEvent());
+    DiscoveryResponse anotherResponse = discoveryResponseCache.getConfigServices();
+
+    assertEquals(response.getETag(), anotherResponse.getETag());
+    assertSame(response, anotherResponse);
+  }
+
+  @Test
+  public void testRebuildOnRegistryRefreshed() throws Exception {
+    when(discoveryService.getServiceInstances(ServiceNameConsts.APOLLO_CONFIGSERVICE))
+        .thenReturn(Lists.newArrayList(someInstance), Lists.newArrayList(someInstance),
+            Lists.newArrayList(someInstance, anotherInstance));
+
+    DiscoveryResponse response = discoveryResponseCache.getConfigServices();
+
+    //not changed
+    eurekaEventListener.onEvent(new CacheRefreshedEvent());
+    assertSame(response, discoveryResponseCache.getConfigServices());
+
+    //changed
+    eurekaEventListener.onEvent(new CacheRefreshedEvent());
+    DiscoveryResponse anotherResponse = discoveryResponseCache.getConfigServices();
+    assertNotEquals(response.getETag(), anotherResponse.getETag());
+    assertEquals(2, parse(anotherResponse).size());
+  }
+
+  @Test
+  public void testMatches() throws Exception {
+    when(discoveryService.getServiceInstances(ServiceNameConsts.APOLLO_ADMINSERVICE))
+        .thenReturn(Lists.newArrayList(someInstance));
+
+    DiscoveryResponse response = discoveryResponseCache.getAdminServices();
+
+    assertTrue(response.matches(response.getETag()));
+    assertTrue(response.matches("\"someETag\", W/" + response.getETag()));
+    assertTrue(response.matches("*"));
+    assertFalse(response.matches("\"someETag\""));
+    assertFalse(response.matches(null));
+  }
+
+  private InstanceInfo mockInstance(String instanceId, Map<String, String> metadata) {
+    InstanceInfo instance = mock(InstanceInfo.class);
+    when(instance.getAppName()).thenReturn(ServiceNameConsts.APOLLO_CONFIGSERVICE);
+    when(instance.getInstanceId()).thenReturn(instanceId);
+    when(instance.getHomePageUrl()).thenReturn("http://" + instanceId);
+    when(instance.getMetadata()).thenReturn(metadata);
+    return instance;
+  }
+
+  private List<ServiceDTO> parse(DiscoveryResponse response) {
+    return new Gson().fromJson(new String(response.getBody(), StandardCharsets.UTF_8),
+        new TypeToken<List<ServiceDTO>>() {
+        }.getType());
+  }
+}
@@ -1,5 +1,6 @@
 package com.ctrip.framework.apollo.core.dto;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -17,6 +18,13 @@ public class ApolloConfig {
 
   private String releaseKey;
 
+  //the following fields are only set when the configurations are the delta from the base release
+  private String baseReleaseKey;
+
+  private List<String> deletedKeys;
+
+  private String checksum;
+
   public ApolloConfig() {
   }
 
@@ -70,6 +78,36 @@ public class ApolloConfig {
     this.configurations = configurations;
   }
 
+  /**
+   * @return the release key which the delta is based on, or null if the configurations are complete
+   */
+  public String getBaseReleaseKey() {
+    return baseReleaseKey;
+  }
+
+  public void setBaseReleaseKey(String baseReleaseKey) {
+    this.baseReleaseKey = baseReleaseKey;
+  }
+
+  public List<String> getDeletedKeys() {
+    return deletedKeys;
+  }
+
+  public void setDeletedKeys(List<String> deletedKeys) {
+    this.deletedKeys = deletedKeys;
+  }
+
+  /**
+   * @return the checksum of the complete configurations, see {@link com.ctrip.framework.apollo.core.utils.ChecksumUtil}
+   */
+  public String getChecksum() {
+    return checksum;
+  }
+
+  public void setChecksum(String checksum) {
+    this.checksum = checksum;
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder("ApolloConfig{");
@@ -78,6 +116,11 @@ public class ApolloConfig {
     sb.append(", namespaceName='").append(namespaceName).append('\'');
     sb.append(", configurations=").append(configurations);
     sb.append(", releaseKey='").append(releaseKey).append('\'');
+    if (baseReleaseKey != null) {
+      sb.append(", baseReleaseKey='").append(baseReleaseKey).append('\'');
+      sb.append(", deletedKeys=").append(deletedKeys);
+      sb.append(", checksum='").append(checksum).append('\'');
+    }
     sb.append('}');
     return sb.toString();
   }
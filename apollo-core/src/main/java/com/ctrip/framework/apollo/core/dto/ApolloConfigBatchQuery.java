@@ -0,0 +1,38 @@
+package com.ctrip.framework.apollo.core.dto;
+
+import java.util.Map;
+
+/**
+ * The body of the batch config query, which is posted as the release keys of hundreds of namespaces don't fit in the
+ * request line
+ */
+public class ApolloConfigBatchQuery {
+  //namespace name -> client side release key, the release key could be empty if there is no config in client side
+  private Map<String, String> namespaces;
+  private ApolloNotificationMessages messages;
+
+  //for json converter
+  public ApolloConfigBatchQuery() {
+  }
+
+  public ApolloConfigBatchQuery(Map<String, String> namespaces, ApolloNotificationMessages messages) {
+    this.namespaces = namespaces;
+    this.messages = messages;
+  }
+
+  public Map<String, String> getNamespaces() {
+    return namespaces;
+  }
+
+  public void setNamespaces(Map<String, String> namespaces) {
+    this.namespaces = namespaces;
+  }
+
+  public ApolloNotificationMessages getMessages() {
+    return messages;
+  }
+
+  public void setMessages(ApolloNotificationMessages messages) {
+    this.messages = messages;
+  }
+}
@@ -7,6 +7,9 @@ public class ApolloConfigNotification {
   private String namespaceName;
   private long notificationId;
   private volatile ApolloNotificationMessages messages;
+  //the clients are suggested to fetch the config in a random delay within the window, so they won't come at once,
+  //null if there is no need to delay so it's not serialized in the notifications sent by clients
+  private Long fetchDelayWindowInMilli;
 
   //for json converter
   public ApolloConfigNotification() {
@@ -37,6 +40,14 @@ public class ApolloConfigNotification {
     this.messages = messages;
   }
 
+  public long getFetchDelayWindowInMilli() {
+    return fetchDelayWindowInMilli == null ? 0 : fetchDelayWindowInMilli;
+  }
+
+  public void setFetchDelayWindowInMilli(long fetchDelayWindowInMilli) {
+    this.fetchDelayWindowInMilli = fetchDelayWindowInMilli > 0 ? fetchDelayWindowInMilli : null;
+  }
+
   public void addMessage(String key, long notificationId) {
     if (this.messages == null) {
       synchronized (this) {
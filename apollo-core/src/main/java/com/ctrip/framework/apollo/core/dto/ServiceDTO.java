@@ -8,6 +8,11 @@ public class ServiceDTO {
 
   private String homepageUrl;
 
+  /**
+   * The number of virtual nodes in the consistent hash ring, which is published only if the client affinity is enabled
+   */
+  private Integer virtualNodes;
+
   public String getAppName() {
     return appName;
   }
@@ -20,6 +25,10 @@ public class ServiceDTO {
     return instanceId;
   }
 
+  public Integer getVirtualNodes() {
+    return virtualNodes;
+  }
+
   public void setAppName(String appName) {
     this.appName = appName;
   }
@@ -32,12 +41,19 @@ public class ServiceDTO {
     this.instanceId = instanceId;
   }
 
+  public void setVirtualNodes(Integer virtualNodes) {
+    this.virtualNodes = virtualNodes;
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder("ServiceDTO{");
     sb.append("appName='").append(appName).append('\'');
     sb.append(", instanceId='").append(instanceId).append('\'');
     sb.append(", homepageUrl='").append(homepageUrl).append('\'');
+    if (virtualNodes != null) {
+      sb.append(", virtualNodes=").append(virtualNodes);
+    }
     sb.append('}');
     return sb.toString();
   }
@@ -0,0 +1,53 @@
+package com.ctrip.framework.apollo.core.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Calculates the checksum of configurations, which is used to verify the configurations assembled from deltas.
+ * <p>
+ * The checksum is the sha1 of the sorted entries, each key and value is prefixed with its length, so the result is
+ * independent of the map implementation and unambiguous.
+ */
+public class ChecksumUtil {
+  private static final String ALGORITHM = "SHA-1";
+
+  public static String checksum(Map<String, String> configurations) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance(ALGORITHM);
+    } catch (NoSuchAlgorithmException ex) {
+      //every implementation of the Java platform is required to support SHA-1
+      throw new IllegalStateException(ex);
+    }
+
+    if (configurations != null) {
+      for (Map.Entry<String, String> entry : new TreeMap<>(configurations).entrySet()) {
+        update(digest, entry.getKey());
+        update(digest, entry.getValue());
+      }
+    }
+
+    return ByteUtil.toHexString(digest.digest());
+  }
+
+  private static void update(MessageDigest digest, String value) {
+    if (value == null) {
+      updateLength(digest, -1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    updateLength(digest, bytes.length);
+    digest.update(bytes);
+  }
+
+  private static void updateLength(MessageDigest digest, int length) {
+    digest.update(ByteUtil.int3(length));
+    digest.update(ByteUtil.int2(length));
+    digest.update(ByteUtil.int1(length));
+    digest.update(ByteUtil.int0(length));
+  }
+}
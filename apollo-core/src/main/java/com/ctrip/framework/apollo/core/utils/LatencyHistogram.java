@@ -0,0 +1,92 @@
+package com.ctrip.framework.apollo.core.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies in milliseconds, which is small enough to be kept per release.
+ * <p>
+ * The values below 16 are counted exactly, the larger ones are counted in 8 buckets per power of 2, so the percentiles
+ * are accurate to 12.5%. The values are capped at 2^32 ms, i.e. about 49 days.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int LINEAR_BUCKETS = SUB_BUCKETS * 2;
+  private static final int MAX_EXPONENT = 31;
+  private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+  private static final int BUCKETS = LINEAR_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long valueInMilli) {
+    record(valueInMilli, 1);
+  }
+
+  /**
+   * @param count the number of occurrences of the value, e.g. the number of clients notified at once
+   */
+  public void record(long valueInMilli, long count) {
+    if (count <= 0) {
+      return;
+    }
+    long value = Math.min(MAX_VALUE, Math.max(0, valueInMilli));
+    counts.addAndGet(indexOf(value), count);
+    totalCount.addAndGet(count);
+    long currentMax;
+    do {
+      currentMax = max.get();
+    } while (value > currentMax && !max.compareAndSet(currentMax, value));
+  }
+
+  public long getCount() {
+    return totalCount.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * @param percentile the percentile in (0, 100], e.g. 99 for p99
+   * @return the upper bound of the bucket which the percentile falls in, but never larger than the max value, or 0 if
+   * nothing is recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    long total = totalCount.get();
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, percentile) / 100));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(upperBoundOf(i), max.get());
+      }
+    }
+    //recorded concurrently
+    return max.get();
+  }
+
+  static int indexOf(long value) {
+    if (value < LINEAR_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return LINEAR_BUCKETS + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long upperBoundOf(int index) {
+    if (index < LINEAR_BUCKETS) {
+      return index;
+    }
+    int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+    int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+    long width = 1L << (exponent - SUB_BUCKET_BITS);
+    return ((long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+  }
+}
@@ -0,0 +1,203 @@
+package com.ctrip.framework.apollo.core.utils;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of the client side notifications, which is posted as the long polling request body instead
+ * of the json in the url.
+ * <p>
+ * The layout is: version(1 byte), fingerprint(8 bytes), count(varint), notification ids(zigzag varint * count),
+ * length of the namespace names block(varint), namespace names block(utf8 bytes prefixed with varint length * count).
+ * <p>
+ * The namespace names rarely change between polls, so the fingerprint of the names block is sent as well, which lets
+ * the server reuse the namespace names decoded before and only decode the notification ids.
+ */
+public class NotificationsCodec {
+  public static final String CONTENT_TYPE = "application/x-apollo-notifications";
+  private static final int VERSION = 1;
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  public static byte[] encode(List<ApolloConfigNotification> notifications) {
+    ByteArrayOutputStream namespaceNames = new ByteArrayOutputStream();
+    for (ApolloConfigNotification notification : notifications) {
+      byte[] name = notification.getNamespaceName().getBytes(StandardCharsets.UTF_8);
+      writeVarint(namespaceNames, name.length);
+      namespaceNames.write(name, 0, name.length);
+    }
+    byte[] namespaceNamesBlock = namespaceNames.toByteArray();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(namespaceNamesBlock.length + 16 + notifications.size() * 4);
+    out.write(VERSION);
+    long fingerprint = fingerprint(namespaceNamesBlock);
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      out.write((int) (fingerprint >>> shift));
+    }
+    writeVarint(out, notifications.size());
+    for (ApolloConfigNotification notification : notifications) {
+      long notificationId = notification.getNotificationId();
+      //zigzag, so that the placeholder -1 takes only one byte
+      writeVarint(out, (notificationId << 1) ^ (notificationId >> 63));
+    }
+    writeVarint(out, namespaceNamesBlock.length);
+    out.write(namespaceNamesBlock, 0, namespaceNamesBlock.length);
+    return out.toByteArray();
+  }
+
+  /**
+   * Decode the body without decoding the namespace names, see {@link EncodedNotifications#decodeNamespaceNames()}
+   *
+   * @throws IllegalArgumentException if the body is malformed
+   */
+  public static EncodedNotifications decode(byte[] body) {
+    Reader reader = new Reader(body);
+    int version = reader.readByte();
+    if (version != VERSION) {
+      throw new IllegalArgumentException("Unsupported notifications version: " + version);
+    }
+    long fingerprint = 0;
+    for (int i = 0; i < 8; i++) {
+      fingerprint = (fingerprint << 8) | reader.readByte();
+    }
+    int count = reader.readLength();
+    long[] notificationIds = new long[count];
+    for (int i = 0; i < count; i++) {
+      long value = reader.readVarint();
+      notificationIds[i] = (value >>> 1) ^ -(value & 1);
+    }
+    byte[] namespaceNames = reader.readBytes(reader.readLength());
+    if (!reader.isFinished()) {
+      throw new IllegalArgumentException("Unexpected trailing bytes of notifications");
+    }
+    return new EncodedNotifications(fingerprint, notificationIds, namespaceNames);
+  }
+
+  /**
+   * 64 bit FNV-1a hash, it's only used to look up the names decoded before, so a collision is harmless as long as the
+   * names block is compared as well
+   */
+  static long fingerprint(byte[] bytes) {
+    long hash = FNV_OFFSET_BASIS;
+    for (byte b : bytes) {
+      hash ^= b & 0xff;
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7fL) != 0) {
+      out.write((int) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  public static class EncodedNotifications {
+    private final long fingerprint;
+    private final long[] notificationIds;
+    private final byte[] namespaceNames;
+
+    EncodedNotifications(long fingerprint, long[] notificationIds, byte[] namespaceNames) {
+      this.fingerprint = fingerprint;
+      this.notificationIds = notificationIds;
+      this.namespaceNames = namespaceNames;
+    }
+
+    public long getFingerprint() {
+      return fingerprint;
+    }
+
+    public int size() {
+      return notificationIds.length;
+    }
+
+    public long getNotificationId(int index) {
+      return notificationIds[index];
+    }
+
+    /**
+     * @return whether the namespace names are the same as the encoded names block
+     */
+    public boolean hasSameNamespaceNames(byte[] anotherNamespaceNames) {
+      return Arrays.equals(namespaceNames, anotherNamespaceNames);
+    }
+
+    public byte[] getNamespaceNames() {
+      return namespaceNames;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the names block is malformed or doesn't match the count of notification ids
+     */
+    public List<String> decodeNamespaceNames() {
+      Reader reader = new Reader(namespaceNames);
+      List<String> names = new ArrayList<>(notificationIds.length);
+      for (int i = 0; i < notificationIds.length; i++) {
+        int length = reader.readLength();
+        names.add(new String(reader.readBytes(length), StandardCharsets.UTF_8));
+      }
+      if (!reader.isFinished()) {
+        throw new IllegalArgumentException("Namespace names don't match the notification ids");
+      }
+      return names;
+    }
+  }
+
+  private static class Reader {
+    private final byte[] bytes;
+    private int position;
+
+    Reader(byte[] bytes) {
+      if (bytes == null) {
+        throw new IllegalArgumentException("Notifications must not be null");
+      }
+      this.bytes = bytes;
+    }
+
+    int readByte() {
+      if (position >= bytes.length) {
+        throw new IllegalArgumentException("Unexpected end of notifications");
+      }
+      return bytes[position++] & 0xff;
+    }
+
+    long readVarint() {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = readByte();
+        value |= (long) (b & 0x7f) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("Malformed varint of notifications");
+    }
+
+    /**
+     * a length is never larger than the remaining bytes, which also protects from allocating huge arrays
+     */
+    int readLength() {
+      long length = readVarint();
+      if (length < 0 || length > bytes.length - position) {
+        throw new IllegalArgumentException("Invalid length of notifications: " + length);
+      }
+      return (int) length;
+    }
+
+    byte[] readBytes(int length) {
+      byte[] result = Arrays.copyOfRange(bytes, position, position + length);
+      position += length;
+      return result;
+    }
+
+    boolean isFinished() {
+      return position == bytes.length;
+    }
+  }
+}
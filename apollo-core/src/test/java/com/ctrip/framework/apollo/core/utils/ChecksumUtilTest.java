@@ -0,0 +1,40 @@
+package com.ctrip.framework.apollo.core.utils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ChecksumUtilTest {
+
+  @Test
+  public void testChecksumIsIndependentOfOrder() {
+    Map<String, String> someConfigurations = Maps.newLinkedHashMap();
+    someConfigurations.put("someKey", "someValue");
+    someConfigurations.put("anotherKey", "anotherValue");
+
+    Map<String, String> anotherConfigurations = Maps.newLinkedHashMap();
+    anotherConfigurations.put("anotherKey", "anotherValue");
+    anotherConfigurations.put("someKey", "someValue");
+
+    assertEquals(ChecksumUtil.checksum(someConfigurations), ChecksumUtil.checksum(anotherConfigurations));
+  }
+
+  @Test
+  public void testChecksumIsUnambiguous() {
+    Map<String, String> someConfigurations = ImmutableMap.of("ab", "c");
+    Map<String, String> anotherConfigurations = ImmutableMap.of("a", "bc");
+
+    assertNotEquals(ChecksumUtil.checksum(someConfigurations), ChecksumUtil.checksum(anotherConfigurations));
+  }
+
+  @Test
+  public void testChecksumWithEmptyConfigurations() {
+    assertEquals(ChecksumUtil.checksum(null), ChecksumUtil.checksum(Maps.<String, String>newHashMap()));
+    assertEquals(40, ChecksumUtil.checksum(null).length());
+  }
+}
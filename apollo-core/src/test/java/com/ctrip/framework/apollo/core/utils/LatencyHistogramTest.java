@@ -0,0 +1,70 @@
+package com.ctrip.framework.apollo.core.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+
+    assertEquals(100, histogram.getCount());
+    assertEquals(100, histogram.getMax());
+    assertWithinPrecision(50, histogram.getValueAtPercentile(50));
+    assertWithinPrecision(90, histogram.getValueAtPercentile(90));
+    assertWithinPrecision(99, histogram.getValueAtPercentile(99));
+    assertEquals(100, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void testSmallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(3, 9);
+    histogram.record(7);
+
+    assertEquals(10, histogram.getCount());
+    assertEquals(3, histogram.getValueAtPercentile(90));
+    assertEquals(7, histogram.getValueAtPercentile(99));
+  }
+
+  @Test
+  public void testOutOfRangeValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-1);
+    histogram.record(Long.MAX_VALUE);
+    histogram.record(1, 0);
+
+    assertEquals(2, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(50));
+    assertEquals((1L << 32) - 1, histogram.getMax());
+    assertEquals(histogram.getMax(), histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void testEmptyHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+
+  @Test
+  public void testBucketsCoverValues() {
+    for (long value = 0; value < 100000; value += 7) {
+      int index = LatencyHistogram.indexOf(value);
+      assertTrue(value <= LatencyHistogram.upperBoundOf(index));
+      assertTrue(index == 0 || value > LatencyHistogram.upperBoundOf(index - 1));
+    }
+  }
+
+  private void assertWithinPrecision(long expected, long actual) {
+    assertTrue(String.format("expected %d but was %d", expected, actual),
+        actual >= expected && actual <= expected * 1.125);
+  }
+}
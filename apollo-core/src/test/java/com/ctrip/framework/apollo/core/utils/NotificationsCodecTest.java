@@ -0,0 +1,77 @@
+package com.ctrip.framework.apollo.core.utils;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.ctrip.framework.apollo.core.utils.NotificationsCodec.EncodedNotifications;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationsCodecTest {
+
+  @Test
+  public void testEncodeAndDecode() {
+    List<ApolloConfigNotification> notifications = Lists.newArrayList(
+        new ApolloConfigNotification("application", -1),
+        new ApolloConfigNotification("someNamespace.yml", 12345678901L),
+        new ApolloConfigNotification("中文", 0));
+
+    EncodedNotifications encoded = NotificationsCodec.decode(NotificationsCodec.encode(notifications));
+
+    assertEquals(3, encoded.size());
+    assertEquals(-1, encoded.getNotificationId(0));
+    assertEquals(12345678901L, encoded.getNotificationId(1));
+    assertEquals(0, encoded.getNotificationId(2));
+    assertEquals(Arrays.asList("application", "someNamespace.yml", "中文"), encoded.decodeNamespaceNames());
+  }
+
+  @Test
+  public void testFingerprintIsIndependentOfNotificationIds() {
+    EncodedNotifications someEncoded = NotificationsCodec.decode(NotificationsCodec.encode(
+        Lists.newArrayList(new ApolloConfigNotification("someNamespace", 1))));
+    EncodedNotifications anotherEncoded = NotificationsCodec.decode(NotificationsCodec.encode(
+        Lists.newArrayList(new ApolloConfigNotification("someNamespace", 2))));
+    EncodedNotifications yetAnotherEncoded = NotificationsCodec.decode(NotificationsCodec.encode(
+        Lists.newArrayList(new ApolloConfigNotification("anotherNamespace", 1))));
+
+    assertEquals(someEncoded.getFingerprint(), anotherEncoded.getFingerprint());
+    assertTrue(someEncoded.hasSameNamespaceNames(anotherEncoded.getNamespaceNames()));
+    assertNotEquals(someEncoded.getFingerprint(), yetAnotherEncoded.getFingerprint());
+    assertFalse(someEncoded.hasSameNamespaceNames(yetAnotherEncoded.getNamespaceNames()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDecodeWithUnsupportedVersion() {
+    byte[] body = NotificationsCodec.encode(Lists.newArrayList(new ApolloConfigNotification("someNamespace", 1)));
+    body[0] = 2;
+
+    NotificationsCodec.decode(body);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDecodeWithTruncatedBody() {
+    byte[] body = NotificationsCodec.encode(Lists.newArrayList(new ApolloConfigNotification("someNamespace", 1)));
+
+    NotificationsCodec.decode(Arrays.copyOf(body, body.length - 1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDecodeNamespaceNamesWithMismatchedCount() {
+    byte[] body = NotificationsCodec.encode(Lists.newArrayList(new ApolloConfigNotification("someNamespace", 1)));
+    //claim 2 notifications with the id of 0 taking the place of the length of names block
+    byte[] malformed = new byte[body.length + 1];
+    System.arraycopy(body, 0, malformed, 0, 9);
+    malformed[9] = 2;
+    malformed[10] = body[10];
+    malformed[11] = 0;
+    System.arraycopy(body, 11, malformed, 12, body.length - 11);
+
+    NotificationsCodec.decode(malformed).decodeNamespaceNames();
+  }
+}